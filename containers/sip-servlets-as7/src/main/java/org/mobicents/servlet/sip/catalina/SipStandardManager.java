@@ -567,5 +567,33 @@ public class SipStandardManager extends StandardManager implements CatalinaSipMa
 	public void updateStats() {
 		sipManagerDelegate.updateStats();
 	}
+
+	public int getPassivationIdleTime() {
+		return sipManagerDelegate.getPassivationIdleTime();
+	}
+
+	public void setPassivationIdleTime(int passivationIdleTime) {
+		sipManagerDelegate.setPassivationIdleTime(passivationIdleTime);
+	}
+
+	public int getMaxResidentSipApplicationSessions() {
+		return sipManagerDelegate.getMaxResidentSipApplicationSessions();
+	}
+
+	public void setMaxResidentSipApplicationSessions(int maxResidentSipApplicationSessions) {
+		sipManagerDelegate.setMaxResidentSipApplicationSessions(maxResidentSipApplicationSessions);
+	}
+
+	public String getPassivationDirectory() {
+		return sipManagerDelegate.getPassivationDirectory();
+	}
+
+	public void setPassivationDirectory(String passivationDirectory) {
+		sipManagerDelegate.setPassivationDirectory(passivationDirectory);
+	}
+
+	public int getPassivatedSessions() {
+		return sipManagerDelegate.getPassivatedSessions();
+	}
 	
 }
@@ -41,6 +41,10 @@ public class AndRule implements MatchingRule {
     public void addCriterion(MatchingRule c) {
        criteria.add(c); 
     }
+
+    List<MatchingRule> getCriteria() {
+    	return criteria;
+    }
     
     public boolean matches(SipServletRequest request) {
         for (MatchingRule rule : criteria) {
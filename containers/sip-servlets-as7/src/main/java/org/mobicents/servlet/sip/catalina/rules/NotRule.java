@@ -38,6 +38,10 @@ public class NotRule implements MatchingRule {
     public void setCriterion(MatchingRule c) {
     	 criterion = c;
     }
+
+    MatchingRule getCriterion() {
+    	return criterion;
+    }
     
     public boolean matches(SipServletRequest request) {
         return !criterion.matches(request);
@@ -23,6 +23,7 @@
 package org.mobicents.servlet.sip.catalina.rules;
 
 import java.util.ArrayList;
+import java.util.List;
 
 import javax.servlet.sip.SipServletRequest;
 
@@ -40,6 +41,10 @@ public class OrRule implements MatchingRule {
     public void addCriterion(MatchingRule c) {
        criteria.add(c); 
     }
+
+    List<MatchingRule> getCriteria() {
+    	return criteria;
+    }
     
     public boolean matches(SipServletRequest request) {
         for (MatchingRule rule : criteria) {
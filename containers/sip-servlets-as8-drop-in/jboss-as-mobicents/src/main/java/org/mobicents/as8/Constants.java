@@ -152,15 +152,20 @@ public interface Constants {
     String VIRTUAL_SERVER = "virtual-server";
     String WEBDAV = "webdav";
     String WELCOME_FILE = "welcome-file";
+    String WHEEL = "wheel";
     String X_POWERED_BY = "x-powered-by";
 
     /* Connect stats attributes */
     String BYTES_SENT = "bytesSent";
+    String MESSAGES_SENT = "messagesSent";
     String BYTES_RECEIVED = "bytesReceived";
     String PROCESSING_TIME = "processingTime";
     String ERROR_COUNT = "errorCount";
     String MAX_TIME = "maxTime";
     String REQUEST_COUNT = "requestCount";
+    String LATENCY_P50 = "latencyP50";
+    String LATENCY_P99 = "latencyP99";
+    String LATENCY_MAX = "latencyMax";
 
     String LOAD_TIME = "load-time";
     String MIN_TIME = "min-time";
@@ -27,6 +27,8 @@ import org.jboss.as.controller.SimpleAttributeDefinitionBuilder;
 import org.jboss.dmr.ModelNode;
 import org.jboss.dmr.ModelType;
 import org.jboss.msc.service.ServiceController;
+import org.mobicents.servlet.sip.core.SipApplicationDispatcher;
+import org.mobicents.servlet.sip.core.SipConnectorStatistics;
 
 import static org.jboss.as.controller.descriptions.ModelDescriptionConstants.NAME;
 import static org.jboss.as.controller.descriptions.ModelDescriptionConstants.OP_ADDR;
@@ -45,6 +47,8 @@ class SipConnectorMetrics implements OperationStepHandler {
 
     protected static final SimpleAttributeDefinition BYTES_SENT = new SimpleAttributeDefinitionBuilder(
             org.mobicents.as8.Constants.BYTES_SENT, ModelType.INT, true).setStorageRuntime().build();
+    protected static final SimpleAttributeDefinition MESSAGES_SENT = new SimpleAttributeDefinitionBuilder(
+            org.mobicents.as8.Constants.MESSAGES_SENT, ModelType.INT, true).setStorageRuntime().build();
 
     protected static final SimpleAttributeDefinition BYTES_RECEIVED = new SimpleAttributeDefinitionBuilder(
             org.mobicents.as8.Constants.BYTES_RECEIVED, ModelType.INT, true).setStorageRuntime().build();
@@ -58,6 +62,14 @@ class SipConnectorMetrics implements OperationStepHandler {
     protected static final SimpleAttributeDefinition REQUEST_COUNT = new SimpleAttributeDefinitionBuilder(
             org.mobicents.as8.Constants.REQUEST_COUNT, ModelType.INT, true).setStorageRuntime().build();
 
+    // the latency histograms are gathered by the sip application dispatcher for all the connectors
+    protected static final SimpleAttributeDefinition LATENCY_P50 = new SimpleAttributeDefinitionBuilder(
+            org.mobicents.as8.Constants.LATENCY_P50, ModelType.OBJECT, true).setStorageRuntime().build();
+    protected static final SimpleAttributeDefinition LATENCY_P99 = new SimpleAttributeDefinitionBuilder(
+            org.mobicents.as8.Constants.LATENCY_P99, ModelType.OBJECT, true).setStorageRuntime().build();
+    protected static final SimpleAttributeDefinition LATENCY_MAX = new SimpleAttributeDefinitionBuilder(
+            org.mobicents.as8.Constants.LATENCY_MAX, ModelType.OBJECT, true).setStorageRuntime().build();
+
     @Deprecated
     static final String[] ATTRIBUTES_OLD = { org.mobicents.as8.Constants.BYTES_SENT,
             org.mobicents.as8.Constants.BYTES_RECEIVED, org.mobicents.as8.Constants.PROCESSING_TIME,
@@ -65,11 +77,15 @@ class SipConnectorMetrics implements OperationStepHandler {
             org.mobicents.as8.Constants.REQUEST_COUNT };
     static final SimpleAttributeDefinition[] ATTRIBUTES = {
             BYTES_SENT,
+            MESSAGES_SENT,
             BYTES_RECEIVED,
             PROCESSING_TIME,
             ERROR_COUNT,
             MAX_TIME,
-            REQUEST_COUNT
+            REQUEST_COUNT,
+            LATENCY_P50,
+            LATENCY_P99,
+            LATENCY_MAX
     };
 
     @Override
@@ -88,29 +104,32 @@ class SipConnectorMetrics implements OperationStepHandler {
                         try {
                             final SipConnectorListener connector = (SipConnectorListener) controller.getValue();
                             final ModelNode result = context.getResult();
-                            if (connector.getProtocolHandler() != null /*
-                                                                        * FIXME:&&
-                                                                        * connector.getProtocolHandler().getRequestGroupInfo()
-                                                                        * != null
-                                                                        */) {
-                                // FIXME: kakonyii: currently there is no requestGroupInfo in SipProtocolHandler, so we need to
-                                // find other solution to implement this:
-                                // RequestGroupInfo info =
-                                // connector.getProtocolHandler().getRequestGroupInfo();
-                                // if (org.mobicents.as8.Constants.BYTES_SENT.equals(attributeName)) {
-                                // result.set("" + info.getBytesSent());
-                                // } else if (org.mobicents.as8.Constants.BYTES_RECEIVED.equals(attributeName)) {
-                                // result.set("" + info.getBytesReceived());
-                                // } else if (org.mobicents.as8.Constants.PROCESSING_TIME.equals(attributeName)) {
-                                // result.set("" + info.getProcessingTime());
-                                // } else if (org.mobicents.as8.Constants.ERROR_COUNT.equals(attributeName)) {
-                                // result.set("" + info.getErrorCount());
-                                // } else if (org.mobicents.as8.Constants.MAX_TIME.equals(attributeName)) {
-                                // result.set("" + info.getMaxTime());
-                                // } else if (org.mobicents.as8.Constants.REQUEST_COUNT.equals(attributeName)) {
-                                // result.set("" + info.getRequestCount());
-                                // }
-
+                            if (connector.getProtocolHandler() != null
+                                    && connector.getProtocolHandler().extendedListeningPoint != null) {
+                                // there is no requestGroupInfo in SipProtocolHandler, the counters are kept by the listening point
+                                // and updated by the sip application dispatcher
+                                SipConnectorStatistics info = connector.getProtocolHandler().extendedListeningPoint.getStatistics();
+                                if (org.mobicents.as8.Constants.BYTES_SENT.equals(attributeName)) {
+                                    result.set("" + info.getBytesSent());
+                                } else if (org.mobicents.as8.Constants.MESSAGES_SENT.equals(attributeName)) {
+                                    result.set("" + info.getMessagesSent());
+                                } else if (org.mobicents.as8.Constants.BYTES_RECEIVED.equals(attributeName)) {
+                                    result.set("" + info.getBytesReceived());
+                                } else if (org.mobicents.as8.Constants.PROCESSING_TIME.equals(attributeName)) {
+                                    result.set("" + info.getProcessingTime());
+                                } else if (org.mobicents.as8.Constants.ERROR_COUNT.equals(attributeName)) {
+                                    result.set("" + info.getErrorCount());
+                                } else if (org.mobicents.as8.Constants.MAX_TIME.equals(attributeName)) {
+                                    result.set("" + info.getMaxTime());
+                                } else if (org.mobicents.as8.Constants.REQUEST_COUNT.equals(attributeName)) {
+                                    result.set("" + info.getRequestCount());
+                                } else if (org.mobicents.as8.Constants.LATENCY_P50.equals(attributeName)) {
+                                    setLatencies(context, result, 50);
+                                } else if (org.mobicents.as8.Constants.LATENCY_P99.equals(attributeName)) {
+                                    setLatencies(context, result, 99);
+                                } else if (org.mobicents.as8.Constants.LATENCY_MAX.equals(attributeName)) {
+                                    setLatencies(context, result, -1);
+                                }
                             }
                         } catch (Exception e) {
                             throw new OperationFailedException(new ModelNode().set(MESSAGES.failedToGetMetrics(e.getMessage())));
@@ -126,4 +145,25 @@ class SipConnectorMetrics implements OperationStepHandler {
         }
         context.completeStep(OperationContext.RollbackHandler.NOOP_ROLLBACK_HANDLER);
     }
+
+    /**
+     * Set the percentile of each latency histogram, in microseconds, keyed by the histogram name
+     *
+     * @param percentile the percentile to read, negative for the highest latency recorded
+     */
+    private static void setLatencies(OperationContext context, ModelNode result, double percentile) {
+        final ServiceController<?> controller = context.getServiceRegistry(false).getService(SipSubsystemServices.JBOSS_SIP);
+        if (controller == null) {
+            return;
+        }
+        final SipApplicationDispatcher sipApplicationDispatcher = SipServerService.class.cast(controller.getValue())
+                .getSipService().getSipApplicationDispatcher();
+        for (String histogramName : sipApplicationDispatcher.getLatencyStatistics().keySet()) {
+            if (percentile < 0) {
+                result.get(histogramName).set(sipApplicationDispatcher.getLatencyMax(histogramName));
+            } else {
+                result.get(histogramName).set(sipApplicationDispatcher.getLatencyPercentile(histogramName, percentile));
+            }
+        }
+    }
 }
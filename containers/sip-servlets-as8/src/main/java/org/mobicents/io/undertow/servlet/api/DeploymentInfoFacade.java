@@ -40,6 +40,7 @@ import org.mobicents.servlet.sip.core.MobicentsSipServlet;
 import org.mobicents.servlet.sip.core.descriptor.MobicentsSipServletMapping;
 import org.mobicents.servlet.sip.core.security.MobicentsSipLoginConfig;
 import org.mobicents.servlet.sip.ruby.SipRubyController;
+import org.mobicents.servlet.sip.undertow.rules.SipServletMappingMatcher;
 
 /**
  * @author kakonyi.istvan@alerant.hu
@@ -72,6 +73,8 @@ public class DeploymentInfoFacade implements Cloneable {
     protected ConcurrencyControlMode concurrencyControlMode;
     protected transient List<String> sipApplicationListeners = new CopyOnWriteArrayList<String>();
     protected transient List<MobicentsSipServletMapping> sipServletMappings = new ArrayList<MobicentsSipServletMapping>();
+    // the sip servlet mappings compiled into a single evaluator, rebuilt when they change
+    protected transient volatile SipServletMappingMatcher sipServletMappingMatcher = null;
     private transient SipRubyController rubyController;
     protected transient Map<String, MobicentsSipServlet> childrenMap;
     protected transient Map<String, MobicentsSipServlet> childrenMapByClassName;
@@ -190,6 +193,7 @@ public class DeploymentInfoFacade implements Cloneable {
 
     public void addSipServletMapping(MobicentsSipServletMapping sipServletMapping) {
         sipServletMappings.add(sipServletMapping);
+        sipServletMappingMatcher = null;
         isMainServlet = false;
         if (servletHandler == null) {
             servletHandler = sipServletMapping.getServletName();
@@ -201,9 +205,16 @@ public class DeploymentInfoFacade implements Cloneable {
     }
 
     public MobicentsSipServletMapping findSipServletMappings(SipServletRequest sipServletRequest) {
-        if (logger.isDebugEnabled()) {
-            logger.debug("Checking sip Servlet Mapping for following request : " + sipServletRequest);
+        if (!logger.isDebugEnabled()) {
+            SipServletMappingMatcher matcher = sipServletMappingMatcher;
+            if (matcher == null || matcher.size() != sipServletMappings.size()) {
+                matcher = SipServletMappingMatcher.compile(sipServletMappings);
+                sipServletMappingMatcher = matcher;
+            }
+            return matcher.match(sipServletRequest);
         }
+        // evaluate each rule on its own to log the ones not matching
+        logger.debug("Checking sip Servlet Mapping for following request : " + sipServletRequest);
         for (MobicentsSipServletMapping sipServletMapping : sipServletMappings) {
             if (sipServletMapping.getMatchingRule().matches(sipServletRequest)) {
                 return sipServletMapping;
@@ -220,6 +231,7 @@ public class DeploymentInfoFacade implements Cloneable {
      */
     public void removeSipServletMapping(MobicentsSipServletMapping sipServletMapping) {
         sipServletMappings.remove(sipServletMapping);
+        sipServletMappingMatcher = null;
     }
 
     public String[] findSipApplicationListeners() {
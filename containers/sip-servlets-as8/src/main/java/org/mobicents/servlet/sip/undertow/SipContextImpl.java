@@ -77,7 +77,8 @@ import org.mobicents.servlet.sip.core.timers.SipApplicationSessionTimerService;
 import org.mobicents.servlet.sip.core.timers.SipServletTimerService;
 import org.mobicents.servlet.sip.core.timers.StandardSipApplicationSessionTimerService;
 import org.mobicents.servlet.sip.core.timers.TimerServiceImpl;
-import org.mobicents.servlet.sip.dns.MobicentsDNSResolver;
+import org.mobicents.servlet.sip.core.timers.WheelProxyTimerService;
+import org.mobicents.servlet.sip.core.timers.WheelSipApplicationSessionTimerService;
 import org.mobicents.servlet.sip.listener.SipConnectorListener;
 import org.mobicents.servlet.sip.message.SipFactoryFacade;
 import org.mobicents.servlet.sip.message.SipFactoryImpl;
@@ -381,13 +382,20 @@ public class SipContextImpl implements SipContext {
             // } else {
             // timerService = new TimerServiceImpl();
             // }
-            timerService = new TimerServiceImpl(sipApplicationDispatcher.getSipService(), getApplicationName());
+            if(sasTimerServiceType != null && sasTimerServiceType == TimerServiceType.WHEEL) {
+                // servlet timers share the timer wheel with the sip application session timers
+                timerService = new TimerServiceImpl(sipApplicationDispatcher.createTimerGroup(getApplicationName() + "_servlet_timers"));
+            } else {
+                timerService = new TimerServiceImpl(sipApplicationDispatcher.getSipService(), getApplicationName());
+            }
         }
         if (proxyTimerService == null) {
             if(proxyTimerServiceType != null && proxyTimerServiceType == TimerServiceType.STANDARD) {
                 proxyTimerService = new ProxyTimerServiceImpl(getApplicationName());
             } else if(proxyTimerServiceType != null && proxyTimerServiceType == TimerServiceType.DEFAULT) {
                 proxyTimerService = new DefaultProxyTimerService(getApplicationName());
+            } else if(proxyTimerServiceType != null && proxyTimerServiceType == TimerServiceType.WHEEL) {
+                proxyTimerService = new WheelProxyTimerService(sipApplicationDispatcher.createTimerGroup(getApplicationName() + "_proxy_timers"));
             } else {
                 proxyTimerService = new ProxyTimerServiceImpl(getApplicationName());
             }
@@ -403,6 +411,8 @@ public class SipContextImpl implements SipContext {
                 sasTimerService = new StandardSipApplicationSessionTimerService(getApplicationName());
             }else if (sasTimerServiceType != null && sasTimerServiceType == TimerServiceType.DEFAULT){
                 sasTimerService = new DefaultSipApplicationSessionTimerService(getApplicationName());
+            }else if (sasTimerServiceType != null && sasTimerServiceType == TimerServiceType.WHEEL){
+                sasTimerService = new WheelSipApplicationSessionTimerService(sipApplicationDispatcher.createTimerGroup(getApplicationName() + "_sas_timers"));
             }else{
                 sasTimerService = new StandardSipApplicationSessionTimerService(getApplicationName());
             }
@@ -426,7 +436,7 @@ public class SipContextImpl implements SipContext {
         this.getServletContext().setAttribute("org.mobicents.servlet.sip.SIP_CONNECTORS",
                 sipApplicationDispatcher.getSipService().findSipConnectors());
         this.getServletContext().setAttribute("org.mobicents.servlet.sip.DNS_RESOLVER",
-                new MobicentsDNSResolver(sipApplicationDispatcher.getDNSServerLocator()));
+                sipApplicationDispatcher.getDNSResolver());
     }
 
     public void addChild(SipServletImpl sipServletImpl) {
@@ -1151,7 +1161,8 @@ public class SipContextImpl implements SipContext {
 
     public enum TimerServiceType{
         STANDARD,
-        DEFAULT;
+        DEFAULT,
+        WHEEL;
     }
 
     @Override
@@ -62,6 +62,7 @@ import org.mobicents.ha.javax.sip.ReplicationStrategy;
 import org.mobicents.javax.servlet.CongestionControlPolicy;
 import org.mobicents.servlet.sip.SipConnector;
 import org.mobicents.servlet.sip.annotation.ConcurrencyControlMode;
+import org.mobicents.servlet.sip.core.DefaultIdGenerator;
 import org.mobicents.servlet.sip.core.ExtendedListeningPoint;
 import org.mobicents.servlet.sip.core.MobicentsExtendedListeningPoint;
 import org.mobicents.servlet.sip.core.SipApplicationDispatcher;
@@ -107,6 +108,8 @@ public class SipStandardService implements SipService {
     protected String proxyTimerServiceImplementationType;
     protected String sasTimerServiceImplementationType;
     protected long congestionControlCheckingInterval = 30000;
+    protected long adaptiveCongestionControlInterval = 0;
+    protected long adaptiveCongestionControlTargetDelay = 50;
     private int canceledTimerTasksPurgePeriod = 0;
     // base timer interval for jain sip tx
     private int baseTimerInterval = 500;
@@ -120,6 +123,8 @@ public class SipStandardService implements SipService {
     protected String congestionControlPolicy = CongestionControlPolicy.ErrorResponse.toString();
     protected String additionalParameterableHeaders;
     protected boolean bypassResponseExecutor = true;
+    protected boolean useVirtualThreads = false;
+    protected String loadBalancerSelectionStrategy = "RoundRobin";
     protected boolean bypassRequestExecutor = true;
     // this should be made available to the application router as a system prop
     protected String darConfigurationFileLocation;
@@ -150,7 +155,12 @@ public class SipStandardService implements SipService {
     private String addressResolverClass = null;
     private String dnsServerLocatorClass = DefaultDNSServerLocator.class.getName();
     private int dnsTimeout = 1;
+    // time to live in seconds of the cached DNS lookups, 0 to not cache them. Off by default since the cache doesn't know
+    // the TTLs of the DNS records, it should be set below the shortest of them to not delay the failovers
+    private int dnsCacheTtl = 0;
+    private int dnsCacheSize = 1000;
     private String dnsResolverClass = MobicentsDNSResolver.class.getName();
+    private String idGeneratorClass = DefaultIdGenerator.class.getName();
     private String mobicentsSipServletMessageFactoryClassName = Servlet3SipServletMessageFactory.class.getName();
 
     // the balancers to send heartbeat to and our health info
@@ -286,6 +296,8 @@ public class SipStandardService implements SipService {
         sipApplicationDispatcher.setMemoryThreshold(getMemoryThreshold());
         sipApplicationDispatcher.setBackToNormalMemoryThreshold(backToNormalMemoryThreshold);
         sipApplicationDispatcher.setCongestionControlCheckingInterval(getCongestionControlCheckingInterval());
+        sipApplicationDispatcher.setAdaptiveCongestionControlTargetDelay(adaptiveCongestionControlTargetDelay);
+        sipApplicationDispatcher.setAdaptiveCongestionControlInterval(adaptiveCongestionControlInterval);
         sipApplicationDispatcher.setCongestionControlPolicyByName(getCongestionControlPolicy());
         sipApplicationDispatcher.setQueueSize(getSipMessageQueueSize());
         sipApplicationDispatcher.setBackToNormalQueueSize(backToNormalSipMessageQueueSize);
@@ -293,6 +305,8 @@ public class SipStandardService implements SipService {
         sipApplicationDispatcher.setConcurrencyControlMode(ConcurrencyControlMode.valueOf(getConcurrencyControlMode()));
         sipApplicationDispatcher.setBypassRequestExecutor(bypassRequestExecutor);
         sipApplicationDispatcher.setBypassResponseExecutor(bypassResponseExecutor);
+        sipApplicationDispatcher.setUseVirtualThreads(useVirtualThreads);
+        sipApplicationDispatcher.setLoadBalancerSelectionStrategyByName(loadBalancerSelectionStrategy);
         sipApplicationDispatcher.setSipStack(sipStack);
         sipApplicationDispatcher.init();
 
@@ -517,6 +531,8 @@ public class SipStandardService implements SipService {
                     DNSServerLocator dnsServerLocator = (DNSServerLocator) dnsServerLocatorConstructor.newInstance(conArgs);
                     sipApplicationDispatcher.setDNSServerLocator(dnsServerLocator);
                     sipApplicationDispatcher.setDNSTimeout(dnsTimeout);
+                    sipApplicationDispatcher.setDNSCacheTtl(dnsCacheTtl);
+                    sipApplicationDispatcher.setDNSCacheSize(dnsCacheSize);
                     if (sipStackProperties.getProperty("javax.sip.ROUTER_PATH") == null) {
                         sipStackProperties.setProperty("javax.sip.ROUTER_PATH", DNSAwareRouter.class.getCanonicalName());
                     }
@@ -875,6 +891,22 @@ public class SipStandardService implements SipService {
         this.congestionControlCheckingInterval = congestionControlCheckingInterval;
     }
 
+    public long getAdaptiveCongestionControlInterval() {
+        return adaptiveCongestionControlInterval;
+    }
+
+    public void setAdaptiveCongestionControlInterval(long adaptiveCongestionControlInterval) {
+        this.adaptiveCongestionControlInterval = adaptiveCongestionControlInterval;
+    }
+
+    public long getAdaptiveCongestionControlTargetDelay() {
+        return adaptiveCongestionControlTargetDelay;
+    }
+
+    public void setAdaptiveCongestionControlTargetDelay(long adaptiveCongestionControlTargetDelay) {
+        this.adaptiveCongestionControlTargetDelay = adaptiveCongestionControlTargetDelay;
+    }
+
     public void setConcurrencyControlMode(String concurrencyControlMode) {
         this.concurrencyControlMode = concurrencyControlMode;
     }
@@ -1030,6 +1062,14 @@ public class SipStandardService implements SipService {
         this.dnsResolverClass = dnsResolverClass;
     }
 
+    public String getIdGeneratorClass() {
+        return idGeneratorClass;
+    }
+
+    public void setIdGeneratorClass(String idGeneratorClass) {
+        this.idGeneratorClass = idGeneratorClass;
+    }
+
     /**
      * @return the callIdMaxLength
      */
@@ -1082,6 +1122,22 @@ public class SipStandardService implements SipService {
         this.bypassResponseExecutor = bypassResponseExecutor;
     }
 
+    public boolean isUseVirtualThreads() {
+        return useVirtualThreads;
+    }
+
+    public void setUseVirtualThreads(boolean useVirtualThreads) {
+        this.useVirtualThreads = useVirtualThreads;
+    }
+
+    public String getLoadBalancerSelectionStrategy() {
+        return loadBalancerSelectionStrategy;
+    }
+
+    public void setLoadBalancerSelectionStrategy(String loadBalancerSelectionStrategy) {
+        this.loadBalancerSelectionStrategy = loadBalancerSelectionStrategy;
+    }
+
     public boolean isBypassRequestExecutor() {
         return bypassRequestExecutor;
     }
@@ -1106,6 +1162,28 @@ public class SipStandardService implements SipService {
         this.dnsTimeout = dnsTimeout;
     }
 
+    public int getDnsCacheTtl() {
+        return dnsCacheTtl;
+    }
+
+    /**
+     * @param dnsCacheTtl the time in seconds the DNS lookups are cached for, 0 to not cache them
+     */
+    public void setDnsCacheTtl(int dnsCacheTtl) {
+        this.dnsCacheTtl = dnsCacheTtl;
+    }
+
+    public int getDnsCacheSize() {
+        return dnsCacheSize;
+    }
+
+    /**
+     * @param dnsCacheSize the maximum number of DNS lookups cached
+     */
+    public void setDnsCacheSize(int dnsCacheSize) {
+        this.dnsCacheSize = dnsCacheSize;
+    }
+
     public String getProxyTimerServiceImplementationType() {
         return proxyTimerServiceImplementationType;
     }
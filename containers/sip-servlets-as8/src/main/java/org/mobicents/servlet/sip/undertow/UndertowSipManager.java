@@ -321,6 +321,41 @@ public class UndertowSipManager extends ConvergedInMemorySessionManager implemen
 
     }
 
+    @Override
+    public int getPassivationIdleTime() {
+        return sipManagerDelegate.getPassivationIdleTime();
+    }
+
+    @Override
+    public void setPassivationIdleTime(int passivationIdleTime) {
+        sipManagerDelegate.setPassivationIdleTime(passivationIdleTime);
+    }
+
+    @Override
+    public int getMaxResidentSipApplicationSessions() {
+        return sipManagerDelegate.getMaxResidentSipApplicationSessions();
+    }
+
+    @Override
+    public void setMaxResidentSipApplicationSessions(int maxResidentSipApplicationSessions) {
+        sipManagerDelegate.setMaxResidentSipApplicationSessions(maxResidentSipApplicationSessions);
+    }
+
+    @Override
+    public String getPassivationDirectory() {
+        return sipManagerDelegate.getPassivationDirectory();
+    }
+
+    @Override
+    public void setPassivationDirectory(String passivationDirectory) {
+        sipManagerDelegate.setPassivationDirectory(passivationDirectory);
+    }
+
+    @Override
+    public int getPassivatedSessions() {
+        return sipManagerDelegate.getPassivatedSessions();
+    }
+
     @Override
     public Object findSession(String id) throws IOException {
         ConvergedServletContextImpl servletContext = (ConvergedServletContextImpl) container.getServletContext();
@@ -44,6 +44,10 @@ public class AndRule implements MatchingRule {
         criteria.add(c);
     }
 
+    List<MatchingRule> getCriteria() {
+        return criteria;
+    }
+
     public boolean matches(SipServletRequest request) {
         for (MatchingRule rule : criteria) {
             if (!rule.matches(request))
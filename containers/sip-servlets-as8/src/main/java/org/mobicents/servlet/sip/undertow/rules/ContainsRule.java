@@ -19,8 +19,6 @@
 
 package org.mobicents.servlet.sip.undertow.rules;
 
-import javax.servlet.sip.SipServletRequest;
-
 import org.mobicents.servlet.sip.core.descriptor.MatchingRule;
 
 /**
@@ -44,8 +42,7 @@ public class ContainsRule extends RequestRule implements MatchingRule {
         this.ignoreCase = ignoreCase;
     }
 
-    public boolean matches(SipServletRequest request) {
-        String requestValue = getValue(request);
+    protected boolean matchesValue(String requestValue) {
         if (requestValue == null) {
             return false;
         }
@@ -18,8 +18,6 @@
  */
 package org.mobicents.servlet.sip.undertow.rules;
 
-import javax.servlet.sip.SipServletRequest;
-
 import org.mobicents.servlet.sip.core.descriptor.MatchingRule;
 
 /**
@@ -39,11 +37,11 @@ public class EqualsRule extends RequestRule implements MatchingRule {
         this.ignoreCase = ignoreCase;
     }
 
-    public boolean matches(SipServletRequest request) {
+    protected boolean matchesValue(String requestValue) {
         if (!ignoreCase) {
-            return value.equals(getValue(request));
+            return value.equals(requestValue);
         }
-        return value.equalsIgnoreCase(getValue(request));
+        return value.equalsIgnoreCase(requestValue);
     }
 
     public String getExpression() {
@@ -19,8 +19,6 @@
 
 package org.mobicents.servlet.sip.undertow.rules;
 
-import javax.servlet.sip.SipServletRequest;
-
 import org.mobicents.servlet.sip.core.descriptor.MatchingRule;
 
 /**
@@ -36,8 +34,8 @@ public class ExistsRule extends RequestRule implements MatchingRule {
         super(var);
     }
 
-    public boolean matches(SipServletRequest request) {
-        return getValue(request) != null;
+    protected boolean matchesValue(String requestValue) {
+        return requestValue != null;
     }
 
     public String getExpression() {
@@ -41,6 +41,10 @@ public class NotRule implements MatchingRule {
         criterion = c;
     }
 
+    MatchingRule getCriterion() {
+        return criterion;
+    }
+
     public boolean matches(SipServletRequest request) {
         return !criterion.matches(request);
     }
@@ -20,6 +20,7 @@
 package org.mobicents.servlet.sip.undertow.rules;
 
 import java.util.ArrayList;
+import java.util.List;
 
 import javax.servlet.sip.SipServletRequest;
 
@@ -43,6 +44,10 @@ public class OrRule implements MatchingRule {
         criteria.add(c);
     }
 
+    List<MatchingRule> getCriteria() {
+        return criteria;
+    }
+
     public boolean matches(SipServletRequest request) {
         for (MatchingRule rule : criteria) {
             if (rule.matches(request)) {
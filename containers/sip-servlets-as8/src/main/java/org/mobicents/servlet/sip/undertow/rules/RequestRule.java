@@ -98,6 +98,23 @@ public abstract class RequestRule implements MatchingRule {
         }
     }
 
+    /**
+     * @param requestValue the value of the variable of this rule extracted from the request, can be null
+     * @return true if the value matches this rule
+     */
+    protected abstract boolean matchesValue(String requestValue);
+
+    public boolean matches(SipServletRequest request) {
+        return matchesValue(getValue(request));
+    }
+
+    /**
+     * @return the number of extractors walked to get the value of the variable from the request
+     */
+    int getExtractorCount() {
+        return extractors.size();
+    }
+
     public String getValue(SipServletRequest request) {
         Object o = request;
         for (Extractor e : extractors) {
@@ -0,0 +1,252 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2015, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.servlet.sip.undertow.rules;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.sip.SipServletRequest;
+
+import org.mobicents.servlet.sip.core.descriptor.MatchingRule;
+import org.mobicents.servlet.sip.core.descriptor.MobicentsSipServletMapping;
+
+/**
+ * The servlet mappings of an application compiled into a single evaluator.
+ *
+ * Each distinct variable (request.method, request.from.uri.user, ...) used by the rules of all the mappings
+ * is extracted at most once per request, the first time a rule needs it, and shared by all the rules using it.
+ * The criteria of the and/or rules are reordered so that the ones needing the fewest extractions are evaluated first.
+ * The mappings are still evaluated in declaration order, the first one matching is returned.
+ *
+ * Rules not built by the {@link MatchingRuleParser} are evaluated as is.
+ */
+public final class SipServletMappingMatcher {
+    // cost given to the rules whose evaluation is unknown, so that they are evaluated last
+    private static final int UNKNOWN_RULE_COST = 100;
+
+    private static final Comparator<Criterion> CHEAPEST_FIRST = new Comparator<Criterion>() {
+        public int compare(Criterion criterion1, Criterion criterion2) {
+            return criterion1.cost < criterion2.cost ? -1 : (criterion1.cost == criterion2.cost ? 0 : 1);
+        }
+    };
+
+    private final MobicentsSipServletMapping[] mappings;
+    private final Criterion[] criteria;
+    // the rule used to extract each variable
+    private final RequestRule[] variables;
+
+    private SipServletMappingMatcher(MobicentsSipServletMapping[] mappings, Criterion[] criteria, RequestRule[] variables) {
+        this.mappings = mappings;
+        this.criteria = criteria;
+        this.variables = variables;
+    }
+
+    /**
+     * @param sipServletMappings the servlet mappings in declaration order
+     * @return the compiled servlet mappings
+     */
+    public static SipServletMappingMatcher compile(List<MobicentsSipServletMapping> sipServletMappings) {
+        final MobicentsSipServletMapping[] mappings = sipServletMappings.toArray(new MobicentsSipServletMapping[sipServletMappings.size()]);
+        final Criterion[] criteria = new Criterion[mappings.length];
+        final Map<String, Integer> variableIndexes = new HashMap<String, Integer>();
+        final List<RequestRule> variables = new ArrayList<RequestRule>();
+        for (int i = 0; i < mappings.length; i++) {
+            criteria[i] = compile(mappings[i].getMatchingRule(), variableIndexes, variables);
+        }
+        return new SipServletMappingMatcher(mappings, criteria, variables.toArray(new RequestRule[variables.size()]));
+    }
+
+    private static Criterion compile(MatchingRule rule, Map<String, Integer> variableIndexes, List<RequestRule> variables) {
+        if (rule instanceof RequestRule) {
+            final RequestRule requestRule = (RequestRule) rule;
+            Integer variableIndex = variableIndexes.get(requestRule.getVarName());
+            if (variableIndex == null) {
+                variableIndex = variables.size();
+                variableIndexes.put(requestRule.getVarName(), variableIndex);
+                variables.add(requestRule);
+            }
+            // checking the value itself is cheaper for equality and existence than for containment
+            final int cost = requestRule.getExtractorCount() * 2 + (rule instanceof EqualsRule || rule instanceof ExistsRule ? 0 : 1);
+            return new ValueCriterion(requestRule, variableIndex, cost);
+        } else if (rule instanceof AndRule) {
+            return new AndCriterion(compile(((AndRule) rule).getCriteria(), variableIndexes, variables));
+        } else if (rule instanceof OrRule) {
+            return new OrCriterion(compile(((OrRule) rule).getCriteria(), variableIndexes, variables));
+        } else if (rule instanceof NotRule) {
+            return new NotCriterion(compile(((NotRule) rule).getCriterion(), variableIndexes, variables));
+        }
+        return new RuleCriterion(rule);
+    }
+
+    private static Criterion[] compile(List<MatchingRule> rules, Map<String, Integer> variableIndexes, List<RequestRule> variables) {
+        final List<Criterion> criteria = new ArrayList<Criterion>(rules.size());
+        for (MatchingRule rule : rules) {
+            criteria.add(compile(rule, variableIndexes, variables));
+        }
+        // stable sort, criteria of the same cost keep their declaration order
+        Collections.sort(criteria, CHEAPEST_FIRST);
+        return criteria.toArray(new Criterion[criteria.size()]);
+    }
+
+    /**
+     * @return the number of servlet mappings compiled
+     */
+    public int size() {
+        return mappings.length;
+    }
+
+    /**
+     * @param request the request to match
+     * @return the first servlet mapping in declaration order whose rule matches the request, null if none matches
+     */
+    public MobicentsSipServletMapping match(SipServletRequest request) {
+        final RequestValues values = new RequestValues(request, variables);
+        for (int i = 0; i < criteria.length; i++) {
+            if (criteria[i].matches(values)) {
+                return mappings[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The values of the variables extracted from a request, lazily
+     */
+    static final class RequestValues {
+        private final SipServletRequest request;
+        private final RequestRule[] variables;
+        private final String[] values;
+        private final boolean[] extracted;
+
+        RequestValues(SipServletRequest request, RequestRule[] variables) {
+            this.request = request;
+            this.variables = variables;
+            this.values = new String[variables.length];
+            this.extracted = new boolean[variables.length];
+        }
+
+        String get(int variableIndex) {
+            if (!extracted[variableIndex]) {
+                values[variableIndex] = variables[variableIndex].getValue(request);
+                extracted[variableIndex] = true;
+            }
+            return values[variableIndex];
+        }
+    }
+
+    abstract static class Criterion {
+        final int cost;
+
+        Criterion(int cost) {
+            this.cost = cost;
+        }
+
+        abstract boolean matches(RequestValues values);
+    }
+
+    static final class ValueCriterion extends Criterion {
+        private final RequestRule rule;
+        private final int variableIndex;
+
+        ValueCriterion(RequestRule rule, int variableIndex, int cost) {
+            super(cost);
+            this.rule = rule;
+            this.variableIndex = variableIndex;
+        }
+
+        boolean matches(RequestValues values) {
+            return rule.matchesValue(values.get(variableIndex));
+        }
+    }
+
+    static final class AndCriterion extends Criterion {
+        private final Criterion[] criteria;
+
+        AndCriterion(Criterion[] criteria) {
+            super(totalCost(criteria));
+            this.criteria = criteria;
+        }
+
+        boolean matches(RequestValues values) {
+            for (Criterion criterion : criteria) {
+                if (!criterion.matches(values)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    static final class OrCriterion extends Criterion {
+        private final Criterion[] criteria;
+
+        OrCriterion(Criterion[] criteria) {
+            super(totalCost(criteria));
+            this.criteria = criteria;
+        }
+
+        boolean matches(RequestValues values) {
+            for (Criterion criterion : criteria) {
+                if (criterion.matches(values)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    static final class NotCriterion extends Criterion {
+        private final Criterion criterion;
+
+        NotCriterion(Criterion criterion) {
+            super(criterion.cost);
+            this.criterion = criterion;
+        }
+
+        boolean matches(RequestValues values) {
+            return !criterion.matches(values);
+        }
+    }
+
+    static final class RuleCriterion extends Criterion {
+        private final MatchingRule rule;
+
+        RuleCriterion(MatchingRule rule) {
+            super(UNKNOWN_RULE_COST);
+            this.rule = rule;
+        }
+
+        boolean matches(RequestValues values) {
+            return rule.matches(values.request);
+        }
+    }
+
+    private static int totalCost(Criterion[] criteria) {
+        int cost = 0;
+        for (Criterion criterion : criteria) {
+            cost += criterion.cost;
+        }
+        return cost;
+    }
+}
@@ -36,6 +36,31 @@ import org.apache.log4j.Logger;
 public class MessageDigestResponseAlgorithm {
     private static final Logger logger = Logger.getLogger(MessageDigestResponseAlgorithm.class.getName());
 
+    /**
+     * MD5 digests are not thread safe, each thread gets its own instead of all the authentications contending on a single
+     * shared one.
+     */
+    private static final ThreadLocal<MessageDigest> md5Digests = new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance("MD5");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    };
+
+    /**
+     * @param data the data to digest
+     * @return MD5(data), computed with the digest of the calling thread
+     */
+    static byte[] md5(byte[] data) {
+        MessageDigest digest = md5Digests.get();
+        digest.reset();
+        return digest.digest(data);
+    }
+
     /**
      * Calculates an http authentication response in accordance with rfc2617.
      * <p>
@@ -157,15 +182,7 @@ public class MessageDigestResponseAlgorithm {
      * @return MD5(data)
      */
     public static String H(String data) {
-        try {
-            MessageDigest digest = MessageDigest.getInstance("MD5");
-
-            return toHexString(digest.digest(data.getBytes()));
-        } catch (NoSuchAlgorithmException ex) {
-            // shouldn't happen
-            logger.error("Failed to instantiate an MD5 algorithm", ex);
-            return null;
-        }
+        return toHexString(md5(data.getBytes()));
     }
 
     /**
@@ -31,6 +31,9 @@ import java.text.ParseException;
 import java.util.Properties;
 import java.util.Random;
 import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.sip.SipStack;
 import javax.sip.header.AuthorizationHeader;
@@ -58,6 +61,7 @@ import org.mobicents.servlet.sip.security.SIPSecurityConstants;
 import org.mobicents.servlet.sip.security.SecurityActions;
 import org.mobicents.servlet.sip.undertow.SipLoginConfig;
 import org.mobicents.servlet.sip.undertow.security.UndertowSipPrincipal;
+import org.mobicents.servlet.sip.undertow.security.authentication.NonceCache.NonceStatus;
 
 import gov.nist.javax.sip.SipStackImpl;
 import io.undertow.security.idm.Account;
@@ -85,9 +89,18 @@ public class SipDigestAuthenticationMechanism implements SipDigestAuthenticator
     private static final String DIGEST_AUTH_USERS_PROPERTIES = "org.mobicents.servlet.sip.DIGEST_AUTH_USERS_PROPERTIES";
     private static final String DIGEST_AUTH_PASSWORD_IS_A1HASH = "org.mobicents.servlet.sip.DIGEST_AUTH_PASSWORD_IS_A1HASH";
 
+    /**
+     * How long, in milliseconds, the HA1 of a user verified by the identity manager is kept to check its next requests without
+     * reloading the users properties nor going through the identity manager again. 0, the default, disables the cache.
+     */
+    private static final String DIGEST_AUTH_CREDENTIALS_CACHE_TTL = "org.mobicents.servlet.sip.DIGEST_AUTH_CREDENTIALS_CACHE_TTL";
+
     /**
      * MD5 message digest provider.
+     * @deprecated not used anymore, the digests are computed with the per thread digest of
+     * {@link MessageDigestResponseAlgorithm} instead of synchronizing on this shared one
      */
+    @Deprecated
     protected static volatile MessageDigest md5Helper;
 
     static {
@@ -97,6 +110,18 @@ public class SipDigestAuthenticationMechanism implements SipDigestAuthenticator
             throw new IllegalStateException(e);
         }
     }
+
+    /**
+     * Nonces handed out, shared by all the authenticators since a new one is created for each request to authenticate.
+     */
+    protected static final NonceCache nonceCache = new NonceCache();
+    private static final AtomicBoolean nonceCacheConfigured = new AtomicBoolean();
+    private static final long INVALID_NONCE_COUNT = -2;
+    /**
+     * Credentials verified by the identity manager, keyed by deployment, realm and user name.
+     */
+    private static final ConcurrentMap<String, VerifiedCredentials> verifiedCredentials =
+            new ConcurrentHashMap<String, VerifiedCredentials>();
     /**
      * Private key.
      */
@@ -189,18 +214,31 @@ public class SipDigestAuthenticationMechanism implements SipDigestAuthenticator
             return (true);
         }
 
+        if (!nonceCacheConfigured.get() && sipStack instanceof SipStackImpl && nonceCacheConfigured.compareAndSet(false, true)) {
+            nonceCache.configure(((SipStackImpl) sipStack).getConfigurationProperties());
+        }
+
         // Validate any credentials already included with this request
+        boolean isNonceStale = false;
         String authorization = request.getHeader("authorization");
         if (authorization != null) {
-
-            principal = findPrincipal(request, authorization, this.realmName, securityDomain, deployment, servletInfo, sipStack);
-            if (principal != null &&
-            // fix for http://code.google.com/p/sipservlets/issues/detail?id=88
-                    principal.getPrincipal() != null) {
-                String username = parseUsername(authorization);
-                register(request, response, principal, "DIGEST",// Constants.DIGEST_METHOD,
-                        username, null);
-                return (true);
+            // expired or replayed nonces are rejected without going to the identity manager
+            NonceStatus nonceStatus = checkNonce(request, authorization);
+            if (nonceStatus == NonceStatus.VALID) {
+                principal = findPrincipal(request, authorization, this.realmName, securityDomain, deployment, servletInfo,
+                        sipStack);
+                if (principal != null &&
+                // fix for http://code.google.com/p/sipservlets/issues/detail?id=88
+                        principal.getPrincipal() != null &&
+                        // the nonce count is used up only by valid credentials
+                        useNonceCount(authorization)) {
+                    String username = parseUsername(authorization);
+                    register(request, response, principal, "DIGEST",// Constants.DIGEST_METHOD,
+                            username, null);
+                    return (true);
+                }
+            } else {
+                isNonceStale = nonceStatus == NonceStatus.STALE;
             }
         }
 
@@ -210,7 +248,7 @@ public class SipDigestAuthenticationMechanism implements SipDigestAuthenticator
         // to be unique).
         String nOnce = generateNOnce(request);
 
-        setAuthenticateHeader(request, response, config, nOnce);
+        setAuthenticateHeader(request, response, config, nOnce, isNonceStale);
         response.send();
         // hres.flushBuffer();
         return (false);
@@ -303,11 +341,26 @@ public class SipDigestAuthenticationMechanism implements SipDigestAuthenticator
         String a2 = method + ":" + uri;
         // System.out.println("A2:" + a2);
 
-        byte[] buffer = null;
-        synchronized (md5Helper) {
-            buffer = md5Helper.digest(a2.getBytes());
+        String md5a2 = MD5_ENCODER.encode(MessageDigestResponseAlgorithm.md5(a2.getBytes()));
+
+        long credentialsCacheTtl = 0;
+        if (sipStack instanceof SipStackImpl) {
+            credentialsCacheTtl = Long.parseLong(((SipStackImpl) sipStack).getConfigurationProperties().getProperty(
+                    SipDigestAuthenticationMechanism.DIGEST_AUTH_CREDENTIALS_CACHE_TTL, "0"));
+        }
+        String credentialsKey = deployment.getDeploymentInfo().getDeploymentName() + ":" + realmName + ":" + userName;
+        if (credentialsCacheTtl > 0) {
+            VerifiedCredentials credentials = verifiedCredentials.get(credentialsKey);
+            if (credentials != null) {
+                if (System.currentTimeMillis() - credentials.verificationTime > credentialsCacheTtl) {
+                    verifiedCredentials.remove(credentialsKey, credentials);
+                } else if (MessageDigestResponseAlgorithm.calculateResponse(DEFAULT_ALGORITHM, credentials.ha1, nOnce, nc,
+                        cnonce, method, uri, "", qop).equals(response)) {
+                    return new UndertowSipPrincipal(credentials.account, deployment, servletInfo);
+                }
+                // the password may have changed, go through the identity manager again
+            }
         }
-        String md5a2 = MD5_ENCODER.encode(buffer);
 
         // taken from
         // https://github.com/jbossas/jboss-as/blob/7.1.2.Final/web/src/main/java/org/jboss/as/web/security/SecurityContextAssociationValve.java#L86
@@ -357,6 +410,11 @@ public class SipDigestAuthenticationMechanism implements SipDigestAuthenticator
             if (account == null) {
                 return null;
             } else {
+                if (credentialsCacheTtl > 0) {
+                    String ha1 = storedPasswordIsA1Hash ? storedPassword : MessageDigestResponseAlgorithm.H(userName + ":"
+                            + realmName + ":" + storedPassword);
+                    verifiedCredentials.put(credentialsKey, new VerifiedCredentials(ha1, account));
+                }
                 return (new UndertowSipPrincipal(account, deployment, servletInfo));
             }
         } finally {
@@ -405,10 +463,10 @@ public class SipDigestAuthenticationMechanism implements SipDigestAuthenticator
         String serverDigest = "";
         if (storedPasswordIsA1Hash) {
             // storedPassword is HA1 in this case
-            serverDigest = MessageDigestResponseAlgorithm.calculateResponse(md5Helper.getAlgorithm(), storedPassword, nOnce,
+            serverDigest = MessageDigestResponseAlgorithm.calculateResponse(DEFAULT_ALGORITHM, storedPassword, nOnce,
                     nc, cnonce, method, uri, "", qop);
         } else {
-            serverDigest = MessageDigestResponseAlgorithm.calculateResponse(md5Helper.getAlgorithm(), userName, realmName,
+            serverDigest = MessageDigestResponseAlgorithm.calculateResponse(DEFAULT_ALGORITHM, userName, realmName,
                     storedPassword, nOnce, nc, cnonce, method, uri, "", qop);
         }
 
@@ -565,25 +623,139 @@ public class SipDigestAuthenticationMechanism implements SipDigestAuthenticator
     }
 
     /**
-     * Generate a unique token. The token is generated according to the following pattern. NOnceToken = Base64 ( MD5 ( client-IP
-     * ":" time-stamp ":" private-key ) ).
+     * Check that the nonce of the specified authorization credentials has been generated by us for the remote address of the
+     * request, is still valid and that its nonce count has not been used yet.
+     *
+     * @param request SIP servlet request
+     * @param authorization Authorization credentials from this request
+     */
+    protected NonceStatus checkNonce(MobicentsSipServletRequest request, String authorization) {
+        String[] nonceParameters = parseNonceParameters(authorization);
+        if (nonceParameters == null) {
+            return NonceStatus.INVALID;
+        }
+        String nOnce = nonceParameters[0];
+
+        // nonce = time-stamp ":" MD5 ( client-IP ":" time-stamp ":" private-key )
+        int colon = nOnce.indexOf(':');
+        if (colon < 0) {
+            return NonceStatus.INVALID;
+        }
+        long nOnceTime;
+        try {
+            nOnceTime = Long.parseLong(nOnce.substring(0, colon));
+        } catch (NumberFormatException e) {
+            return NonceStatus.INVALID;
+        }
+        if (!nOnce.equals(createNOnce(request, nOnceTime))) {
+            return NonceStatus.INVALID;
+        }
+
+        long nonceCount = parseNonceCount(nonceParameters);
+        if (nonceCount == INVALID_NONCE_COUNT) {
+            return NonceStatus.INVALID;
+        }
+        return nonceCache.check(nOnce, nOnceTime, nonceCount);
+    }
+
+    /**
+     * Record the nonce count of the specified authorization credentials as used, once they have been checked by
+     * {@link #checkNonce} and validated by the identity manager.
+     *
+     * @param authorization Authorization credentials from this request
+     * @return false if the nonce count has been used in the meantime
+     */
+    protected boolean useNonceCount(String authorization) {
+        String[] nonceParameters = parseNonceParameters(authorization);
+        if (nonceParameters == null) {
+            return false;
+        }
+        long nonceCount = parseNonceCount(nonceParameters);
+        if (nonceCount == INVALID_NONCE_COUNT) {
+            return false;
+        }
+        return nonceCache.useNonceCount(nonceParameters[0], nonceCount);
+    }
+
+    /**
+     * Parse the nonce, nc and qop values of the specified authorization credentials, or return <code>null</code> if there is
+     * no nonce.
+     *
+     * @param authorization Authorization credentials from this request
+     */
+    private static String[] parseNonceParameters(String authorization) {
+        if (!authorization.startsWith("Digest ")) {
+            return null;
+        }
+        String[] tokens = authorization.substring(7).trim().split(",");
+
+        String nOnce = null;
+        String nc = null;
+        String qop = null;
+        for (int i = 0; i < tokens.length; i++) {
+            String currentToken = tokens[i];
+            int equalSign = currentToken.indexOf('=');
+            if (equalSign < 0) {
+                continue;
+            }
+            String currentTokenName = currentToken.substring(0, equalSign).trim();
+            String currentTokenValue = currentToken.substring(equalSign + 1).trim();
+            if ("nonce".equals(currentTokenName)) {
+                nOnce = removeQuotes(currentTokenValue);
+            } else if ("nc".equals(currentTokenName)) {
+                nc = removeQuotes(currentTokenValue);
+            } else if ("qop".equals(currentTokenName)) {
+                qop = removeQuotes(currentTokenValue);
+            }
+        }
+        if (nOnce == null) {
+            return null;
+        }
+        return new String[] { nOnce, nc, qop };
+    }
+
+    /**
+     * Return the nonce count of the parsed nonce parameters, -1 if no qop was used or {@link #INVALID_NONCE_COUNT} if it
+     * can't be parsed.
+     */
+    private static long parseNonceCount(String[] nonceParameters) {
+        String nc = nonceParameters[1];
+        String qop = nonceParameters[2];
+        if (qop == null) {
+            return -1;
+        }
+        if (nc == null) {
+            return INVALID_NONCE_COUNT;
+        }
+        try {
+            long nonceCount = Long.parseLong(nc, 16);
+            return nonceCount < 0 ? INVALID_NONCE_COUNT : nonceCount;
+        } catch (NumberFormatException e) {
+            return INVALID_NONCE_COUNT;
+        }
+    }
+
+    /**
+     * Generate a unique token. The token is generated according to the following pattern. NOnceToken = time-stamp ":" MD5 (
+     * client-IP ":" time-stamp ":" private-key ).
      *
      * @param request HTTP Servlet request
      */
     protected String generateNOnce(MobicentsSipServletRequest request) {
         long currentTime = System.currentTimeMillis();
 
-        String nOnceValue = request.getRemoteAddr() + ":" + currentTime + ":" + key;
-
-        byte[] buffer = null;
-        synchronized (md5Helper) {
-            buffer = md5Helper.digest(nOnceValue.getBytes());
-        }
-        nOnceValue = MD5_ENCODER.encode(buffer);
+        String nOnceValue = createNOnce(request, currentTime);
+        nonceCache.add(nOnceValue, currentTime);
 
         return nOnceValue;
     }
 
+    private String createNOnce(MobicentsSipServletRequest request, long time) {
+        String nOnceValue = request.getRemoteAddr() + ":" + time + ":" + key;
+
+        return time + ":" + MD5_ENCODER.encode(MessageDigestResponseAlgorithm.md5(nOnceValue.getBytes()));
+    }
+
 /**
      * Generates the WWW-Authenticate header.
      * <p>
@@ -613,18 +785,30 @@ public class SipDigestAuthenticationMechanism implements SipDigestAuthenticator
     */
     protected void setAuthenticateHeader(MobicentsSipServletRequest request, MobicentsSipServletResponse response,
             MobicentsSipLoginConfig config, String nOnce) {
+        setAuthenticateHeader(request, response, config, nOnce, false);
+    }
+
+    /**
+     * Generates the WWW-Authenticate header, see
+     * {@link #setAuthenticateHeader(MobicentsSipServletRequest, MobicentsSipServletResponse, MobicentsSipLoginConfig, String)}
+     *
+     * @param isNonceStale true if the credentials were refused only because their nonce was stale, the client can then retry
+     *        with the new nonce without asking the user again
+     */
+    protected void setAuthenticateHeader(MobicentsSipServletRequest request, MobicentsSipServletResponse response,
+            MobicentsSipLoginConfig config, String nOnce, boolean isNonceStale) {
         // Get the realm name
         String realmName = ((SipLoginConfig) config).getRealmName();
         if (realmName == null)
             realmName = request.getServerName() + ":" + request.getServerPort();
 
-        byte[] buffer = null;
-        synchronized (md5Helper) {
-            buffer = md5Helper.digest(nOnce.getBytes());
-        }
+        byte[] buffer = MessageDigestResponseAlgorithm.md5(nOnce.getBytes());
 
         String authenticateHeader = "Digest realm=\"" + realmName + "\", " + "qop=\"auth\", nonce=\"" + nOnce + "\", "
                 + "opaque=\"" + MD5_ENCODER.encode(buffer) + "\"";
+        if (isNonceStale) {
+            authenticateHeader += ", stale=true";
+        }
 
         // There are different headers for different types of auth
         if (response.getStatus() == MobicentsSipServletResponse.SC_PROXY_AUTHENTICATION_REQUIRED) {
@@ -702,11 +886,7 @@ public class SipDigestAuthenticationMechanism implements SipDigestAuthenticator
         // String cnonce = "xyz";
         long currentTime = System.currentTimeMillis();
         String nOnceValue = currentTime + ":" + "mobicents" + response;
-        byte[] buffer = null;
-        synchronized (md5Helper) {
-            buffer = md5Helper.digest(nOnceValue.getBytes());
-        }
-        String cnonce = MD5_ENCODER.encode(buffer);
+        String cnonce = MD5_ENCODER.encode(MessageDigestResponseAlgorithm.md5(nOnceValue.getBytes()));
 
         try {
             response = MessageDigestResponseAlgorithm.calculateResponse(algorithm, username, realm, password, nonce, nc_value, // JvB
@@ -910,4 +1090,15 @@ public class SipDigestAuthenticationMechanism implements SipDigestAuthenticator
     public void setContext(SipContext context) {
         this.context = context;
     }
+
+    private static final class VerifiedCredentials {
+        private final String ha1;
+        private final Account account;
+        private final long verificationTime = System.currentTimeMillis();
+
+        VerifiedCredentials(String ha1, Account account) {
+            this.ha1 = ha1;
+            this.account = account;
+        }
+    }
 }
\ No newline at end of file
@@ -566,6 +566,34 @@ public class SipStandardManager extends StandardManager implements CatalinaSipMa
 		sipManagerDelegate.updateStats();
 	}
 
+	public int getPassivationIdleTime() {
+		return sipManagerDelegate.getPassivationIdleTime();
+	}
+
+	public void setPassivationIdleTime(int passivationIdleTime) {
+		sipManagerDelegate.setPassivationIdleTime(passivationIdleTime);
+	}
+
+	public int getMaxResidentSipApplicationSessions() {
+		return sipManagerDelegate.getMaxResidentSipApplicationSessions();
+	}
+
+	public void setMaxResidentSipApplicationSessions(int maxResidentSipApplicationSessions) {
+		sipManagerDelegate.setMaxResidentSipApplicationSessions(maxResidentSipApplicationSessions);
+	}
+
+	public String getPassivationDirectory() {
+		return sipManagerDelegate.getPassivationDirectory();
+	}
+
+	public void setPassivationDirectory(String passivationDirectory) {
+		sipManagerDelegate.setPassivationDirectory(passivationDirectory);
+	}
+
+	public int getPassivatedSessions() {
+		return sipManagerDelegate.getPassivatedSessions();
+	}
+
 	@Override
 	public void stopGracefully(long timeToWait) {
 		sipManagerDelegate.getContainer().stopGracefully(timeToWait);
@@ -22,8 +22,6 @@
 
 package org.mobicents.servlet.sip.catalina.rules;
 
-import javax.servlet.sip.SipServletRequest;
-
 import org.mobicents.servlet.sip.core.descriptor.MatchingRule;
 
 /**
@@ -43,8 +41,7 @@ public class ContainsRule extends RequestRule implements MatchingRule {
         this.ignoreCase = ignoreCase;
     }
     
-    public boolean matches(SipServletRequest request) {
-    	String requestValue = getValue(request);
+    protected boolean matchesValue(String requestValue) {
     	if (requestValue == null) {
     		return false;
     	}
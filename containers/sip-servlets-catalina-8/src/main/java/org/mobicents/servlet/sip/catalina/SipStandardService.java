@@ -71,6 +71,7 @@ import org.mobicents.javax.servlet.CongestionControlPolicy;
 import org.mobicents.servlet.sip.JainSipUtils;
 import org.mobicents.servlet.sip.SipConnector;
 import org.mobicents.servlet.sip.annotation.ConcurrencyControlMode;
+import org.mobicents.servlet.sip.core.DefaultIdGenerator;
 import org.mobicents.servlet.sip.core.ExtendedListeningPoint;
 import org.mobicents.servlet.sip.core.MobicentsExtendedListeningPoint;
 import org.mobicents.servlet.sip.core.SipApplicationDispatcher;
@@ -123,6 +124,8 @@ public class SipStandardService extends StandardService implements CatalinaSipSe
 	protected String proxyTimerServiceImplementationType;
     protected String sasTimerServiceImplementationType;
 	protected long congestionControlCheckingInterval = 30000;
+	protected long adaptiveCongestionControlInterval = 0;
+	protected long adaptiveCongestionControlTargetDelay = 50;
 	private int canceledTimerTasksPurgePeriod = 0;
 	// base timer interval for jain sip tx 
 	private int baseTimerInterval = 500;
@@ -136,6 +139,8 @@ public class SipStandardService extends StandardService implements CatalinaSipSe
 	protected String congestionControlPolicy = CongestionControlPolicy.ErrorResponse.toString();
 	protected String additionalParameterableHeaders;
 	protected boolean bypassResponseExecutor = true;
+	protected boolean useVirtualThreads = false;
+	protected String loadBalancerSelectionStrategy = "RoundRobin";
 	protected boolean bypassRequestExecutor = true;
 	//this should be made available to the application router as a system prop
 	protected String darConfigurationFileLocation;
@@ -165,7 +170,12 @@ public class SipStandardService extends StandardService implements CatalinaSipSe
 	private String addressResolverClass = null;
 	private String dnsServerLocatorClass = DefaultDNSServerLocator.class.getName();
 	private int dnsTimeout = 1;
+	// time to live in seconds of the cached DNS lookups, 0 to not cache them. Off by default since the cache doesn't know
+	// the TTLs of the DNS records, it should be set below the shortest of them to not delay the failovers
+	private int dnsCacheTtl = 0;
+	private int dnsCacheSize = 1000;
 	private String dnsResolverClass = MobicentsDNSResolver.class.getName();
+	private String idGeneratorClass = DefaultIdGenerator.class.getName();
 	private String mobicentsSipServletMessageFactoryClassName = Servlet3SipServletMessageFactory.class.getName();
 	
 	//the balancers to send heartbeat to and our health info
@@ -292,6 +302,8 @@ public class SipStandardService extends StandardService implements CatalinaSipSe
 		sipApplicationDispatcher.setMemoryThreshold(getMemoryThreshold());
 		sipApplicationDispatcher.setBackToNormalMemoryThreshold(backToNormalMemoryThreshold);
 		sipApplicationDispatcher.setCongestionControlCheckingInterval(getCongestionControlCheckingInterval());
+		sipApplicationDispatcher.setAdaptiveCongestionControlTargetDelay(adaptiveCongestionControlTargetDelay);
+		sipApplicationDispatcher.setAdaptiveCongestionControlInterval(adaptiveCongestionControlInterval);
 		sipApplicationDispatcher.setCongestionControlPolicyByName(getCongestionControlPolicy());
 		sipApplicationDispatcher.setQueueSize(getSipMessageQueueSize());
 		sipApplicationDispatcher.setBackToNormalQueueSize(backToNormalSipMessageQueueSize);
@@ -299,6 +311,8 @@ public class SipStandardService extends StandardService implements CatalinaSipSe
 		sipApplicationDispatcher.setConcurrencyControlMode(ConcurrencyControlMode.valueOf(getConcurrencyControlMode()));		
 		sipApplicationDispatcher.setBypassRequestExecutor(bypassRequestExecutor);
 		sipApplicationDispatcher.setBypassResponseExecutor(bypassResponseExecutor);		
+		sipApplicationDispatcher.setUseVirtualThreads(useVirtualThreads);
+		sipApplicationDispatcher.setLoadBalancerSelectionStrategyByName(loadBalancerSelectionStrategy);
 		sipApplicationDispatcher.setSipStack(sipStack);
 		sipApplicationDispatcher.init();
 		// Tomcat specific loading case where the connectors are added even before the service is initialized
@@ -491,6 +505,8 @@ public class SipStandardService extends StandardService implements CatalinaSipSe
 		            DNSServerLocator dnsServerLocator = (DNSServerLocator) dnsServerLocatorConstructor.newInstance(conArgs);
 		            sipApplicationDispatcher.setDNSServerLocator(dnsServerLocator);
 		            sipApplicationDispatcher.setDNSTimeout(dnsTimeout);
+		            sipApplicationDispatcher.setDNSCacheTtl(dnsCacheTtl);
+		            sipApplicationDispatcher.setDNSCacheSize(dnsCacheSize);
 		            if(sipStackProperties.getProperty("javax.sip.ROUTER_PATH") == null) {
 		            	sipStackProperties.setProperty("javax.sip.ROUTER_PATH", DNSAwareRouter.class.getCanonicalName());
 		            }
@@ -815,6 +831,40 @@ public class SipStandardService extends StandardService implements CatalinaSipSe
 	}
 
 
+	/**
+	 * @return the adaptiveCongestionControlInterval
+	 */
+	public long getAdaptiveCongestionControlInterval() {
+		return adaptiveCongestionControlInterval;
+	}
+
+
+	/**
+	 * @param adaptiveCongestionControlInterval the interval in milliseconds at which the adaptive congestion control
+	 * adjusts the admission of new requests, 0 to disable it
+	 */
+	public void setAdaptiveCongestionControlInterval(long adaptiveCongestionControlInterval) {
+		this.adaptiveCongestionControlInterval = adaptiveCongestionControlInterval;
+	}
+
+
+	/**
+	 * @return the adaptiveCongestionControlTargetDelay
+	 */
+	public long getAdaptiveCongestionControlTargetDelay() {
+		return adaptiveCongestionControlTargetDelay;
+	}
+
+
+	/**
+	 * @param adaptiveCongestionControlTargetDelay the delay in milliseconds between the reception of a request and its processing
+	 * above which the adaptive congestion control starts rejecting new requests
+	 */
+	public void setAdaptiveCongestionControlTargetDelay(long adaptiveCongestionControlTargetDelay) {
+		this.adaptiveCongestionControlTargetDelay = adaptiveCongestionControlTargetDelay;
+	}
+
+
 	public String getAdditionalParameterableHeaders() {
 		return additionalParameterableHeaders;
 	}
@@ -848,6 +898,40 @@ public class SipStandardService extends StandardService implements CatalinaSipSe
 	}
 
 
+	/**
+	 * @return the useVirtualThreads
+	 */
+	public boolean isUseVirtualThreads() {
+		return useVirtualThreads;
+	}
+
+
+	/**
+	 * @param useVirtualThreads run the SIP messages processing, the dialog/transaction terminated callbacks and the asynchronous work
+	 * on virtual threads instead of the dispatcher thread pool, falls back to the thread pool if the JVM doesn't support virtual threads
+	 */
+	public void setUseVirtualThreads(boolean useVirtualThreads) {
+		this.useVirtualThreads = useVirtualThreads;
+	}
+
+
+	/**
+	 * @return the loadBalancerSelectionStrategy
+	 */
+	public String getLoadBalancerSelectionStrategy() {
+		return loadBalancerSelectionStrategy;
+	}
+
+
+	/**
+	 * @param loadBalancerSelectionStrategy how the load balancer the container sends its requests through is picked
+	 * when several are available : RoundRobin, LeastOutstanding or LatencyWeighted
+	 */
+	public void setLoadBalancerSelectionStrategy(String loadBalancerSelectionStrategy) {
+		this.loadBalancerSelectionStrategy = loadBalancerSelectionStrategy;
+	}
+
+
 	/**
 	 * @return the bypassRequestExecutor
 	 */
@@ -1272,6 +1356,20 @@ public class SipStandardService extends StandardService implements CatalinaSipSe
 		return dnsResolverClass;
 	}
 
+	/**
+	 * @param idGeneratorClass the idGeneratorClass to set
+	 */
+	public void setIdGeneratorClass(String idGeneratorClass) {
+		this.idGeneratorClass = idGeneratorClass;
+	}
+
+	/**
+	 * @return the idGeneratorClass
+	 */
+	public String getIdGeneratorClass() {
+		return idGeneratorClass;
+	}
+
 	
 	/**
 	 * Returns first the catalina.base if it is defined then the catalina.home if it is defined
@@ -1379,6 +1477,34 @@ public class SipStandardService extends StandardService implements CatalinaSipSe
 	public void setDnsTimeout(int dnsTimeout) {
 		this.dnsTimeout = dnsTimeout;
 	}
+
+	/**
+	 * @return the dnsCacheTtl
+	 */
+	public int getDnsCacheTtl() {
+		return dnsCacheTtl;
+	}
+
+	/**
+	 * @param dnsCacheTtl the time in seconds the DNS lookups are cached for, 0 to not cache them
+	 */
+	public void setDnsCacheTtl(int dnsCacheTtl) {
+		this.dnsCacheTtl = dnsCacheTtl;
+	}
+
+	/**
+	 * @return the dnsCacheSize
+	 */
+	public int getDnsCacheSize() {
+		return dnsCacheSize;
+	}
+
+	/**
+	 * @param dnsCacheSize the maximum number of DNS lookups cached
+	 */
+	public void setDnsCacheSize(int dnsCacheSize) {
+		this.dnsCacheSize = dnsCacheSize;
+	}
 	
 	public String getProxyTimerServiceImplementationType() {
         return proxyTimerServiceImplementationType;
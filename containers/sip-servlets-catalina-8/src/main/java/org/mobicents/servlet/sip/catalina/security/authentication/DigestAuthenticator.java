@@ -22,15 +22,19 @@
 
 package org.mobicents.servlet.sip.catalina.security.authentication;
 
+import gov.nist.javax.sip.SipStackImpl;
+
 import java.io.IOException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.text.ParseException;
 import java.util.StringTokenizer;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import javax.sip.SipStack;
 import javax.sip.header.AuthorizationHeader;
 import javax.sip.header.Header;
 import javax.sip.header.HeaderFactory;
@@ -44,8 +48,10 @@ import org.apache.catalina.connector.Request;
 import org.apache.log4j.Logger;
 import org.apache.tomcat.util.descriptor.web.LoginConfig;
 import org.apache.tomcat.util.security.MD5Encoder;
+import org.mobicents.servlet.sip.catalina.CatalinaSipContext;
 import org.mobicents.servlet.sip.catalina.SipLoginConfig;
 import org.mobicents.servlet.sip.catalina.security.CatalinaSipPrincipal;
+import org.mobicents.servlet.sip.catalina.security.authentication.NonceCache.NonceStatus;
 import org.mobicents.servlet.sip.core.message.MobicentsSipServletRequest;
 import org.mobicents.servlet.sip.core.message.MobicentsSipServletResponse;
 import org.mobicents.servlet.sip.core.security.MobicentsSipLoginConfig;
@@ -92,7 +98,11 @@ public class DigestAuthenticator
 
     /**
      * MD5 message digest provider.
+     * @deprecated not used anymore, the digests are computed with the
+     * per thread digest of {@link MessageDigestResponseAlgorithm} instead of
+     * synchronizing on this shared one
      */
+    @Deprecated
     protected volatile static MessageDigest md5Helper;
 
     static {
@@ -103,6 +113,16 @@ public class DigestAuthenticator
         }
     }
 
+    /**
+     * Nonces handed out, shared by all the authenticators since a new one
+     * is created for each request to authenticate.
+     */
+    protected static final NonceCache nonceCache = new NonceCache();
+
+    private static final AtomicBoolean nonceCacheConfigured = new AtomicBoolean();
+
+    private static final long INVALID_NONCE_COUNT = -2;
+
     /**
      * Private key.
      */
@@ -159,18 +179,29 @@ public class DigestAuthenticator
             return (true);
         }
 
+        configureNonceCache();
+
         // Validate any credentials already included with this request
+        boolean isNonceStale = false;
         String authorization = request.getHeader("authorization");
         if (authorization != null) {
-            principal = findPrincipal(request, authorization, context.getRealm());
-            if (principal != null &&
-            		// fix for http://code.google.com/p/sipservlets/issues/detail?id=88
-            		principal.getPrincipal() != null) {
-                String username = parseUsername(authorization);
-                register(request, response, principal,
-                		HttpServletRequest.DIGEST_AUTH,
-                         username, null);
-                return (true);
+            // expired or replayed nonces are rejected without going to the realm
+            NonceStatus nonceStatus = checkNonce(request, authorization);
+            if (nonceStatus == NonceStatus.VALID) {
+                principal = findPrincipal(request, authorization, context.getRealm());
+                if (principal != null &&
+                		// fix for http://code.google.com/p/sipservlets/issues/detail?id=88
+                		principal.getPrincipal() != null &&
+                		// the nonce count is used up only by valid credentials
+                		useNonceCount(authorization)) {
+                    String username = parseUsername(authorization);
+                    register(request, response, principal,
+                    		HttpServletRequest.DIGEST_AUTH,
+                             username, null);
+                    return (true);
+                }
+            } else {
+                isNonceStale = nonceStatus == NonceStatus.STALE;
             }
         }
 
@@ -180,7 +211,7 @@ public class DigestAuthenticator
         // to be unique).
         String nOnce = generateNOnce(request);
 
-        setAuthenticateHeader(request, response, config, nOnce);
+        setAuthenticateHeader(request, response, config, nOnce, isNonceStale);
         response.send();
         //      hres.flushBuffer();
         return (false);
@@ -267,11 +298,7 @@ public class DigestAuthenticator
         String a2 = method + ":" + uri;
         //System.out.println("A2:" + a2);
 
-        byte[] buffer = null;
-        synchronized (md5Helper) {
-            buffer = md5Helper.digest(a2.getBytes());
-        }
-        String md5a2 = MD5Encoder.encode(buffer);
+        String md5a2 = MD5Encoder.encode(MessageDigestResponseAlgorithm.md5(a2.getBytes()));
 
         return (new CatalinaSipPrincipal(realm.authenticate(userName, response, nOnce, nc, cnonce, qop,
                                    realmName, md5a2)));
@@ -279,6 +306,135 @@ public class DigestAuthenticator
     }
 
 
+    /**
+     * Read the nonce cache configuration from the sip stack properties, only once
+     * since the cache is shared by all the authenticators.
+     */
+    protected void configureNonceCache() {
+        if (nonceCacheConfigured.get() || !(context instanceof CatalinaSipContext)) {
+            return;
+        }
+        SipStack sipStack = ((CatalinaSipContext) context).getSipApplicationDispatcher().getSipStack();
+        if (sipStack instanceof SipStackImpl && nonceCacheConfigured.compareAndSet(false, true)) {
+            nonceCache.configure(((SipStackImpl) sipStack).getConfigurationProperties());
+        }
+    }
+
+
+    /**
+     * Check that the nonce of the specified authorization credentials has been
+     * generated by us for the remote address of the request, is still valid
+     * and that its nonce count has not been used yet.
+     *
+     * @param request SIP servlet request
+     * @param authorization Authorization credentials from this request
+     */
+    protected NonceStatus checkNonce(MobicentsSipServletRequest request,
+                                     String authorization) {
+
+        String[] nonceParameters = parseNonceParameters(authorization);
+        if (nonceParameters == null)
+            return NonceStatus.INVALID;
+        String nOnce = nonceParameters[0];
+
+        // nonce = time-stamp ":" MD5 ( client-IP ":" time-stamp ":" private-key )
+        int colon = nOnce.indexOf(':');
+        if (colon < 0)
+            return NonceStatus.INVALID;
+        long nOnceTime;
+        try {
+            nOnceTime = Long.parseLong(nOnce.substring(0, colon));
+        } catch (NumberFormatException e) {
+            return NonceStatus.INVALID;
+        }
+        if (!nOnce.equals(createNOnce(request, nOnceTime)))
+            return NonceStatus.INVALID;
+
+        long nonceCount = parseNonceCount(nonceParameters);
+        if (nonceCount == INVALID_NONCE_COUNT)
+            return NonceStatus.INVALID;
+        return nonceCache.check(nOnce, nOnceTime, nonceCount);
+    }
+
+
+    /**
+     * Record the nonce count of the specified authorization credentials as
+     * used, once they have been checked by {@link #checkNonce} and validated
+     * by the realm.
+     *
+     * @param authorization Authorization credentials from this request
+     * @return false if the nonce count has been used in the meantime
+     */
+    protected boolean useNonceCount(String authorization) {
+
+        String[] nonceParameters = parseNonceParameters(authorization);
+        if (nonceParameters == null)
+            return false;
+        long nonceCount = parseNonceCount(nonceParameters);
+        if (nonceCount == INVALID_NONCE_COUNT)
+            return false;
+        return nonceCache.useNonceCount(nonceParameters[0], nonceCount);
+    }
+
+
+    /**
+     * Parse the nonce, nc and qop values of the specified authorization
+     * credentials, or return <code>null</code> if there is no nonce.
+     *
+     * @param authorization Authorization credentials from this request
+     */
+    private static String[] parseNonceParameters(String authorization) {
+
+        if (!authorization.startsWith("Digest "))
+            return null;
+        String[] tokens = authorization.substring(7).trim().split(",");
+
+        String nOnce = null;
+        String nc = null;
+        String qop = null;
+        for (int i = 0; i < tokens.length; i++) {
+            String currentToken = tokens[i];
+            int equalSign = currentToken.indexOf('=');
+            if (equalSign < 0)
+                continue;
+            String currentTokenName =
+                currentToken.substring(0, equalSign).trim();
+            String currentTokenValue =
+                currentToken.substring(equalSign + 1).trim();
+            if ("nonce".equals(currentTokenName))
+                nOnce = removeQuotes(currentTokenValue);
+            else if ("nc".equals(currentTokenName))
+                nc = removeQuotes(currentTokenValue);
+            else if ("qop".equals(currentTokenName))
+                qop = removeQuotes(currentTokenValue);
+        }
+        if (nOnce == null)
+            return null;
+        return new String[] { nOnce, nc, qop };
+    }
+
+
+    /**
+     * Return the nonce count of the parsed nonce parameters, -1 if no qop
+     * was used or {@link #INVALID_NONCE_COUNT} if it can't be parsed.
+     */
+    private static long parseNonceCount(String[] nonceParameters) {
+
+        String nc = nonceParameters[1];
+        String qop = nonceParameters[2];
+        if (qop == null)
+            return -1;
+        if (nc == null)
+            return INVALID_NONCE_COUNT;
+        try {
+            long nonceCount = Long.parseLong(nc, 16);
+            return nonceCount < 0 ? INVALID_NONCE_COUNT : nonceCount;
+        } catch (NumberFormatException e) {
+            return INVALID_NONCE_COUNT;
+        }
+    }
+
+
     /**
      * Parse the username from the specified authorization string.  If none
      * can be identified, return <code>null</code>
@@ -342,8 +498,8 @@ public class DigestAuthenticator
 
     /**
      * Generate a unique token. The token is generated according to the
-     * following pattern. NOnceToken = Base64 ( MD5 ( client-IP ":"
-     * time-stamp ":" private-key ) ).
+     * following pattern. NOnceToken = time-stamp ":" MD5 ( client-IP ":"
+     * time-stamp ":" private-key ).
      *
      * @param request HTTP Servlet request
      */
@@ -351,18 +507,19 @@ public class DigestAuthenticator
 
         long currentTime = System.currentTimeMillis();
 
-        String nOnceValue = request.getRemoteAddr() + ":" +
-            currentTime + ":" + key;
-
-        byte[] buffer = null;
-        synchronized (md5Helper) {
-            buffer = md5Helper.digest(nOnceValue.getBytes());
-        }
-        nOnceValue = MD5Encoder.encode(buffer);
+        String nOnceValue = createNOnce(request, currentTime);
+        nonceCache.add(nOnceValue, currentTime);
 
         return nOnceValue;
     }
 
+    private String createNOnce(MobicentsSipServletRequest request, long time) {
+        String nOnceValue = request.getRemoteAddr() + ":" +
+            time + ":" + key;
+
+        return time + ":" + MD5Encoder.encode(MessageDigestResponseAlgorithm.md5(nOnceValue.getBytes()));
+    }
+
 
     /**
      * Generates the WWW-Authenticate header.
@@ -395,6 +552,21 @@ public class DigestAuthenticator
     									 MobicentsSipServletResponse response,
                                          MobicentsSipLoginConfig config,
                                          String nOnce) {
+        setAuthenticateHeader(request, response, config, nOnce, false);
+    }
+
+    /**
+     * Generates the WWW-Authenticate header, see
+     * {@link #setAuthenticateHeader(MobicentsSipServletRequest, MobicentsSipServletResponse, MobicentsSipLoginConfig, String)}
+     *
+     * @param isNonceStale true if the credentials were refused only because their nonce was stale,
+     *              the client can then retry with the new nonce without asking the user again
+     */
+    protected void setAuthenticateHeader(MobicentsSipServletRequest request,
+    									 MobicentsSipServletResponse response,
+                                         MobicentsSipLoginConfig config,
+                                         String nOnce,
+                                         boolean isNonceStale) {
     	
         // Get the realm name
         String realmName = ((SipLoginConfig)config).getRealmName();
@@ -402,14 +574,14 @@ public class DigestAuthenticator
             realmName = request.getServerName() + ":"
                 + request.getServerPort();
 
-        byte[] buffer = null;
-        synchronized (md5Helper) {
-            buffer = md5Helper.digest(nOnce.getBytes());
-        }
+        byte[] buffer = MessageDigestResponseAlgorithm.md5(nOnce.getBytes());
 
         String authenticateHeader = "Digest realm=\"" + realmName + "\", "
             +  "qop=\"auth\", nonce=\"" + nOnce + "\", " + "opaque=\""
             + MD5Encoder.encode(buffer) + "\"";
+        if (isNonceStale) {
+            authenticateHeader += ", stale=true";
+        }
         
         // There are different headers for different types of auth
         if(response.getStatus() == 
@@ -495,11 +667,7 @@ public class DigestAuthenticator
         //String cnonce = "xyz";
         long currentTime = System.currentTimeMillis();
         String nOnceValue = currentTime + ":" + "mobicents" + response;
-        byte[] buffer = null;
-        synchronized (md5Helper) {
-            buffer = md5Helper.digest(nOnceValue.getBytes());
-        }
-        String cnonce = MD5Encoder.encode(buffer);
+        String cnonce = MD5Encoder.encode(MessageDigestResponseAlgorithm.md5(nOnceValue.getBytes()));
 
         try {
             response = MessageDigestResponseAlgorithm.calculateResponse(
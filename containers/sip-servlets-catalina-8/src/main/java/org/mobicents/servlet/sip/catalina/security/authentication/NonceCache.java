@@ -0,0 +1,224 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2015, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.servlet.sip.catalina.security.authentication;
+
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Bounded cache of the nonces handed out in the digest challenges, used to reject expired nonces
+ * and replayed nonce counts before going to the realm.
+ *
+ * Its size and the nonce validity can be configured through the following sip stack properties :
+ * <ul>
+ * <li>org.mobicents.servlet.sip.DIGEST_AUTH_NONCE_VALIDITY : how long a nonce can be used, in milliseconds, 5 minutes by default</li>
+ * <li>org.mobicents.servlet.sip.DIGEST_AUTH_NONCE_CACHE_SIZE : the maximum number of nonces kept, 10000 by default</li>
+ * </ul>
+ */
+public class NonceCache {
+	private static final Logger logger = Logger.getLogger(NonceCache.class);
+
+	public static final String NONCE_VALIDITY = "org.mobicents.servlet.sip.DIGEST_AUTH_NONCE_VALIDITY";
+	public static final String NONCE_CACHE_SIZE = "org.mobicents.servlet.sip.DIGEST_AUTH_NONCE_CACHE_SIZE";
+	public static final long DEFAULT_NONCE_VALIDITY = 5 * 60 * 1000L;
+	public static final int DEFAULT_NONCE_CACHE_SIZE = 10000;
+	// number of nonce counts below the highest one seen that are still accepted, to cope with out of order requests
+	private static final int NONCE_COUNT_WINDOW_SIZE = 64;
+
+	public enum NonceStatus {
+		VALID,
+		// the nonce has been issued by us but expired or is no longer cached, the client should retry with a new one
+		STALE,
+		// the nonce has not been issued by us or its nonce count has already been used
+		INVALID
+	}
+
+	private final ConcurrentMap<String, NonceInfo> nonces = new ConcurrentHashMap<String, NonceInfo>();
+	private final AtomicInteger size = new AtomicInteger();
+	private final AtomicBoolean purging = new AtomicBoolean();
+	private volatile long nonceValidity = DEFAULT_NONCE_VALIDITY;
+	private volatile int maxSize = DEFAULT_NONCE_CACHE_SIZE;
+
+	/**
+	 * @param properties the sip stack properties to read the configuration from
+	 */
+	public void configure(Properties properties) {
+		String nonceValidityProperty = properties.getProperty(NONCE_VALIDITY);
+		if(nonceValidityProperty != null) {
+			nonceValidity = Long.parseLong(nonceValidityProperty.trim());
+		}
+		String maxSizeProperty = properties.getProperty(NONCE_CACHE_SIZE);
+		if(maxSizeProperty != null) {
+			maxSize = Integer.parseInt(maxSizeProperty.trim());
+		}
+		if(logger.isDebugEnabled()) {
+			logger.debug("nonce validity " + nonceValidity + "ms, nonce cache size " + maxSize);
+		}
+	}
+
+	public long getNonceValidity() {
+		return nonceValidity;
+	}
+
+	/**
+	 * Keep track of a nonce just handed out to a client
+	 * @param nonce the nonce
+	 * @param timestamp the time at which it has been generated
+	 */
+	public void add(String nonce, long timestamp) {
+		if(nonces.putIfAbsent(nonce, new NonceInfo(timestamp)) == null && size.incrementAndGet() > maxSize) {
+			purge(System.currentTimeMillis());
+		}
+	}
+
+	/**
+	 * Check the nonce without using up the nonce count, see {@link #useNonceCount(String, long)}
+	 * @param nonce the nonce sent back by the client
+	 * @param timestamp the time at which the nonce has been generated
+	 * @param nonceCount the nonce count sent by the client, or -1 if no qop was used
+	 * @return the status of the nonce
+	 */
+	public NonceStatus check(String nonce, long timestamp, long nonceCount) {
+		final long now = System.currentTimeMillis();
+		if(now - timestamp > nonceValidity) {
+			remove(nonce);
+			return NonceStatus.STALE;
+		}
+		final NonceInfo nonceInfo = nonces.get(nonce);
+		if(nonceInfo == null) {
+			return NonceStatus.STALE;
+		}
+		if(nonceCount >= 0 && !nonceInfo.nonceCountUnused(nonceCount)) {
+			if(logger.isDebugEnabled()) {
+				logger.debug("nonce count " + nonceCount + " already used for nonce " + nonce);
+			}
+			return NonceStatus.INVALID;
+		}
+		return NonceStatus.VALID;
+	}
+
+	/**
+	 * Record the nonce count as used, to be called only once the credentials have been validated by the realm
+	 * so that a forged request can't burn the nonce count of a legitimate one
+	 * @param nonce the nonce sent back by the client
+	 * @param nonceCount the nonce count sent by the client, or -1 if no qop was used
+	 * @return false if the nonce count has been used in the meantime or the nonce is no longer cached
+	 */
+	public boolean useNonceCount(String nonce, long nonceCount) {
+		if(nonceCount < 0) {
+			return true;
+		}
+		final NonceInfo nonceInfo = nonces.get(nonce);
+		if(nonceInfo == null || !nonceInfo.useNonceCount(nonceCount)) {
+			if(logger.isDebugEnabled()) {
+				logger.debug("nonce count " + nonceCount + " already used for nonce " + nonce);
+			}
+			return false;
+		}
+		return true;
+	}
+
+	private void remove(String nonce) {
+		if(nonces.remove(nonce) != null) {
+			size.decrementAndGet();
+		}
+	}
+
+	private void remove(Entry<String, NonceInfo> entry) {
+		if(nonces.remove(entry.getKey(), entry.getValue())) {
+			size.decrementAndGet();
+		}
+	}
+
+	private void purge(long now) {
+		// a single thread purges at a time, the others don't wait for it
+		if(!purging.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			Iterator<Entry<String, NonceInfo>> iterator = nonces.entrySet().iterator();
+			while (iterator.hasNext()) {
+				Entry<String, NonceInfo> entry = iterator.next();
+				if(now - entry.getValue().timestamp > nonceValidity) {
+					remove(entry);
+				}
+			}
+			// still full of valid nonces, drop some of them, they will get a stale challenge
+			final int target = maxSize - maxSize / 10;
+			iterator = nonces.entrySet().iterator();
+			while (size.get() > target && iterator.hasNext()) {
+				remove(iterator.next());
+			}
+		} finally {
+			purging.set(false);
+		}
+	}
+
+	private static final class NonceInfo {
+		private final long timestamp;
+		private long highestNonceCount;
+		// bit i set means that the nonce count highestNonceCount - i has been used
+		private long seenNonceCounts;
+
+		NonceInfo(long timestamp) {
+			this.timestamp = timestamp;
+		}
+
+		synchronized boolean nonceCountUnused(long nonceCount) {
+			if(nonceCount <= 0) {
+				return false;
+			}
+			if(nonceCount > highestNonceCount) {
+				return true;
+			}
+			final long distance = highestNonceCount - nonceCount;
+			return distance < NONCE_COUNT_WINDOW_SIZE && (seenNonceCounts & (1L << distance)) == 0;
+		}
+
+		synchronized boolean useNonceCount(long nonceCount) {
+			if(nonceCount <= 0) {
+				return false;
+			}
+			if(nonceCount > highestNonceCount) {
+				final long shift = nonceCount - highestNonceCount;
+				seenNonceCounts = shift >= NONCE_COUNT_WINDOW_SIZE ? 1L : (seenNonceCounts << shift) | 1L;
+				highestNonceCount = nonceCount;
+				return true;
+			}
+			final long distance = highestNonceCount - nonceCount;
+			if(distance >= NONCE_COUNT_WINDOW_SIZE) {
+				return false;
+			}
+			final long bit = 1L << distance;
+			if((seenNonceCounts & bit) != 0) {
+				return false;
+			}
+			seenNonceCounts |= bit;
+			return true;
+		}
+	}
+}
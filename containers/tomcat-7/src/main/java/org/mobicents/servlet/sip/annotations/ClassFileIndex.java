@@ -0,0 +1,212 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2015, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.servlet.sip.annotations;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Persisted results of the annotation scanning of the jars and class files of an application, keyed by
+ * their path and checked against a fingerprint of their content (a CRC32 checksum for the jars,
+ * the size and last modification time for the class files), so that redeploying an unchanged
+ * archive doesn't read any class file again.
+ *
+ * The index is a binary file starting with a version, an index of another version is ignored.
+ */
+public class ClassFileIndex {
+	private static final Logger logger = Logger.getLogger(ClassFileIndex.class);
+	private static final int VERSION = 1;
+
+	private final File indexFile;
+	private final Map<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+	// the paths looked up during this scanning, the entries of the files no longer in the application are not stored back
+	private final Set<String> scannedPaths = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	private volatile boolean modified;
+
+	/**
+	 * @param indexFile the file the index is loaded from and stored to
+	 */
+	public ClassFileIndex(File indexFile) {
+		this.indexFile = indexFile;
+	}
+
+	/**
+	 * Load the index from its file, it is left empty if the file doesn't exist or can't be read
+	 */
+	public void load() {
+		if(!indexFile.isFile()) {
+			return;
+		}
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+			if(in.readInt() != VERSION) {
+				if(logger.isDebugEnabled()) {
+					logger.debug("Ignoring the annotations index " + indexFile + " of another version");
+				}
+				return;
+			}
+			final int entryCount = in.readInt();
+			for (int i = 0; i < entryCount; i++) {
+				final String path = in.readUTF();
+				final long fingerprint = in.readLong();
+				final int classCount = in.readInt();
+				final List<ClassFileInfo> classes = new ArrayList<ClassFileInfo>(classCount);
+				for (int j = 0; j < classCount; j++) {
+					final String className = in.readUTF();
+					final String superClassName = in.readBoolean() ? in.readUTF() : null;
+					classes.add(new ClassFileInfo(className, superClassName, in.readBoolean()));
+				}
+				entries.put(path, new Entry(fingerprint, Collections.unmodifiableList(classes)));
+			}
+			if(logger.isDebugEnabled()) {
+				logger.debug("Loaded " + entryCount + " entries from the annotations index " + indexFile);
+			}
+		} catch (IOException e) {
+			logger.warn("Couldn't read the annotations index " + indexFile + ", the application will be fully scanned", e);
+			entries.clear();
+		} finally {
+			close(in);
+		}
+	}
+
+	/**
+	 * Store the index to its file if it changed since it was loaded
+	 */
+	public void store() {
+		final boolean removed = entries.keySet().retainAll(scannedPaths);
+		if(!modified && !removed) {
+			return;
+		}
+		DataOutputStream out = null;
+		try {
+			indexFile.getParentFile().mkdirs();
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)));
+			out.writeInt(VERSION);
+			out.writeInt(entries.size());
+			for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+				out.writeUTF(entry.getKey());
+				out.writeLong(entry.getValue().fingerprint);
+				out.writeInt(entry.getValue().classes.size());
+				for (ClassFileInfo classFileInfo : entry.getValue().classes) {
+					out.writeUTF(classFileInfo.getClassName());
+					out.writeBoolean(classFileInfo.getSuperClassName() != null);
+					if(classFileInfo.getSuperClassName() != null) {
+						out.writeUTF(classFileInfo.getSuperClassName());
+					}
+					out.writeBoolean(classFileInfo.isSipAnnotated());
+				}
+			}
+			modified = false;
+		} catch (IOException e) {
+			logger.warn("Couldn't write the annotations index " + indexFile, e);
+		} finally {
+			close(out);
+		}
+	}
+
+	/**
+	 * @param path the path of the jar or class file
+	 * @param fingerprint the current fingerprint of the file
+	 * @return the classes found in the file when it was last scanned, null if it was never scanned or changed since
+	 */
+	public List<ClassFileInfo> get(String path, long fingerprint) {
+		scannedPaths.add(path);
+		final Entry entry = entries.get(path);
+		if(entry == null || entry.fingerprint != fingerprint) {
+			return null;
+		}
+		return entry.classes;
+	}
+
+	/**
+	 * @param path the path of the jar or class file
+	 * @param fingerprint the current fingerprint of the file
+	 * @param classes the classes found in the file
+	 */
+	public void put(String path, long fingerprint, List<ClassFileInfo> classes) {
+		scannedPaths.add(path);
+		entries.put(path, new Entry(fingerprint, Collections.unmodifiableList(new ArrayList<ClassFileInfo>(classes))));
+		modified = true;
+	}
+
+	/**
+	 * @return the CRC32 checksum of the content of the jar
+	 */
+	public static long jarFingerprint(File jar) throws IOException {
+		final CRC32 checksum = new CRC32();
+		final byte[] buffer = new byte[8192];
+		final InputStream in = new FileInputStream(jar);
+		try {
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				checksum.update(buffer, 0, read);
+			}
+		} finally {
+			in.close();
+		}
+		return checksum.getValue();
+	}
+
+	/**
+	 * @return a fingerprint of a class file made of its size and last modification time, cheaper than a checksum
+	 * for the many small files of WEB-INF/classes
+	 */
+	public static long classFileFingerprint(File classFile) {
+		return classFile.lastModified() * 31 + classFile.length();
+	}
+
+	private static void close(Closeable closeable) {
+		if(closeable != null) {
+			try {
+				closeable.close();
+			} catch (IOException e) {
+				logger.debug("Couldn't close the annotations index", e);
+			}
+		}
+	}
+
+	private static final class Entry {
+		final long fingerprint;
+		final List<ClassFileInfo> classes;
+
+		Entry(long fingerprint, List<ClassFileInfo> classes) {
+			this.fingerprint = fingerprint;
+			this.classes = classes;
+		}
+	}
+}
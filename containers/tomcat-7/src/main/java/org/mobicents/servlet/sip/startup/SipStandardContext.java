@@ -78,6 +78,7 @@ import org.mobicents.servlet.sip.catalina.SipSecurityConstraint;
 import org.mobicents.servlet.sip.catalina.SipServletImpl;
 import org.mobicents.servlet.sip.catalina.SipStandardManager;
 import org.mobicents.servlet.sip.catalina.annotations.SipInstanceManager;
+import org.mobicents.servlet.sip.catalina.rules.SipServletMappingMatcher;
 import org.mobicents.servlet.sip.catalina.security.SipSecurityUtils;
 import org.mobicents.servlet.sip.catalina.security.authentication.DigestAuthenticator;
 import org.mobicents.servlet.sip.core.MobicentsSipServlet;
@@ -105,6 +106,8 @@ import org.mobicents.servlet.sip.core.timers.SipApplicationSessionTimerService;
 import org.mobicents.servlet.sip.core.timers.SipServletTimerService;
 import org.mobicents.servlet.sip.core.timers.StandardSipApplicationSessionTimerService;
 import org.mobicents.servlet.sip.core.timers.TimerServiceImpl;
+import org.mobicents.servlet.sip.core.timers.WheelProxyTimerService;
+import org.mobicents.servlet.sip.core.timers.WheelSipApplicationSessionTimerService;
 import org.mobicents.servlet.sip.listener.SipConnectorListener;
 import org.mobicents.servlet.sip.message.SipFactoryFacade;
 import org.mobicents.servlet.sip.message.SipFactoryImpl;
@@ -169,6 +172,8 @@ public class SipStandardContext extends StandardContext implements CatalinaSipCo
      * application.
      */
     protected transient List<MobicentsSipServletMapping> sipServletMappings = new ArrayList<MobicentsSipServletMapping>();
+	// the sip servlet mappings compiled into a single evaluator, rebuilt when they change
+	protected transient volatile SipServletMappingMatcher sipServletMappingMatcher = null;
     
     protected transient SipApplicationDispatcher sipApplicationDispatcher = null;
     
@@ -243,7 +248,13 @@ public class SipStandardContext extends StandardContext implements CatalinaSipCo
 			sipSessionsUtil = new SipSessionsUtilImpl(this);
 		}
 		if(timerService == null) {			
-			timerService = new TimerServiceImpl(sipApplicationDispatcher.getSipService(), applicationName);			
+			String sasTimerServiceType = sipApplicationDispatcher.getSipService().getSasTimerServiceImplementationType();
+			if(sasTimerServiceType != null && sasTimerServiceType.equalsIgnoreCase("Wheel")) {
+				// servlet timers share the timer wheel with the sip application session timers
+				timerService = new TimerServiceImpl(sipApplicationDispatcher.createTimerGroup(applicationName + "_servlet_timers"));
+			} else {
+				timerService = new TimerServiceImpl(sipApplicationDispatcher.getSipService(), applicationName);
+			}
 		}
 		if(proxyTimerService == null) {
 			String proxyTimerServiceType = sipApplicationDispatcher.getSipService().getProxyTimerServiceImplementationType();
@@ -251,6 +262,8 @@ public class SipStandardContext extends StandardContext implements CatalinaSipCo
                 proxyTimerService = new ProxyTimerServiceImpl(applicationName);
             } else if(proxyTimerServiceType != null && proxyTimerServiceType.equalsIgnoreCase("Default")) {
                 proxyTimerService = new DefaultProxyTimerService(applicationName);
+            } else if(proxyTimerServiceType != null && proxyTimerServiceType.equalsIgnoreCase("Wheel")) {
+                proxyTimerService = new WheelProxyTimerService(sipApplicationDispatcher.createTimerGroup(applicationName + "_proxy_timers"));
             } else {
                 proxyTimerService = new ProxyTimerServiceImpl(applicationName);
             }		
@@ -262,6 +275,8 @@ public class SipStandardContext extends StandardContext implements CatalinaSipCo
                 sasTimerService = new StandardSipApplicationSessionTimerService(applicationName);
             } else if (sasTimerServiceType != null && sasTimerServiceType.equalsIgnoreCase("Default")) {
                 sasTimerService = new DefaultSipApplicationSessionTimerService(applicationName);
+            } else if (sasTimerServiceType != null && sasTimerServiceType.equalsIgnoreCase("Wheel")) {
+                sasTimerService = new WheelSipApplicationSessionTimerService(sipApplicationDispatcher.createTimerGroup(applicationName + "_sas_timers"));
             } else {
                 sasTimerService = new StandardSipApplicationSessionTimerService(applicationName);
             }
@@ -623,6 +638,7 @@ public class SipStandardContext extends StandardContext implements CatalinaSipCo
 		sipListeners.deallocateServletsActingAsListeners();
 		sipApplicationListeners.clear();
 		sipServletMappings.clear();
+		sipServletMappingMatcher = null;
 		childrenMap.clear();
 		childrenMapByClassName.clear();
 		if(sipApplicationDispatcher != null) {
@@ -1079,6 +1095,7 @@ public class SipStandardContext extends StandardContext implements CatalinaSipCo
 	 */
 	public void addSipServletMapping(MobicentsSipServletMapping sipServletMapping) {
 		sipServletMappings.add(sipServletMapping);
+		sipServletMappingMatcher = null;
 		isMainServlet = false;
 		if(servletHandler == null) {
 			servletHandler = sipServletMapping.getServletName();
@@ -1095,9 +1112,16 @@ public class SipStandardContext extends StandardContext implements CatalinaSipCo
 	 * {@inheritDoc}
 	 */
 	public MobicentsSipServletMapping findSipServletMappings(SipServletRequest sipServletRequest) {
-		if(logger.isDebugEnabled()) {
-			logger.debug("Checking sip Servlet Mapping for following request : " + sipServletRequest);
+		if(!logger.isDebugEnabled()) {
+			SipServletMappingMatcher matcher = sipServletMappingMatcher;
+			if(matcher == null || matcher.size() != sipServletMappings.size()) {
+				matcher = SipServletMappingMatcher.compile(sipServletMappings);
+				sipServletMappingMatcher = matcher;
+			}
+			return matcher.match(sipServletRequest);
 		}
+		// evaluate each rule on its own to log the ones not matching
+		logger.debug("Checking sip Servlet Mapping for following request : " + sipServletRequest);
 		for (MobicentsSipServletMapping sipServletMapping : sipServletMappings) {
 			if(sipServletMapping.getMatchingRule().matches(sipServletRequest)) {
 				return sipServletMapping;
@@ -1115,6 +1139,7 @@ public class SipStandardContext extends StandardContext implements CatalinaSipCo
 	 */
 	public void removeSipServletMapping(MobicentsSipServletMapping sipServletMapping) {
 		sipServletMappings.remove(sipServletMapping);
+		sipServletMappingMatcher = null;
 	}
 
 	/**
@@ -0,0 +1,162 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2015, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.servlet.sip.annotations;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * What the annotation scanning needs to know about a class, read straight from its class file
+ * without loading it.
+ */
+public final class ClassFileInfo {
+	// descriptors of the annotations processed by the ClassFileScanner
+	private static final String[] SIP_ANNOTATION_DESCRIPTORS = new String[] {
+		"Ljavax/servlet/sip/annotation/SipServlet;",
+		"Ljavax/servlet/sip/annotation/SipListener;",
+		"Ljavax/servlet/sip/annotation/SipApplicationKey;",
+		"Ljavax/servlet/sip/annotation/SipApplication;",
+		"Lorg/mobicents/servlet/sip/annotation/ConcurrencyControl;"
+	};
+	private static final int MAGIC = 0xCAFEBABE;
+
+	private final String className;
+	private final String superClassName;
+	private final boolean sipAnnotated;
+
+	public ClassFileInfo(String className, String superClassName, boolean sipAnnotated) {
+		this.className = className;
+		this.superClassName = superClassName;
+		this.sipAnnotated = sipAnnotated;
+	}
+
+	/**
+	 * @return the fully qualified name of the class
+	 */
+	public String getClassName() {
+		return className;
+	}
+
+	/**
+	 * @return the fully qualified name of the super class, null for java.lang.Object or if unknown
+	 */
+	public String getSuperClassName() {
+		return superClassName;
+	}
+
+	/**
+	 * @return true if the class may carry one of the sip annotations, on itself or on one of its methods
+	 */
+	public boolean isSipAnnotated() {
+		return sipAnnotated;
+	}
+
+	/**
+	 * Read the class file up to its super class, the rest of it is not needed.
+	 * The annotations are spotted through the constant pool, which holds the descriptor of every annotation used
+	 * by the class. A class merely referring to a sip annotation type is reported as annotated, which only costs
+	 * it being loaded as every class used to be.
+	 *
+	 * @param className the name of the class the class file is expected to define
+	 * @param classFile the content of the class file, not closed
+	 * @return the class information
+	 * @throws IOException if the class file couldn't be read or is not a valid class file
+	 */
+	public static ClassFileInfo read(String className, InputStream classFile) throws IOException {
+		final DataInputStream in = new DataInputStream(classFile);
+		if(in.readInt() != MAGIC) {
+			throw new IOException("Not a class file " + className);
+		}
+		// minor and major versions
+		in.readUnsignedShort();
+		in.readUnsignedShort();
+		final int constantPoolCount = in.readUnsignedShort();
+		final String[] utf8Constants = new String[constantPoolCount];
+		final int[] classNameIndexes = new int[constantPoolCount];
+		boolean sipAnnotated = false;
+		for (int i = 1; i < constantPoolCount; i++) {
+			final int tag = in.readUnsignedByte();
+			switch (tag) {
+			case 1: // Utf8, stored in the same modified UTF-8 format readUTF expects
+				utf8Constants[i] = in.readUTF();
+				sipAnnotated = sipAnnotated || isSipAnnotationDescriptor(utf8Constants[i]);
+				break;
+			case 7: // Class
+				classNameIndexes[i] = in.readUnsignedShort();
+				break;
+			case 8: // String
+			case 16: // MethodType
+			case 19: // Module
+			case 20: // Package
+				in.skipBytes(2);
+				break;
+			case 15: // MethodHandle
+				in.skipBytes(3);
+				break;
+			case 3: // Integer
+			case 4: // Float
+			case 9: // Fieldref
+			case 10: // Methodref
+			case 11: // InterfaceMethodref
+			case 12: // NameAndType
+			case 17: // Dynamic
+			case 18: // InvokeDynamic
+				in.skipBytes(4);
+				break;
+			case 5: // Long
+			case 6: // Double
+				in.skipBytes(8);
+				// 8 bytes constants take two entries in the pool
+				i++;
+				break;
+			default:
+				throw new IOException("Unknown constant pool tag " + tag + " in class file " + className);
+			}
+		}
+		// access flags and this class
+		in.readUnsignedShort();
+		in.readUnsignedShort();
+		final int superClass = in.readUnsignedShort();
+		String superClassName = null;
+		if(superClass > 0 && superClass < constantPoolCount && utf8Constants[classNameIndexes[superClass]] != null) {
+			superClassName = utf8Constants[classNameIndexes[superClass]].replace('/', '.');
+		}
+		return new ClassFileInfo(className, superClassName, sipAnnotated);
+	}
+
+	private static boolean isSipAnnotationDescriptor(String constant) {
+		// all descriptors start with L and end with ;, cheap checks first as the pool is mostly made of other strings
+		if(constant.length() < 30 || constant.charAt(0) != 'L' || constant.charAt(constant.length() - 1) != ';') {
+			return false;
+		}
+		for (String descriptor : SIP_ANNOTATION_DESCRIPTORS) {
+			if(descriptor.equals(constant)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public String toString() {
+		return className + (superClassName != null ? " extends " + superClassName : "") + (sipAnnotated ? " (sip annotated)" : "");
+	}
+}
@@ -19,12 +19,23 @@
 
 package org.mobicents.servlet.sip.annotations;
 
+import java.io.BufferedInputStream;
+import java.io.Closeable;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 
@@ -47,6 +58,9 @@ import org.mobicents.servlet.sip.catalina.SipServletImpl;
  * party libs in WEB-INF/jar, and system libs. Parsing all these would be slow, so for
  * now we will only look in WEB-INF/classes since it works.
  * 
+ * The class files are first read without being loaded, the jars in parallel, and only the classes
+ * which may carry sip annotations are loaded and processed.
+ * 
  * General TODO: Validation
  * 
  * @author Vladimir Ralev
@@ -55,6 +69,12 @@ import org.mobicents.servlet.sip.catalina.SipServletImpl;
 public class ClassFileScanner {
 
 	private static transient final Logger logger = Logger.getLogger(ClassFileScanner.class);
+	
+	/**
+	 * System property enabling the persisted index of the annotations scanning results
+	 */
+	public static final String ANNOTATIONS_INDEX_PROPERTY = "org.mobicents.servlet.sip.annotations.index";
+	public static final String ANNOTATIONS_INDEX_FILE = "sip-annotations.idx";
 			
 	private String docbase;
 	
@@ -68,11 +88,22 @@ public class ClassFileScanner {
 	
 	private ClassLoader classLoader;
 	
+	private File indexFile;
+	
 	public ClassFileScanner(String docbase, CatalinaSipContext ctx) {
 		this.docbase = docbase;
 		this.sipContext = ctx;
 	}
 	
+	/**
+	 * Persist what the scanning found in the given file, keyed by the checksum of each jar, so that
+	 * the unchanged jars and class files are not read again on the next deployment
+	 * @param indexFile the file the annotations index is stored to, null to disable it
+	 */
+	public void setIndexFile(File indexFile) {
+		this.indexFile = indexFile;
+	}
+	
 	/**
 	 * Scan the application for annotations with the contextconfig classloader.
 	 * It scans in the following locations :
@@ -117,56 +148,98 @@ public class ClassFileScanner {
 		_scan(new File(this.docbase));
 	}
 	
-	protected void _scan(File folder) throws AnnotationVerificationException {    	
-        File[] files = folder.listFiles();
-        if(files != null) {
-	        for(int j = 0; j < files.length; j++) {
-	            if(files[j].isDirectory()) {
-	                _scan(files[j]);
-	            } else if(files[j].getAbsolutePath().endsWith(".jar")) {
-	            	scanJar(files[j].getAbsolutePath());
-	            } else {
-	            	analyzeClass(files[j].getAbsolutePath());
-	            }
-	        }
-        }
-    }
-	
-	private void scanJar(String path) throws AnnotationVerificationException {
-		if(logger.isDebugEnabled()) {
-    		logger.debug("scanning jar " + path + " for annotations");
-    	}
+	/**
+	 * Read the class files of the folder and of the jars it contains, in parallel and without loading them,
+	 * then load and process only the classes which may carry sip annotations
+	 */
+	protected void _scan(File folder) throws AnnotationVerificationException {
+		final long startTime = System.currentTimeMillis();
+		final ClassFileIndex classFileIndex = indexFile != null ? new ClassFileIndex(indexFile) : null;
+		if(classFileIndex != null) {
+			classFileIndex.load();
+		}
+		final ForkJoinPool forkJoinPool = new ForkJoinPool();
+		final List<ClassFileInfo> classFiles;
 		try {
-			JarFile jar =new JarFile(path);
-			Enumeration<JarEntry> jarEntries = jar.entries();
-			while (jarEntries.hasMoreElements()) {
-				JarEntry jarEntry = jarEntries.nextElement();
-				String entryName = jarEntry.getName();
-								
-				if(entryName.endsWith(".class")) {
-					String className =  entryName.substring(0, entryName.indexOf(".class"));
-					className = className.replace('/', '.');
-					className = className.replace('\\', '.');
-					try {
-		    	    	Class clazz = Class.forName(className, false, this.classLoader);
-		    	    	processAnnotations(clazz);
-		    		} catch (Throwable e) {
-		    			logger.debug("Failed to parse annotations for class " + className);
-		    			if(logger.isDebugEnabled()) {
-		    				logger.debug("Failed to parse annotations for class " + className, e);
-		    			}
-		    		}
+			classFiles = forkJoinPool.invoke(new ClassFileReadTask(folder, classFileIndex));
+		} catch (RuntimeException e) {
+			// the fork join pool may rethrow a copy of the exception thrown by the task, wrapping the original one
+			for(Throwable cause = e; cause != null; cause = cause.getCause()) {
+				if(cause instanceof ScanException) {
+					throw new AnnotationVerificationException(cause.getMessage(), cause.getCause());
 				}
 			}
-		} catch (IOException e) {
-			throw new AnnotationVerificationException("couldn't read the following jar file for parsing annotations " + path, e);
-		} 
+			throw e;
+		} finally {
+			forkJoinPool.shutdown();
+		}
+		if(classFileIndex != null) {
+			classFileIndex.store();
+		}
+		final Map<String, ClassFileInfo> classFilesByName = new HashMap<String, ClassFileInfo>(classFiles.size() * 2);
+		for(ClassFileInfo classFileInfo : classFiles) {
+			if(!classFilesByName.containsKey(classFileInfo.getClassName())) {
+				classFilesByName.put(classFileInfo.getClassName(), classFileInfo);
+			}
+		}
+		int processedClasses = 0;
+		for(ClassFileInfo classFileInfo : classFiles) {
+			if(mayBeSipAnnotated(classFileInfo, classFilesByName)) {
+				analyzeClass(classFileInfo.getClassName());
+				processedClasses++;
+			}
+		}
+		if(logger.isDebugEnabled()) {
+			logger.debug("annotations scanning of " + folder + " read " + classFiles.size() + " class files and loaded "
+					+ processedClasses + " classes in " + (System.currentTimeMillis() - startTime) + " ms");
+		}
 	}
-    
-    protected void analyzeClass(String path) throws AnnotationVerificationException {
+	
+	/**
+	 * The sip type annotations are inherited and the @SipApplicationKey method can be inherited as well,
+	 * so the subclasses of annotated classes need to be processed too. A class extending a class which
+	 * has not been scanned, from a shared library for instance, is processed since its superclass may be annotated.
+	 */
+	private static boolean mayBeSipAnnotated(ClassFileInfo classFileInfo, Map<String, ClassFileInfo> classFilesByName) {
+		ClassFileInfo current = classFileInfo;
+		// bounded in case of an invalid hierarchy
+		for(int depth = 0; depth <= classFilesByName.size(); depth++) {
+			if(current.isSipAnnotated()) {
+				return true;
+			}
+			final String superClassName = current.getSuperClassName();
+			if(superClassName == null) {
+				return false;
+			}
+			current = classFilesByName.get(superClassName);
+			if(current == null) {
+				// the platform and servlet API classes don't carry sip annotations
+				return !superClassName.startsWith("java.") && !superClassName.startsWith("javax.servlet.");
+			}
+		}
+		return false;
+	}
+	
+	protected void analyzeClass(String className) throws AnnotationVerificationException {
     	if(logger.isDebugEnabled()) {
-    		logger.debug("analyzing class " + path + " for annotations");
+    		logger.debug("analyzing class " + className + " for annotations");
     	}
+		try {
+	    	Class clazz = Class.forName(className, false, this.classLoader);
+	    	processAnnotations(clazz);
+		} catch (Throwable e) {
+			logger.debug("Failed to parse annotations for class " + className);
+			if(logger.isDebugEnabled()) {
+				logger.debug("Failed to parse annotations for class " + className, e);
+			}
+		}
+    }
+    
+    /**
+     * @param path the path of a class file under a classes directory
+     * @return the name of the class, null if the file is not a class file
+     */
+    protected static String getClassName(String path) {
     	// TODO: must check if there are extra /// or \\\ or /./ in the path after classes/
     	int classesIndex = path.toLowerCase().lastIndexOf("classes/");
     	if(classesIndex < 0) classesIndex = path.toLowerCase().lastIndexOf("classes\\");
@@ -176,17 +249,156 @@ public class ClassFileScanner {
     	if(classpath.endsWith(".class")) {
     		classpath = classpath.substring(0, classpath.length() - 6);
     		if(classpath.startsWith(".")) classpath = classpath.substring(1);
-    		String className = classpath;
-    		try {
-    	    	Class clazz = Class.forName(className, false, this.classLoader);
-    	    	processAnnotations(clazz);
-    		} catch (Throwable e) {
-    			logger.debug("Failed to parse annotations for class " + className);
-    			if(logger.isDebugEnabled()) {
-    				logger.debug("Failed to parse annotations for class " + className, e);
-    			}
-    		}
-    	} 
+    		return classpath;
+    	}
+    	return null;
+    }
+    
+    /**
+     * Reads the class files of a folder, forking a task for each sub folder and each jar.
+     * The class files are returned in the order they are found in, the one of the former sequential scanning.
+     */
+    private static final class ClassFileReadTask extends RecursiveTask<List<ClassFileInfo>> {
+		private static final long serialVersionUID = 1L;
+		private final File file;
+		private final ClassFileIndex classFileIndex;
+		
+		ClassFileReadTask(File file, ClassFileIndex classFileIndex) {
+			this.file = file;
+			this.classFileIndex = classFileIndex;
+		}
+		
+		@Override
+		protected List<ClassFileInfo> compute() {
+			if(file.isDirectory()) {
+				final File[] files = file.listFiles();
+				if(files == null) {
+					return Collections.emptyList();
+				}
+				final List<ClassFileReadTask> tasks = new ArrayList<ClassFileReadTask>(files.length);
+				for(File child : files) {
+					tasks.add(new ClassFileReadTask(child, classFileIndex));
+				}
+				invokeAll(tasks);
+				final List<ClassFileInfo> classFiles = new ArrayList<ClassFileInfo>();
+				for(ClassFileReadTask task : tasks) {
+					classFiles.addAll(task.join());
+				}
+				return classFiles;
+			} else if(file.getAbsolutePath().endsWith(".jar")) {
+				return readJar();
+			} else {
+				return readClassFile();
+			}
+		}
+		
+		private List<ClassFileInfo> readJar() {
+			final String path = file.getAbsolutePath();
+			if(logger.isDebugEnabled()) {
+	    		logger.debug("scanning jar " + path + " for annotations");
+	    	}
+			JarFile jar = null;
+			try {
+				long fingerprint = 0;
+				if(classFileIndex != null) {
+					fingerprint = ClassFileIndex.jarFingerprint(file);
+					final List<ClassFileInfo> indexedClassFiles = classFileIndex.get(path, fingerprint);
+					if(indexedClassFiles != null) {
+						return indexedClassFiles;
+					}
+				}
+				final List<ClassFileInfo> classFiles = new ArrayList<ClassFileInfo>();
+				jar = new JarFile(path);
+				Enumeration<JarEntry> jarEntries = jar.entries();
+				while (jarEntries.hasMoreElements()) {
+					JarEntry jarEntry = jarEntries.nextElement();
+					String entryName = jarEntry.getName();
+									
+					if(entryName.endsWith(".class")) {
+						String className =  entryName.substring(0, entryName.indexOf(".class"));
+						className = className.replace('/', '.');
+						className = className.replace('\\', '.');
+						InputStream in = null;
+						try {
+							in = jar.getInputStream(jarEntry);
+							classFiles.add(ClassFileInfo.read(className, new BufferedInputStream(in)));
+						} catch (IOException e) {
+							classFiles.add(unreadableClassFile(className, e));
+						} finally {
+							closeQuietly(in);
+						}
+					}
+				}
+				if(classFileIndex != null) {
+					classFileIndex.put(path, fingerprint, classFiles);
+				}
+				return classFiles;
+			} catch (IOException e) {
+				throw new ScanException("couldn't read the following jar file for parsing annotations " + path, e);
+			} finally {
+				closeQuietly(jar);
+			}
+		}
+		
+		private List<ClassFileInfo> readClassFile() {
+			final String path = file.getAbsolutePath();
+			final String className = getClassName(path);
+			if(className == null) {
+				return Collections.emptyList();
+			}
+			long fingerprint = 0;
+			if(classFileIndex != null) {
+				fingerprint = ClassFileIndex.classFileFingerprint(file);
+				final List<ClassFileInfo> indexedClassFiles = classFileIndex.get(path, fingerprint);
+				if(indexedClassFiles != null) {
+					return indexedClassFiles;
+				}
+			}
+			ClassFileInfo classFileInfo;
+			InputStream in = null;
+			try {
+				in = new BufferedInputStream(new FileInputStream(file));
+				classFileInfo = ClassFileInfo.read(className, in);
+			} catch (IOException e) {
+				classFileInfo = unreadableClassFile(className, e);
+			} finally {
+				closeQuietly(in);
+			}
+			final List<ClassFileInfo> classFiles = Collections.singletonList(classFileInfo);
+			if(classFileIndex != null) {
+				classFileIndex.put(path, fingerprint, classFiles);
+			}
+			return classFiles;
+		}
+		
+		private static ClassFileInfo unreadableClassFile(String className, IOException e) {
+			if(logger.isDebugEnabled()) {
+				logger.debug("Failed to read the class file of " + className + ", it will be loaded to parse its annotations", e);
+			}
+			// leave it to the class loader to decide
+			return new ClassFileInfo(className, null, true);
+		}
+		
+		private static void closeQuietly(Closeable closeable) {
+			if(closeable != null) {
+				try {
+					closeable.close();
+				} catch (IOException e) {
+					logger.debug("Failed to close " + closeable, e);
+				}
+			}
+		}
+    }
+    
+    /**
+     * Carries an error reading the application out of the fork join pool
+     */
+    private static final class ScanException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		ScanException(String message, Throwable cause) {
+			super(message, cause);
+		}
     }
     
     protected void processAnnotations(Class clazz) throws AnnotationVerificationException {
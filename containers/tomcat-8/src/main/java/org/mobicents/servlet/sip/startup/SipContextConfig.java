@@ -132,6 +132,13 @@ public class SipContextConfig extends ContextConfig {
 	        File appBase = host.getAppBaseFile();
 	        
 			ClassFileScanner scanner = new ClassFileScanner(appBase.getPath() +  File.separatorChar + ((CatalinaSipContext)context).getDocBase(), (CatalinaSipContext)context);
+			if(Boolean.getBoolean(ClassFileScanner.ANNOTATIONS_INDEX_PROPERTY)) {
+				// keep the scanning results in the work directory so that an unchanged application is not scanned again on redeploy
+				File workDir = (File) servletContext.getAttribute(ServletContext.TEMPDIR);
+				if(workDir != null) {
+					scanner.setIndexFile(new File(workDir, ClassFileScanner.ANNOTATIONS_INDEX_FILE));
+				}
+			}
 			try {
 				scanner.scan();
 			} catch (AnnotationVerificationException ave) {
@@ -31,5 +31,18 @@ public enum ConcurrencyControlMode {
 	Transaction,
 	SipSession,
 	SipApplicationSession,
-	None
+	None,
+	/**
+	 * Same ordering guarantees as {@link #SipSession} but instead of blocking a thread on a lock
+	 * until the session is available, messages and asynchronous work for a given SipSession are queued 
+	 * to the session and executed one after the other by the container thread pool.
+	 */
+	SipSessionSerial,
+	/**
+	 * Same ordering guarantees as {@link #SipApplicationSession} but instead of blocking a thread on a lock
+	 * until the application session is available, messages, servlet timers, expiration and asynchronous work 
+	 * for a given SipApplicationSession are queued to the application session and executed one after the other 
+	 * by the container thread pool.
+	 */
+	SipApplicationSessionSerial
 }
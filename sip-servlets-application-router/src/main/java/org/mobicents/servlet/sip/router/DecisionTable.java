@@ -0,0 +1,180 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2015, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package org.mobicents.servlet.sip.router;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.regex.Pattern;
+
+import javax.servlet.sip.ar.SipApplicationRouterInfo;
+
+/**
+ * Immutable, precompiled view of the DAR entries configured for one SIP method.
+ *
+ * It is built once each time the DAR configuration is (re)loaded so that routing an initial request does not have to
+ * <ul>
+ * <li>scan the whole list to find the entry of the application that initiated the request,</li>
+ * <li>look up the DIRECTION optional parameter of every entry,</li>
+ * <li>walk over the INBOUND only entries one by one for requests routed out by an application,</li>
+ * <li>iterate the header pattern map of entries that don't define any HEADER_ condition.</li>
+ * </ul>
+ */
+final class DecisionTable {
+    static final String DIRECTION_PARAMETER = "DIRECTION";
+    static final String DIRECTION_INBOUND = "INBOUND";
+
+    private final DecisionTableEntry[] entries;
+    // first entry for a given application name
+    private final Map<String, DecisionTableEntry> firstEntryByApplicationName;
+    // nextNotInbound[i] is the index of the first entry at or after i not flagged DIRECTION=INBOUND
+    private final int[] nextNotInbound;
+
+    private DecisionTable(List<? extends SipApplicationRouterInfo> sipApplicationRouterInfos) {
+        int size = sipApplicationRouterInfos.size();
+        entries = new DecisionTableEntry[size];
+        Map<String, DecisionTableEntry> firstEntries = new HashMap<String, DecisionTableEntry>();
+        for (int i = 0; i < size; i++) {
+            DecisionTableEntry entry = new DecisionTableEntry(
+                    (DefaultSipApplicationRouterInfo) sipApplicationRouterInfos.get(i));
+            entries[i] = entry;
+            String applicationName = entry.getInfo().getApplicationName();
+            if (applicationName != null && !firstEntries.containsKey(applicationName)) {
+                firstEntries.put(applicationName, entry);
+            }
+        }
+        firstEntryByApplicationName = firstEntries;
+        nextNotInbound = new int[size + 1];
+        nextNotInbound[size] = size;
+        for (int i = size - 1; i >= 0; i--) {
+            nextNotInbound[i] = entries[i].isInbound() ? nextNotInbound[i + 1] : i;
+        }
+    }
+
+    /**
+     * Compile the parsed DAR configuration
+     *
+     * @param sipApplicationRouterInfos the DAR configuration as returned by {@link DefaultApplicationRouterParser}
+     * @return a decision table per SIP method (or ALL wildcard)
+     */
+    static Map<String, DecisionTable> compile(Map<String, List<? extends SipApplicationRouterInfo>> sipApplicationRouterInfos) {
+        if (sipApplicationRouterInfos == null || sipApplicationRouterInfos.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, DecisionTable> decisionTables = new HashMap<String, DecisionTable>();
+        for (Entry<String, List<? extends SipApplicationRouterInfo>> sipApplicationRouterInfo : sipApplicationRouterInfos
+                .entrySet()) {
+            if (sipApplicationRouterInfo.getValue() != null) {
+                decisionTables.put(sipApplicationRouterInfo.getKey(), new DecisionTable(sipApplicationRouterInfo.getValue()));
+            }
+        }
+        return Collections.unmodifiableMap(decisionTables);
+    }
+
+    int size() {
+        return entries.length;
+    }
+
+    DecisionTableEntry get(int index) {
+        return entries[index];
+    }
+
+    /**
+     *
+     * @param applicationName the name of the application that initiated the request
+     * @return the first entry configured for this application or null if the application is not part of this table
+     */
+    DecisionTableEntry getFirstEntry(String applicationName) {
+        return firstEntryByApplicationName.get(applicationName);
+    }
+
+    /**
+     *
+     * @param index the index to start from
+     * @return the index of the first entry at or after index not flagged DIRECTION=INBOUND, or size() if there is none
+     */
+    int nextNotInbound(int index) {
+        return nextNotInbound[index];
+    }
+
+    /**
+     * One precompiled DAR entry
+     */
+    static final class DecisionTableEntry {
+        private final DefaultSipApplicationRouterInfo info;
+        private final String direction;
+        private final boolean inbound;
+        private final String routingRegion;
+        private final String[] headerNames;
+        private final Pattern[] headerPatterns;
+
+        DecisionTableEntry(DefaultSipApplicationRouterInfo info) {
+            this.info = info;
+            direction = info.getOptionalParameters() == null ? null : info.getOptionalParameters().get(DIRECTION_PARAMETER);
+            inbound = DIRECTION_INBOUND.equalsIgnoreCase(direction);
+            routingRegion = info.getRoutingRegion() == null ? null : info.getRoutingRegion().toString();
+            Map<String, Pattern> headerPatternMap = info.getHeaderPatternMap();
+            headerNames = new String[headerPatternMap.size()];
+            headerPatterns = new Pattern[headerPatternMap.size()];
+            int i = 0;
+            for (Entry<String, Pattern> headerPattern : headerPatternMap.entrySet()) {
+                headerNames[i] = headerPattern.getKey();
+                headerPatterns[i] = headerPattern.getValue();
+                i++;
+            }
+        }
+
+        DefaultSipApplicationRouterInfo getInfo() {
+            return info;
+        }
+
+        String getDirection() {
+            return direction;
+        }
+
+        boolean isInbound() {
+            return inbound;
+        }
+
+        String getRoutingRegion() {
+            return routingRegion;
+        }
+
+        /**
+         * Evaluate the HEADER_ conditions of this entry, a regular expression per header which has to be found in its value.
+         * The header values are fetched through the request view so that a header shared by several entries is only read
+         * once per request.
+         *
+         * @param initialRequestView the request being routed
+         * @return true if all the header regular expressions match
+         */
+        boolean matchesHeaders(InitialRequestView initialRequestView) {
+            for (int i = 0; i < headerNames.length; i++) {
+                String headerValue = initialRequestView.getHeader(headerNames[i]);
+                if (headerValue == null || !headerPatterns[i].matcher(headerValue).find()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -31,7 +31,6 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
-import java.util.ListIterator;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
@@ -49,6 +48,7 @@ import javax.servlet.sip.ar.SipRouteModifier;
 import javax.servlet.sip.ar.SipTargetedRequestInfo;
 
 import org.apache.log4j.Logger;
+import org.mobicents.servlet.sip.router.DecisionTable.DecisionTableEntry;
 
 /**
  * Implementation of the default application router as defined per JSR 289 Appendix C
@@ -147,11 +147,7 @@ import org.apache.log4j.Logger;
  * </p>
  */
 public class DefaultApplicationRouter implements SipApplicationRouter, ManageableApplicationRouter {
-    private static final String DIRECTION_PARAMETER = "DIRECTION";
-    private static final String REGEX_PARAMETER = "REGEX";
-    private static final String REGEX_POPPED_ROUTE_PARAMETER = "REGEX_POPPED_ROUTE";
     private static final String DIRECTION_OUTBOUND = "OUTBOUND";
-    private static final String DIRECTION_INBOUND = "INBOUND";
     private static final String DIRECTION_UAC_ROUTE_BACK = "UAC_ROUTE_BACK";
     // the logger
     private static Logger log = Logger.getLogger(DefaultApplicationRouter.class);
@@ -168,6 +164,8 @@ public class DefaultApplicationRouter implements SipApplicationRouter, Manageabl
     Set<String> containerDeployedApplicationNames = null;
     // List of applications defined in the defautl application router properties file
     Map<String, List<? extends SipApplicationRouterInfo>> defaultSipApplicationRouterInfos;
+    // Same applications compiled into one decision table per method, rebuilt each time the configuration changes
+    volatile Map<String, DecisionTable> decisionTables;
 
     List<AppRouterCondition> conditions;
 
@@ -177,9 +175,9 @@ public class DefaultApplicationRouter implements SipApplicationRouter, Manageabl
     public DefaultApplicationRouter() {
         containerDeployedApplicationNames = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
         defaultApplicationRouterParser = new DefaultApplicationRouterParser();
-        defaultSipApplicationRouterInfos = new ConcurrentHashMap<String, List<? extends SipApplicationRouterInfo>>();
+        setConfiguration(new ConcurrentHashMap<String, List<? extends SipApplicationRouterInfo>>());
+        // HEADER_ conditions are precompiled in the decision tables, only additional conditions go here
         conditions = new ArrayList();
-        conditions.add(new HeaderRegexCondition());
     }
 
     /**
@@ -219,12 +217,15 @@ public class DefaultApplicationRouter implements SipApplicationRouter, Manageabl
                         + " , directive=" + directive + ", targetedRequestInfo=" + targetedRequestInfo + ", stateinfo="
                         + stateInfo + " with following dar " + defaultApplicationRouterParser.getProperties());
             }
-            List<? extends SipApplicationRouterInfo> defaultSipApplicationRouterInfoList = defaultSipApplicationRouterInfos
-                    .get(initialRequest.getMethod());
-            sipApplicationRouterInfo = getNextApplication(initialRequest, stateInfo, defaultSipApplicationRouterInfoList);
+            // shared by all the DAR entries evaluated for this request so the message is serialized at most once
+            InitialRequestView initialRequestView = new InitialRequestView(initialRequest);
+            // read the tables once so that a concurrent reconfiguration can't mix two different DARs
+            Map<String, DecisionTable> tables = decisionTables;
+            sipApplicationRouterInfo = getNextApplication(initialRequest, initialRequestView, stateInfo,
+                    tables.get(initialRequest.getMethod()));
             if (sipApplicationRouterInfo == null) {
-                defaultSipApplicationRouterInfoList = defaultSipApplicationRouterInfos.get(METHOD_WILDCARD);
-                sipApplicationRouterInfo = getNextApplication(initialRequest, stateInfo, defaultSipApplicationRouterInfoList);
+                sipApplicationRouterInfo = getNextApplication(initialRequest, initialRequestView, stateInfo,
+                        tables.get(METHOD_WILDCARD));
             }
             if (sipApplicationRouterInfo != null) {
                 return sipApplicationRouterInfo;
@@ -233,29 +234,10 @@ public class DefaultApplicationRouter implements SipApplicationRouter, Manageabl
         return new SipApplicationRouterInfo(null, null, null, null, null, null);
     }
 
-    /*
-     * This method is checking if the application that initiated the request is currently configured to be called for this
-     * method. Apps that initiate request may not be in the list.
-     */
-    private DefaultSipApplicationRouterInfo getFirstRequestApplicationEntry(
-            List<? extends SipApplicationRouterInfo> defaultSipApplicationRouterInfoList, SipServletRequest initialRequest) {
-        SipSession sipSession = initialRequest.getSession(false);
-        if (sipSession != null) {
-            String appName = sipSession.getApplicationSession().getApplicationName();
-            Iterator<? extends SipApplicationRouterInfo> iterator = defaultSipApplicationRouterInfoList.iterator();
-            while (iterator.hasNext()) {
-                DefaultSipApplicationRouterInfo next = (DefaultSipApplicationRouterInfo) iterator.next();
-                if (next.getApplicationName().equals(appName))
-                    return next;
-            }
-        }
-        return null;
-    }
+    private SipApplicationRouterInfo getNextApplication(SipServletRequest initialRequest,
+            InitialRequestView initialRequestView, Serializable stateInfo, DecisionTable decisionTable) {
 
-    private SipApplicationRouterInfo getNextApplication(SipServletRequest initialRequest, Serializable stateInfo,
-            List<? extends SipApplicationRouterInfo> defaultSipApplicationRouterInfoList) {
-
-        if (defaultSipApplicationRouterInfoList != null && defaultSipApplicationRouterInfoList.size() > 0) {
+        if (decisionTable != null && decisionTable.size() > 0) {
             int previousAppOrder = 0;
             if (stateInfo != null) {
                 previousAppOrder = (Integer) stateInfo;
@@ -263,94 +245,101 @@ public class DefaultApplicationRouter implements SipApplicationRouter, Manageabl
                     log.debug("The previous app order was : " + previousAppOrder);
                 }
             }
-            ListIterator<? extends SipApplicationRouterInfo> defaultSipApplicationRouterInfoIt = defaultSipApplicationRouterInfoList
-                    .listIterator(previousAppOrder++);
-            while (defaultSipApplicationRouterInfoIt.hasNext()) {
-
-                /*
-                 * Fix for http://code.google.com/p/mobicents/issues/detail?id=987 Issue 987
-                 * 
-                 * INBOUND and OUTBOUND request routing logic is as follows: Determine if the request was initiated by the
-                 * previous application by either see the application missing in the DAR or by looking at the DIRECTION hint in
-                 * the optional parameters. If the request was initiated by the app then we will call only applications without
-                 * INBOUND direction. All applications without hint will be called to keep backward compatibility.
-                 */
-                DefaultSipApplicationRouterInfo defaultSipApplicationRouterInfo = (DefaultSipApplicationRouterInfo) defaultSipApplicationRouterInfoIt
-                        .next();
-
-                /*
-                 * This method is checking if the application that initiated the request is currently configured to be called
-                 * for this method. Apps that initiate request may not be in the list thus params must be assumed for them.
-                 */
-                DefaultSipApplicationRouterInfo requestSipApplicationRouterInfo = (DefaultSipApplicationRouterInfo) getFirstRequestApplicationEntry(
-                        defaultSipApplicationRouterInfoList, initialRequest);
-
-                String currentDirection = defaultSipApplicationRouterInfo.getOptionalParameters().get(DIRECTION_PARAMETER);
-                String requestDirection = null;
-                if (requestSipApplicationRouterInfo != null) {
-                    requestDirection = requestSipApplicationRouterInfo.getOptionalParameters().get(DIRECTION_PARAMETER);
+            if (previousAppOrder < 0 || previousAppOrder > decisionTable.size()) {
+                throw new IndexOutOfBoundsException("Index: " + previousAppOrder);
+            }
+
+            /*
+             * Fix for http://code.google.com/p/mobicents/issues/detail?id=987 Issue 987
+             * 
+             * INBOUND and OUTBOUND request routing logic is as follows: Determine if the request was initiated by the previous
+             * application by either see the application missing in the DAR or by looking at the DIRECTION hint in the optional
+             * parameters. If the request was initiated by the app then we will call only applications without INBOUND
+             * direction. All applications without hint will be called to keep backward compatibility.
+             * 
+             * The application that initiated the request and its direction don't depend on the entry being evaluated so they
+             * are resolved once, through the decision table index, before walking the entries.
+             */
+            SipSession initialSession = initialRequest.getSession(false);
+            String initialAppName = null;
+            String requestDirection = null;
+            if (initialSession != null) {
+                initialAppName = initialSession.getApplicationSession().getApplicationName();
+                DecisionTableEntry requestEntry = decisionTable.getFirstEntry(initialAppName);
+                if (requestEntry != null) {
+                    requestDirection = requestEntry.getDirection();
                 } else {
-                    if (initialRequest.getSession(false) != null) {
-                        // If this request comes from outside (was not initiated by some app) the session will be null,
-                        // thus if it's not null we can assume the request already has a session and was initiated by
-                        // the application...
-                        requestDirection = DIRECTION_OUTBOUND;
-                    }
+                    // If this request comes from outside (was not initiated by some app) the session will be null,
+                    // thus if it's not null we can assume the request already has a session and was initiated by
+                    // the application...
+                    requestDirection = DIRECTION_OUTBOUND;
                 }
-
-                if (DIRECTION_OUTBOUND.equalsIgnoreCase(requestDirection)) { // If the request was initiated by the previous app
-                                                                             // or the previous app has out marker
-                    if (DIRECTION_INBOUND.equalsIgnoreCase(currentDirection)) { // but the new application is handling only
-                                                                                // INBOUND request
-                        if (log.isDebugEnabled()) {
-                            log.debug(defaultSipApplicationRouterInfo.getApplicationName()
+            }
+            // If the request was initiated by the previous app or the previous app has out marker
+            // applications handling only INBOUND requests are skipped
+            boolean routingOut = DIRECTION_OUTBOUND.equalsIgnoreCase(requestDirection);
+
+            int index = previousAppOrder;
+            while (index < decisionTable.size()) {
+                if (routingOut) {
+                    int nextIndex = decisionTable.nextNotInbound(index);
+                    if (log.isDebugEnabled()) {
+                        for (int i = index; i < nextIndex; i++) {
+                            log.debug(decisionTable.get(i).getInfo().getApplicationName()
                                     + " will not be called because we are routing the request out and the application has 'DIRECTION=INBOUND' hint.");
                         }
-                        continue; // .. then just don't call the application
+                    }
+                    index = nextIndex;
+                    if (index >= decisionTable.size()) {
+                        break;
                     }
                 }
+                DecisionTableEntry decisionTableEntry = decisionTable.get(index++);
+                DefaultSipApplicationRouterInfo defaultSipApplicationRouterInfo = decisionTableEntry.getInfo();
 
-                String regEx = defaultSipApplicationRouterInfo.getOptionalParameters().get(REGEX_PARAMETER);
-                if (regEx != null) {
-                    Pattern pattern = Pattern.compile(regEx);
-                    Matcher matcher = pattern.matcher(initialRequest.toString());
+                Pattern regexPattern = defaultSipApplicationRouterInfo.getRegexPattern();
+                if (regexPattern != null) {
+                    Matcher matcher = regexPattern.matcher(initialRequestView.getText(defaultSipApplicationRouterInfo
+                            .getRegexHeaders()));
                     if (matcher.find()) {
                         if (log.isDebugEnabled()) {
-                            log.debug("initialRequest " + initialRequest + " matching regex pattern " + regEx + "begin index "
+                            log.debug("initialRequest " + initialRequest + " matching regex pattern " + regexPattern + "begin index "
                                     + matcher.start() + " and ending at index " + matcher.end() + " for application "
                                     + defaultSipApplicationRouterInfo.getApplicationName());
                         }
                     } else {
                         if (log.isDebugEnabled()) {
-                            log.debug("initialRequest " + initialRequest + " not matching regex pattern " + regEx
+                            log.debug("initialRequest " + initialRequest + " not matching regex pattern " + regexPattern
                                     + " skipping application " + defaultSipApplicationRouterInfo.getApplicationName());
                         }
                         continue; // pattern not matching, just don't call the application
                     }
                 }
                 // https://code.google.com/p/sipservlets/issues/detail?id=43
-                String regExPoppedRoute = defaultSipApplicationRouterInfo.getOptionalParameters().get(
-                        REGEX_POPPED_ROUTE_PARAMETER);
-                if (regExPoppedRoute != null) {
-                    Pattern pattern = Pattern.compile(regExPoppedRoute);
-                    Matcher matcher = pattern.matcher(initialRequest.getPoppedRoute().toString());
+                Pattern regexPoppedRoutePattern = defaultSipApplicationRouterInfo.getRegexPoppedRoutePattern();
+                if (regexPoppedRoutePattern != null) {
+                    Matcher matcher = regexPoppedRoutePattern.matcher(initialRequestView.getPoppedRoute());
                     if (matcher.find()) {
                         if (log.isDebugEnabled()) {
                             log.debug("initialRequest Popped Route" + initialRequest.getPoppedRoute()
-                                    + " matching regex pattern " + regExPoppedRoute + "begin index " + matcher.start()
+                                    + " matching regex pattern " + regexPoppedRoutePattern + "begin index " + matcher.start()
                                     + " and ending at index " + matcher.end() + " for application "
                                     + defaultSipApplicationRouterInfo.getApplicationName());
                         }
                     } else {
                         if (log.isDebugEnabled()) {
                             log.debug("initialRequest Popped Route" + initialRequest.getPoppedRoute()
-                                    + " matching regex pattern " + regExPoppedRoute + " skipping application "
+                                    + " matching regex pattern " + regexPoppedRoutePattern + " skipping application "
                                     + defaultSipApplicationRouterInfo.getApplicationName());
                         }
                         continue; // pattern not matching, just don't call the application
                     }
                 }
 
+                // HEADER_ conditions are evaluated from the decision table
+                if (!decisionTableEntry.matchesHeaders(initialRequestView)) {
+                    continue;
+                }
                 if (!checkConditions(initialRequest, defaultSipApplicationRouterInfo)) {
                     continue;
                 }
@@ -366,14 +355,11 @@ public class DefaultApplicationRouter implements SipApplicationRouter, Manageabl
 					    log.debug("this " + this + " " + defaultSipApplicationRouterInfo.getApplicationName() + " is NOT present in the container.");
 					}
 			    }
+                DecisionTableEntry previousDecisionTableEntry = decisionTable.get(previousAppOrder);
                 if (log.isDebugEnabled()) {
                     log.debug("Route Modifier : " + defaultSipApplicationRouterInfo.getRouteModifier());
-                    log.debug("Previous App Name : "
-                            + ((SipApplicationRouterInfo) defaultSipApplicationRouterInfoList.listIterator(previousAppOrder)
-                                    .previous()).getNextApplicationName());
-                    log.debug("Previous App Route Region : "
-                            + ((SipApplicationRouterInfo) defaultSipApplicationRouterInfoList.listIterator(previousAppOrder)
-                                    .previous()).getRoutingRegion());
+                    log.debug("Previous App Name : " + previousDecisionTableEntry.getInfo().getNextApplicationName());
+                    log.debug("Previous App Route Region : " + previousDecisionTableEntry.getInfo().getRoutingRegion());
                     log.debug("Current App Name : " + defaultSipApplicationRouterInfo.getNextApplicationName());
                     log.debug("Current App Route Region : " + defaultSipApplicationRouterInfo.getRoutingRegion());
                 }
@@ -382,19 +368,14 @@ public class DefaultApplicationRouter implements SipApplicationRouter, Manageabl
                 if (isApplicationPresentInContainer
                         || !SipRouteModifier.NO_ROUTE.equals(defaultSipApplicationRouterInfo.getRouteModifier())) {
                     // prevents to route twice in a row to the same application with the same routing region
-                    SipSession initialSession = initialRequest.getSession(false);
-                    String initialAppName = null;
                     String initialRoutingRegion = null;
                     String defaultSipApplicationRouterAppName = null;
                     String defaultSipApplicationRouterRoutingRegion = null;
 
                     if (initialSession != null) {
-                        initialAppName = initialRequest.getSession(false).getApplicationSession().getApplicationName();
-                        initialRoutingRegion = ((SipApplicationRouterInfo) defaultSipApplicationRouterInfoList.listIterator(
-                                previousAppOrder).previous()).getRoutingRegion().toString();
+                        initialRoutingRegion = previousDecisionTableEntry.getRoutingRegion();
                         defaultSipApplicationRouterAppName = defaultSipApplicationRouterInfo.getApplicationName();
-                        defaultSipApplicationRouterRoutingRegion = defaultSipApplicationRouterInfo.getRoutingRegion()
-                                .toString();
+                        defaultSipApplicationRouterRoutingRegion = decisionTableEntry.getRoutingRegion();
                     }
                     if (initialSession == null || !defaultSipApplicationRouterAppName.equals(initialAppName) ||
                     // https://code.google.com/p/sipservlets/issues/detail?id=273 allowing to route to the same app with
@@ -427,6 +408,9 @@ public class DefaultApplicationRouter implements SipApplicationRouter, Manageabl
     }
 
     private boolean checkConditions(SipServletRequest initialRequest, DefaultSipApplicationRouterInfo info) {
+        if (conditions.isEmpty()) {
+            return true;
+        }
         boolean allConditionsMet = true;
         Iterator<AppRouterCondition> iterator = conditions.iterator();
         while (allConditionsMet && iterator.hasNext()) {
@@ -436,13 +420,22 @@ public class DefaultApplicationRouter implements SipApplicationRouter, Manageabl
         return allConditionsMet;
     }
 
+    /*
+     * Precompute the decision tables used to route initial requests from the newly parsed DAR configuration
+     */
+    private void setConfiguration(Map<String, List<? extends SipApplicationRouterInfo>> sipApplicationRouterInfos) {
+        Map<String, DecisionTable> newDecisionTables = DecisionTable.compile(sipApplicationRouterInfos);
+        defaultSipApplicationRouterInfos = sipApplicationRouterInfos;
+        decisionTables = newDecisionTables;
+    }
+
     /**
      * load the configuration file as defined in appendix C of JSR289
      */
     public void init() {
         defaultApplicationRouterParser.init();
         try {
-            defaultSipApplicationRouterInfos = defaultApplicationRouterParser.parse();
+            setConfiguration(defaultApplicationRouterParser.parse());
         } catch (ParseException e) {
             log.fatal("Impossible to parse the default application router configuration file", e);
             throw new IllegalArgumentException("Impossible to parse the default application router configuration file", e);
@@ -457,7 +450,7 @@ public class DefaultApplicationRouter implements SipApplicationRouter, Manageabl
     public void init(Properties properties) {
         defaultApplicationRouterParser.init(properties);
         try {
-            defaultSipApplicationRouterInfos = defaultApplicationRouterParser.parse();
+            setConfiguration(defaultApplicationRouterParser.parse());
         } catch (ParseException e) {
             log.fatal("Impossible to parse the default application router configuration file", e);
             throw new IllegalArgumentException("Impossible to parse the default application router configuration file", e);
@@ -486,7 +479,7 @@ public class DefaultApplicationRouter implements SipApplicationRouter, Manageabl
             properties = (Properties) configuration;
         }
         try {
-            defaultSipApplicationRouterInfos = this.defaultApplicationRouterParser.parse(properties);
+            setConfiguration(this.defaultApplicationRouterParser.parse(properties));
         } catch (ParseException e1) {
             throw new IllegalArgumentException("Failed to parse the new DAR properties", e1);
         }
@@ -41,6 +41,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Map.Entry;
+import java.util.regex.PatternSyntaxException;
 
 import javax.servlet.sip.ar.SipApplicationRouterInfo;
 import javax.servlet.sip.ar.SipApplicationRoutingRegion;
@@ -273,6 +274,17 @@ public class DefaultApplicationRouterParser {
             throw new ParseException("Impossible to parse the state info into an integer for this line "
                     + sipApplicationRouterInfoStringified, 0);
         }
+        try {
+            return newSipApplicationRouterInfo(sipApplicationRouterInfoParameters, order, optionalParameters);
+        } catch (PatternSyntaxException pse) {
+            // REGEX, REGEX_POPPED_ROUTE and HEADER_ optional parameters are compiled at parsing time
+            throw new ParseException("Impossible to compile the regular expression " + pse.getPattern()
+                    + " from the optional parameters " + optionalParameters, 0);
+        }
+    }
+
+    private DefaultSipApplicationRouterInfo newSipApplicationRouterInfo(String[] sipApplicationRouterInfoParameters,
+            int order, String optionalParameters) {
         return new DefaultSipApplicationRouterInfo(
         // application name
                 sipApplicationRouterInfoParameters[0],
@@ -23,7 +23,9 @@
 package org.mobicents.servlet.sip.router;
 
 import java.text.ParseException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Map.Entry;
@@ -43,6 +45,10 @@ import javax.servlet.sip.ar.SipRouteModifier;
 public class DefaultSipApplicationRouterInfo extends SipApplicationRouterInfo {
     private static final String HEADER_REGEX_PREFIX = "HEADER";
     private static final String HEADER_REGEX_SEPARATOR = "_";
+    static final String REGEX_PARAMETER = "REGEX";
+    static final String REGEX_POPPED_ROUTE_PARAMETER = "REGEX_POPPED_ROUTE";
+    static final String REGEX_HEADERS_PARAMETER = "REGEX_HEADERS";
+    private static final String REGEX_HEADERS_SEPARATOR = ",";
 
     // private String applicationName;
     // private SipApplicationRoutingRegion routingRegion;
@@ -54,6 +60,12 @@ public class DefaultSipApplicationRouterInfo extends SipApplicationRouterInfo {
 
     private Map<String, Pattern> headerPatternMap = new HashMap();
 
+    // REGEX and REGEX_POPPED_ROUTE are compiled once at parsing time instead of on each initial request
+    private Pattern regexPattern;
+    private Pattern regexPoppedRoutePattern;
+    // when set, REGEX is matched against those header fields only instead of the whole message
+    private String[] regexHeaders;
+
     /**
      * @param applicationName
      * @param subscriberIdentity
@@ -75,6 +87,7 @@ public class DefaultSipApplicationRouterInfo extends SipApplicationRouterInfo {
         try {
             this.optionalParameters = stringToMap(optionalParameters);
             scanForHeaderRegex();
+            compileRegex();
         } catch (ParseException e) {
             throw new RuntimeException("Error", e);
         }
@@ -93,6 +106,34 @@ public class DefaultSipApplicationRouterInfo extends SipApplicationRouterInfo {
         }
     }
 
+    private void compileRegex() {
+        regexPattern = null;
+        regexPoppedRoutePattern = null;
+        regexHeaders = null;
+        if (optionalParameters == null) {
+            return;
+        }
+        String regex = optionalParameters.get(REGEX_PARAMETER);
+        if (regex != null) {
+            regexPattern = Pattern.compile(regex);
+        }
+        String regexPoppedRoute = optionalParameters.get(REGEX_POPPED_ROUTE_PARAMETER);
+        if (regexPoppedRoute != null) {
+            regexPoppedRoutePattern = Pattern.compile(regexPoppedRoute);
+        }
+        String headers = optionalParameters.get(REGEX_HEADERS_PARAMETER);
+        if (headers != null && headers.trim().length() > 0) {
+            String[] headerNames = headers.split(REGEX_HEADERS_SEPARATOR);
+            List<String> trimmedHeaderNames = new ArrayList<String>(headerNames.length);
+            for (String headerName : headerNames) {
+                if (headerName.trim().length() > 0) {
+                    trimmedHeaderNames.add(headerName.trim());
+                }
+            }
+            regexHeaders = trimmedHeaderNames.toArray(new String[trimmedHeaderNames.size()]);
+        }
+    }
+
     public static Map<String, String> stringToMap(String str) throws ParseException {
 
         Map<String, String> map = new HashMap<String, String>();
@@ -166,9 +207,35 @@ public class DefaultSipApplicationRouterInfo extends SipApplicationRouterInfo {
      */
     public void setOptionalParameters(HashMap<String, String> optionalParameters) {
         this.optionalParameters = optionalParameters;
+        compileRegex();
     }
 
     public Map<String, Pattern> getHeaderPatternMap() {
         return headerPatternMap;
     }
+
+    /**
+     * 
+     * @return the precompiled REGEX optional parameter or null if none was defined
+     */
+    public Pattern getRegexPattern() {
+        return regexPattern;
+    }
+
+    /**
+     * 
+     * @return the precompiled REGEX_POPPED_ROUTE optional parameter or null if none was defined
+     */
+    public Pattern getRegexPoppedRoutePattern() {
+        return regexPoppedRoutePattern;
+    }
+
+    /**
+     * 
+     * @return the header names the REGEX optional parameter is restricted to (REGEX_HEADERS optional parameter) or null if
+     *         the REGEX should be matched against the whole message
+     */
+    public String[] getRegexHeaders() {
+        return regexHeaders;
+    }
 }
@@ -34,7 +34,11 @@ import javax.servlet.sip.SipServletRequest;
  * The condition returns true if all the regular expressions match the proper header.
  * 
  * This fixes https://github.com/Mobicents/sip-servlets/issues/5
+ *
+ * @deprecated the default application router evaluates the HEADER_ conditions from its decision tables and no longer
+ *             registers this condition, it is kept for the routers built on top of it.
  */
+@Deprecated
 public class HeaderRegexCondition implements AppRouterCondition {
 
     /**
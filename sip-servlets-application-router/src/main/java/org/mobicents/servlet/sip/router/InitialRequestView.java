@@ -0,0 +1,134 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2015, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package org.mobicents.servlet.sip.router;
+
+import java.util.HashMap;
+import java.util.ListIterator;
+import java.util.Map;
+
+import javax.servlet.sip.Address;
+import javax.servlet.sip.SipServletRequest;
+
+/**
+ * Lazily built, reusable textual view of an initial request used by the DAR to evaluate the REGEX and REGEX_POPPED_ROUTE
+ * optional parameters.
+ *
+ * A new view is created for each call to getNextApplication so that the whole message is serialized at most once no matter
+ * how many DAR entries are evaluated, and not at all if the matching entries only target specific header fields through the
+ * REGEX_HEADERS optional parameter.
+ *
+ * Not thread safe, it is meant to be used by a single routing invocation.
+ */
+final class InitialRequestView {
+    static final String REQUEST_URI = "Request-URI";
+    private static final String HEADER_SEPARATOR = ": ";
+    private static final String LINE_SEPARATOR = "\r\n";
+
+    private final SipServletRequest initialRequest;
+    private String message;
+    private String poppedRoute;
+    private Map<String, String> headerLines;
+    private Map<String, String> headers;
+
+    InitialRequestView(SipServletRequest initialRequest) {
+        this.initialRequest = initialRequest;
+    }
+
+    /**
+     *
+     * @return the full message as a String, serialized on first access only
+     */
+    String getMessage() {
+        if (message == null) {
+            message = initialRequest.toString();
+        }
+        return message;
+    }
+
+    /**
+     *
+     * @return the popped route as a String, computed on first access only
+     */
+    String getPoppedRoute() {
+        if (poppedRoute == null) {
+            Address poppedRouteAddress = initialRequest.getPoppedRoute();
+            poppedRoute = String.valueOf(poppedRouteAddress);
+        }
+        return poppedRoute;
+    }
+
+    /**
+     *
+     * @param headerName the name of the header
+     * @return the first value of the header, read from the request on first access only, or null if not present
+     */
+    String getHeader(String headerName) {
+        if (headers == null) {
+            headers = new HashMap<String, String>(4);
+        } else if (headers.containsKey(headerName)) {
+            return headers.get(headerName);
+        }
+        String value = initialRequest.getHeader(headerName);
+        headers.put(headerName, value);
+        return value;
+    }
+
+    /**
+     * Compute the text a REGEX should be matched against.
+     *
+     * @param headerNames the header names the regex is restricted to, if null the whole message is returned
+     * @return the header lines formatted as "Name: value" separated by CRLF so that regular expressions written against the full
+     *         message keep matching, or the full message if no header names are specified
+     */
+    String getText(String[] headerNames) {
+        if (headerNames == null) {
+            return getMessage();
+        }
+        if (headerNames.length == 1) {
+            return getHeaderLines(headerNames[0]);
+        }
+        StringBuilder text = new StringBuilder();
+        for (String headerName : headerNames) {
+            text.append(getHeaderLines(headerName));
+        }
+        return text.toString();
+    }
+
+    private String getHeaderLines(String headerName) {
+        if (headerLines == null) {
+            headerLines = new HashMap<String, String>(4);
+        }
+        String lines = headerLines.get(headerName);
+        if (lines == null) {
+            StringBuilder text = new StringBuilder();
+            if (REQUEST_URI.equalsIgnoreCase(headerName)) {
+                text.append(initialRequest.getRequestURI()).append(LINE_SEPARATOR);
+            } else {
+                ListIterator<String> values = initialRequest.getHeaders(headerName);
+                while (values != null && values.hasNext()) {
+                    text.append(headerName).append(HEADER_SEPARATOR).append(values.next()).append(LINE_SEPARATOR);
+                }
+            }
+            lines = text.toString();
+            headerLines.put(headerName, lines);
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,109 @@
+package org.mobicents.servlet.sip.router;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import javax.servlet.sip.SipServletRequest;
+import javax.servlet.sip.ar.SipApplicationRouterInfo;
+import javax.servlet.sip.ar.SipApplicationRoutingDirective;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+public class DecisionTableTest extends TestCase {
+
+    public DecisionTableTest(String testName) {
+        super(testName);
+    }
+
+    private static SipServletRequest createRequest(final String method, final Map<String, String> headers) {
+        return (SipServletRequest) Proxy.newProxyInstance(SipServletRequest.class.getClassLoader(),
+                new Class[] { SipServletRequest.class }, new InvocationHandler() {
+                    public Object invoke(Object proxy, Method m, Object[] args) throws Throwable {
+                        if ("getMethod".equals(m.getName())) {
+                            return method;
+                        }
+                        if ("getHeader".equals(m.getName())) {
+                            return headers.get(args[0]);
+                        }
+                        if ("getSession".equals(m.getName())) {
+                            return null;
+                        }
+                        if ("getHeaders".equals(m.getName())) {
+                            String value = headers.get(args[0]);
+                            List<String> values = value == null ? Arrays.<String> asList() : Arrays.asList(value);
+                            return values.listIterator();
+                        }
+                        if ("toString".equals(m.getName())) {
+                            return method + " sip:test@sip-servlets.com SIP/2.0\r\n";
+                        }
+                        throw new UnsupportedOperationException(m.getName());
+                    }
+                });
+    }
+
+    private static DefaultApplicationRouter createRouter(String dar, String... deployedApplications) {
+        DefaultApplicationRouter router = new DefaultApplicationRouter();
+        Properties properties = new Properties();
+        properties.setProperty("INVITE", dar);
+        router.init(properties);
+        router.containerDeployedApplicationNames.addAll(Arrays.asList(deployedApplications));
+        return router;
+    }
+
+    public void testCompile() {
+        DefaultApplicationRouter router = createRouter("(\"App1\",\"\",\"NEUTRAL\",\"\",\"NO_ROUTE\",\"0\",\"DIRECTION=INBOUND\"),"
+                + "(\"App2\",\"\",\"NEUTRAL\",\"\",\"NO_ROUTE\",\"1\",\"DIRECTION=INBOUND\"),"
+                + "(\"App3\",\"\",\"NEUTRAL\",\"\",\"NO_ROUTE\",\"2\")");
+        DecisionTable table = router.decisionTables.get("INVITE");
+        Assert.assertEquals(3, table.size());
+        Assert.assertEquals(2, table.nextNotInbound(0));
+        Assert.assertEquals(2, table.nextNotInbound(2));
+        Assert.assertEquals(3, table.nextNotInbound(3));
+        Assert.assertEquals("App2", table.getFirstEntry("App2").getInfo().getApplicationName());
+        Assert.assertNull(table.getFirstEntry("Unknown"));
+    }
+
+    public void testHeaderConditionsRouting() {
+        DefaultApplicationRouter router = createRouter(
+                "(\"App1\",\"\",\"NEUTRAL\",\"\",\"NO_ROUTE\",\"0\",\"HEADER_To=sip:.*@other\\.com\"),"
+                        + "(\"App2\",\"\",\"NEUTRAL\",\"\",\"NO_ROUTE\",\"1\",\"HEADER_To=sip:.*@sip-servlets\\.com\")",
+                "App1", "App2");
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put("To", "sip:test@sip-servlets.com");
+        SipApplicationRouterInfo info = router.getNextApplication(createRequest("INVITE", headers), null,
+                SipApplicationRoutingDirective.NEW, null, null);
+        Assert.assertEquals("App2", info.getNextApplicationName());
+        // missing header doesn't match
+        info = router.getNextApplication(createRequest("INVITE", new HashMap<String, String>()), null,
+                SipApplicationRoutingDirective.NEW, null, null);
+        Assert.assertNull(info.getNextApplicationName());
+    }
+
+    public void testRegexHeadersRouting() {
+        DefaultApplicationRouter router = createRouter(
+                "(\"App1\",\"\",\"NEUTRAL\",\"\",\"NO_ROUTE\",\"0\",\"REGEX=From:.*@other\\.com REGEX_HEADERS=From\"),"
+                        + "(\"App2\",\"\",\"NEUTRAL\",\"\",\"NO_ROUTE\",\"1\",\"REGEX=From:.*@sip-servlets\\.com REGEX_HEADERS=From\")",
+                "App1", "App2");
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put("From", "sip:alice@sip-servlets.com");
+        SipApplicationRouterInfo info = router.getNextApplication(createRequest("INVITE", headers), null,
+                SipApplicationRoutingDirective.NEW, null, null);
+        Assert.assertEquals("App2", info.getNextApplicationName());
+    }
+
+    public void testStateInfoRouting() {
+        DefaultApplicationRouter router = createRouter("(\"App1\",\"\",\"NEUTRAL\",\"\",\"NO_ROUTE\",\"0\"),"
+                + "(\"App2\",\"\",\"NEUTRAL\",\"\",\"NO_ROUTE\",\"1\")", "App1", "App2");
+        SipApplicationRouterInfo info = router.getNextApplication(createRequest("INVITE", new HashMap<String, String>()),
+                null, SipApplicationRoutingDirective.NEW, null, 1);
+        Assert.assertEquals("App2", info.getNextApplicationName());
+        Assert.assertEquals(1, info.getStateInfo());
+    }
+}
@@ -1,5 +1,8 @@
 package org.mobicents.servlet.sip.router;
 
+import java.text.ParseException;
+import java.util.Properties;
+
 import junit.framework.Assert;
 import junit.framework.TestCase;
 
@@ -31,4 +34,36 @@ public class DefaultSipApplicationRouterInfoTest extends TestCase {
         Assert.assertEquals(2, info.getHeaderPatternMap().size());
     }
 
+    public void testRegexPrecompiled() {
+        String optionalParams = "DIRECTION=1 REGEX=From:.*sip:.*@sip-servlets\\.com REGEX_POPPED_ROUTE=.*sip-servlets";
+        DefaultSipApplicationRouterInfo info = new DefaultSipApplicationRouterInfo(null, null, null, null, null, 0,
+                optionalParams);
+        Assert.assertNotNull(info.getRegexPattern());
+        Assert.assertEquals("From:.*sip:.*@sip-servlets\\.com", info.getRegexPattern().pattern());
+        Assert.assertNotNull(info.getRegexPoppedRoutePattern());
+        Assert.assertNull(info.getRegexHeaders());
+    }
+
+    public void testRegexHeaders() {
+        String optionalParams = "REGEX=sip:.*@sip-servlets\\.com REGEX_HEADERS=From,,P-Asserted-Identity";
+        DefaultSipApplicationRouterInfo info = new DefaultSipApplicationRouterInfo(null, null, null, null, null, 0,
+                optionalParams);
+        Assert.assertEquals(2, info.getRegexHeaders().length);
+        Assert.assertEquals("From", info.getRegexHeaders()[0]);
+        Assert.assertEquals("P-Asserted-Identity", info.getRegexHeaders()[1]);
+        Assert.assertNull(info.getRegexPoppedRoutePattern());
+    }
+
+    public void testInvalidRegexFailsParsing() {
+        Properties properties = new Properties();
+        properties.setProperty("INVITE",
+                "(\"PlayMyBand\",\"DAR:From\",\"NEUTRAL\",\"\",\"NO_ROUTE\",\"0\",\"REGEX=From:(.*\")");
+        try {
+            new DefaultApplicationRouterParser().parse(properties);
+            Assert.fail("an invalid regex should fail the DAR parsing");
+        } catch (ParseException e) {
+            // expected
+        }
+    }
+
 }
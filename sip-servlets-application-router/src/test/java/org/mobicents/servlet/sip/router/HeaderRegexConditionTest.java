@@ -35,6 +35,7 @@ import javax.servlet.sip.ar.SipRouteModifier;
 import junit.framework.Assert;
 import junit.framework.TestCase;
 
+@SuppressWarnings("deprecation")
 public class HeaderRegexConditionTest extends TestCase {
     private static final HeaderRegexCondition condition = new HeaderRegexCondition();
 
@@ -31,7 +31,8 @@ package org.mobicents.javax.servlet;
  */
 public class CongestionControlEvent {
 	public enum Reason {
-		Memory, Queue //, TODO add CPU Usage congestion control
+		// Latency is reported by the adaptive congestion control, when the requests wait too long before being processed
+		Memory, Queue, Latency //, TODO add CPU Usage congestion control
 	}
 
 	Reason reason;
@@ -0,0 +1,66 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2015, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.javax.servlet.sip;
+
+import java.util.Iterator;
+
+import javax.servlet.sip.Address;
+import javax.servlet.sip.Parameterable;
+import javax.servlet.sip.ServletParseException;
+import javax.servlet.sip.SipServletMessage;
+
+/**
+ * Interface Extension that adds extra features to the JSR 289 SipServletMessage interface.</br>
+ * It adds read only accessors to the headers of the message, for applications inspecting many headers
+ * of many messages, which don't copy the header values into a new list on each call as
+ * getHeaders, getParameterableHeaders and getAddressHeaders have to.
+ *
+ * The iterators returned walk the headers of the message itself, the message must not be modified while
+ * they are in use and they don't support remove.
+ */
+public interface SipServletMessageExt extends SipServletMessage {
+	/**
+	 * Same as {@link SipServletMessage#getHeaders(String)} without copying the values.
+	 *
+	 * @param name a case insensitive string specifying the name of the header, full or compact
+	 * @return an iterator over the values of the headers with the given name, empty if the message has no such header
+	 */
+	Iterator<String> getHeaderValues(String name);
+
+	/**
+	 * Same as {@link SipServletMessage#getParameterableHeaders(String)} except that the parameterables returned can't be modified.
+	 * Each header is parsed the first time it is accessed, the following calls return the same parameterable until the header is modified.
+	 *
+	 * @param name a case insensitive string specifying the name of the header, full or compact
+	 * @return an iterator over the read only parameterables of the headers with the given name, empty if the message has no such header
+	 * @throws ServletParseException if the header is not a parameterable header
+	 */
+	Iterator<Parameterable> getReadOnlyParameterableHeaders(String name) throws ServletParseException;
+
+	/**
+	 * Same as {@link SipServletMessage#getAddressHeaders(String)} except that the addresses returned can't be modified.
+	 * Each header is parsed the first time it is accessed, the following calls return the same address until the header is modified.
+	 *
+	 * @param name a case insensitive string specifying the name of the header, full or compact
+	 * @return an iterator over the read only addresses of the headers with the given name, empty if the message has no such header
+	 * @throws ServletParseException if one of the headers can't be parsed as an address
+	 */
+	Iterator<Address> getReadOnlyAddressHeaders(String name) throws ServletParseException;
+}
@@ -41,7 +41,7 @@ import javax.servlet.sip.SipURI;
  * @author jean.deruelle@gmail.com
  * @since 1.5
  */
-public interface SipServletRequestExt extends SipServletRequest {
+public interface SipServletRequestExt extends SipServletRequest, SipServletMessageExt {
 	/**
 	 * This method allows the addition of the appropriate authentication header(s) to the request that was challenged with a challenge response.<br/>
 	 * It allows also to cache the credentials so that if a response containing an Authentication-Info header with a nextnonce, the credentials can be reused
@@ -38,7 +38,7 @@ import javax.servlet.sip.SipServletResponse;
  * @author vladimir.ralev@gmail.com
  * @since 1.5
  */
-public interface SipServletResponseExt extends SipServletResponse {
+public interface SipServletResponseExt extends SipServletResponse, SipServletMessageExt {
 	
 	/**
 	 * This flag indicates that the sessions for this request has been lost. getSession and getApplicationSession() will return null 
@@ -0,0 +1,54 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2015, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.servlet.sip.core;
+
+/**
+ * Generator of the tags, Via branches and Call-IDs of the requests and responses created by the container.
+ *
+ * An implementation is instantiated by the {@link SipApplicationDispatcher} from the idGeneratorClass attribute
+ * of the {@link SipService}, it is called concurrently by all the threads creating messages and must not rely on
+ * any state shared between them. The identifiers generated must not contain the "_" separator used to
+ * encode the application routing information in the tags and branches.
+ */
+public interface IdGenerator {
+	/**
+	 * Called once by the dispatcher before any identifier is generated
+	 *
+	 * @param applicationServerIdHash the hash identifying this server in the cluster, to make
+	 * the branches and Call-IDs unique across the cluster nodes
+	 */
+	void init(String applicationServerIdHash);
+
+	/**
+	 * @param length the number of characters of the tag
+	 * @return a tag of exactly length characters
+	 */
+	String generateTag(int length);
+
+	/**
+	 * @return the unique part of a Via branch, the magic cookie and routing information are added by the caller
+	 */
+	String generateBranchId();
+
+	/**
+	 * @return a new Call-ID, whose leading characters are unique so that it can be truncated to the callIdMaxLength
+	 */
+	String generateCallId();
+}
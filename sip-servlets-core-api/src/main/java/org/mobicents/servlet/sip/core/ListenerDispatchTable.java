@@ -0,0 +1,68 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2015, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.servlet.sip.core;
+
+import java.util.EventListener;
+
+/**
+ * Immutable table of the listeners of a {@link SipContext} for one type of event, built when the listeners are loaded
+ * so that notifying an event doesn't need to go through the lists of listeners of every type.
+ *
+ * The listeners annotated with {@link org.mobicents.servlet.sip.annotation.NonCriticalListener} are kept apart,
+ * to be notified asynchronously through {@link SipListeners#dispatchAsynchronously(Runnable)}.
+ * The arrays are shared by all the notifications and must not be modified.
+ */
+public final class ListenerDispatchTable<T extends EventListener> {
+	private final T[] synchronousListeners;
+	private final T[] asynchronousListeners;
+	private final boolean empty;
+
+	public ListenerDispatchTable(T[] synchronousListeners, T[] asynchronousListeners) {
+		this.synchronousListeners = synchronousListeners;
+		this.asynchronousListeners = asynchronousListeners;
+		this.empty = synchronousListeners.length == 0 && asynchronousListeners.length == 0;
+	}
+
+	/**
+	 * @return true if no listener is interested in the event, in which case the event doesn't even need to be created
+	 */
+	public boolean isEmpty() {
+		return empty;
+	}
+
+	/**
+	 * @return the listeners to notify on the thread the event occurred on
+	 */
+	public T[] getSynchronousListeners() {
+		return synchronousListeners;
+	}
+
+	/**
+	 * @return the non critical listeners, to notify asynchronously
+	 */
+	public T[] getAsynchronousListeners() {
+		return asynchronousListeners;
+	}
+
+	@Override
+	public String toString() {
+		return "synchronousListeners=" + synchronousListeners.length + ", asynchronousListeners=" + asynchronousListeners.length;
+	}
+}
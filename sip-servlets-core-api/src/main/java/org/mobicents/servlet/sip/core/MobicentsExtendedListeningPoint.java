@@ -130,6 +130,11 @@ public interface MobicentsExtendedListeningPoint {
 	 * @return a Record Route Header based on this SIP Listening Point
 	 */
 	SipURI createRecordRouteURI(boolean usePublicAddress);
+	/**
+	 * Drop the Via headers and Record Route URIs prebuilt by this SIP Listening Point
+	 * so that they get rebuilt from its current address and port
+	 */
+	void resetHeaderTemplates();
 	
 	/**
 	 * return true if the ip address maps to 0.0.0.0.
@@ -137,5 +142,10 @@ public interface MobicentsExtendedListeningPoint {
 	 * @return true if the ip adress is a any local address
 	 */
 	boolean isAnyLocalAddress();
+	/**
+	 * Get the traffic statistics of this connector
+	 * @return the traffic statistics of this connector
+	 */
+	SipConnectorStatistics getStatistics();
 
 }
@@ -188,6 +188,16 @@ public interface SipApplicationDispatcher extends SipListenerExt {
 	
 	void setCongestionControlCheckingInterval(long interval);
 	long getCongestionControlCheckingInterval();
+	
+	void setAdaptiveCongestionControlInterval(long interval);
+	long getAdaptiveCongestionControlInterval();
+	void setAdaptiveCongestionControlTargetDelay(long targetDelay);
+	long getAdaptiveCongestionControlTargetDelay();
+	/**
+	 * @return the state of the adaptive congestion control : admission probability of the new requests, 
+	 * smallest delay before processing a request over the last interval, target delay and number of requests rejected
+	 */
+	String getAdaptiveCongestionControlState();
 		
 	CongestionControlPolicy getCongestionControlPolicy();
 	void setCongestionControlPolicy(CongestionControlPolicy congestionControlPolicy);
@@ -202,6 +212,9 @@ public interface SipApplicationDispatcher extends SipListenerExt {
 
 	void setBypassResponseExecutor(boolean bypassResponseExecutor);
 	boolean isBypassResponseExecutor();
+
+	void setUseVirtualThreads(boolean useVirtualThreads);
+	boolean isUseVirtualThreads();
 	
 	void setBaseTimerInterval(int baseTimerInterval);
 	int getBaseTimerInterval();
@@ -230,6 +243,29 @@ public interface SipApplicationDispatcher extends SipListenerExt {
 	
 	void updateResponseStatistics(final Response response, final boolean processed);
 	void updateRequestsStatistics(final Request request, final boolean processed);
+	/**
+	 * Record a latency in the histograms for the SIP method or response class and for the application
+	 * @param latencyType receiveToServlet, servletExecution or requestToFinalResponse
+	 * @param key the SIP method or the response class (2XX, 4XX, ...)
+	 * @param applicationName the application name, can be null
+	 * @param durationNanos the latency in nanoseconds
+	 */
+	void updateLatencyStatistics(final String latencyType, final String key, final String applicationName, final long durationNanos);
+	Map<String, String> getLatencyStatistics();
+	long getLatencyPercentile(String histogramName, double percentile);
+	/**
+	 * @param histogramName the name of the histogram, for example servletExecution/INVITE
+	 * @return the highest latency recorded in microseconds, 0 if nothing has been recorded for this histogram
+	 */
+	long getLatencyMax(String histogramName);
+	void resetLatencyStatistics();
+	/**
+	 * @return the statistics (requests sent, outstanding requests, responses, timeouts and average latency in microseconds)
+	 * of each load balancer the requests sent by the container are spread over, keyed by host:port
+	 */
+	Map<String, String> getLoadBalancerStatistics();
+	void setLoadBalancerSelectionStrategyByName(String loadBalancerSelectionStrategy);
+	String getLoadBalancerSelectionStrategyByName();
 	
 	void setBackToNormalMemoryThreshold(
 			int backToNormalMemoryThreshold);
@@ -240,6 +276,14 @@ public interface SipApplicationDispatcher extends SipListenerExt {
 
 	ExecutorService getAsynchronousExecutor();
 	ScheduledExecutorService getAsynchronousScheduledExecutor();
+	/**
+	 * Create a new group of timers on the timer wheel shared by all the applications, used by the Wheel
+	 * timer service implementation types. Shutting the group down cancels its pending timers without
+	 * affecting the other groups.
+	 * @param name the name of the group, usually the application name and the kind of timers
+	 * @return the executor scheduling the timers of the group
+	 */
+	ScheduledExecutorService createTimerGroup(String name);
 
 	void setSipStack(SipStack sipStack);
 	SipStack getSipStack();
@@ -248,6 +292,11 @@ public interface SipApplicationDispatcher extends SipListenerExt {
 	DNSServerLocator getDNSServerLocator();
 	void setDNSTimeout(int dnsTiemout);
 	int getDNSTimeout();
+	void setDNSCacheTtl(int dnsCacheTtl);
+	int getDNSCacheTtl();
+	void setDNSCacheSize(int dnsCacheSize);
+	int getDNSCacheSize();
+	String getDNSCacheState();
 	
 	DNSResolver getDNSResolver();
 	
@@ -268,5 +317,6 @@ public interface SipApplicationDispatcher extends SipListenerExt {
 	String getApplicationServerIdHash();
 
 	int getTagHashMaxLength();
+	IdGenerator getIdGenerator();
 	CallIdHeader getCallId(MobicentsExtendedListeningPoint extendedListeningPoint, String callId) throws ParseException;
 }
@@ -0,0 +1,148 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2015, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.servlet.sip.core;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Traffic statistics of a single SIP Connector (listening point).
+ *
+ * Updated by the sip application dispatcher on the message path without any lock,
+ * only atomic counters are used. The stack doesn't expose the size of the messages sent,
+ * it is estimated from their headers and Content-Length so that they are not encoded again.
+ */
+public class SipConnectorStatistics {
+	private final AtomicLong requestCount = new AtomicLong();
+	private final AtomicLong responseCount = new AtomicLong();
+	private final AtomicLong bytesReceived = new AtomicLong();
+	private final AtomicLong messagesSent = new AtomicLong();
+	private final AtomicLong bytesSent = new AtomicLong();
+	private final AtomicLong errorCount = new AtomicLong();
+	private final AtomicLong processingTime = new AtomicLong();
+	private final AtomicLong maxTime = new AtomicLong();
+
+	/**
+	 * @param request true if the message received is a request, false if it is a response
+	 * @param size the size in bytes of the message received
+	 */
+	public void messageReceived(boolean request, int size) {
+		if(request) {
+			requestCount.incrementAndGet();
+		} else {
+			responseCount.incrementAndGet();
+		}
+		if(size > 0) {
+			bytesReceived.addAndGet(size);
+		}
+	}
+
+	/**
+	 * @param processingTimeNanos the time it took to the container to process a message received
+	 */
+	public void messageProcessed(long processingTimeNanos) {
+		processingTime.addAndGet(processingTimeNanos);
+		long currentMaxTime = maxTime.get();
+		while (processingTimeNanos > currentMaxTime && !maxTime.compareAndSet(currentMaxTime, processingTimeNanos)) {
+			currentMaxTime = maxTime.get();
+		}
+	}
+
+	/**
+	 * A message, proxied or not, has been sent
+	 * @param size the estimated size in bytes of the message sent
+	 */
+	public void messageSent(int size) {
+		messagesSent.incrementAndGet();
+		if(size > 0) {
+			bytesSent.addAndGet(size);
+		}
+	}
+
+	/**
+	 * A message received couldn't be processed and an error response has been generated by the container or the message has been dropped
+	 */
+	public void errorOccured() {
+		errorCount.incrementAndGet();
+	}
+
+	/**
+	 * @return the number of requests received
+	 */
+	public long getRequestCount() {
+		return requestCount.get();
+	}
+
+	/**
+	 * @return the number of responses received
+	 */
+	public long getResponseCount() {
+		return responseCount.get();
+	}
+
+	/**
+	 * @return the number of bytes received
+	 */
+	public long getBytesReceived() {
+		return bytesReceived.get();
+	}
+
+	/**
+	 * @return the number of messages sent
+	 */
+	public long getMessagesSent() {
+		return messagesSent.get();
+	}
+
+	/**
+	 * @return the estimated number of bytes sent
+	 */
+	public long getBytesSent() {
+		return bytesSent.get();
+	}
+
+	/**
+	 * @return the number of messages that couldn't be processed
+	 */
+	public long getErrorCount() {
+		return errorCount.get();
+	}
+
+	/**
+	 * @return the total time spent processing the messages received, in milliseconds
+	 */
+	public long getProcessingTime() {
+		return TimeUnit.NANOSECONDS.toMillis(processingTime.get());
+	}
+
+	/**
+	 * @return the longest time spent processing a message received, in milliseconds
+	 */
+	public long getMaxTime() {
+		return TimeUnit.NANOSECONDS.toMillis(maxTime.get());
+	}
+
+	@Override
+	public String toString() {
+		return "requestCount=" + getRequestCount() + ", responseCount=" + getResponseCount() + ", bytesReceived=" + getBytesReceived()
+				+ ", messagesSent=" + getMessagesSent() + ", bytesSent=" + getBytesSent() + ", errorCount=" + getErrorCount()
+				+ ", processingTime=" + getProcessingTime() + ", maxTime=" + getMaxTime();
+	}
+}
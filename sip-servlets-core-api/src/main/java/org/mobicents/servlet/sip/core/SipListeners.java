@@ -61,4 +61,15 @@ public interface SipListeners {
 	List<SipConnectorListener> getSipConnectorListeners();
 	ContainerListener getContainerListener();
 
+	ListenerDispatchTable<SipApplicationSessionListener> getSipApplicationSessionListenerTable();
+	ListenerDispatchTable<SipApplicationSessionAttributeListener> getSipApplicationSessionAttributeListenerTable();
+	ListenerDispatchTable<SipSessionListener> getSipSessionListenerTable();
+	ListenerDispatchTable<SipSessionAttributeListener> getSipSessionAttributeListenerTable();
+	/**
+	 * Queue a notification of the non critical listeners, delivered asynchronously with the other notifications queued
+	 * in the meantime, under the classloader of the context
+	 * @param notification the notification to deliver
+	 */
+	void dispatchAsynchronously(Runnable notification);
+
 }
@@ -310,5 +310,19 @@ public interface SipManager {
    */
   public void updateStats();
   
+  public int getPassivationIdleTime();
+  
+  public void setPassivationIdleTime(int passivationIdleTime);
+  
+  public int getMaxResidentSipApplicationSessions();
+  
+  public void setMaxResidentSipApplicationSessions(int maxResidentSipApplicationSessions);
+  
+  public String getPassivationDirectory();
+  
+  public void setPassivationDirectory(String passivationDirectory);
+  
+  public int getPassivatedSessions();
+  
   public Object findSession(String id) throws IOException;
 }
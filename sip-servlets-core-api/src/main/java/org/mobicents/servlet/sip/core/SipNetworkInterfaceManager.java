@@ -26,6 +26,7 @@ import java.util.Iterator;
 import java.util.List;
 
 import javax.servlet.sip.SipURI;
+import javax.sip.SipProvider;
 import javax.sip.message.Message;
 
 
@@ -97,6 +98,15 @@ public interface SipNetworkInterfaceManager {
 	 */
 	MobicentsExtendedListeningPoint findMatchingListeningPoint(String host,
 			int port, String transport);
+	/**
+	 * Retrieve the listening point of the given JAIN SIP provider for the transport given in parameter.
+	 * Doesn't lock nor resolve any host name so that it can be used on the message path.
+	 *
+	 * @param sipProvider the JAIN SIP provider the message has been received or sent through
+	 * @param transport the transport
+	 * @return the matching listening point or null if none has been found
+	 */
+	MobicentsExtendedListeningPoint findMatchingListeningPoint(SipProvider sipProvider, String transport);
 		
 
 }
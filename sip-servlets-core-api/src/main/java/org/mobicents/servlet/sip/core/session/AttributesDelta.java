@@ -0,0 +1,45 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2015, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.servlet.sip.core.session;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The attributes of a session that changed since the previous delta was collected, for the DistributableSipManager 
+ * implementations to replicate only those instead of the whole session.
+ */
+public interface AttributesDelta {
+	/**
+	 * @return the attributes added or replaced, and the ones whose value may have been modified in place, 
+	 * keyed by name with their current value
+	 */
+	Map<String, Object> getModifiedAttributes();
+
+	/**
+	 * @return the names of the attributes removed
+	 */
+	Set<String> getRemovedAttributes();
+
+	/**
+	 * @return true if no attribute changed
+	 */
+	boolean isEmpty();
+}
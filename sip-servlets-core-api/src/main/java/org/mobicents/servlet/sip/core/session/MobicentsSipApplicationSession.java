@@ -22,6 +22,7 @@
 package org.mobicents.servlet.sip.core.session;
 
 import java.util.Set;
+import java.util.concurrent.Executor;
 
 import javax.servlet.http.HttpSession;
 import javax.servlet.sip.ServletTimer;
@@ -52,6 +53,11 @@ public interface MobicentsSipApplicationSession extends SipApplicationSession, S
 
 	boolean addSipSession(MobicentsSipSession mobicentsSipSession);
 
+	/**
+	 * Remove a sip session from this application session only if it is the one registered for its key
+	 */
+	boolean discardSipSession(MobicentsSipSession mobicentsSipSession);
+
 	MobicentsSipApplicationSessionKey getKey();
 
 	void access();	
@@ -78,6 +84,11 @@ public interface MobicentsSipApplicationSession extends SipApplicationSession, S
 	
 	void acquire();
 	void release();
+	/**
+	 * @return the executor serializing the tasks of this application session when the 
+	 * SipApplicationSessionSerial concurrency control mode is used, null otherwise
+	 */
+	Executor getSerialExecutor();
 	
 	MobicentsSipApplicationSession getFacade();
 	
@@ -89,6 +100,11 @@ public interface MobicentsSipApplicationSession extends SipApplicationSession, S
 //	void setExpirationTimerFuture(ScheduledFuture<MobicentsSipApplicationSession> schedule);
 
 	long getSipApplicationSessionTimeout();
+
+	/**
+	 * @return the attributes changed since the previous call, null if they are not tracked and the whole session has to be replicated
+	 */
+	AttributesDelta collectAttributesDelta();
 	
 	Set<MobicentsSipSession> getSipSessions(boolean internal);
 
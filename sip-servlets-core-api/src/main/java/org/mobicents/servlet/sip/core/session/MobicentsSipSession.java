@@ -25,6 +25,7 @@ import java.io.Serializable;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
 
 import javax.servlet.sip.Address;
 import javax.servlet.sip.SipSession;
@@ -139,6 +140,11 @@ public interface MobicentsSipSession extends SipSession, SipSessionExt {
 
 	void setSipSessionAttributeMap(Map<String, Object> sipSessionAttributeMap);
 
+	/**
+	 * @return the attributes changed since the previous call, null if they are not tracked and the whole session has to be replicated
+	 */
+	AttributesDelta collectAttributesDelta();
+
 	void setLocalParty(Address addressImpl);
 
 	void setRemoteParty(Address addressImpl);
@@ -147,6 +153,11 @@ public interface MobicentsSipSession extends SipSession, SipSessionExt {
 	
 	void acquire();
 	void release();
+	/**
+	 * @return the executor serializing the tasks of this session when the 
+	 * SipSessionSerial concurrency control mode is used, null otherwise
+	 */
+	Executor getSerialExecutor();
 	
 	//RFC 3265
 	void addSubscription(MobicentsSipServletMessage sipServletMessage) throws SipException;
@@ -22,6 +22,7 @@ package org.mobicents.servlet.sip;
 
 import gov.nist.javax.sip.ListeningPointExt;
 import gov.nist.javax.sip.TransactionExt;
+import gov.nist.javax.sip.header.RequestLine;
 import gov.nist.javax.sip.header.extensions.ReferredByHeader;
 import gov.nist.javax.sip.header.extensions.SessionExpiresHeader;
 import gov.nist.javax.sip.header.ims.PAssertedIdentityHeader;
@@ -35,6 +36,7 @@ import gov.nist.javax.sip.header.ims.SecurityServerHeader;
 import gov.nist.javax.sip.header.ims.SecurityVerifyHeader;
 import gov.nist.javax.sip.header.ims.ServiceRouteHeader;
 import gov.nist.javax.sip.message.SIPMessage;
+import gov.nist.javax.sip.message.SIPRequest;
 import gov.nist.javax.sip.stack.SIPClientTransaction;
 
 import java.security.MessageDigest;
@@ -43,10 +45,10 @@ import java.text.ParseException;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
-import java.util.UUID;
 
 import javax.sip.InvalidArgumentException;
 import javax.sip.ListeningPoint;
@@ -76,11 +78,14 @@ import javax.sip.header.ErrorInfoHeader;
 import javax.sip.header.EventHeader;
 import javax.sip.header.ExpiresHeader;
 import javax.sip.header.FromHeader;
+import javax.sip.header.Header;
+import javax.sip.header.HeaderAddress;
 import javax.sip.header.InReplyToHeader;
 import javax.sip.header.MaxForwardsHeader;
 import javax.sip.header.MimeVersionHeader;
 import javax.sip.header.MinExpiresHeader;
 import javax.sip.header.OrganizationHeader;
+import javax.sip.header.Parameters;
 import javax.sip.header.PriorityHeader;
 import javax.sip.header.ProxyAuthenticateHeader;
 import javax.sip.header.ProxyAuthorizationHeader;
@@ -109,6 +114,7 @@ import javax.sip.message.Message;
 import javax.sip.message.Request;
 
 import org.apache.log4j.Logger;
+import org.mobicents.servlet.sip.core.IdGenerator;
 import org.mobicents.servlet.sip.core.MobicentsExtendedListeningPoint;
 import org.mobicents.servlet.sip.core.SipApplicationDispatcher;
 import org.mobicents.servlet.sip.core.SipNetworkInterfaceManager;
@@ -274,7 +280,7 @@ public final class JainSipUtils {
 	
 	public static final Map<String, String> HEADER_COMPACT_2_FULL_NAMES_MAPPINGS = new HashMap<String, String>();
 
-	{ // http://www.iana.org/assignments/sip-parameters
+	static { // http://www.iana.org/assignments/sip-parameters
 		// Header Name compact Reference
 		// ----------------- ------- ---------
 		// Call-ID i [RFC3261]
@@ -316,7 +322,8 @@ public final class JainSipUtils {
 		HEADER_COMPACT_2_FULL_NAMES_MAPPINGS.put("r", ReferToHeader.NAME);
 		 HEADER_COMPACT_2_FULL_NAMES_MAPPINGS.put("b", ReferredByHeader.NAME);
 		// headerCompact2FullNamesMappings.put("j", RejectContactHeader);
-		HEADER_COMPACT_2_FULL_NAMES_MAPPINGS.put("d", ContentDispositionHeader.NAME);
+		// "d" is the compact form of Request-Disposition, not of Content-Disposition which has none
+		// headerCompact2FullNamesMappings.put("d", RequestDispositionHeader);
 		 HEADER_COMPACT_2_FULL_NAMES_MAPPINGS.put("x", SessionExpiresHeader.NAME);
 		HEADER_COMPACT_2_FULL_NAMES_MAPPINGS.put("s", SubjectHeader.NAME);
 		HEADER_COMPACT_2_FULL_NAMES_MAPPINGS.put("k", SupportedHeader.NAME);
@@ -366,7 +373,7 @@ public final class JainSipUtils {
 		HEADER_FULL_TO_COMPACT_NAMES_MAPPINGS.put(ReferToHeader.NAME, "r");
 		// headerCompact2FullNamesMappings.put(ReferedByHeader,"b");
 		// headerCompact2FullNamesMappings.put(RejectContactHeader,"j");
-		HEADER_FULL_TO_COMPACT_NAMES_MAPPINGS.put(ContentDispositionHeader.NAME, "d");
+		// headerCompact2FullNamesMappings.put(RequestDispositionHeader,"d");
 		// headerCompact2FullNamesMappings.put(SessionExpiresHeader,"x");
 		HEADER_FULL_TO_COMPACT_NAMES_MAPPINGS.put(SubjectHeader.NAME, "s");
 		HEADER_FULL_TO_COMPACT_NAMES_MAPPINGS.put(SupportedHeader.NAME, "k");
@@ -539,14 +546,14 @@ public final class JainSipUtils {
 	
 	/**
 	 * 
-	 * @param sipNetworkInterfaceManager
-	 * @param transport
-	 * @param branch
+	 * @param appSessionId
+	 * @param appname
+	 * @param idGenerator the generator of the unique part of the branch
 	 * @return
 	 */
-	public static String createBranch(String appSessionId, String appname) {
+	public static String createBranch(String appSessionId, String appname, IdGenerator idGenerator) {
 	    // https://code.google.com/p/sipservlets/issues/detail?id=269
-		return createBranch(appSessionId, appname, UUID.randomUUID().toString());
+		return createBranch(appSessionId, appname, idGenerator.generateBranchId());
     }
 	
 	public static String createBranch(String appSessionId, String appname, String random) {
@@ -856,4 +863,47 @@ public final class JainSipUtils {
 			}
 		}
 	}
+
+	/**
+	 * Create a new request for another leg from the request received on the first one, without cloning 
+	 * the whole request as Message.clone() does.
+	 * 
+	 * Only the request line and the headers which can be modified in place are cloned : the headers with parameters,
+	 * which are handed to the applications as a modifiable Address or Parameterable writing through to them, and the 
+	 * CSeq, Max-Forwards and Content-Length headers updated by the container and the stack. The other headers 
+	 * are only ever replaced, never modified, so their instances are shared by both requests, as is the content.
+	 * 
+	 * @param template the request to copy
+	 * @param excludedHeaderNames the lower case full names of the headers not to copy
+	 * @return the new request
+	 */
+	public static Request createRequestFromTemplate(Request template, Set<String> excludedHeaderNames) {
+		final SIPRequest templateRequest = (SIPRequest) template;
+		final SIPRequest newRequest = new SIPRequest();
+		newRequest.setRequestLine((RequestLine) templateRequest.getRequestLine().clone());
+		final ListIterator<String> headerNames = (ListIterator<String>) templateRequest.getHeaderNames();
+		while (headerNames.hasNext()) {
+			final String headerName = headerNames.next();
+			if(excludedHeaderNames.contains(headerName.toLowerCase()) || ContentLengthHeader.NAME.equalsIgnoreCase(headerName)) {
+				continue;
+			}
+			// adding the headers one by one creates new lists for the multi valued headers, which are modified in place
+			final ListIterator<Header> headers = (ListIterator<Header>) templateRequest.getHeaders(headerName);
+			while (headers.hasNext()) {
+				final Header header = headers.next();
+				if(header instanceof Parameters || header instanceof HeaderAddress || header instanceof CSeqHeader 
+						|| header instanceof MaxForwardsHeader) {
+					newRequest.addHeader((Header) header.clone());
+				} else {
+					newRequest.addHeader(header);
+				}
+			}
+		}
+		final byte[] content = templateRequest.getRawContent();
+		if(content != null) {
+			// the content is never modified in place either, setting it computes the Content-Length
+			newRequest.setMessageContent(content);
+		}
+		return newRequest;
+	}
 }
@@ -0,0 +1,133 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2015, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.servlet.sip.core;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides whether the new requests coming in are admitted, from the time the requests wait between their reception
+ * and the invocation of the servlet.
+ *
+ * As in CoDel, the smallest of these delays over an interval tells whether requests are queueing up: a burst
+ * makes some requests wait but leaves the smallest delay low, only a standing queue raises it above the target.
+ * The probability of admitting a new request is then adjusted once per interval, halved while the smallest delay
+ * stays above the target and increased by a fixed step otherwise, so that the load is shed gradually
+ * instead of all or nothing.
+ */
+public class AdmissionController {
+	private static final double ADMISSION_INCREASE = 0.05;
+	private static final double ADMISSION_DECREASE_FACTOR = 0.5;
+	private static final long NO_DELAY = Long.MAX_VALUE;
+
+	private volatile long targetDelayNanos = TimeUnit.MILLISECONDS.toNanos(50);
+	private volatile double admissionProbability = 1;
+	// smallest delay measured during the current interval, NO_DELAY if none was measured
+	private final AtomicLong minimumDelayNanos = new AtomicLong(NO_DELAY);
+	private volatile long lastMinimumDelayNanos;
+	private final AtomicLong requestsRejected = new AtomicLong();
+
+	/**
+	 * @param delayNanos the time a request waited between its reception and the invocation of the servlet
+	 */
+	public void delayMeasured(long delayNanos) {
+		long minimumDelay = minimumDelayNanos.get();
+		while (delayNanos < minimumDelay && !minimumDelayNanos.compareAndSet(minimumDelay, delayNanos)) {
+			minimumDelay = minimumDelayNanos.get();
+		}
+	}
+
+	/**
+	 * @return true if the new request should be processed, false if it should be rejected
+	 */
+	public boolean admit() {
+		final double probability = admissionProbability;
+		if(probability >= 1 || ThreadLocalRandom.current().nextDouble() < probability) {
+			return true;
+		}
+		requestsRejected.incrementAndGet();
+		return false;
+	}
+
+	/**
+	 * Adjust the admission probability from the delays measured since the previous call, to be called once per interval
+	 *
+	 * @return true if the controller started or stopped rejecting requests
+	 */
+	public synchronized boolean update() {
+		final boolean wasCongested = isCongested();
+		final long minimumDelay = minimumDelayNanos.getAndSet(NO_DELAY);
+		// no delay measured means that no request made it to a servlet, which doesn't tell anything about the load
+		// but could otherwise keep the rejection going forever if the new requests are the only ones
+		if(minimumDelay != NO_DELAY && minimumDelay > targetDelayNanos) {
+			admissionProbability = admissionProbability * ADMISSION_DECREASE_FACTOR;
+		} else if(admissionProbability < 1) {
+			admissionProbability = Math.min(1, admissionProbability + ADMISSION_INCREASE);
+		}
+		lastMinimumDelayNanos = minimumDelay == NO_DELAY ? 0 : minimumDelay;
+		return wasCongested != isCongested();
+	}
+
+	public synchronized void reset() {
+		minimumDelayNanos.set(NO_DELAY);
+		admissionProbability = 1;
+		lastMinimumDelayNanos = 0;
+	}
+
+	/**
+	 * @return true if some of the new requests are being rejected
+	 */
+	public boolean isCongested() {
+		return admissionProbability < 1;
+	}
+
+	/**
+	 * @return the probability for a new request to be admitted, between 0 and 1
+	 */
+	public double getAdmissionProbability() {
+		return admissionProbability;
+	}
+
+	/**
+	 * @return the smallest delay measured during the last interval, in nanoseconds
+	 */
+	public long getLastMinimumDelayNanos() {
+		return lastMinimumDelayNanos;
+	}
+
+	public long getRequestsRejected() {
+		return requestsRejected.get();
+	}
+
+	public long getTargetDelayNanos() {
+		return targetDelayNanos;
+	}
+
+	public void setTargetDelayNanos(long targetDelayNanos) {
+		this.targetDelayNanos = targetDelayNanos;
+	}
+
+	@Override
+	public String toString() {
+		return "admissionProbability=" + admissionProbability + ", lastMinimumDelay=" + TimeUnit.NANOSECONDS.toMicros(lastMinimumDelayNanos)
+				+ "us, targetDelay=" + TimeUnit.NANOSECONDS.toMicros(targetDelayNanos) + "us, requestsRejected=" + requestsRejected.get();
+	}
+}
@@ -19,8 +19,6 @@
 
 package org.mobicents.servlet.sip.core;
 
-import java.util.Random;
-
 import org.apache.log4j.Logger;
 
 /**
@@ -38,21 +36,7 @@ public class ApplicationRoutingHeaderComposer {
 	private static final Logger logger = Logger.getLogger(ApplicationRoutingHeaderComposer.class
 			.getCanonicalName());
 	
-	private static final Random RANDOM = new Random();
 	private static final String TOKEN_SEPARATOR = "_";
-	
-	private final static String reduceRandomValue(String str, int maxChars) {
-		int len = str.length();
-		if(len > maxChars) {
-			return str.substring(len-maxChars, len);
-		} else {
-			return str;
-		}
-	}
-	public final static String randomString(int length) {
-		long randValue = Math.abs(RANDOM.nextInt(1211111) ^ System.nanoTime());
-		return reduceRandomValue(String.valueOf(randValue), length);
-	}
 
 	
 	public final static String[] getAppNameAndSessionId(SipApplicationDispatcher sipApplicationDispatcher, String text) {
@@ -83,17 +67,18 @@ public class ApplicationRoutingHeaderComposer {
 	}		
 	
 	public final static String getHash(SipApplicationDispatcher sipApplicationDispatcher, String  applicationName,  String applicationId) {
-		String text = randomString(sipApplicationDispatcher.getTagHashMaxLength()) + TOKEN_SEPARATOR;
+		final StringBuilder text = new StringBuilder(64);
+		text.append(sipApplicationDispatcher.getIdGenerator().generateTag(sipApplicationDispatcher.getTagHashMaxLength())).append(TOKEN_SEPARATOR);
 		// https://code.google.com/p/sipservlets/issues/detail?id=237
-		text += sipApplicationDispatcher.getApplicationServerIdHash() + TOKEN_SEPARATOR;
-		text += sipApplicationDispatcher.getHashFromApplicationName(applicationName);
+		text.append(sipApplicationDispatcher.getApplicationServerIdHash()).append(TOKEN_SEPARATOR);
+		text.append(sipApplicationDispatcher.getHashFromApplicationName(applicationName));
 		if(applicationId != null && applicationId.length() > 0) {
-			text = text + TOKEN_SEPARATOR + applicationId; 
+			text.append(TOKEN_SEPARATOR).append(applicationId); 
 		}
 		if(logger.isDebugEnabled()) {
 			logger.debug("tag will be equal to " + text);
 		}
-		return text;
+		return text.toString();
 	}
 
 }
@@ -198,13 +198,15 @@ public class DNSAddressResolver implements AddressResolver {
 			if(record instanceof SRVRecord) {
 				SRVRecord srvRecord = (SRVRecord) record;
 				String resolvedName = srvRecord.getTarget().toString();
-				String resolvedHostAddress;
+				int recordPort = srvRecord.getPort();
+				// only the record matching the entry needs its address to be resolved again
+				if(!entryResolvedName.equalsIgnoreCase(resolvedName) 
+						|| !hostPort.equalsIgnoreCase("" + recordPort)) {
+					continue;
+				}
 				try {
-					resolvedHostAddress = InetAddress.getByName(resolvedName).getHostAddress();
-					int recordPort = srvRecord.getPort();
-					if(entryResolvedName.equalsIgnoreCase(resolvedName) 
-							&& hostAddress.equalsIgnoreCase(resolvedHostAddress)
-							&& hostPort.equalsIgnoreCase("" + recordPort)) {
+					String resolvedHostAddress = InetAddress.getByName(resolvedName).getHostAddress();
+					if(hostAddress.equalsIgnoreCase(resolvedHostAddress)) {
 						return entry;
 					}
 				} catch (UnknownHostException e) {
@@ -0,0 +1,140 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2015, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.servlet.sip.core;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Default {@link IdGenerator}, which doesn't share any random generator or lock between the threads.
+ *
+ * The threads take blocks of values from a shared counter and only touch it again once their block is used up, the
+ * branches and Call-IDs are made of the applicationServerIdHash and the next value of the block of the thread,
+ * followed by random characters from the {@link ThreadLocalRandom} of the thread. A value is never handed out twice,
+ * even when the threads come and go, until the counter wraps. All the parts have a fixed width and are encoded in
+ * lower case base 36, so the identifiers of a server all have the same length and are unique across the threads of
+ * the server and across the nodes of the cluster.
+ */
+public class DefaultIdGenerator implements IdGenerator {
+	private static final char[] DIGITS = "0123456789abcdefghijklmnopqrstuvwxyz".toCharArray();
+	private static final int RADIX = DIGITS.length;
+	// number of base 36 digits a positive long is guaranteed to hold
+	private static final int LONG_LENGTH = 12;
+	// 36^12 identifiers can be generated before the counter wraps
+	private static final int COUNTER_LENGTH = 12;
+	private static final long COUNTER_VALUES = 36L * 36 * 36 * 36 * 36 * 36 * 36 * 36 * 36 * 36 * 36 * 36;
+	// number of values taken at once by a thread from the shared counter
+	private static final long COUNTER_BLOCK_SIZE = 1 << 16;
+	private static final int BRANCH_RANDOM_LENGTH = 6;
+	private static final int CALL_ID_RANDOM_LENGTH = 8;
+
+	private final AtomicLong counterBlocks = new AtomicLong();
+	private final ThreadLocal<ThreadState> threadStates = new ThreadLocal<ThreadState>() {
+		@Override
+		protected ThreadState initialValue() {
+			return new ThreadState();
+		}
+	};
+	private volatile char[] applicationServerIdHash = new char[0];
+
+	@Override
+	public void init(String applicationServerIdHash) {
+		if(applicationServerIdHash != null) {
+			this.applicationServerIdHash = applicationServerIdHash.toCharArray();
+		}
+	}
+
+	@Override
+	public String generateTag(int length) {
+		if(length <= 0) {
+			throw new IllegalArgumentException("The length of a tag must be positive : " + length);
+		}
+		final ThreadState threadState = threadStates.get();
+		final char[] buffer = threadState.getBuffer(length);
+		// the tags are already followed by the applicationServerIdHash, so the lowest digits of the counter keep
+		// the successive tags distinct, the leading characters being random
+		final int counterLength = length / 2;
+		encodeRandom(buffer, 0, length - counterLength);
+		encode(threadState.nextCount(), buffer, length - counterLength, counterLength);
+		return new String(buffer, 0, length);
+	}
+
+	@Override
+	public String generateBranchId() {
+		return generate(BRANCH_RANDOM_LENGTH);
+	}
+
+	@Override
+	public String generateCallId() {
+		return generate(CALL_ID_RANDOM_LENGTH);
+	}
+
+	private String generate(int randomLength) {
+		final char[] serverIdHash = applicationServerIdHash;
+		final ThreadState threadState = threadStates.get();
+		final int length = serverIdHash.length + COUNTER_LENGTH + randomLength;
+		final char[] buffer = threadState.getBuffer(length);
+		System.arraycopy(serverIdHash, 0, buffer, 0, serverIdHash.length);
+		int offset = serverIdHash.length;
+		encode(threadState.nextCount(), buffer, offset, COUNTER_LENGTH);
+		offset += COUNTER_LENGTH;
+		encodeRandom(buffer, offset, randomLength);
+		return new String(buffer, 0, length);
+	}
+
+	/**
+	 * Write the length lowest base 36 digits of a positive value, padded with zeros
+	 */
+	private static void encode(long value, char[] buffer, int offset, int length) {
+		long remaining = value;
+		for (int i = offset + length - 1; i >= offset; i--) {
+			buffer[i] = DIGITS[(int) (remaining % RADIX)];
+			remaining /= RADIX;
+		}
+	}
+
+	private static void encodeRandom(char[] buffer, int offset, int length) {
+		final ThreadLocalRandom random = ThreadLocalRandom.current();
+		for (int i = 0; i < length; i += LONG_LENGTH) {
+			encode(random.nextLong() & Long.MAX_VALUE, buffer, offset + i, Math.min(LONG_LENGTH, length - i));
+		}
+	}
+
+	private final class ThreadState {
+		long counter;
+		long counterBlockEnd;
+		char[] buffer = new char[64];
+
+		long nextCount() {
+			if(counter == counterBlockEnd) {
+				counter = (counterBlocks.getAndIncrement() * COUNTER_BLOCK_SIZE) & Long.MAX_VALUE;
+				counterBlockEnd = counter + COUNTER_BLOCK_SIZE;
+			}
+			return counter++ % COUNTER_VALUES;
+		}
+
+		char[] getBuffer(int length) {
+			if(buffer.length < length) {
+				buffer = new char[length];
+			}
+			return buffer;
+		}
+	}
+}
@@ -64,6 +64,10 @@ public class ExtendedListeningPoint implements MobicentsExtendedListeningPoint {
 	private List<String> ipAddresses;
 	private boolean isAnyLocalAddress;
 	private boolean useStaticAddress;
+	private final SipConnectorStatistics statistics = new SipConnectorStatistics();
+	// headers prebuilt from the local and the public address, cloned on each request instead of being recreated
+	private volatile HeaderTemplates localAddressTemplates;
+	private volatile HeaderTemplates publicAddressTemplates;
 	
 //	String host = null;
 	int port = -1;
@@ -182,16 +186,15 @@ public class ExtendedListeningPoint implements MobicentsExtendedListeningPoint {
 	 */
 	public ViaHeader createViaHeader(String branch, boolean usePublicAddress) {
         try {
-        	String host = getIpAddress(usePublicAddress);
-            ViaHeader via = SipFactoryImpl.headerFactory.createViaHeader(host, port, transport, branch);
+            ViaHeader via = (ViaHeader) getHeaderTemplates(usePublicAddress).viaHeader.clone();
+            if(branch != null) {
+            	via.setBranch(branch);
+            }
             return via;
         } catch (ParseException ex) {
         	logger.error ("Unexpected error while creating a via header",ex);
             throw new IllegalArgumentException("Unexpected exception when creating via header ", ex);
-        } catch (InvalidArgumentException e) {
-        	logger.error ("Unexpected error while creating a via header",e);
-            throw new IllegalArgumentException("Unexpected exception when creating via header ", e);
-		}
+        }
     }
 	
 	/**
@@ -201,17 +204,37 @@ public class ExtendedListeningPoint implements MobicentsExtendedListeningPoint {
 	 * @return the record route uri
 	 */
 	public javax.sip.address.SipURI createRecordRouteURI(boolean usePublicAddress) {		
-		try {			
-			String host = getIpAddress(usePublicAddress);
-			SipURI sipUri = SipFactoryImpl.addressFactory.createSipURI(null, host);
-			sipUri.setPort(port);
-			sipUri.setTransportParam(transport);
-			// Do we want to add an ID here?
-			return sipUri;
-		} catch (ParseException ex) {
-        	logger.error ("Unexpected error while creating a record route URI",ex);
-            throw new IllegalArgumentException("Unexpected exception when creating a record route URI", ex);
-        }	
+		// Do we want to add an ID here?
+		return (SipURI) getHeaderTemplates(usePublicAddress).recordRouteURI.clone();
+	}
+	
+	/**
+	 * Retrieve the headers prebuilt from the local or public address of this listening point, building them
+	 * if they have not been yet or if the address or port changed since.
+	 * @param usePublicAddress if true, the host will be the global ip address found by STUN otherwise
+	 *  it will be the local network interface ipaddress
+	 * @return the header templates, never to be modified, only cloned
+	 */
+	private HeaderTemplates getHeaderTemplates(boolean usePublicAddress) {
+		HeaderTemplates headerTemplates = usePublicAddress ? publicAddressTemplates : localAddressTemplates;
+		if(headerTemplates == null) {
+			// building them twice on concurrent first use is harmless, both are equal
+			headerTemplates = new HeaderTemplates(getIpAddress(usePublicAddress), port, transport);
+			if(usePublicAddress) {
+				publicAddressTemplates = headerTemplates;
+			} else {
+				localAddressTemplates = headerTemplates;
+			}
+		}
+		return headerTemplates;
+	}
+	
+	/**
+	 * Drop the prebuilt headers so that they get rebuilt from the current address and port of this listening point
+	 */
+	public void resetHeaderTemplates() {
+		localAddressTemplates = null;
+		publicAddressTemplates = null;
 	}
 	
 	/**
@@ -256,6 +279,7 @@ public class ExtendedListeningPoint implements MobicentsExtendedListeningPoint {
 	 */
 	public void setGlobalIpAddress(String globalIpAddress) {
 		this.globalIpAddress = globalIpAddress;		
+		resetHeaderTemplates();
 	}
 	
 	/**
@@ -264,6 +288,7 @@ public class ExtendedListeningPoint implements MobicentsExtendedListeningPoint {
 	 */
 	public void setGlobalPort(int globalPort) {
 		this.globalPort = globalPort;
+		resetHeaderTemplates();
 	}
 	
 	/**
@@ -340,6 +365,7 @@ public class ExtendedListeningPoint implements MobicentsExtendedListeningPoint {
 
 	public void setPort(int port) {
 		this.port = port;
+		resetHeaderTemplates();
 	}
 
 	/**
@@ -372,4 +398,39 @@ public class ExtendedListeningPoint implements MobicentsExtendedListeningPoint {
 	public SipConnector getSipConnector() {
 		return sipConnector;
 	}
+
+	/**
+	 * @return the traffic statistics of this connector
+	 */
+	public SipConnectorStatistics getStatistics() {
+		return statistics;
+	}
+
+	/**
+	 * Immutable set of the headers built from a given host, port and transport
+	 */
+	private static final class HeaderTemplates {
+		final SipURI recordRouteURI;
+		final ViaHeader viaHeader;
+
+		HeaderTemplates(String host, int port, String transport) {
+			try {
+				recordRouteURI = SipFactoryImpl.addressFactory.createSipURI(null, host);
+				recordRouteURI.setPort(port);
+				recordRouteURI.setTransportParam(transport);
+			} catch (ParseException ex) {
+				logger.error ("Unexpected error while creating a record route URI",ex);
+				throw new IllegalArgumentException("Unexpected exception when creating a record route URI", ex);
+			}
+			try {
+				viaHeader = SipFactoryImpl.headerFactory.createViaHeader(host, port, transport, null);
+			} catch (ParseException ex) {
+				logger.error ("Unexpected error while creating a via header",ex);
+				throw new IllegalArgumentException("Unexpected exception when creating via header ", ex);
+			} catch (InvalidArgumentException e) {
+				logger.error ("Unexpected error while creating a via header",e);
+				throw new IllegalArgumentException("Unexpected exception when creating via header ", e);
+			}
+		}
+	}
 }
@@ -0,0 +1,102 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2015, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.servlet.sip.core;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps track of the number of tasks submitted to an executor which have not completed yet.
+ *
+ * Used around the virtual thread per task executor, which never queues anything, so that the queue based congestion
+ * control still sees the messages being processed.
+ */
+class InFlightCountingExecutorService extends AbstractExecutorService {
+	private final ExecutorService executor;
+	private final AtomicInteger inFlightTasks = new AtomicInteger();
+
+	InFlightCountingExecutorService(ExecutorService executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * @return the number of tasks submitted and not completed yet
+	 */
+	int getInFlightTasks() {
+		return inFlightTasks.get();
+	}
+
+	public void execute(final Runnable command) {
+		if(command == null) {
+			throw new NullPointerException();
+		}
+		inFlightTasks.incrementAndGet();
+		try {
+			executor.execute(new Runnable() {
+				public void run() {
+					try {
+						command.run();
+					} finally {
+						inFlightTasks.decrementAndGet();
+					}
+				}
+
+				@Override
+				public String toString() {
+					return command.toString();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			inFlightTasks.decrementAndGet();
+			throw e;
+		}
+	}
+
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	public List<Runnable> shutdownNow() {
+		final List<Runnable> notStarted = executor.shutdownNow();
+		inFlightTasks.addAndGet(-notStarted.size());
+		return notStarted;
+	}
+
+	public boolean isShutdown() {
+		return executor.isShutdown();
+	}
+
+	public boolean isTerminated() {
+		return executor.isTerminated();
+	}
+
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		return executor.awaitTermination(timeout, unit);
+	}
+
+	@Override
+	public String toString() {
+		return executor + "[inFlightTasks=" + getInFlightTasks() + "]";
+	}
+}
@@ -0,0 +1,176 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2015, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.servlet.sip.core;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free latency histogram with a bounded relative error, recording values in microseconds.
+ *
+ * Values below 16us get their own bucket, above that each power of two is split in 8 linear sub buckets
+ * so that the reported percentiles are within 12.5% of the real value, up to about 2 hours.
+ *
+ * Counters are striped per thread so that the dispatcher threads recording concurrently don't all
+ * contend on the same cache lines, the stripes are only summed up when the histogram is read.
+ */
+public class LatencyHistogram {
+	private static final int LINEAR_BUCKETS = 16;
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	// 2^33 us is a bit more than 2 hours, everything above ends up in the last bucket
+	private static final int MAX_EXPONENT = 33;
+	static final int BUCKETS = LINEAR_BUCKETS + (MAX_EXPONENT - 4 + 1) * SUB_BUCKETS;
+	// each stripe holds the bucket counters followed by the sum of the recorded values
+	private static final int STRIPE_LENGTH = BUCKETS + 1;
+	private static final int STRIPES;
+	static {
+		int stripes = Integer.highestOneBit(Runtime.getRuntime().availableProcessors());
+		STRIPES = Math.max(1, Math.min(stripes, 8));
+	}
+
+	private final AtomicLongArray counters = new AtomicLongArray(STRIPES * STRIPE_LENGTH);
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Record a duration
+	 * @param durationNanos the duration in nanoseconds, as measured with System.nanoTime()
+	 */
+	public void record(long durationNanos) {
+		final long micros = durationNanos < 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(durationNanos);
+		final int stripeOffset = ((int) Thread.currentThread().getId() & (STRIPES - 1)) * STRIPE_LENGTH;
+		counters.incrementAndGet(stripeOffset + bucketIndex(micros));
+		counters.addAndGet(stripeOffset + BUCKETS, micros);
+		long currentMax = max.get();
+		while (micros > currentMax && !max.compareAndSet(currentMax, micros)) {
+			currentMax = max.get();
+		}
+	}
+
+	static int bucketIndex(long micros) {
+		if(micros < LINEAR_BUCKETS) {
+			return (int) micros;
+		}
+		final int exponent = 63 - Long.numberOfLeadingZeros(micros);
+		if(exponent > MAX_EXPONENT) {
+			return BUCKETS - 1;
+		}
+		final int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return LINEAR_BUCKETS + (exponent - 4) * SUB_BUCKETS + subBucket;
+	}
+
+	static long bucketUpperBound(int index) {
+		if(index < LINEAR_BUCKETS) {
+			return index;
+		}
+		final int exponent = (index - LINEAR_BUCKETS) / SUB_BUCKETS + 4;
+		final int subBucket = (index - LINEAR_BUCKETS) % SUB_BUCKETS;
+		return ((long) (SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+	}
+
+	private long[] snapshot() {
+		final long[] buckets = new long[STRIPE_LENGTH];
+		for (int stripe = 0; stripe < STRIPES; stripe++) {
+			final int stripeOffset = stripe * STRIPE_LENGTH;
+			for (int i = 0; i < STRIPE_LENGTH; i++) {
+				buckets[i] += counters.get(stripeOffset + i);
+			}
+		}
+		return buckets;
+	}
+
+	/**
+	 * @return the number of values recorded
+	 */
+	public long getCount() {
+		final long[] buckets = snapshot();
+		long count = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			count += buckets[i];
+		}
+		return count;
+	}
+
+	/**
+	 * @return the highest value recorded in microseconds
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * @param percentile the percentile to compute, between 0 and 100
+	 * @return the value in microseconds below which the given percentage of the recorded values fall, 0 if nothing has been recorded
+	 */
+	public long getPercentile(double percentile) {
+		return getPercentile(snapshot(), percentile);
+	}
+
+	private long getPercentile(long[] buckets, double percentile) {
+		long count = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			count += buckets[i];
+		}
+		if(count == 0) {
+			return 0;
+		}
+		final long rank = Math.max(1, (long) Math.ceil(count * Math.min(100d, Math.max(0d, percentile)) / 100d));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += buckets[i];
+			if(seen >= rank) {
+				return Math.min(bucketUpperBound(i), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	/**
+	 * Reset all the counters, values recorded concurrently to the reset may or may not be kept
+	 */
+	public void reset() {
+		for (int i = 0; i < counters.length(); i++) {
+			counters.set(i, 0);
+		}
+		max.set(0);
+	}
+
+	/**
+	 * @return a one line summary of the histogram, all times are in microseconds
+	 */
+	@Override
+	public String toString() {
+		final long[] buckets = snapshot();
+		long count = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			count += buckets[i];
+		}
+		final StringBuilder summary = new StringBuilder();
+		summary.append("count=").append(count)
+			.append(", mean=").append(count == 0 ? 0 : buckets[BUCKETS] / count)
+			.append(", p50=").append(getPercentile(buckets, 50))
+			.append(", p90=").append(getPercentile(buckets, 90))
+			.append(", p99=").append(getPercentile(buckets, 99))
+			.append(", p99.9=").append(getPercentile(buckets, 99.9))
+			.append(", max=").append(max.get());
+		return summary.toString();
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2015, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.servlet.sip.core;
+
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Latency histograms gathered by the sip application dispatcher.
+ *
+ * Each histogram is identified by the latency type and either a SIP method, a response class (2XX, 4XX, ...)
+ * or an application name prefixed by {@link #APPLICATION_PREFIX}, for example "servletExecution/INVITE"
+ * or "requestToFinalResponse/app:click2call".
+ */
+public class LatencyStatistics {
+	// time between the reception of a request by the container and the invocation of the servlet
+	public static final String RECEIVE_TO_SERVLET = "receiveToServlet";
+	// time spent in the servlet service method
+	public static final String SERVLET_EXECUTION = "servletExecution";
+	// time between the reception of a request and the final response sent back by the application
+	public static final String REQUEST_TO_FINAL_RESPONSE = "requestToFinalResponse";
+	public static final String APPLICATION_PREFIX = "app:";
+	private static final char SEPARATOR = '/';
+	private static final String[] RESPONSE_CLASSES = {"1XX", "2XX", "3XX", "4XX", "5XX", "6XX", "7XX", "8XX", "9XX"};
+
+	private final ConcurrentMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<String, LatencyHistogram>();
+
+	/**
+	 * Record a duration for the given key and for the application
+	 * @param latencyType one of RECEIVE_TO_SERVLET, SERVLET_EXECUTION or REQUEST_TO_FINAL_RESPONSE
+	 * @param key the SIP method or the response class
+	 * @param applicationName the application name, can be null
+	 * @param durationNanos the duration in nanoseconds
+	 */
+	public void record(String latencyType, String key, String applicationName, long durationNanos) {
+		getOrCreateHistogram(latencyType + SEPARATOR + key).record(durationNanos);
+		if(applicationName != null) {
+			getOrCreateHistogram(latencyType + SEPARATOR + APPLICATION_PREFIX + applicationName).record(durationNanos);
+		}
+	}
+
+	private LatencyHistogram getOrCreateHistogram(String name) {
+		LatencyHistogram histogram = histograms.get(name);
+		if(histogram == null) {
+			final LatencyHistogram newHistogram = new LatencyHistogram();
+			histogram = histograms.putIfAbsent(name, newHistogram);
+			if(histogram == null) {
+				histogram = newHistogram;
+			}
+		}
+		return histogram;
+	}
+
+	/**
+	 * @param name the histogram name, for example "servletExecution/INVITE"
+	 * @return the histogram or null if nothing has been recorded for it yet
+	 */
+	public LatencyHistogram getHistogram(String name) {
+		return histograms.get(name);
+	}
+
+	/**
+	 * @return a summary of each histogram sorted by name, all times are in microseconds
+	 */
+	public Map<String, String> getSummaries() {
+		final Map<String, String> summaries = new TreeMap<String, String>();
+		for (Entry<String, LatencyHistogram> histogram : histograms.entrySet()) {
+			summaries.put(histogram.getKey(), histogram.getValue().toString());
+		}
+		return summaries;
+	}
+
+	/**
+	 * @param statusCode the response status code
+	 * @return the response class (1XX, 2XX, ...) the status code belongs to
+	 */
+	public static String getResponseClass(int statusCode) {
+		final int classOfSc = statusCode / 100;
+		if(classOfSc >= 1 && classOfSc <= RESPONSE_CLASSES.length) {
+			return RESPONSE_CLASSES[classOfSc - 1];
+		}
+		return String.valueOf(statusCode);
+	}
+
+	public void reset() {
+		for (LatencyHistogram histogram : histograms.values()) {
+			histogram.reset();
+		}
+	}
+}
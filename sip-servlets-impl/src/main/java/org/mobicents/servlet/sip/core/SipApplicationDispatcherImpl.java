@@ -27,6 +27,7 @@ import gov.nist.javax.sip.ResponseEventExt;
 import gov.nist.javax.sip.SipStackImpl;
 import gov.nist.javax.sip.TransactionExt;
 import gov.nist.javax.sip.message.MessageExt;
+import gov.nist.javax.sip.message.SIPMessage;
 
 import java.io.IOException;
 import java.io.Serializable;
@@ -39,9 +40,13 @@ import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.ThreadFactory;
@@ -92,6 +97,7 @@ import javax.sip.header.MaxForwardsHeader;
 import javax.sip.header.Parameters;
 import javax.sip.header.RouteHeader;
 import javax.sip.header.ViaHeader;
+import javax.sip.message.Message;
 import javax.sip.message.Request;
 import javax.sip.message.Response;
 
@@ -112,6 +118,8 @@ import org.mobicents.servlet.sip.annotation.ConcurrencyControlMode;
 import org.mobicents.servlet.sip.core.b2bua.MobicentsB2BUAHelper;
 import org.mobicents.servlet.sip.core.dispatchers.MessageDispatcher;
 import org.mobicents.servlet.sip.core.dispatchers.MessageDispatcherFactory;
+import org.mobicents.servlet.sip.core.loadbalancer.LoadBalancerSelectionStrategy;
+import org.mobicents.servlet.sip.core.loadbalancer.LoadBalancerSelector;
 import org.mobicents.servlet.sip.core.message.MobicentsSipServletRequest;
 import org.mobicents.servlet.sip.core.proxy.MobicentsProxy;
 import org.mobicents.servlet.sip.core.session.DistributableSipManager;
@@ -120,6 +128,8 @@ import org.mobicents.servlet.sip.core.session.MobicentsSipSession;
 import org.mobicents.servlet.sip.core.session.MobicentsSipSessionKey;
 import org.mobicents.servlet.sip.core.session.SessionManagerUtil;
 import org.mobicents.servlet.sip.core.session.SipApplicationSessionKey;
+import org.mobicents.servlet.sip.core.timers.HashedWheelTimer;
+import org.mobicents.servlet.sip.dns.DNSCache;
 import org.mobicents.servlet.sip.dns.MobicentsDNSResolver;
 import org.mobicents.servlet.sip.listener.SipConnectorListener;
 import org.mobicents.servlet.sip.message.SipFactoryImpl;
@@ -180,12 +190,32 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 		}
 	} 
 	
+	/**
+	 * Task adjusting the admission of the new requests once per adaptive congestion control interval
+	 */
+	private class AdaptiveCongestionControlTask implements Runnable {
+		
+		public void run() {
+			if(admissionController.update()) {
+				final boolean congested = admissionController.isCongested();
+				final String message = "Smallest delay between the reception of a request and its processing over the last " + adaptiveCongestionControlInterval + 
+						" milliseconds : " + TimeUnit.NANOSECONDS.toMillis(admissionController.getLastMinimumDelayNanos()) + 
+						(congested ? " > to" : " <= to") + " the target delay : " + TimeUnit.NANOSECONDS.toMillis(admissionController.getTargetDelayNanos());
+				logger.warn(message + (congested ? " => starting to reject new requests" : " => stopping to reject new requests"));
+				callbackCongestionControlListener(congested, new CongestionControlEvent(
+						org.mobicents.javax.servlet.CongestionControlEvent.Reason.Latency, message));
+			}
+		}
+	}
+	
 	//the logger
 	private static final Logger logger = Logger.getLogger(SipApplicationDispatcherImpl.class);
 	
 	// app server id
 	private String applicationServerId;
 	private String applicationServerIdHash;
+	// generator of the tags, branches and Call-IDs
+	private IdGenerator idGenerator;
 	// ref back to the sip service
 	private SipService sipService = null;
 	//the sip factory implementation
@@ -210,12 +240,15 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 	private DNSServerLocator dnsServerLocator;
 	private int dnsTimeout;
 	private DNSResolver dnsResolver;
+	// time to live in seconds and maximum number of entries of the cache of the DNS lookups, not cached if the time to live is 0
+	private int dnsCacheTtl;
+	private int dnsCacheSize = 1000;
 	
 	// stats
 	private boolean gatherStatistics = true;
 	private static AtomicLong requestsProcessed = new AtomicLong(0);
 	private static AtomicLong responsesProcessed = new AtomicLong(0);
-	static final Map<String, AtomicLong> requestsProcessedByMethod = new ConcurrentHashMap<String, AtomicLong>();
+	static final ConcurrentMap<String, AtomicLong> requestsProcessedByMethod = new ConcurrentHashMap<String, AtomicLong>();
 	static {
 		for (String method : METHODS_SUPPORTED) {
 			requestsProcessedByMethod.put(method, new AtomicLong(0));
@@ -230,7 +263,7 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 	// https://telestax.atlassian.net/browse/MSS-74
 	private static AtomicLong requestsSent = new AtomicLong(0);
 	private static AtomicLong responsesSent= new AtomicLong(0);
-	static final Map<String, AtomicLong> requestsSentByMethod = new ConcurrentHashMap<String, AtomicLong>();
+	static final ConcurrentMap<String, AtomicLong> requestsSentByMethod = new ConcurrentHashMap<String, AtomicLong>();
 	static {
 		for (String method : METHODS_SUPPORTED) {
 			requestsSentByMethod.put(method, new AtomicLong(0));
@@ -242,6 +275,7 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 			responsesSentByStatusCode.put(classOfSc, new AtomicLong(0));
 		}
 	}
+	private final LatencyStatistics latencyStatistics = new LatencyStatistics();
 	// congestion control
 	private boolean memoryToHigh = false;	
 	private double maxMemory;
@@ -262,12 +296,19 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 	private int queueSize;
 	@Deprecated
 	private int backToNormalQueueSize;
+	// adaptive congestion control, disabled if the interval is 0
+	private final AdmissionController admissionController = new AdmissionController();
+	private long adaptiveCongestionControlInterval;
+	private transient ScheduledFuture adaptiveCongestionControlFuture;
 	//used for graceful stops and congestion control mechanism (which is now deprecated)
 	private ScheduledThreadPoolExecutor asynchronousScheduledThreadPoolExecutor = null;
+	// timer wheel shared by the applications using the Wheel timer service implementation types, created on first use
+	private HashedWheelTimer timerWheel = null;
 	
 	// configuration
 	private boolean bypassResponseExecutor = true;
 	private boolean bypassRequestExecutor = true;			
+	private boolean useVirtualThreads = false;
 	private int baseTimerInterval = 500; // base timer interval for jain sip tx
 	private int t2Interval = 4000; // t2 timer interval for jain sip tx
 	private int t4Interval = 5000; // t4 timer interval for jain sip tx
@@ -280,7 +321,8 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 	
 	// This executor is used for async things that don't need to wait on session executors, like CANCEL requests
 	// or when the container is configured to execute every request ASAP without waiting on locks (no concurrency control)
-	private ThreadPoolExecutor asynchronousExecutor = null;
+	// It is a virtual thread per task executor if useVirtualThreads is enabled and the runtime supports it, a ThreadPoolExecutor otherwise
+	private ExecutorService asynchronousExecutor = null;
 	
 	// fatcory for dispatching SIP messages
 	private MessageDispatcherFactory messageDispatcherFactory;
@@ -405,13 +447,45 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 		}
 		applicationServerId = "" + UUID.randomUUID();
 		applicationServerIdHash = GenericUtils.hashString(applicationServerId, tagHashMaxLength);
+		if(sipService.getIdGeneratorClass() != null && sipService.getIdGeneratorClass().trim().length() > 0) {
+			try {
+				idGenerator = (IdGenerator) Class.forName(sipService.getIdGeneratorClass()).newInstance();
+			} catch (Exception e) {
+				logger.error("Couldn't set the IdGenerator " + sipService.getIdGeneratorClass(), e);
+				throw new IllegalArgumentException(e);
+			}
+		} else {
+			idGenerator = new DefaultIdGenerator();
+		}
+		idGenerator.init(applicationServerIdHash);
+		if(logger.isInfoEnabled()) {
+			logger.info("SipApplicationDispatcher will be using " + idGenerator.getClass().getName() + " as IdGenerator");
+		}
 		
 		messageDispatcherFactory = new MessageDispatcherFactory(this);
 		asynchronousScheduledThreadPoolExecutor = new ScheduledThreadPoolExecutor(2, new NamingThreadFactory("sip_servlets_congestion_control"),
 				new ThreadPoolExecutor.CallerRunsPolicy());
 		asynchronousScheduledThreadPoolExecutor.prestartAllCoreThreads();	
+		if(useVirtualThreads) {
+			asynchronousExecutor = createVirtualThreadExecutor();
+		}
+		if(asynchronousExecutor == null) {
+			asynchronousExecutor = createThreadPoolExecutor();
+		}
+		if(dnsServerLocator != null && dnsCacheTtl > 0 && dnsResolver instanceof MobicentsDNSResolver) {
+			((MobicentsDNSResolver) dnsResolver).setDNSCache(new DNSCache(dnsCacheSize, TimeUnit.SECONDS.toMillis(dnsCacheTtl), asynchronousExecutor));
+			if(logger.isInfoEnabled()) {
+				logger.info("DNS lookups will be cached for " + dnsCacheTtl + " seconds, up to " + dnsCacheSize + " entries");
+			}
+		}
+	}
+	
+	/**
+	 * Creates the default executor, a ThreadPoolExecutor sized from the dispatcherThreadPoolSize of the SipService 
+	 */
+	private ThreadPoolExecutor createThreadPoolExecutor() {
 		logger.info("AsynchronousThreadPoolExecutor size is " + sipService.getDispatcherThreadPoolSize());		
-		asynchronousExecutor = new ThreadPoolExecutor(sipService.getDispatcherThreadPoolSize(), 64, 90, TimeUnit.SECONDS,
+		ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(sipService.getDispatcherThreadPoolSize(), 64, 90, TimeUnit.SECONDS,
 				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
 		            private int threadCount = 0;
 		
@@ -422,7 +496,7 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 		            	return thread;
 		            }
         });		
-		asynchronousExecutor.setRejectedExecutionHandler(new RejectedExecutionHandler(){
+		threadPoolExecutor.setRejectedExecutionHandler(new RejectedExecutionHandler(){
 
 			public void rejectedExecution(Runnable r,
 					ThreadPoolExecutor executor) {
@@ -431,6 +505,38 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 			}
 			
 		});
+		return threadPoolExecutor;
+	}
+	
+	/**
+	 * Creates an executor starting a new virtual thread for each task.
+	 * Reflection is used since virtual threads are only available from Java 21 on while the container is still compiled for older runtimes.
+	 * 
+	 * Blocking application code (JDBC, HTTP calls, ...) in the servlets then only parks the virtual thread instead of holding one of the 
+	 * pool threads. Session semaphores and the thread locals set by enterSipApp/exitSipApp are per thread and work the same way.
+	 * 
+	 * Since every task runs on a new thread, the per thread caches only last for a single task : the MD5 digests of the digest
+	 * authentication, the HMAC engines of the RFC 5626 flow tokens and the counter blocks of the DefaultIdGenerator are created
+	 * again for each message, which costs more than with the pool threads.
+	 * 
+	 * Nothing is ever queued by this executor, so its tasks are counted from their submission to their completion for the
+	 * queue based congestion control, see {@link #getNumberOfPendingMessages()}.
+	 *  
+	 * @return the executor or null if the runtime doesn't support virtual threads
+	 */
+	private ExecutorService createVirtualThreadExecutor() {
+		try {
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "MSS-Executor-VirtualThread-", 0L);
+			ThreadFactory threadFactory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+			ExecutorService virtualThreadExecutor = (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, threadFactory);
+			logger.info("Asynchronous Executor uses virtual threads");
+			return new InFlightCountingExecutorService(virtualThreadExecutor);
+		} catch (Exception e) {
+			logger.warn("Virtual threads are not supported by this runtime (" + System.getProperty("java.version") + "), falling back to the thread pool executor", e);
+			return null;
+		}
 	}
 	/**
 	 * {@inheritDoc}
@@ -456,6 +562,7 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 		 		logger.info("No Congestion control background task started since the checking interval is equals to " + congestionControlCheckingInterval + " milliseconds.");
 		 	}
 		}
+		scheduleAdaptiveCongestionControl();
 		Version.printVersion();
 		// outbound interfaces set here and not in sipstandardcontext because
 		// depending on jboss or tomcat context can be started before or after
@@ -504,6 +611,12 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 		}
 		asynchronousScheduledThreadPoolExecutor.shutdownNow();
 		asynchronousExecutor.shutdownNow();						
+		synchronized (this) {
+			if(timerWheel != null) {
+				timerWheel.shutdownNow();
+				timerWheel = null;
+			}
+		}
 		sipApplicationRouter.destroy();
 		
 		stopSipStack();				
@@ -665,7 +778,15 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 	 * Gives the number of pending messages in all queues for all concurrency control modes.
 	 */
 	public int getNumberOfPendingMessages() {
-		return this.asynchronousExecutor.getQueue().size();
+		if(asynchronousExecutor instanceof ThreadPoolExecutor) {
+			return ((ThreadPoolExecutor)asynchronousExecutor).getQueue().size();
+		}
+		if(asynchronousExecutor instanceof InFlightCountingExecutorService) {
+			// with virtual threads every task gets its own thread right away and nothing is ever queued,
+			// the messages still being processed are counted instead
+			return ((InFlightCountingExecutorService)asynchronousExecutor).getInFlightTasks();
+		}
+		return 0;
 //		int size = 0;
 //		Iterator<SipContext> applicationsIterator = this.applicationDeployed
 //				.values().iterator();
@@ -758,6 +879,46 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 	 * @see javax.sip.SipListener#processRequest(javax.sip.RequestEvent)
 	 */
 	public void processRequest(RequestEvent requestEvent) {			
+		if(!gatherStatistics) {
+			// the reception time is still needed by the adaptive congestion control
+			dispatchRequest(requestEvent, adaptiveCongestionControlFuture != null ? System.nanoTime() : 0, null);
+			return;
+		}
+		final long receivedTime = System.nanoTime();
+		final SipConnectorStatistics connectorStatistics = findConnectorStatistics((SipProvider)requestEvent.getSource(), requestEvent.getRequest());
+		if(connectorStatistics != null) {
+			connectorStatistics.messageReceived(true, ((SIPMessage)requestEvent.getRequest()).getSize());
+		}
+		try {
+			dispatchRequest(requestEvent, receivedTime, connectorStatistics);
+		} finally {
+			if(connectorStatistics != null) {
+				connectorStatistics.messageProcessed(System.nanoTime() - receivedTime);
+			}
+		}
+	}
+	
+	/**
+	 * 
+	 * @param sipProvider the sip provider the message has been received or sent through
+	 * @param message the message
+	 * @return the statistics of the connector the message has been received or sent through, null if it can't be found
+	 */
+	private SipConnectorStatistics findConnectorStatistics(SipProvider sipProvider, Message message) {
+		// the topmost via transport is the one the message has been received on, for requests and responses
+		final ViaHeader viaHeader = (ViaHeader) message.getHeader(ViaHeader.NAME);
+		if(viaHeader == null) {
+			return null;
+		}
+		final MobicentsExtendedListeningPoint extendedListeningPoint = sipNetworkInterfaceManager.findMatchingListeningPoint(
+				sipProvider, viaHeader.getTransport());
+		if(extendedListeningPoint != null) {
+			return extendedListeningPoint.getStatistics();
+		}
+		return null;
+	}
+	
+	private void dispatchRequest(RequestEvent requestEvent, long receivedTime, SipConnectorStatistics connectorStatistics) {
 		final SipProvider sipProvider = (SipProvider)requestEvent.getSource();
 		ServerTransaction requestTransaction =  requestEvent.getServerTransaction();
 		final Dialog dialog = requestEvent.getDialog();
@@ -802,6 +963,9 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 				    JainSipUtils.setTransactionTimers(((TransactionExt)requestTransaction), this);				    
 				} catch ( TransactionUnavailableException tae) {
 					logger.error("cannot get a new Server transaction for this request " + request, tae);
+					if(connectorStatistics != null) {
+						connectorStatistics.errorOccured();
+					}
 					// Sends a 500 Internal server error and stops processing.				
 					MessageDispatcher.sendErrorResponse(this, Response.SERVER_INTERNAL_ERROR, requestTransaction, request, sipProvider);				
 	                return;
@@ -823,6 +987,7 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 						transaction,
 						dialog,
 						JainSipUtils.DIALOG_CREATING_METHODS.contains(requestMethod));			
+			sipServletRequest.setReceivedTime(receivedTime);
 			updateRequestsStatistics(request, true);
 			// Check if the request is meant for me. If so, strip the topmost
 			// Route header.
@@ -854,14 +1019,17 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 			
 			try {
 				// congestion control is done here so that the STX is created and a response can be generated back
-				// and that 
-				if(controlCongestion(request, sipServletRequest, dialog, routeHeader, sipProvider)) {
+				// and that, unless the messages are dropped in which case it has been done already
+				if(!CongestionControlPolicy.DropMessage.equals(congestionControlPolicy) && controlCongestion(request, sipServletRequest, dialog, routeHeader, sipProvider)) {
 					return;
 				}
 				messageDispatcherFactory.getRequestDispatcher(sipServletRequest, this).
 					dispatchMessage(sipProvider, sipServletRequest);
 			} catch (DispatcherException e) {
 				logger.error("Unexpected exception while processing request " + request,e);
+				if(connectorStatistics != null) {
+					connectorStatistics.errorOccured();
+				}
 				// Sends an error response if the subsequent request is not an ACK (otherwise it violates RF3261) and stops processing.				
 				if(!Request.ACK.equalsIgnoreCase(requestMethod)) {
 					MessageDispatcher.sendErrorResponse(this, e.getErrorCode(), sipServletRequest, sipProvider);
@@ -869,6 +1037,9 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 				return;
 			} catch (Throwable e) {
 				logger.error("Unexpected exception while processing request " + request,e);
+				if(connectorStatistics != null) {
+					connectorStatistics.errorOccured();
+				}
 				// Sends a 500 Internal server error if the subsequent request is not an ACK (otherwise it violates RF3261) and stops processing.				
 				if(!Request.ACK.equalsIgnoreCase(requestMethod)) {
 					MessageDispatcher.sendErrorResponse(this, Response.SERVER_INTERNAL_ERROR, sipServletRequest, sipProvider);
@@ -877,6 +1048,9 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 			}
 		} catch (Throwable e) {
 			logger.error("Unexpected exception while processing request " + request,e);
+			if(connectorStatistics != null) {
+				connectorStatistics.errorOccured();
+			}
 			// Sends a 500 Internal server error if the subsequent request is not an ACK (otherwise it violates RF3261) and stops processing.				
 			if(!Request.ACK.equalsIgnoreCase(request.getMethod())) {
 				MessageDispatcher.sendErrorResponse(this, Response.SERVER_INTERNAL_ERROR, requestTransaction, request, sipProvider);
@@ -911,7 +1085,8 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 	}
 
 	private boolean controlCongestion(Request request, SipServletRequestImpl sipServletRequest, Dialog dialog, RouteHeader routeHeader, SipProvider sipProvider) {
-		if(rejectSipMessages || memoryToHigh) {
+		final boolean adaptiveCongestion = adaptiveCongestionControlFuture != null && admissionController.isCongested();
+		if(rejectSipMessages || memoryToHigh || adaptiveCongestion) {
 			String method = request.getMethod();
 			boolean goodMethod = method.equals(Request.ACK) || method.equals(Request.PRACK) || method.equals(Request.BYE) || method.equals(Request.CANCEL) || method.equals(Request.UPDATE) || method.equals(Request.INFO);
 			if(logger.isDebugEnabled()) {
@@ -919,19 +1094,29 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 			}
 			if(!goodMethod) {
 				if(dialog == null && (routeHeader == null || ((Parameters)routeHeader.getAddress().getURI()).getParameter(MessageDispatcher.RR_PARAM_PROXY_APP) == null)) {
+					// the adaptive congestion control only rejects a share of the new requests
+					if(!rejectSipMessages && !memoryToHigh && admissionController.admit()) {
+						return false;
+					}
 					if(CongestionControlPolicy.DropMessage.equals(congestionControlPolicy)) {
-						logger.error("dropping request, memory is too high or too many messages present in queues");
+						logger.error("dropping request, memory is too high or too many messages present in queues or waiting for too long");
 						return true;
 					}
 					SipServletResponse sipServletResponse = null;
 					String message = null;
+					CongestionControlEvent.Reason reason = CongestionControlEvent.Reason.Memory;
 					if(rejectSipMessages) {
 						message = "Number of pending messages in the queues : " + numberOfMessagesInQueue + " > to the queue Size : " + queueSize;
 					} else if (memoryToHigh) {
 						message = "Memory used: " + percentageOfMemoryUsed + "% > to the memory threshold : " + memoryThreshold + "%";
+					} else {
+						message = "Requests admitted with a probability of " + admissionController.getAdmissionProbability() + ", the smallest delay before processing a request : " 
+								+ TimeUnit.NANOSECONDS.toMillis(admissionController.getLastMinimumDelayNanos()) + "ms > to the target delay : " 
+								+ TimeUnit.NANOSECONDS.toMillis(admissionController.getTargetDelayNanos()) + "ms";
+						reason = CongestionControlEvent.Reason.Latency;
 					}
 					final CongestionControlEvent congestionControlEvent = new CongestionControlEvent(
-							org.mobicents.javax.servlet.CongestionControlEvent.Reason.Memory, message);
+							reason, message);
 					
 					for (SipContext sipContext : applicationDeployed.values()) {
 						final ContainerListener containerListener = 
@@ -988,24 +1173,119 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 			}
 			requestsStats.incrementAndGet();
 			final String method = request.getMethod();
-			AtomicLong requestsStatsMethod = null;
-			if(processed) {
-				requestsStatsMethod = requestsProcessedByMethod.get(method);
-			} else {
-				requestsStatsMethod = requestsSentByMethod.get(method);
-			}
+			final ConcurrentMap<String, AtomicLong> requestsStatsByMethod = processed ? requestsProcessedByMethod : requestsSentByMethod;
+			AtomicLong requestsStatsMethod = requestsStatsByMethod.get(method);
 			if(requestsStatsMethod == null) {
-				if(processed) {
-					requestsProcessedByMethod.put(method, new AtomicLong());
-				} else {
-					requestsSentByMethod.put(method, new AtomicLong());
+				// extension method not known in advance, the counter is created only once even if several threads race for it
+				final AtomicLong newRequestsStatsMethod = new AtomicLong();
+				requestsStatsMethod = requestsStatsByMethod.putIfAbsent(method, newRequestsStatsMethod);
+				if(requestsStatsMethod == null) {
+					requestsStatsMethod = newRequestsStatsMethod;
 				}
-			} else {
-				requestsStatsMethod.incrementAndGet();
 			}
+			requestsStatsMethod.incrementAndGet();
+		}
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.SipApplicationDispatcher#updateLatencyStatistics(java.lang.String, java.lang.String, java.lang.String, long)
+	 */
+	public void updateLatencyStatistics(final String latencyType, final String key, final String applicationName, final long durationNanos) {
+		if(adaptiveCongestionControlFuture != null && LatencyStatistics.RECEIVE_TO_SERVLET.equals(latencyType)) {
+			admissionController.delayMeasured(durationNanos);
+		}
+		if(gatherStatistics) {
+			latencyStatistics.record(latencyType, key, applicationName, durationNanos);
 		}
 	}
 	
+	/**
+	 * @return a summary (count, mean, p50, p90, p99, p99.9 and max in microseconds) for each latency histogram
+	 */
+	public Map<String, String> getLatencyStatistics() {
+		return latencyStatistics.getSummaries();
+	}
+	
+	/**
+	 * @param histogramName the name of the histogram, for example servletExecution/INVITE or requestToFinalResponse/app:click2call
+	 * @param percentile the percentile to compute, between 0 and 100
+	 * @return the percentile in microseconds, 0 if nothing has been recorded for this histogram
+	 */
+	public long getLatencyPercentile(String histogramName, double percentile) {
+		final LatencyHistogram histogram = latencyStatistics.getHistogram(histogramName);
+		if(histogram != null) {
+			return histogram.getPercentile(percentile);
+		}
+		return 0;
+	}
+	
+	/**
+	 * @param histogramName the name of the histogram, for example servletExecution/INVITE or requestToFinalResponse/app:click2call
+	 * @return the highest latency recorded in microseconds, 0 if nothing has been recorded for this histogram
+	 */
+	public long getLatencyMax(String histogramName) {
+		final LatencyHistogram histogram = latencyStatistics.getHistogram(histogramName);
+		if(histogram != null) {
+			return histogram.getMax();
+		}
+		return 0;
+	}
+	
+	public void resetLatencyStatistics() {
+		latencyStatistics.reset();
+	}
+	
+	/**
+	 * Feed the statistics of the load balancer the request of a client transaction has been sent through, if any.
+	 * Each request is accounted for once, on its first response, its timeout or the termination of its transaction.
+	 * @param transaction the client transaction
+	 * @param responseReceived true if a response has been received for the transaction
+	 * @param timedOut true if the transaction timed out
+	 */
+	private void updateLoadBalancerStatistics(final Transaction transaction, final boolean responseReceived, final boolean timedOut) {
+		if(!(transaction.getApplicationData() instanceof TransactionApplicationData)) {
+			return;
+		}
+		final TransactionApplicationData tad = (TransactionApplicationData) transaction.getApplicationData();
+		final SipLoadBalancer loadBalancer = tad.removeLoadBalancer();
+		if(loadBalancer == null) {
+			return;
+		}
+		final LoadBalancerSelector loadBalancerSelector = sipFactoryImpl.getLoadBalancerSelector();
+		if(responseReceived) {
+			loadBalancerSelector.responseReceived(loadBalancer, System.nanoTime() - tad.getLoadBalancerSendTime());
+		} else if(timedOut) {
+			loadBalancerSelector.requestTimedOut(loadBalancer, System.nanoTime() - tad.getLoadBalancerSendTime());
+		} else {
+			loadBalancerSelector.requestCompleted(loadBalancer);
+		}
+	}
+	
+	/**
+	 * @return the statistics of each load balancer the requests sent by the container are spread over, keyed by host:port
+	 */
+	public Map<String, String> getLoadBalancerStatistics() {
+		return sipFactoryImpl.getLoadBalancerSelector().getStatistics();
+	}
+	
+	/**
+	 * @param loadBalancerSelectionStrategy RoundRobin, LeastOutstanding or LatencyWeighted
+	 */
+	public void setLoadBalancerSelectionStrategyByName(String loadBalancerSelectionStrategy) {
+		sipFactoryImpl.getLoadBalancerSelector().setStrategy(LoadBalancerSelectionStrategy.valueOf(loadBalancerSelectionStrategy));
+		if(logger.isInfoEnabled()) {
+			logger.info("Load Balancer selection strategy set to " + loadBalancerSelectionStrategy);
+		}
+	}
+	
+	/**
+	 * @return the loadBalancerSelectionStrategy
+	 */
+	public String getLoadBalancerSelectionStrategyByName() {
+		return sipFactoryImpl.getLoadBalancerSelector().getStrategy().toString();
+	}
+	
 	/**
 	 * @param requestMethod
 	 */
@@ -1060,6 +1340,25 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 	 * @see javax.sip.SipListener#processResponse(javax.sip.ResponseEvent)
 	 */
 	public void processResponse(ResponseEvent responseEvent) {
+		if(!gatherStatistics) {
+			dispatchResponse(responseEvent);
+			return;
+		}
+		final long receivedTime = System.nanoTime();
+		final SipConnectorStatistics connectorStatistics = findConnectorStatistics((SipProvider)responseEvent.getSource(), responseEvent.getResponse());
+		if(connectorStatistics != null) {
+			connectorStatistics.messageReceived(false, ((SIPMessage)responseEvent.getResponse()).getSize());
+		}
+		try {
+			dispatchResponse(responseEvent);
+		} finally {
+			if(connectorStatistics != null) {
+				connectorStatistics.messageProcessed(System.nanoTime() - receivedTime);
+			}
+		}
+	}
+	
+	private void dispatchResponse(ResponseEvent responseEvent) {
 		final ResponseEventExt responseEventExt = (ResponseEventExt) responseEvent;		
 		final Response response = responseEventExt.getResponse();
 		
@@ -1105,6 +1404,9 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 			}
 			clientTransaction = originalTransaction;			
 		}
+		if(clientTransaction != null && !isRetransmission) {
+			updateLoadBalancerStatistics(clientTransaction, true, false);
+		}
 		
 		// Transate the response to SipServletResponse
 		final SipServletResponseImpl sipServletResponse = (SipServletResponseImpl) sipFactoryImpl.getMobicentsSipServletMessageFactory().createSipServletResponse(				
@@ -1346,6 +1648,9 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 		if(logger.isDebugEnabled()) {
 			logger.debug("transaction " + transaction + " timed out => " + transaction.getRequest().toString());
 		}
+		if(!timeoutEvent.isServerTransaction()) {
+			updateLoadBalancerStatistics(transaction, false, true);
+		}
 
 		final TransactionApplicationData tad = (TransactionApplicationData) transaction.getApplicationData();
 		if(tad != null && tad.getSipServletMessage() != null) {
@@ -1552,6 +1857,9 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 		if(logger.isDebugEnabled()) {
 			logger.info("transaction " + transaction + " terminated => " + transaction.getRequest().toString());
 		}		
+		if(!transactionTerminatedEvent.isServerTransaction()) {
+			updateLoadBalancerStatistics(transaction, false, false);
+		}
 		
 		final TransactionApplicationData tad = (TransactionApplicationData) transaction.getApplicationData();
 		final String branchId = transaction.getBranchId();
@@ -1664,12 +1972,17 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 		return tagHashMaxLength;
 	}
 	
+	@Override
+	public IdGenerator getIdGenerator() {
+		return idGenerator;
+	}
+	
 	@Override
 	public CallIdHeader getCallId(
 			MobicentsExtendedListeningPoint extendedListeningPoint, String callId) throws ParseException {
 		String callIdString = callId;
 		if(callIdString == null) {
-			callIdString = extendedListeningPoint.getSipProvider().getNewCallId().getCallId();
+			callIdString = idGenerator.generateCallId();
 		}
 		if(callIdMaxLength > 0 && callIdString.length() > callIdMaxLength) {
 			callIdString = callIdString.substring(0, callIdMaxLength);
@@ -1884,7 +2197,7 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 		return applicationRouterInfo;
 	}
 
-	public ThreadPoolExecutor getAsynchronousExecutor() {
+	public ExecutorService getAsynchronousExecutor() {
 		return asynchronousExecutor;
 	}
 	
@@ -1892,6 +2205,17 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 		return asynchronousScheduledThreadPoolExecutor;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.SipApplicationDispatcher#createTimerGroup(java.lang.String)
+	 */
+	public synchronized ScheduledExecutorService createTimerGroup(String name) {
+		if(timerWheel == null) {
+			timerWheel = new HashedWheelTimer("sip_servlets_timer_wheel");
+		}
+		return timerWheel.newTimerGroup(name);
+	}
+
 	/**
 	 * Serialize the state info in memory and deserialize it and return the new object. 
 	 * Since there is no clone method this is the only way to get the same object with a new reference 
@@ -1977,6 +2301,40 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 		dnsServerLocator.getDnsLookupPerformer().setDNSTimeout(dnsTimeout);
 	}
 
+	public int getDNSCacheTtl() {
+		return dnsCacheTtl;
+	}
+
+	/**
+	 * @param dnsCacheTtl the time in seconds the DNS lookups are cached for, 0 to not cache them.
+	 * Only taken into account at initialization, by the default DNSResolver. The cache doesn't know the TTLs
+	 * of the DNS records so it should be lower than them, otherwise the failovers done through DNS are delayed
+	 */
+	public void setDNSCacheTtl(int dnsCacheTtl) {
+		this.dnsCacheTtl = dnsCacheTtl;
+	}
+
+	public int getDNSCacheSize() {
+		return dnsCacheSize;
+	}
+
+	/**
+	 * @param dnsCacheSize the maximum number of DNS lookups cached
+	 */
+	public void setDNSCacheSize(int dnsCacheSize) {
+		this.dnsCacheSize = dnsCacheSize;
+	}
+
+	/**
+	 * @return the size and hit statistics of the cache of the DNS lookups, null if they are not cached
+	 */
+	public String getDNSCacheState() {
+		if(dnsResolver instanceof MobicentsDNSResolver && ((MobicentsDNSResolver) dnsResolver).getDNSCache() != null) {
+			return ((MobicentsDNSResolver) dnsResolver).getDNSCache().toString();
+		}
+		return null;
+	}
+
 	
 	// -------------------- JMX and Registration  --------------------
     protected String domain;
@@ -2243,6 +2601,66 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 		}
 	}
 
+	/**
+	 * @param adaptiveCongestionControlInterval the interval in milliseconds at which the admission of the new requests is adjusted, 0 to disable the adaptive congestion control
+	 */
+	public void setAdaptiveCongestionControlInterval(long adaptiveCongestionControlInterval) {
+		if(adaptiveCongestionControlInterval != this.adaptiveCongestionControlInterval) {
+			this.adaptiveCongestionControlInterval = adaptiveCongestionControlInterval;
+			statusLock.lock();
+			try {
+				if(started) {
+					scheduleAdaptiveCongestionControl();
+				}
+			} finally {
+				statusLock.unlock();
+			}
+		}
+	}
+	
+	private void scheduleAdaptiveCongestionControl() {
+		if(adaptiveCongestionControlFuture != null) {
+			adaptiveCongestionControlFuture.cancel(false);
+			adaptiveCongestionControlFuture = null;
+		}
+		admissionController.reset();
+		if(adaptiveCongestionControlInterval > 0) {
+			adaptiveCongestionControlFuture = asynchronousScheduledThreadPoolExecutor.scheduleWithFixedDelay(new AdaptiveCongestionControlTask(), 
+					adaptiveCongestionControlInterval, adaptiveCongestionControlInterval, TimeUnit.MILLISECONDS);
+			if(logger.isInfoEnabled()) {
+		 		logger.info("Adaptive congestion control started, adjusting the admission of new requests every " + adaptiveCongestionControlInterval + 
+		 				" milliseconds for a target delay of " + TimeUnit.NANOSECONDS.toMillis(admissionController.getTargetDelayNanos()) + " milliseconds.");
+		 	}
+		}
+	}
+
+	public long getAdaptiveCongestionControlInterval() {
+		return adaptiveCongestionControlInterval;
+	}
+
+	/**
+	 * @param targetDelay the delay in milliseconds between the reception of a request and its processing 
+	 * above which the adaptive congestion control starts rejecting new requests
+	 */
+	public void setAdaptiveCongestionControlTargetDelay(long targetDelay) {
+		admissionController.setTargetDelayNanos(TimeUnit.MILLISECONDS.toNanos(targetDelay));
+		if(logger.isInfoEnabled()) {
+			logger.info("Adaptive congestion control target delay set to " + targetDelay + " milliseconds");
+		}
+	}
+
+	public long getAdaptiveCongestionControlTargetDelay() {
+		return TimeUnit.NANOSECONDS.toMillis(admissionController.getTargetDelayNanos());
+	}
+
+	/**
+	 * @return the state of the adaptive congestion control : admission probability, smallest delay over the last interval, 
+	 * target delay and number of requests rejected
+	 */
+	public String getAdaptiveCongestionControlState() {
+		return admissionController.toString();
+	}
+
 	/**
 	 * @return the congestionControlCheckingInterval
 	 */
@@ -2347,6 +2765,23 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 		return bypassResponseExecutor;
 	}
 
+	/**
+	 * @param useVirtualThreads whether the asynchronous executor should run the tasks on virtual threads, taken into account at init 
+	 */
+	public void setUseVirtualThreads(boolean useVirtualThreads) {
+		this.useVirtualThreads = useVirtualThreads;
+		if(logger.isInfoEnabled()) {
+			logger.info("Use Virtual Threads enabled ?" + this.useVirtualThreads);
+		}
+	}
+
+	/**
+	 * @return the useVirtualThreads
+	 */
+	public boolean isUseVirtualThreads() {
+		return useVirtualThreads;
+	}
+
 	/**
 	 * @param baseTimerInterval the baseTimerInterval to set
 	 */
@@ -2445,6 +2880,7 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 
 	public void loadBalancerAdded(SipLoadBalancer sipLoadBalancer) {
 		sipLoadBalancers.add(sipLoadBalancer);
+		sipFactoryImpl.getLoadBalancerSelector().addLoadBalancer(sipLoadBalancer);
 		if(sipFactoryImpl.getLoadBalancerToUse() == null) {
 			sipFactoryImpl.setLoadBalancerToUse(sipLoadBalancer);
 		}
@@ -2452,6 +2888,7 @@ public class SipApplicationDispatcherImpl implements SipApplicationDispatcher, S
 
 	public void loadBalancerRemoved(SipLoadBalancer sipLoadBalancer) {
 		sipLoadBalancers.remove(sipLoadBalancer);
+		sipFactoryImpl.getLoadBalancerSelector().removeLoadBalancer(sipLoadBalancer);
 		if(sipFactoryImpl.getLoadBalancerToUse() != null && 
 				sipFactoryImpl.getLoadBalancerToUse().equals(sipLoadBalancer)) {
 			if(sipLoadBalancers.size() > 0) {
@@ -41,6 +41,7 @@ import java.util.concurrent.locks.ReentrantLock;
 
 import javax.servlet.sip.SipURI;
 import javax.sip.ListeningPoint;
+import javax.sip.SipProvider;
 import javax.sip.address.Hop;
 import javax.sip.address.URI;
 import javax.sip.header.RouteHeader;
@@ -129,6 +130,8 @@ public class SipNetworkInterfaceManagerImpl implements SipNetworkInterfaceManage
 	 * @param extendedListeningPoint
 	 */
 	public void addExtendedListeningPoint(MobicentsExtendedListeningPoint extendedListeningPoint) {
+		// the global address found through STUN may have been set after the headers were first built
+		extendedListeningPoint.resetHeaderTemplates();
 		extendedListeningPointList.add(extendedListeningPoint);
 		computeOutboundInterfaces();
 		// Adding to the transport cache map
@@ -181,6 +184,7 @@ public class SipNetworkInterfaceManagerImpl implements SipNetworkInterfaceManage
 				sipContext.notifySipContextListeners(new SipContextEventImpl(SipContextEventType.SIP_CONNECTOR_REMOVED, extendedListeningPoint.getSipConnector()));
 			}
 			extendedListeningPointList.remove(extendedListeningPoint);
+			extendedListeningPoint.resetHeaderTemplates();
 			computeOutboundInterfaces();
 			// removing from the transport cache map
 			Set<MobicentsExtendedListeningPoint> extendedListeningPoints = 
@@ -354,6 +358,20 @@ public class SipNetworkInterfaceManagerImpl implements SipNetworkInterfaceManage
 		return listeningPoint;
 	}		
 	
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.SipNetworkInterfaceManager#findMatchingListeningPoint(javax.sip.SipProvider, java.lang.String)
+	 */
+	public MobicentsExtendedListeningPoint findMatchingListeningPoint(final SipProvider sipProvider, final String transport) {
+		// a sip provider is shared by the listening points bound to the same ip address and port, only the transport differs
+		for (MobicentsExtendedListeningPoint extendedListeningPoint : extendedListeningPointList) {
+			if(extendedListeningPoint.getSipProvider() == sipProvider && extendedListeningPoint.getTransport().equalsIgnoreCase(transport)) {
+				return extendedListeningPoint;
+			}
+		}
+		return null;
+	}
+	
 	/**
 	 * Checks if the port is in the UDP-TCP port numbers (0-65355) range 
 	 * otherwise defaulting to 5060 if UDP, TCP or SCTP or to 5061 if TLS
@@ -22,7 +22,7 @@ package org.mobicents.servlet.sip.core.dispatchers;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
 
 import javax.servlet.Servlet;
 import javax.servlet.ServletException;
@@ -35,7 +35,9 @@ import javax.sip.message.Request;
 import javax.sip.message.Response;
 
 import org.apache.log4j.Logger;
+import org.mobicents.servlet.sip.annotation.ConcurrencyControlMode;
 import org.mobicents.servlet.sip.core.DispatcherException;
+import org.mobicents.servlet.sip.core.LatencyStatistics;
 import org.mobicents.servlet.sip.core.MobicentsSipServlet;
 import org.mobicents.servlet.sip.core.SipApplicationDispatcher;
 import org.mobicents.servlet.sip.core.SipContext;
@@ -365,10 +367,24 @@ public abstract class MessageDispatcher {
 					logger.debug("Invoking instance " + servlet);
 				}
 				
+				final SipApplicationDispatcher sipApplicationDispatcher = sipContext.getSipApplicationDispatcher();
+				final boolean gatherStatistics = sipApplicationDispatcher.isGatherStatistics();
+				// the reception time is also set without statistics when the adaptive congestion control needs it
+				final long receivedTime = request instanceof SipServletRequestImpl ? ((SipServletRequestImpl)request).getReceivedTime() : 0;
+				final long servletEntryTime = gatherStatistics || receivedTime > 0 ? System.nanoTime() : 0;
+				final String applicationName = session.getKey().getApplicationName();
+				if(receivedTime > 0) {
+					sipApplicationDispatcher.updateLatencyStatistics(LatencyStatistics.RECEIVE_TO_SERVLET, request.getMethod(), 
+							applicationName, servletEntryTime - receivedTime);
+				}
 				try {
 					servlet.service(request, null);
 				} finally {			
 					sipServletImpl.deallocate(servlet);
+					if(gatherStatistics) {
+						sipApplicationDispatcher.updateLatencyStatistics(LatencyStatistics.SERVLET_EXECUTION, request.getMethod(), 
+								applicationName, System.nanoTime() - servletEntryTime);
+					}
 				}
 			} finally {
 				sipContext.exitSipContext(oldClassLoader);
@@ -455,10 +471,17 @@ public abstract class MessageDispatcher {
 			try {
 				sipContext.enterSipContext();	
 			
+				final SipApplicationDispatcher sipApplicationDispatcher = sipContext.getSipApplicationDispatcher();
+				final boolean gatherStatistics = sipApplicationDispatcher.isGatherStatistics();
+				final long servletEntryTime = gatherStatistics ? System.nanoTime() : 0;
 				try {				
 					servlet.service(null, response);
 				} finally {
 					sipServletImpl.deallocate(servlet);
+					if(gatherStatistics) {
+						sipApplicationDispatcher.updateLatencyStatistics(LatencyStatistics.SERVLET_EXECUTION, LatencyStatistics.getResponseClass(response.getStatus()), 
+								session.getKey().getApplicationName(), System.nanoTime() - servletEntryTime);
+					}
 				}
 			} finally {
 				sipContext.exitSipContext(oldClassLoader);
@@ -491,16 +514,32 @@ public abstract class MessageDispatcher {
 	public abstract void dispatchMessage(SipProvider sipProvider, SipServletMessageImpl sipServletMessage) throws DispatcherException;
 	
 	/**
-	 * This method return an ExecutorService depending on the current concurrency strategy. It can return the
+	 * This method return an Executor depending on the current concurrency strategy. It can return the
 	 * executor of a sip session, app session or just threadpool executor which doesn't limit concurrent processing
 	 * of requests per app or sip session.
-	 * Since 0.8.1 it always return threadpool executor which doesn't limit concurrent processing since concurrency is achieved through semaphore
+	 * Since 0.8.1 it returns the threadpool executor for the SipSession and SipApplicationSession modes since concurrency is achieved through semaphore, 
+	 * the serial executor of the sip session or sip application session is returned for the SipSessionSerial and SipApplicationSessionSerial modes
 	 * 
 	 * @param sipServletMessage the request you put here must have app and sip session associated
 	 * @return
 	 */
-	public final ExecutorService getConcurrencyModelExecutorService(
+	public final Executor getConcurrencyModelExecutorService(
 			SipContext sipContext, SipServletMessageImpl sipServletMessage) {
-			return this.sipApplicationDispatcher.getAsynchronousExecutor();
+		Executor serialExecutor = null;
+		if(ConcurrencyControlMode.SipSessionSerial.equals(sipContext.getConcurrencyControlMode())) {
+			final MobicentsSipSession sipSession = sipServletMessage.getSipSession();
+			if(sipSession != null) {
+				serialExecutor = sipSession.getSerialExecutor();
+			}
+		} else if(ConcurrencyControlMode.SipApplicationSessionSerial.equals(sipContext.getConcurrencyControlMode())) {
+			final MobicentsSipSession sipSession = sipServletMessage.getSipSession();
+			if(sipSession != null && sipSession.getSipApplicationSession() != null) {
+				serialExecutor = sipSession.getSipApplicationSession().getSerialExecutor();
+			}
+		}
+		if(serialExecutor != null) {
+			return serialExecutor;
+		}
+		return this.sipApplicationDispatcher.getAsynchronousExecutor();
 	}
 }
@@ -0,0 +1,103 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2015, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.servlet.sip.core.loadbalancer;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * How the container picks the load balancer its outgoing initial requests are sent through
+ * when several load balancers are available.
+ */
+public enum LoadBalancerSelectionStrategy {
+	/**
+	 * Each load balancer in turn
+	 */
+	RoundRobin {
+		@Override
+		LoadBalancerStatistics select(LoadBalancerStatistics[] loadBalancers, int sequence) {
+			return loadBalancers[index(sequence, loadBalancers.length)];
+		}
+	},
+	/**
+	 * The load balancer with the fewest requests waiting for a response, each load balancer in turn when there is a tie
+	 */
+	LeastOutstanding {
+		@Override
+		LoadBalancerStatistics select(LoadBalancerStatistics[] loadBalancers, int sequence) {
+			final int start = index(sequence, loadBalancers.length);
+			LoadBalancerStatistics selected = loadBalancers[start];
+			int leastOutstanding = selected.getOutstandingRequests();
+			for (int i = 1; i < loadBalancers.length && leastOutstanding > 0; i++) {
+				final LoadBalancerStatistics candidate = loadBalancers[(start + i) % loadBalancers.length];
+				final int outstanding = candidate.getOutstandingRequests();
+				if(outstanding < leastOutstanding) {
+					selected = candidate;
+					leastOutstanding = outstanding;
+				}
+			}
+			return selected;
+		}
+	},
+	/**
+	 * A load balancer picked at random, with a probability inversely proportional to its average latency.
+	 * Load balancers without any latency measured yet are given the lowest latency measured so they get probed.
+	 */
+	LatencyWeighted {
+		@Override
+		LoadBalancerStatistics select(LoadBalancerStatistics[] loadBalancers, int sequence) {
+			long lowestLatency = Long.MAX_VALUE;
+			for (LoadBalancerStatistics loadBalancer : loadBalancers) {
+				final long latency = loadBalancer.getAverageLatencyNanos();
+				if(latency > 0 && latency < lowestLatency) {
+					lowestLatency = latency;
+				}
+			}
+			if(lowestLatency == Long.MAX_VALUE) {
+				return RoundRobin.select(loadBalancers, sequence);
+			}
+			final double[] weights = new double[loadBalancers.length];
+			double totalWeight = 0;
+			for (int i = 0; i < loadBalancers.length; i++) {
+				final long latency = loadBalancers[i].getAverageLatencyNanos();
+				weights[i] = 1d / (latency > 0 ? latency : lowestLatency);
+				totalWeight += weights[i];
+			}
+			double random = ThreadLocalRandom.current().nextDouble() * totalWeight;
+			for (int i = 0; i < loadBalancers.length; i++) {
+				random -= weights[i];
+				if(random < 0) {
+					return loadBalancers[i];
+				}
+			}
+			return loadBalancers[loadBalancers.length - 1];
+		}
+	};
+
+	/**
+	 * @param loadBalancers the load balancers to choose from, never empty
+	 * @param sequence a number incremented on each selection
+	 * @return the load balancer to use
+	 */
+	abstract LoadBalancerStatistics select(LoadBalancerStatistics[] loadBalancers, int sequence);
+
+	private static int index(int sequence, int length) {
+		return (sequence & Integer.MAX_VALUE) % length;
+	}
+}
@@ -0,0 +1,171 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2015, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.servlet.sip.core.loadbalancer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+import org.mobicents.ha.javax.sip.SipLoadBalancer;
+
+/**
+ * Spreads the requests sent by the container over the load balancers currently alive, following
+ * the configured {@link LoadBalancerSelectionStrategy}, and keeps the statistics each strategy relies on.
+ *
+ * The load balancers are kept in an array replaced on each addition or removal, which only happen on heartbeat changes,
+ * so that the selection doesn't need any lock.
+ */
+public class LoadBalancerSelector {
+	private static final Logger logger = Logger.getLogger(LoadBalancerSelector.class);
+	private static final LoadBalancerStatistics[] NO_LOAD_BALANCERS = new LoadBalancerStatistics[0];
+
+	private volatile LoadBalancerStatistics[] loadBalancers = NO_LOAD_BALANCERS;
+	private volatile LoadBalancerSelectionStrategy strategy = LoadBalancerSelectionStrategy.RoundRobin;
+	private final AtomicInteger sequence = new AtomicInteger();
+
+	public synchronized void addLoadBalancer(SipLoadBalancer sipLoadBalancer) {
+		if(findStatistics(sipLoadBalancer) != null) {
+			return;
+		}
+		final LoadBalancerStatistics[] current = loadBalancers;
+		final LoadBalancerStatistics[] updated = new LoadBalancerStatistics[current.length + 1];
+		System.arraycopy(current, 0, updated, 0, current.length);
+		updated[current.length] = new LoadBalancerStatistics(sipLoadBalancer);
+		loadBalancers = updated;
+		if(logger.isInfoEnabled()) {
+			logger.info("Load Balancer " + updated[current.length].getName() + " added, " + updated.length + " load balancers available");
+		}
+	}
+
+	public synchronized void removeLoadBalancer(SipLoadBalancer sipLoadBalancer) {
+		final List<LoadBalancerStatistics> updated = new ArrayList<LoadBalancerStatistics>(loadBalancers.length);
+		for (LoadBalancerStatistics loadBalancer : loadBalancers) {
+			if(!loadBalancer.getSipLoadBalancer().equals(sipLoadBalancer)) {
+				updated.add(loadBalancer);
+			}
+		}
+		loadBalancers = updated.toArray(NO_LOAD_BALANCERS);
+		if(logger.isInfoEnabled()) {
+			logger.info("Load Balancer " + sipLoadBalancer + " removed, " + updated.size() + " load balancers available");
+		}
+	}
+
+	/**
+	 * @return the load balancer to send the next request through or null if there is none available
+	 */
+	public SipLoadBalancer select() {
+		final LoadBalancerStatistics[] current = loadBalancers;
+		if(current.length == 0) {
+			return null;
+		}
+		if(current.length == 1) {
+			return current[0].getSipLoadBalancer();
+		}
+		return strategy.select(current, sequence.getAndIncrement()).getSipLoadBalancer();
+	}
+
+	/**
+	 * @param host the host address of the load balancer
+	 * @param port the sip port of the load balancer
+	 * @return the load balancer available with this address or null if there is none
+	 */
+	public SipLoadBalancer find(String host, int port) {
+		for (LoadBalancerStatistics loadBalancer : loadBalancers) {
+			final SipLoadBalancer sipLoadBalancer = loadBalancer.getSipLoadBalancer();
+			if(sipLoadBalancer.getSipPort() == port && sipLoadBalancer.getAddress().getHostAddress().equals(host)) {
+				return sipLoadBalancer;
+			}
+		}
+		return null;
+	}
+
+	public boolean isEmpty() {
+		return loadBalancers.length == 0;
+	}
+
+	public void requestSent(SipLoadBalancer sipLoadBalancer) {
+		final LoadBalancerStatistics statistics = findStatistics(sipLoadBalancer);
+		if(statistics != null) {
+			statistics.requestSent();
+		}
+	}
+
+	/**
+	 * @param latencyNanos the time between the request being sent and its first response
+	 */
+	public void responseReceived(SipLoadBalancer sipLoadBalancer, long latencyNanos) {
+		final LoadBalancerStatistics statistics = findStatistics(sipLoadBalancer);
+		if(statistics != null) {
+			statistics.responseReceived(latencyNanos);
+		}
+	}
+
+	/**
+	 * @param elapsedNanos the time between the request being sent and its timeout
+	 */
+	public void requestTimedOut(SipLoadBalancer sipLoadBalancer, long elapsedNanos) {
+		final LoadBalancerStatistics statistics = findStatistics(sipLoadBalancer);
+		if(statistics != null) {
+			statistics.requestTimedOut(elapsedNanos);
+		}
+	}
+
+	/**
+	 * The transaction of a request sent through the load balancer terminated without any response nor timeout
+	 */
+	public void requestCompleted(SipLoadBalancer sipLoadBalancer) {
+		final LoadBalancerStatistics statistics = findStatistics(sipLoadBalancer);
+		if(statistics != null) {
+			statistics.requestCompleted();
+		}
+	}
+
+	private LoadBalancerStatistics findStatistics(SipLoadBalancer sipLoadBalancer) {
+		// a handful of load balancers at most, a linear search is cheaper than hashing
+		for (LoadBalancerStatistics loadBalancer : loadBalancers) {
+			if(loadBalancer.getSipLoadBalancer() == sipLoadBalancer || loadBalancer.getSipLoadBalancer().equals(sipLoadBalancer)) {
+				return loadBalancer;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return the statistics of each load balancer available keyed by host:port, latencies are in microseconds
+	 */
+	public Map<String, String> getStatistics() {
+		final Map<String, String> statistics = new TreeMap<String, String>();
+		for (LoadBalancerStatistics loadBalancer : loadBalancers) {
+			statistics.put(loadBalancer.getName(), loadBalancer.toString());
+		}
+		return statistics;
+	}
+
+	public LoadBalancerSelectionStrategy getStrategy() {
+		return strategy;
+	}
+
+	public void setStrategy(LoadBalancerSelectionStrategy strategy) {
+		this.strategy = strategy;
+	}
+}
@@ -0,0 +1,150 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2015, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.servlet.sip.core.loadbalancer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.mobicents.ha.javax.sip.SipLoadBalancer;
+
+/**
+ * Traffic statistics of the requests sent by the container through a single load balancer.
+ *
+ * Updated on the message path without any lock, only atomic counters are used. The latency is a moving
+ * average (same smoothing as the TCP round trip time estimation) of the time between a request being sent
+ * to the load balancer and the first response coming back through it.
+ */
+public class LoadBalancerStatistics {
+	// weight of a new sample in the moving average, 1/8
+	private static final int LATENCY_SMOOTHING_SHIFT = 3;
+
+	private final SipLoadBalancer sipLoadBalancer;
+	private final String name;
+	private final AtomicLong requestsSent = new AtomicLong();
+	private final AtomicInteger outstandingRequests = new AtomicInteger();
+	private final AtomicLong responsesReceived = new AtomicLong();
+	private final AtomicLong timeouts = new AtomicLong();
+	// 0 until the first sample
+	private final AtomicLong averageLatency = new AtomicLong();
+
+	public LoadBalancerStatistics(SipLoadBalancer sipLoadBalancer) {
+		this.sipLoadBalancer = sipLoadBalancer;
+		this.name = sipLoadBalancer.getAddress().getHostAddress() + ":" + sipLoadBalancer.getSipPort();
+	}
+
+	public SipLoadBalancer getSipLoadBalancer() {
+		return sipLoadBalancer;
+	}
+
+	/**
+	 * @return the host:port of the load balancer
+	 */
+	public String getName() {
+		return name;
+	}
+
+	void requestSent() {
+		requestsSent.incrementAndGet();
+		outstandingRequests.incrementAndGet();
+	}
+
+	/**
+	 * @param latencyNanos the time between the request being sent and its first response
+	 */
+	void responseReceived(long latencyNanos) {
+		responsesReceived.incrementAndGet();
+		requestCompleted();
+		updateAverageLatency(latencyNanos);
+	}
+
+	/**
+	 * @param elapsedNanos the time between the request being sent and its timeout, it penalizes the average latency
+	 */
+	void requestTimedOut(long elapsedNanos) {
+		timeouts.incrementAndGet();
+		requestCompleted();
+		updateAverageLatency(elapsedNanos);
+	}
+
+	/**
+	 * The transaction terminated without any response nor timeout (ACK, transport error, ...)
+	 */
+	void requestCompleted() {
+		int outstanding = outstandingRequests.get();
+		while (outstanding > 0 && !outstandingRequests.compareAndSet(outstanding, outstanding - 1)) {
+			outstanding = outstandingRequests.get();
+		}
+	}
+
+	private void updateAverageLatency(long latencyNanos) {
+		if(latencyNanos <= 0) {
+			return;
+		}
+		long current = averageLatency.get();
+		long updated = current == 0 ? latencyNanos : current + ((latencyNanos - current) >> LATENCY_SMOOTHING_SHIFT);
+		while (!averageLatency.compareAndSet(current, updated)) {
+			current = averageLatency.get();
+			updated = current == 0 ? latencyNanos : current + ((latencyNanos - current) >> LATENCY_SMOOTHING_SHIFT);
+		}
+	}
+
+	/**
+	 * @return the number of requests sent through this load balancer
+	 */
+	public long getRequestsSent() {
+		return requestsSent.get();
+	}
+
+	/**
+	 * @return the number of requests sent through this load balancer still waiting for a response
+	 */
+	public int getOutstandingRequests() {
+		return outstandingRequests.get();
+	}
+
+	/**
+	 * @return the number of requests which got a response back through this load balancer
+	 */
+	public long getResponsesReceived() {
+		return responsesReceived.get();
+	}
+
+	/**
+	 * @return the number of requests sent through this load balancer which timed out
+	 */
+	public long getTimeouts() {
+		return timeouts.get();
+	}
+
+	/**
+	 * @return the average latency in nanoseconds, 0 if no response has been received yet
+	 */
+	public long getAverageLatencyNanos() {
+		return averageLatency.get();
+	}
+
+	@Override
+	public String toString() {
+		return "requestsSent=" + getRequestsSent() + ", outstandingRequests=" + getOutstandingRequests()
+				+ ", responsesReceived=" + getResponsesReceived() + ", timeouts=" + getTimeouts()
+				+ ", averageLatency=" + TimeUnit.NANOSECONDS.toMicros(getAverageLatencyNanos());
+	}
+}
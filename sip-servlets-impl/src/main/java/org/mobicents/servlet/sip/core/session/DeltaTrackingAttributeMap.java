@@ -0,0 +1,542 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2015, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.servlet.sip.core.session;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.log4j.Logger;
+import org.mobicents.servlet.sip.annotation.ImmutableAttribute;
+
+/**
+ * Attribute map of the sessions recording the names of the attributes added, replaced and removed since the previous
+ * delta was collected, so that the DistributableSipManager implementations can replicate only the attributes that changed.
+ *
+ * An application can also modify the value of an attribute in place, without setting it again. When the mutable values
+ * are tracked, which is the default, an attribute read by the application is then considered as modified unless its value
+ * is immutable : a String, a primitive wrapper, an enum or an instance of a class annotated with {@link ImmutableAttribute}.
+ *
+ * The views of the map are read only, the attributes are only modified through the map itself.
+ *
+ * The attributes of an idle session can be passivated to a {@link SessionAttributeStore}, they are then read back
+ * transparently on the next access to the map. The attributes of a map wrapping a map shared with another owner
+ * are never passivated.
+ */
+public class DeltaTrackingAttributeMap implements ConcurrentMap<String, Object>, Serializable {
+	private static final long serialVersionUID = 1L;
+	private static final Logger logger = Logger.getLogger(DeltaTrackingAttributeMap.class);
+
+	private static final Set<Class<?>> IMMUTABLE_CLASSES = new HashSet<Class<?>>();
+	static {
+		IMMUTABLE_CLASSES.add(String.class);
+		IMMUTABLE_CLASSES.add(Boolean.class);
+		IMMUTABLE_CLASSES.add(Character.class);
+		IMMUTABLE_CLASSES.add(Byte.class);
+		IMMUTABLE_CLASSES.add(Short.class);
+		IMMUTABLE_CLASSES.add(Integer.class);
+		IMMUTABLE_CLASSES.add(Long.class);
+		IMMUTABLE_CLASSES.add(Float.class);
+		IMMUTABLE_CLASSES.add(Double.class);
+		IMMUTABLE_CLASSES.add(BigInteger.class);
+		IMMUTABLE_CLASSES.add(BigDecimal.class);
+		IMMUTABLE_CLASSES.add(Class.class);
+	}
+	// cache of the immutability of the classes of the values, the annotation lookup being comparatively costly.
+	// A ClassValue doesn't keep the classes of the applications, and so their classloaders, from being unloaded on undeploy
+	private static final ClassValue<Boolean> immutableClasses = new ClassValue<Boolean>() {
+		@Override
+		protected Boolean computeValue(Class<?> valueClass) {
+			return valueClass.isAnnotationPresent(ImmutableAttribute.class);
+		}
+	};
+
+	// null while the attributes are passivated
+	private volatile ConcurrentMap<String, Object> attributes;
+	private volatile boolean mutableValuesTracked = true;
+	// true if the attributes are shared with the owner of the wrapped map, which doesn't know about the passivation
+	private transient boolean wrapped;
+	// the changes since the previous delta, replaced on each collection. The changes are recorded under the read lock
+	// and replaced under the write lock, so that a change recorded to the changes being collected is not lost
+	private transient Changes changes = new Changes();
+	private transient ReadWriteLock changesLock = new ReentrantReadWriteLock();
+	// maximum time a passivation waits for the modifications in progress before giving up
+	private static final long PASSIVATION_MAX_WAIT = 100;
+
+	// the modifications which have read the attributes and not completed yet, a passivation waits for them
+	// on the monitor of the counter, notified when it drops to 0
+	private transient AtomicInteger modificationsInProgress = new AtomicInteger();
+	// the location of the attributes while passivated, guarded by the lock of the map
+	private transient SessionAttributeStore passivationStore;
+	private transient SessionAttributeStore.Record passivationRecord;
+	private transient Runnable activationCallback;
+
+	public DeltaTrackingAttributeMap() {
+		attributes = new ConcurrentHashMap<String, Object>();
+	}
+
+	/**
+	 * @param attributes the initial attributes, not considered as changed
+	 */
+	public DeltaTrackingAttributeMap(Map<String, Object> attributes) {
+		this.attributes = new ConcurrentHashMap<String, Object>(attributes);
+	}
+
+	private DeltaTrackingAttributeMap(ConcurrentMap<String, Object> attributes, boolean wrapped) {
+		this.attributes = attributes;
+		this.wrapped = wrapped;
+	}
+
+	/**
+	 * Track the changes done through the returned map to the specified map, which is not copied so that it can
+	 * still be shared with its other owners. The changes done directly to the wrapped map are not tracked.
+	 *
+	 * @param attributes the attributes to wrap, not considered as changed
+	 * @return the map wrapping the attributes
+	 */
+	public static DeltaTrackingAttributeMap wrap(ConcurrentMap<String, Object> attributes) {
+		return new DeltaTrackingAttributeMap(attributes, true);
+	}
+
+	/**
+	 * Return the changes since the previous call and start recording the next ones
+	 *
+	 * @return the attributes changed since the previous call
+	 */
+	public AttributesDelta collectDelta() {
+		final Changes collectedChanges;
+		final Lock lock = changesLock.writeLock();
+		lock.lock();
+		try {
+			collectedChanges = changes;
+			changes = new Changes();
+		} finally {
+			lock.unlock();
+		}
+		final Map<String, Object> modifiedAttributes = new HashMap<String, Object>(collectedChanges.modified.size());
+		final Set<String> removedAttributes = new HashSet<String>(collectedChanges.removed);
+		for (String name : collectedChanges.modified) {
+			final Object value = attributes().get(name);
+			if(value != null) {
+				modifiedAttributes.put(name, value);
+				removedAttributes.remove(name);
+			}
+		}
+		return new Delta(Collections.unmodifiableMap(modifiedAttributes), Collections.unmodifiableSet(removedAttributes));
+	}
+
+	/**
+	 * To be called on the reads of the application, which may modify the value in place afterwards
+	 *
+	 * @param name the name of the attribute read
+	 * @return the value of the attribute
+	 */
+	public Object getAttribute(String name) {
+		final Object value = attributes().get(name);
+		if(value != null && mutableValuesTracked && !isImmutable(value)) {
+			recordModified(name);
+		}
+		return value;
+	}
+
+	private void recordModified(String name) {
+		final Lock lock = changesLock.readLock();
+		lock.lock();
+		try {
+			changes.modified(name);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void recordRemoved(String name) {
+		final Lock lock = changesLock.readLock();
+		lock.lock();
+		try {
+			changes.removed(name);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @param mutableValuesTracked false to only consider the attributes set or removed as changed, for applications
+	 * which always set an attribute again after modifying its value
+	 */
+	public void setMutableValuesTracked(boolean mutableValuesTracked) {
+		this.mutableValuesTracked = mutableValuesTracked;
+	}
+
+	public boolean isMutableValuesTracked() {
+		return mutableValuesTracked;
+	}
+
+	static boolean isImmutable(Object value) {
+		final Class<?> valueClass = value.getClass();
+		if(IMMUTABLE_CLASSES.contains(valueClass) || value instanceof Enum) {
+			return true;
+		}
+		return immutableClasses.get(valueClass);
+	}
+
+	/**
+	 * Write the attributes to the store and release them from the heap until the next access to the map
+	 *
+	 * @param store the store to write the attributes to
+	 * @param activationCallback run once the attributes have been read back, null if none
+	 * @return true if the attributes have been passivated, false if there are none, they are already passivated,
+	 * they are shared, they are still being modified or they couldn't be written to the store
+	 */
+	public synchronized boolean passivate(SessionAttributeStore store, Runnable activationCallback) {
+		final ConcurrentMap<String, Object> currentAttributes = attributes;
+		if(wrapped || currentAttributes == null || currentAttributes.isEmpty()) {
+			return false;
+		}
+		// the accesses from now on wait for the passivation to complete and read the attributes back,
+		// the modifications which have already read the attributes are left to complete before they are written
+		attributes = null;
+		if(!awaitModifications()) {
+			attributes = currentAttributes;
+			if(logger.isDebugEnabled()) {
+				logger.debug("The session attributes " + currentAttributes.keySet() + " are still being modified, they stay on the heap");
+			}
+			return false;
+		}
+		try {
+			passivationRecord = store.write(currentAttributes);
+		} catch (IOException e) {
+			attributes = currentAttributes;
+			if(logger.isDebugEnabled()) {
+				logger.debug("Couldn't passivate the session attributes " + currentAttributes.keySet() + ", they stay on the heap", e);
+			}
+			return false;
+		}
+		passivationStore = store;
+		this.activationCallback = activationCallback;
+		return true;
+	}
+
+	/**
+	 * @return true if no modification is in progress anymore, false if they didn't complete in time
+	 */
+	private boolean awaitModifications() {
+		final long deadline = System.currentTimeMillis() + PASSIVATION_MAX_WAIT;
+		synchronized (modificationsInProgress) {
+			while (modificationsInProgress.get() > 0) {
+				final long remaining = deadline - System.currentTimeMillis();
+				if(remaining <= 0) {
+					return false;
+				}
+				try {
+					modificationsInProgress.wait(remaining);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	private void modificationCompleted() {
+		if(modificationsInProgress.decrementAndGet() == 0 && attributes == null) {
+			// a passivation may be waiting for this modification
+			synchronized (modificationsInProgress) {
+				modificationsInProgress.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * @return true if the attributes are passivated, in which case they are read back on the next access to the map
+	 */
+	public boolean isPassivated() {
+		return attributes == null;
+	}
+
+	/**
+	 * Read the attributes back now if they are passivated, instead of on the next access to the map
+	 *
+	 * @throws IllegalStateException if the passivated attributes couldn't be read back
+	 */
+	public void activate() {
+		attributes();
+	}
+
+	private ConcurrentMap<String, Object> attributes() {
+		final ConcurrentMap<String, Object> currentAttributes = attributes;
+		if(currentAttributes != null) {
+			return currentAttributes;
+		}
+		return activateAttributes();
+	}
+
+	/**
+	 * @return the attributes to modify, the modification being counted as in progress until it completes
+	 */
+	private ConcurrentMap<String, Object> attributesForModification() {
+		while (true) {
+			modificationsInProgress.incrementAndGet();
+			final ConcurrentMap<String, Object> currentAttributes = attributes;
+			if(currentAttributes != null) {
+				return currentAttributes;
+			}
+			// not counted while waiting for a passivation in progress, which would otherwise wait for this modification
+			modificationCompleted();
+			activateAttributes();
+		}
+	}
+
+	private ConcurrentMap<String, Object> activateAttributes() {
+		final ConcurrentMap<String, Object> activatedAttributes;
+		final Runnable callback;
+		synchronized (this) {
+			if(attributes != null) {
+				// activated by another thread in the meantime
+				return attributes;
+			}
+			try {
+				activatedAttributes = readPassivatedAttributes();
+			} catch (Exception e) {
+				// the record is left in the store, so that the attributes can be read again on the next access
+				throw new IllegalStateException("Couldn't read back the passivated session attributes", e);
+			}
+			callback = activationCallback;
+			passivationStore = null;
+			passivationRecord = null;
+			activationCallback = null;
+			attributes = activatedAttributes;
+		}
+		if(callback != null) {
+			callback.run();
+		}
+		return activatedAttributes;
+	}
+
+	@SuppressWarnings("unchecked")
+	private ConcurrentMap<String, Object> readPassivatedAttributes() throws IOException, ClassNotFoundException {
+		return (ConcurrentMap<String, Object>) passivationStore.read(passivationRecord);
+	}
+
+	public Object put(String name, Object value) {
+		final ConcurrentMap<String, Object> currentAttributes = attributesForModification();
+		try {
+			final Object previousValue = currentAttributes.put(name, value);
+			recordModified(name);
+			return previousValue;
+		} finally {
+			modificationCompleted();
+		}
+	}
+
+	public Object putIfAbsent(String name, Object value) {
+		final ConcurrentMap<String, Object> currentAttributes = attributesForModification();
+		try {
+			final Object previousValue = currentAttributes.putIfAbsent(name, value);
+			if(previousValue == null) {
+				recordModified(name);
+			}
+			return previousValue;
+		} finally {
+			modificationCompleted();
+		}
+	}
+
+	public void putAll(Map<? extends String, ? extends Object> map) {
+		for (Map.Entry<? extends String, ? extends Object> entry : map.entrySet()) {
+			put(entry.getKey(), entry.getValue());
+		}
+	}
+
+	public Object replace(String name, Object value) {
+		final ConcurrentMap<String, Object> currentAttributes = attributesForModification();
+		try {
+			final Object previousValue = currentAttributes.replace(name, value);
+			if(previousValue != null) {
+				recordModified(name);
+			}
+			return previousValue;
+		} finally {
+			modificationCompleted();
+		}
+	}
+
+	public boolean replace(String name, Object oldValue, Object newValue) {
+		final ConcurrentMap<String, Object> currentAttributes = attributesForModification();
+		try {
+			if(currentAttributes.replace(name, oldValue, newValue)) {
+				recordModified(name);
+				return true;
+			}
+			return false;
+		} finally {
+			modificationCompleted();
+		}
+	}
+
+	public Object remove(Object name) {
+		final ConcurrentMap<String, Object> currentAttributes = attributesForModification();
+		try {
+			final Object previousValue = currentAttributes.remove(name);
+			if(previousValue != null) {
+				recordRemoved((String) name);
+			}
+			return previousValue;
+		} finally {
+			modificationCompleted();
+		}
+	}
+
+	public boolean remove(Object name, Object value) {
+		final ConcurrentMap<String, Object> currentAttributes = attributesForModification();
+		try {
+			if(currentAttributes.remove(name, value)) {
+				recordRemoved((String) name);
+				return true;
+			}
+			return false;
+		} finally {
+			modificationCompleted();
+		}
+	}
+
+	public void clear() {
+		for (String name : attributes().keySet()) {
+			remove(name);
+		}
+	}
+
+	public Object get(Object name) {
+		return attributes().get(name);
+	}
+
+	public boolean containsKey(Object name) {
+		return attributes().containsKey(name);
+	}
+
+	public boolean containsValue(Object value) {
+		return attributes().containsValue(value);
+	}
+
+	public int size() {
+		return attributes().size();
+	}
+
+	public boolean isEmpty() {
+		return attributes().isEmpty();
+	}
+
+	public Set<String> keySet() {
+		return Collections.unmodifiableSet(attributes().keySet());
+	}
+
+	public Collection<Object> values() {
+		return Collections.unmodifiableCollection(attributes().values());
+	}
+
+	public Set<Map.Entry<String, Object>> entrySet() {
+		return Collections.unmodifiableMap(attributes()).entrySet();
+	}
+
+	@Override
+	public boolean equals(Object object) {
+		return object == this || attributes().equals(object);
+	}
+
+	@Override
+	public int hashCode() {
+		return attributes().hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return attributes().toString();
+	}
+
+	private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+		// the passivated attributes are read back to be written along with the map
+		attributes();
+		out.defaultWriteObject();
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		changes = new Changes();
+		changesLock = new ReentrantReadWriteLock();
+		modificationsInProgress = new AtomicInteger();
+	}
+
+	private static final class Changes {
+		final Set<String> modified = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+		final Set<String> removed = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+		void modified(String name) {
+			modified.add(name);
+			removed.remove(name);
+		}
+
+		void removed(String name) {
+			removed.add(name);
+			modified.remove(name);
+		}
+	}
+
+	private static final class Delta implements AttributesDelta {
+		private final Map<String, Object> modifiedAttributes;
+		private final Set<String> removedAttributes;
+
+		Delta(Map<String, Object> modifiedAttributes, Set<String> removedAttributes) {
+			this.modifiedAttributes = modifiedAttributes;
+			this.removedAttributes = removedAttributes;
+		}
+
+		public Map<String, Object> getModifiedAttributes() {
+			return modifiedAttributes;
+		}
+
+		public Set<String> getRemovedAttributes() {
+			return removedAttributes;
+		}
+
+		public boolean isEmpty() {
+			return modifiedAttributes.isEmpty() && removedAttributes.isEmpty();
+		}
+
+		@Override
+		public String toString() {
+			return "modified=" + modifiedAttributes.keySet() + ", removed=" + removedAttributes;
+		}
+	}
+}
@@ -0,0 +1,281 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2015, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.servlet.sip.core.session;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.StreamCorruptedException;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.sip.message.Message;
+
+/**
+ * Compact binary format used by the Externalizable sip servlets objects (messages, session keys and facades)
+ * when they are replicated or passivated.
+ *
+ * Compared to the legacy format :
+ * <ul>
+ * <li>keys are written field by field instead of their string form, they don't have to be parsed back,</li>
+ * <li>attributes are written as name/value pairs instead of an Object[][],</li>
+ * <li>SIP messages are written as length prefixed UTF-8 bytes instead of writeUTF, which is limited to 64KB.</li>
+ * </ul>
+ *
+ * Each object written in this format starts with {@link #FORMAT_MARKER} followed by the format version, written
+ * where the legacy format writes a session key or session id string. A reader can thus tell both formats apart
+ * and still read objects written by nodes running a previous version.
+ *
+ * The nodes running a previous version can't read this format though, so during the upgrade of a cluster the
+ * legacy format has to be written until all the nodes are upgraded, by setting the
+ * {@link #LEGACY_FORMAT_WRITTEN} system property to true.
+ */
+public final class ExternalizationUtil {
+	// can't be the beginning of a key or session id written by the legacy format
+	public static final String FORMAT_MARKER = "\u0000mss";
+	public static final byte FORMAT_VERSION = 1;
+	public static final int LEGACY_FORMAT_VERSION = 0;
+	public static final String LEGACY_FORMAT_WRITTEN = "org.mobicents.servlet.sip.LEGACY_EXTERNALIZATION_FORMAT_WRITTEN";
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final byte NULL = 0;
+	private static final byte SIP_SESSION_KEY = 1;
+	private static final byte SIP_SESSION_KEY_WITH_TO_TAG_IN_ID = 2;
+	// a key of another implementation, written in its string form
+	private static final byte SIP_SESSION_KEY_STRING = 3;
+
+	private static volatile boolean legacyFormatWritten = Boolean.getBoolean(LEGACY_FORMAT_WRITTEN);
+
+	private ExternalizationUtil() {}
+
+	/**
+	 * @return true if the objects are written in the legacy format, readable by the nodes running a previous version
+	 */
+	public static boolean isLegacyFormatWritten() {
+		return legacyFormatWritten;
+	}
+
+	/**
+	 * @param legacyFormatWritten true to write the objects in the legacy format, for instance until all the nodes of
+	 * a cluster have been upgraded
+	 */
+	public static void setLegacyFormatWritten(boolean legacyFormatWritten) {
+		ExternalizationUtil.legacyFormatWritten = legacyFormatWritten;
+	}
+
+	/**
+	 * Write the format marker and version, to be done first by the objects written in this format
+	 */
+	public static void writeFormatVersion(ObjectOutput out) throws IOException {
+		out.writeUTF(FORMAT_MARKER);
+		out.writeByte(FORMAT_VERSION);
+	}
+
+	/**
+	 * @param firstString the first string read from the stream
+	 * @return the version of the format, {@link #LEGACY_FORMAT_VERSION} if firstString is not the format marker
+	 */
+	public static int readFormatVersion(String firstString, ObjectInput in) throws IOException {
+		if(!FORMAT_MARKER.equals(firstString)) {
+			return LEGACY_FORMAT_VERSION;
+		}
+		final int version = in.readByte();
+		if(version > FORMAT_VERSION) {
+			throw new StreamCorruptedException("Unsupported externalization format version " + version
+					+ ", this node only supports up to version " + FORMAT_VERSION);
+		}
+		return version;
+	}
+
+	public static void writeString(ObjectOutput out, String string) throws IOException {
+		if(string == null) {
+			out.writeBoolean(false);
+		} else {
+			out.writeBoolean(true);
+			out.writeUTF(string);
+		}
+	}
+
+	public static String readString(ObjectInput in) throws IOException {
+		if(in.readBoolean()) {
+			return in.readUTF();
+		}
+		return null;
+	}
+
+	public static void writeSipSessionKey(ObjectOutput out, MobicentsSipSessionKey key) throws IOException {
+		if(key == null) {
+			out.writeByte(NULL);
+			return;
+		}
+		if(!(key instanceof SipSessionKey)) {
+			out.writeByte(SIP_SESSION_KEY_STRING);
+			out.writeUTF(key.toString());
+			return;
+		}
+		final SipSessionKey sipSessionKey = (SipSessionKey) key;
+		final String toStringToTag = sipSessionKey.getToStringToTag();
+		final boolean toTagInId = toStringToTag != null;
+		out.writeByte(toTagInId ? SIP_SESSION_KEY_WITH_TO_TAG_IN_ID : SIP_SESSION_KEY);
+		writeString(out, sipSessionKey.getFromTag());
+		writeString(out, toTagInId ? toStringToTag : sipSessionKey.getToTag());
+		if(toTagInId) {
+			// the to tag can have been updated without changing the id
+			writeString(out, sipSessionKey.getToTag());
+		}
+		writeString(out, sipSessionKey.getCallId());
+		writeString(out, sipSessionKey.getApplicationSessionId());
+		writeString(out, sipSessionKey.getApplicationName());
+	}
+
+	public static SipSessionKey readSipSessionKey(ObjectInput in) throws IOException {
+		final byte type = in.readByte();
+		if(type == NULL) {
+			return null;
+		}
+		if(type == SIP_SESSION_KEY_STRING) {
+			final String sipSessionKey = in.readUTF();
+			try {
+				return SessionManagerUtil.parseSipSessionKey(sipSessionKey);
+			} catch (ParseException e) {
+				throw new IOException("Couldn't parse the sip session key " + sipSessionKey, e);
+			}
+		}
+		if(type != SIP_SESSION_KEY && type != SIP_SESSION_KEY_WITH_TO_TAG_IN_ID) {
+			throw new StreamCorruptedException("Unexpected sip session key type " + type);
+		}
+		final String fromTag = readString(in);
+		String idToTag = null;
+		String toTag = readString(in);
+		if(type == SIP_SESSION_KEY_WITH_TO_TAG_IN_ID) {
+			idToTag = toTag;
+			toTag = readString(in);
+		}
+		final String callId = readString(in);
+		final String applicationSessionId = readString(in);
+		final String applicationName = readString(in);
+		final SipSessionKey sipSessionKey = new SipSessionKey(fromTag, idToTag, callId, applicationSessionId, applicationName);
+		if(toTag != idToTag && (toTag == null || !toTag.equals(idToTag))) {
+			sipSessionKey.setToTag(toTag, false);
+		}
+		return sipSessionKey;
+	}
+
+	public static void writeSipApplicationSessionKey(ObjectOutput out, MobicentsSipApplicationSessionKey key) throws IOException {
+		writeString(out, key.getId());
+		writeString(out, key.getApplicationName());
+		writeString(out, key.getAppGeneratedKey());
+	}
+
+	public static SipApplicationSessionKey readSipApplicationSessionKey(ObjectInput in) throws IOException {
+		final String id = readString(in);
+		final String applicationName = readString(in);
+		final String appGeneratedKey = readString(in);
+		return new SipApplicationSessionKey(id, applicationName, appGeneratedKey);
+	}
+
+	/**
+	 * @param attributes the attributes to write, can be null
+	 */
+	public static void writeAttributes(ObjectOutput out, Map<String, Object> attributes) throws IOException {
+		if(attributes == null || attributes.isEmpty()) {
+			out.writeInt(0);
+			return;
+		}
+		// the map can be modified concurrently, the number of entries is only known once they are written
+		final Object[] entries = attributes.entrySet().toArray();
+		out.writeInt(entries.length);
+		for (Object entry : entries) {
+			@SuppressWarnings("unchecked")
+			final Entry<String, Object> attribute = (Entry<String, Object>) entry;
+			out.writeUTF(attribute.getKey());
+			out.writeObject(attribute.getValue());
+		}
+	}
+
+	/**
+	 * Write the attributes in the legacy format, an Object[][] of the names and values
+	 *
+	 * @param attributes the attributes to write, can be null
+	 */
+	public static void writeLegacyAttributes(ObjectOutput out, Map<String, Object> attributes) throws IOException {
+		final Object[] entries = attributes == null ? new Object[0] : attributes.entrySet().toArray();
+		out.writeInt(entries.length);
+		if(entries.length == 0) {
+			return;
+		}
+		final Object[][] attributesArray = new Object[2][entries.length];
+		for (int i = 0; i < entries.length; i++) {
+			@SuppressWarnings("unchecked")
+			final Entry<String, Object> attribute = (Entry<String, Object>) entries[i];
+			attributesArray[0][i] = attribute.getKey();
+			attributesArray[1][i] = attribute.getValue();
+		}
+		out.writeObject(attributesArray);
+	}
+
+	/**
+	 * @return the attributes read or null if there was none
+	 */
+	public static Map<String, Object> readAttributes(ObjectInput in) throws IOException, ClassNotFoundException {
+		final int size = in.readInt();
+		if(size <= 0) {
+			return null;
+		}
+		final Map<String, Object> attributes = new ConcurrentHashMap<String, Object>(Math.max(16, size * 2));
+		for (int i = 0; i < size; i++) {
+			final String name = in.readUTF();
+			final Object value = in.readObject();
+			if(value != null) {
+				attributes.put(name, value);
+			}
+		}
+		return attributes;
+	}
+
+	public static void writeMessage(ObjectOutput out, Message message) throws IOException {
+		final byte[] bytes = message.toString().getBytes(UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Write the SIP message in the legacy format, read back with readUTF by the nodes running a previous version
+	 */
+	public static void writeLegacyMessage(ObjectOutput out, Message message) throws IOException {
+		out.writeUTF(message.toString());
+	}
+
+	/**
+	 * @return the SIP message in its string form, to be parsed by the message factory
+	 */
+	public static String readMessage(ObjectInput in) throws IOException {
+		final int length = in.readInt();
+		if(length < 0) {
+			throw new StreamCorruptedException("Invalid SIP message length " + length);
+		}
+		final byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, UTF_8);
+	}
+}
@@ -0,0 +1,144 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2015, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.servlet.sip.core.session;
+
+import java.util.EventListener;
+
+import javax.servlet.sip.SipApplicationSessionAttributeListener;
+import javax.servlet.sip.SipApplicationSessionBindingEvent;
+import javax.servlet.sip.SipSessionAttributeListener;
+import javax.servlet.sip.SipSessionBindingEvent;
+
+import org.apache.log4j.Logger;
+import org.mobicents.servlet.sip.core.ListenerDispatchTable;
+import org.mobicents.servlet.sip.core.SipListeners;
+
+/**
+ * Notifies the sip session and sip application session attribute listeners of an attribute change,
+ * the synchronous ones on the calling thread and the non critical ones through
+ * {@link SipListeners#dispatchAsynchronously(Runnable)}.
+ */
+final class SessionAttributeListenerNotifier {
+	private static final Logger logger = Logger.getLogger(SessionAttributeListenerNotifier.class);
+
+	enum AttributeEventType {
+		ADDED, REPLACED, REMOVED;
+	}
+
+	private SessionAttributeListenerNotifier() {
+	}
+
+	static void notifySipSessionAttributeListeners(SipListeners listeners, ListenerDispatchTable<SipSessionAttributeListener> listenerTable,
+			final SipSessionBindingEvent event, final AttributeEventType attributeEventType) {
+		notifyListeners(listeners, listenerTable, new AttributeNotification<SipSessionAttributeListener>(attributeEventType, event.getName()) {
+			@Override
+			void attributeAdded(SipSessionAttributeListener listener) {
+				listener.attributeAdded(event);
+			}
+
+			@Override
+			void attributeReplaced(SipSessionAttributeListener listener) {
+				listener.attributeReplaced(event);
+			}
+
+			@Override
+			void attributeRemoved(SipSessionAttributeListener listener) {
+				listener.attributeRemoved(event);
+			}
+		});
+	}
+
+	static void notifySipApplicationSessionAttributeListeners(SipListeners listeners, ListenerDispatchTable<SipApplicationSessionAttributeListener> listenerTable,
+			final SipApplicationSessionBindingEvent event, final AttributeEventType attributeEventType) {
+		notifyListeners(listeners, listenerTable, new AttributeNotification<SipApplicationSessionAttributeListener>(attributeEventType, event.getName()) {
+			@Override
+			void attributeAdded(SipApplicationSessionAttributeListener listener) {
+				listener.attributeAdded(event);
+			}
+
+			@Override
+			void attributeReplaced(SipApplicationSessionAttributeListener listener) {
+				listener.attributeReplaced(event);
+			}
+
+			@Override
+			void attributeRemoved(SipApplicationSessionAttributeListener listener) {
+				listener.attributeRemoved(event);
+			}
+		});
+	}
+
+	private static <T extends EventListener> void notifyListeners(SipListeners listeners, ListenerDispatchTable<T> listenerTable,
+			final AttributeNotification<T> notification) {
+		for (T listener : listenerTable.getSynchronousListeners()) {
+			notification.notify(listener);
+		}
+		final T[] asynchronousListeners = listenerTable.getAsynchronousListeners();
+		if(asynchronousListeners.length > 0) {
+			listeners.dispatchAsynchronously(new Runnable() {
+				public void run() {
+					for (T listener : asynchronousListeners) {
+						notification.notify(listener);
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * The notification of an attribute change to a type of listener
+	 */
+	private abstract static class AttributeNotification<T extends EventListener> {
+		private final AttributeEventType attributeEventType;
+		private final String attributeName;
+
+		AttributeNotification(AttributeEventType attributeEventType, String attributeName) {
+			this.attributeEventType = attributeEventType;
+			this.attributeName = attributeName;
+		}
+
+		abstract void attributeAdded(T listener);
+
+		abstract void attributeReplaced(T listener);
+
+		abstract void attributeRemoved(T listener);
+
+		void notify(T listener) {
+			if(logger.isDebugEnabled()) {
+				logger.debug("notifying " + listener.getClass().getCanonicalName() + " of attribute " + attributeEventType + " on " + attributeName);
+			}
+			try {
+				switch (attributeEventType) {
+				case ADDED:
+					attributeAdded(listener);
+					break;
+				case REPLACED:
+					attributeReplaced(listener);
+					break;
+				case REMOVED:
+					attributeRemoved(listener);
+					break;
+				}
+			} catch (Throwable t) {
+				logger.error(listener.getClass().getCanonicalName() + " threw exception", t);
+			}
+		}
+	}
+}
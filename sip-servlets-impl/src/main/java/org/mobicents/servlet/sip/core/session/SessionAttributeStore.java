@@ -0,0 +1,306 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2015, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.servlet.sip.core.session;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Local disk store of the attributes of the idle sessions of a context, so that they don't stay on the heap
+ * while the sessions are not used.
+ *
+ * The records are appended to segment files which are never rewritten. A segment is deleted once all its records
+ * have been read back or released and a newer segment is being written, so the space of the sessions reactivated
+ * is reclaimed without having to move the records of the sessions still passivated.
+ */
+public class SessionAttributeStore {
+	private static final Logger logger = Logger.getLogger(SessionAttributeStore.class);
+	// size after which a new segment file is started
+	private static final long SEGMENT_SIZE = 64L * 1024 * 1024;
+	private static final String SEGMENT_PREFIX = "sessions-";
+	private static final String SEGMENT_SUFFIX = ".dat";
+
+	private final File directory;
+	private final ClassLoader classLoader;
+	private final List<Segment> segments = new ArrayList<Segment>();
+	private final AtomicInteger records = new AtomicInteger();
+	private Segment currentSegment;
+	private int segmentCounter;
+	private boolean closed;
+
+	/**
+	 * @param directory the directory the segment files are created in
+	 * @param classLoader the classloader of the context, the classes of the attributes are resolved with
+	 */
+	public SessionAttributeStore(File directory, ClassLoader classLoader) {
+		this.directory = directory;
+		this.classLoader = classLoader;
+	}
+
+	/**
+	 * Serialize and append an object to the store
+	 *
+	 * @param object the object to store
+	 * @return the record to read the object back from
+	 * @throws IOException if the object is not serializable or couldn't be written
+	 */
+	public Record write(Object object) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(object);
+		out.close();
+		final ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+		final Segment segment;
+		final long position;
+		synchronized (this) {
+			if(closed) {
+				throw new IOException("The session attribute store " + directory + " is closed");
+			}
+			if(currentSegment == null || currentSegment.size + buffer.remaining() > SEGMENT_SIZE) {
+				rollSegment();
+			}
+			segment = currentSegment;
+			position = segment.size;
+			while (buffer.hasRemaining()) {
+				segment.channel.write(buffer, position + buffer.position());
+			}
+			segment.size += buffer.limit();
+			segment.liveRecords.incrementAndGet();
+		}
+		records.incrementAndGet();
+		return new Record(segment, position, buffer.limit());
+	}
+
+	/**
+	 * Read an object back from the store and release its record. If the object can't be read, the record is kept
+	 * so that it can be read again.
+	 *
+	 * @param record the record the object was written to
+	 * @return the object stored
+	 * @throws IOException if the record couldn't be read
+	 * @throws ClassNotFoundException if a class of the object can't be found by the classloader of the context
+	 */
+	public Object read(Record record) throws IOException, ClassNotFoundException {
+		final ByteBuffer buffer = ByteBuffer.allocate(record.length);
+		while (buffer.hasRemaining()) {
+			if(record.segment.channel.read(buffer, record.position + buffer.position()) < 0) {
+				throw new EOFException("Truncated record in " + record.segment.file);
+			}
+		}
+		final Object object;
+		final ObjectInputStream in = new ContextObjectInputStream(new ByteArrayInputStream(buffer.array()), classLoader);
+		try {
+			object = in.readObject();
+		} finally {
+			in.close();
+		}
+		release(record);
+		return object;
+	}
+
+	/**
+	 * Release a record which won't be read, its space is reclaimed with the one of the other records of its segment
+	 *
+	 * @param record the record to release
+	 */
+	public void release(Record record) {
+		final Segment segment = record.segment;
+		// the records of a closed store are already accounted for
+		if(!record.released.compareAndSet(false, true) || segment.deleted.get()) {
+			return;
+		}
+		records.decrementAndGet();
+		if(segment.liveRecords.decrementAndGet() == 0 && !segment.current) {
+			deleteSegment(segment);
+		}
+	}
+
+	/**
+	 * @return the number of records held by the store
+	 */
+	public int getRecords() {
+		return records.get();
+	}
+
+	/**
+	 * Delete the segment files left in the directory by a store which wasn't closed, when the server crashed for instance.
+	 * Their records can't be read back, so they are only wasting disk space. To be called before the first write.
+	 */
+	public synchronized void deleteStaleSegments() {
+		final File[] files = directory.listFiles(new FilenameFilter() {
+			public boolean accept(File dir, String name) {
+				return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+			}
+		});
+		if(files == null) {
+			return;
+		}
+		for (File file : files) {
+			if(file.delete()) {
+				if(logger.isDebugEnabled()) {
+					logger.debug("Deleted the stale session attribute store segment " + file);
+				}
+				continue;
+			}
+			// reopened with "rw", the segment would keep the stale records beyond the new ones
+			try {
+				final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+				try {
+					randomAccessFile.setLength(0);
+				} finally {
+					randomAccessFile.close();
+				}
+			} catch (IOException e) {
+				logger.warn("Couldn't delete the stale session attribute store segment " + file, e);
+			}
+		}
+	}
+
+	/**
+	 * Delete all the segments, the records not read back are lost
+	 */
+	public synchronized void close() {
+		closed = true;
+		for (Segment segment : new ArrayList<Segment>(segments)) {
+			deleteSegment(segment);
+		}
+		currentSegment = null;
+		records.set(0);
+	}
+
+	// called with the lock of the store held
+	private void rollSegment() throws IOException {
+		if(!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Couldn't create the session attribute store directory " + directory);
+		}
+		final File file = new File(directory, SEGMENT_PREFIX + (segmentCounter++) + SEGMENT_SUFFIX);
+		final Segment segment = new Segment(file, new RandomAccessFile(file, "rw").getChannel());
+		final Segment previousSegment = currentSegment;
+		segments.add(segment);
+		currentSegment = segment;
+		if(previousSegment != null) {
+			previousSegment.current = false;
+			if(previousSegment.liveRecords.get() == 0) {
+				deleteSegment(previousSegment);
+			}
+		}
+		if(logger.isDebugEnabled()) {
+			logger.debug("Session attributes now stored in " + file);
+		}
+	}
+
+	private void deleteSegment(Segment segment) {
+		if(!segment.deleted.compareAndSet(false, true)) {
+			return;
+		}
+		synchronized (this) {
+			segments.remove(segment);
+		}
+		try {
+			segment.channel.close();
+		} catch (IOException e) {
+			logger.warn("Couldn't close the session attribute store segment " + segment.file, e);
+		}
+		if(!segment.file.delete()) {
+			logger.warn("Couldn't delete the session attribute store segment " + segment.file);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "directory=" + directory + ", records=" + records.get();
+	}
+
+	/**
+	 * Location of an object in the store
+	 */
+	public static final class Record {
+		private final Segment segment;
+		private final long position;
+		private final int length;
+		private final AtomicBoolean released = new AtomicBoolean();
+
+		Record(Segment segment, long position, int length) {
+			this.segment = segment;
+			this.position = position;
+			this.length = length;
+		}
+
+		public int getLength() {
+			return length;
+		}
+	}
+
+	private static final class Segment {
+		final File file;
+		final FileChannel channel;
+		final AtomicInteger liveRecords = new AtomicInteger();
+		final AtomicBoolean deleted = new AtomicBoolean();
+		volatile boolean current = true;
+		// only modified with the lock of the store held
+		long size;
+
+		Segment(File file, FileChannel channel) {
+			this.file = file;
+			this.channel = channel;
+		}
+	}
+
+	/**
+	 * Resolve the classes of the attributes with the classloader of the context, whatever the thread reading them
+	 */
+	private static final class ContextObjectInputStream extends ObjectInputStream {
+		private final ClassLoader classLoader;
+
+		ContextObjectInputStream(InputStream in, ClassLoader classLoader) throws IOException {
+			super(in);
+			this.classLoader = classLoader;
+		}
+
+		@Override
+		protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+			if(classLoader != null) {
+				try {
+					return Class.forName(desc.getName(), false, classLoader);
+				} catch (ClassNotFoundException e) {
+					// primitive types and classes of the server, resolved below
+				}
+			}
+			return super.resolveClass(desc);
+		}
+	}
+}
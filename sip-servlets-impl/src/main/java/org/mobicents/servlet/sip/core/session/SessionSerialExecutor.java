@@ -0,0 +1,118 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2015, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.servlet.sip.core.session;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Lock free serial executor owned by a sip session or a sip application session when the
+ * SipSessionSerial or SipApplicationSessionSerial concurrency control mode is used.
+ *
+ * Tasks are queued in submission order and run one at a time on the underlying container executor,
+ * so that tasks of a given session are never executed concurrently while no thread is ever blocked
+ * waiting for the session to become available.
+ *
+ * At most {@link #MAX_TASKS_PER_RUN} tasks are executed in a row before handing the thread back to
+ * the underlying executor, so that a busy session can't starve the other ones.
+ */
+public class SessionSerialExecutor implements Executor {
+	private static final Logger logger = Logger.getLogger(SessionSerialExecutor.class);
+
+	static final int MAX_TASKS_PER_RUN = 16;
+
+	private final Executor executor;
+	private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+	// number of tasks submitted and not yet executed, the submitter moving it from 0 to 1 schedules the drain
+	private final AtomicInteger pendingTasks = new AtomicInteger();
+	private final Runnable drainTask = new Runnable() {
+		public void run() {
+			drain(MAX_TASKS_PER_RUN);
+		}
+	};
+
+	public SessionSerialExecutor(Executor executor) {
+		this.executor = executor;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.concurrent.Executor#execute(java.lang.Runnable)
+	 */
+	public void execute(Runnable task) {
+		if(task == null) {
+			throw new NullPointerException("task can't be null");
+		}
+		tasks.offer(task);
+		if(pendingTasks.getAndIncrement() == 0) {
+			try {
+				executor.execute(drainTask);
+			} catch (RejectedExecutionException e) {
+				// the container executor is shutting down, only this task is rejected. The tasks queued concurrently
+				// by other callers rely on this drain, so they are run on this thread
+				if(tasks.remove(task) && pendingTasks.decrementAndGet() > 0) {
+					logger.warn("The drain of " + pendingTasks.get() + " pending serial tasks couldn't be scheduled, running them now", e);
+					drain(Integer.MAX_VALUE);
+				}
+				throw e;
+			}
+		}
+	}
+
+	private void drain(int maxTasks) {
+		int executedTasks = 0;
+		do {
+			final Runnable task = tasks.poll();
+			try {
+				task.run();
+			} catch (Throwable t) {
+				logger.error("Unexpected exception while executing serial task " + task, t);
+			}
+			executedTasks++;
+			if(pendingTasks.decrementAndGet() == 0) {
+				return;
+			}
+		} while (executedTasks < maxTasks);
+		// give other sessions a chance to run, the remaining tasks will be drained later
+		if(logger.isDebugEnabled()) {
+			logger.debug("rescheduling the drain of " + pendingTasks.get() + " pending serial tasks");
+		}
+		try {
+			executor.execute(drainTask);
+		} catch (RejectedExecutionException e) {
+			// nothing else would drain the queue as the pending tasks count stays above 0,
+			// so the remaining tasks are run on this thread
+			logger.warn("The drain of " + pendingTasks.get() + " pending serial tasks couldn't be rescheduled, running them now", e);
+			drain(Integer.MAX_VALUE);
+		}
+	}
+
+	/**
+	 * @return the number of tasks queued and not yet executed
+	 */
+	public int getPendingTasks() {
+		return pendingTasks.get();
+	}
+}
@@ -32,9 +32,11 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -54,8 +56,10 @@ import org.apache.log4j.Logger;
 import org.mobicents.javax.servlet.sip.SipApplicationSessionAsynchronousWork;
 import org.mobicents.servlet.sip.annotation.ConcurrencyControlMode;
 import org.mobicents.servlet.sip.core.SipContext;
+import org.mobicents.servlet.sip.core.ListenerDispatchTable;
 import org.mobicents.servlet.sip.core.SipListeners;
 import org.mobicents.servlet.sip.core.SipManager;
+import org.mobicents.servlet.sip.core.session.SessionAttributeListenerNotifier.AttributeEventType;
 import org.mobicents.servlet.sip.core.timers.MobicentsServletTimer;
 import org.mobicents.servlet.sip.core.timers.SipApplicationSessionTimerTask;
 import org.mobicents.servlet.sip.message.MobicentsSipApplicationSessionFacade;
@@ -84,7 +88,9 @@ public class SipApplicationSessionImpl implements MobicentsSipApplicationSession
 
 	protected Map<String, Object> sipApplicationSessionAttributeMap;
 
-	protected transient Set<SipSessionKey> sipSessions;
+	// the sip sessions of this application session indexed by key, holding the sessions themselves
+	// so that they don't need to be looked up in the sip manager each time they are enumerated
+	protected transient ConcurrentHashMap<SipSessionKey, MobicentsSipSession> sipSessions;
 	
 	protected transient Set<String> httpSessions;
 	
@@ -120,6 +126,8 @@ public class SipApplicationSessionImpl implements MobicentsSipApplicationSession
 	protected String currentRequestHandler;
 	
 	protected transient Semaphore semaphore;
+	// queue serializing the tasks of this application session in SipApplicationSessionSerial concurrency control mode
+	protected transient SessionSerialExecutor serialExecutor;
 		
 	protected transient MobicentsSipApplicationSessionFacade facade = null;
 	
@@ -128,14 +136,26 @@ public class SipApplicationSessionImpl implements MobicentsSipApplicationSession
 	// Does it need to be synchronized?
 	protected Map<String,Object> getAttributeMap() {
 		if(sipApplicationSessionAttributeMap == null) {
-			sipApplicationSessionAttributeMap = new ConcurrentHashMap<String,Object>() ;
+			sipApplicationSessionAttributeMap = new DeltaTrackingAttributeMap();
 		}
 		return sipApplicationSessionAttributeMap;
 	}
 	
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.session.MobicentsSipApplicationSession#collectAttributesDelta()
+	 */
+	public AttributesDelta collectAttributesDelta() {
+		final Map<String, Object> attributeMap = getAttributeMap();
+		if(attributeMap instanceof DeltaTrackingAttributeMap) {
+			return ((DeltaTrackingAttributeMap) attributeMap).collectDelta();
+		}
+		return null;
+	}
+	
 	@SuppressWarnings(value="unchecked")
 	protected SipApplicationSessionImpl(SipApplicationSessionKey key, SipContext sipContext) {
-		sipSessions = new CopyOnWriteArraySet<SipSessionKey>();	
+		sipSessions = new ConcurrentHashMap<SipSessionKey, MobicentsSipSession>();	
 		this.key = key;
 		creationTime = System.currentTimeMillis();		
 		expired = false;
@@ -148,6 +168,9 @@ public class SipApplicationSessionImpl implements MobicentsSipApplicationSession
 			if(ConcurrencyControlMode.SipApplicationSession.equals(sipContext.getConcurrencyControlMode())) {
 				semaphore = new Semaphore(1);
 			}
+			if(ConcurrencyControlMode.SipApplicationSessionSerial.equals(sipContext.getConcurrencyControlMode())) {
+				serialExecutor = new SessionSerialExecutor(sipContext.getSipApplicationDispatcher().getAsynchronousExecutor());
+			}
 			//scheduling the timer for session expiration
 			final int sipContextTimeout = sipContext.getSipApplicationSessionTimeout();
 			if(sipContextTimeout > 0) {				
@@ -173,43 +196,76 @@ public class SipApplicationSessionImpl implements MobicentsSipApplicationSession
 	 * Notifies the listeners that a lifecycle event occured on that sip application session 
 	 * @param sipApplicationSessionEventType the type of event that happened
 	 */
-	public void notifySipApplicationSessionListeners(SipApplicationSessionEventType sipApplicationSessionEventType) {						
-		List<SipApplicationSessionListener> listeners = 
-			sipContext.getListeners().getSipApplicationSessionListeners();
-		if(listeners.size() > 0) {
+	public void notifySipApplicationSessionListeners(final SipApplicationSessionEventType sipApplicationSessionEventType) {						
+		SipListeners sipListeners = sipContext.getListeners();
+		ListenerDispatchTable<SipApplicationSessionListener> listenerTable = sipListeners.getSipApplicationSessionListenerTable();
+		// no classloader switch nor event when no listener is interested
+		if(listenerTable.isEmpty()) {
+			return;
+		}
+		final SipApplicationSessionEvent event = new SipApplicationSessionEvent(this.getFacade());
+		if(logger.isDebugEnabled()) {
+			logger.debug("notifying sip application session listeners of context " + 
+					key.getApplicationName() + " of following event " + sipApplicationSessionEventType);
+		}
+		final SipApplicationSessionListener[] synchronousListeners = listenerTable.getSynchronousListeners();
+		if(synchronousListeners.length > 0) {
 			ClassLoader oldClassLoader = java.lang.Thread.currentThread().getContextClassLoader();
 			sipContext.enterSipContext();	
-			SipApplicationSessionEvent event = new SipApplicationSessionEvent(this.getFacade());
-			if(logger.isDebugEnabled()) {
-				logger.debug("notifying sip application session listeners of context " + 
-						key.getApplicationName() + " of following event " + sipApplicationSessionEventType);
+			try {
+				for (SipApplicationSessionListener sipApplicationSessionListener : synchronousListeners) {
+					notifySipApplicationSessionListener(sipApplicationSessionListener, event, sipApplicationSessionEventType);
+				}
+			} finally {
+				sipContext.exitSipContext(oldClassLoader);
 			}
-			for (SipApplicationSessionListener sipApplicationSessionListener : listeners) {
-				try {
-					if(logger.isDebugEnabled()) {
-						logger.debug("notifying sip application session listener " + sipApplicationSessionListener.getClass().getName() + " of context " + 
-								key.getApplicationName() + " of following event " + sipApplicationSessionEventType);
-					}
-					if(SipApplicationSessionEventType.CREATION.equals(sipApplicationSessionEventType)) {
-						sipApplicationSessionListener.sessionCreated(event);
-					} else if (SipApplicationSessionEventType.DELETION.equals(sipApplicationSessionEventType)) {
-						sipApplicationSessionListener.sessionDestroyed(event);
-					} else if (SipApplicationSessionEventType.EXPIRATION.equals(sipApplicationSessionEventType)) {
-						sipApplicationSessionListener.sessionExpired(event);
-					} else if (SipApplicationSessionEventType.READYTOINVALIDATE.equals(sipApplicationSessionEventType)) {
-						sipApplicationSessionListener.sessionReadyToInvalidate(event);
+		}
+		final SipApplicationSessionListener[] asynchronousListeners = listenerTable.getAsynchronousListeners();
+		if(asynchronousListeners.length > 0) {
+			sipListeners.dispatchAsynchronously(new Runnable() {
+				public void run() {
+					for (SipApplicationSessionListener sipApplicationSessionListener : asynchronousListeners) {
+						notifySipApplicationSessionListener(sipApplicationSessionListener, event, sipApplicationSessionEventType);
 					}
-					
-				} catch (Throwable t) {
-					logger.error("SipApplicationSessionListener threw exception", t);
 				}
+			});
+		}
+	}
+
+	private void notifySipApplicationSessionListener(SipApplicationSessionListener sipApplicationSessionListener,
+			SipApplicationSessionEvent event, SipApplicationSessionEventType sipApplicationSessionEventType) {
+		try {
+			if(logger.isDebugEnabled()) {
+				logger.debug("notifying sip application session listener " + sipApplicationSessionListener.getClass().getName() + " of context " + 
+						key.getApplicationName() + " of following event " + sipApplicationSessionEventType);
 			}
-			sipContext.exitSipContext(oldClassLoader);
-		}		
+			switch (sipApplicationSessionEventType) {
+			case CREATION:
+				sipApplicationSessionListener.sessionCreated(event);
+				break;
+			case DELETION:
+				sipApplicationSessionListener.sessionDestroyed(event);
+				break;
+			case EXPIRATION:
+				sipApplicationSessionListener.sessionExpired(event);
+				break;
+			case READYTOINVALIDATE:
+				sipApplicationSessionListener.sessionReadyToInvalidate(event);
+				break;
+			}
+		} catch (Throwable t) {
+			logger.error("SipApplicationSessionListener threw exception", t);
+		}
 	}
 	
 	public boolean addSipSession(MobicentsSipSession mobicentsSipSession) {
-		boolean wasNotPresent = this.sipSessions.add((SipSessionKey)mobicentsSipSession.getKey());
+		final SipSessionKey sipSessionKey = (SipSessionKey)mobicentsSipSession.getKey();
+		final MobicentsSipSession previousSipSession = this.sipSessions.putIfAbsent(sipSessionKey, mobicentsSipSession);
+		boolean wasNotPresent = previousSipSession == null;
+		if(!wasNotPresent && previousSipSession != mobicentsSipSession && !previousSipSession.isValidInternal()) {
+			// a session with the same key was invalidated but not removed yet, the new one takes its place
+			wasNotPresent = this.sipSessions.replace(sipSessionKey, previousSipSession, mobicentsSipSession);
+		}
 		if(logger.isDebugEnabled() && wasNotPresent) {
 			logger.debug("Added sip session " + mobicentsSipSession.getKey() + " to sip app session " + getKey());
 		}
@@ -218,6 +274,16 @@ public class SipApplicationSessionImpl implements MobicentsSipApplicationSession
 //		sipSessionImpl.setSipApplicationSession(this);
 	}
 	
+	public boolean discardSipSession(MobicentsSipSession mobicentsSipSession) {
+		final SipSessionKey key = (SipSessionKey) mobicentsSipSession.getKey();
+		// only the given instance is removed, not a session registered for the same key in the meantime
+		final boolean wasPresent = this.sipSessions.remove(key, mobicentsSipSession);
+		if(logger.isDebugEnabled() && wasPresent) {
+			logger.debug("Discarded sip session " + key + " from sip app session " + getKey());
+		}
+		return wasPresent;
+	}
+	
 	public SipSessionKey removeSipSession(MobicentsSipSession mobicentsSipSession) {
 		if(logger.isDebugEnabled()) {
 			logger.debug("Trying to remove sip session " + mobicentsSipSession);
@@ -259,7 +325,7 @@ public class SipApplicationSessionImpl implements MobicentsSipApplicationSession
 			return null;
 		}
 		if(sipSessions != null) {
-			boolean wasPresent = this.sipSessions.remove(key);
+			boolean wasPresent = this.sipSessions.remove(key) != null;
 			
 			if(logger.isDebugEnabled() && wasPresent) {
 				logger.debug("Removed sip session " + key + " from sip app session " + getKey());
@@ -362,7 +428,12 @@ public class SipApplicationSessionImpl implements MobicentsSipApplicationSession
 		if(!isValid()) {
 			throw new IllegalStateException("SipApplicationSession already invalidated !");
 		}
-		return this.getAttributeMap().get(name);
+		final Map<String, Object> attributeMap = getAttributeMap();
+		if(attributeMap instanceof DeltaTrackingAttributeMap) {
+			// the application may modify the value in place
+			return ((DeltaTrackingAttributeMap) attributeMap).getAttribute(name);
+		}
+		return attributeMap.get(name);
 	}
 
 	/*
@@ -465,11 +536,13 @@ public class SipApplicationSessionImpl implements MobicentsSipApplicationSession
 		if(!isValid()) {
 			throw new IllegalStateException("SipApplicationSession already invalidated !");
 		}
-		Set<MobicentsSipSession> sipSessions = getSipSessions(false);
 		Set<HttpSession> httpSessions = getHttpSessions();
 		Set protocolSessions = new HashSet();
 		protocolSessions.addAll(httpSessions);
-		protocolSessions.addAll(sipSessions);
+		Iterator<MobicentsSipSession> sipSessionsIterator = sipSessionsIterator(false);
+		while (sipSessionsIterator.hasNext()) {
+			protocolSessions.add(sipSessionsIterator.next());
+		}
 		return protocolSessions.iterator();
 	}
 
@@ -485,7 +558,7 @@ public class SipApplicationSessionImpl implements MobicentsSipApplicationSession
 			throw new NullPointerException("protocol given in argument is null");
 		}
 		if("SIP".equalsIgnoreCase(protocol)) {
-			return getSipSessions(false).iterator();
+			return sipSessionsIterator(false);
 		} else if("HTTP".equalsIgnoreCase(protocol)) {			
 			return getHttpSessions().iterator();
 		} else {
@@ -496,33 +569,71 @@ public class SipApplicationSessionImpl implements MobicentsSipApplicationSession
 	// to avoid serialization issues
 	public Set<MobicentsSipSession> getSipSessions(boolean internal) {
 		Set<MobicentsSipSession> retSipSessions = new HashSet<MobicentsSipSession>();
-		if(sipSessions != null) {
-			for(SipSessionKey sipSessionKey : sipSessions) {
-				MobicentsSipSession sipSession = sipContext.getSipManager().getSipSession(sipSessionKey, false, null, this);
-				if(sipSession != null) {
-					if(sipSession.isValidInternal()) {
-						if(internal) {
-							retSipSessions.add(sipSession);
-						} else {
-							retSipSessions.add(sipSession.getFacade());
-						}
-					}
+		Iterator<MobicentsSipSession> sipSessionsIterator = sipSessionsIterator(internal);
+		while (sipSessionsIterator.hasNext()) {
+			retSipSessions.add(sipSessionsIterator.next());
+		}
+		return retSipSessions;
+	}
+	
+	/**
+	 * Iterate over the valid sip sessions of this application session and their derived sessions
+	 * straight from the session index, without copying it. The iteration reflects the sessions
+	 * added or removed concurrently or not, as ConcurrentHashMap iterators do.
+	 * @param internal if false the facades of the sessions are returned
+	 * @return an iterator over the sip sessions, not supporting removal
+	 */
+	protected Iterator<MobicentsSipSession> sipSessionsIterator(boolean internal) {
+		final Map<SipSessionKey, MobicentsSipSession> currentSipSessions = sipSessions;
+		if(currentSipSessions == null) {
+			return new HashSet<MobicentsSipSession>().iterator();
+		}
+		return new SipSessionsIterator(currentSipSessions.values().iterator(), internal);
+	}
+	
+	private static final class SipSessionsIterator implements Iterator<MobicentsSipSession> {
+		private final Iterator<MobicentsSipSession> sipSessionsIterator;
+		private final boolean internal;
+		private Iterator<MobicentsSipSession> derivedSessionsIterator;
+		private MobicentsSipSession next;
+		
+		SipSessionsIterator(Iterator<MobicentsSipSession> sipSessionsIterator, boolean internal) {
+			this.sipSessionsIterator = sipSessionsIterator;
+			this.internal = internal;
+		}
+		
+		public boolean hasNext() {
+			while (next == null) {
+				if(derivedSessionsIterator != null && derivedSessionsIterator.hasNext()) {
+					next = derivedSessionsIterator.next();
+				} else if(sipSessionsIterator.hasNext()) {
+					final MobicentsSipSession sipSession = sipSessionsIterator.next();
 					// https://github.com/Mobicents/sip-servlets/issues/41 
 					// Adding derived Sessions to the list of returned sip sessions
-					Iterator<MobicentsSipSession> derivedSessionsIterator = sipSession.getDerivedSipSessions();
-					while (derivedSessionsIterator.hasNext()) {
-						MobicentsSipSession derivedSipSession = derivedSessionsIterator
-								.next();
-						if(internal) {
-							retSipSessions.add(derivedSipSession);
-						} else {
-							retSipSessions.add(derivedSipSession.getFacade());
-						}
+					derivedSessionsIterator = sipSession.getDerivedSipSessions();
+					if(sipSession.isValidInternal()) {
+						next = sipSession;
 					}
+				} else {
+					return false;
 				}
 			}
+			return true;
+		}
+		
+		public MobicentsSipSession next() {
+			if(!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			final MobicentsSipSession sipSession = next;
+			next = null;
+			// the facade is built once and cached by the session
+			return internal ? sipSession : sipSession.getFacade();
+		}
+		
+		public void remove() {
+			throw new UnsupportedOperationException("the sip sessions of an application session can't be removed through its iterator");
 		}
-		return retSipSessions;
 	}
 	
 	protected Set<HttpSession> getHttpSessions() {
@@ -558,7 +669,7 @@ public class SipApplicationSessionImpl implements MobicentsSipApplicationSession
 		SipSessionKey sipSessionKey = null;
 		try {
 			sipSessionKey = SessionManagerUtil.parseSipSessionKey(id);
-			isPresent = sipSessions.contains(sipSessionKey);
+			isPresent = sipSessions.containsKey(sipSessionKey);
 		} catch (ParseException e) {
 			//can happen if the id passed is invalid
 		}		 
@@ -572,7 +683,7 @@ public class SipApplicationSessionImpl implements MobicentsSipApplicationSession
 	private void dumpSipSessions() {
 		if(logger.isDebugEnabled()) {
 			logger.debug("sessions contained in the following app session " + key);
-			for (SipSessionKey sessionKey : sipSessions) {
+			for (SipSessionKey sessionKey : sipSessions.keySet()) {
 				logger.debug("session key " + sessionKey);
 			}
 		}
@@ -833,21 +944,12 @@ public class SipApplicationSessionImpl implements MobicentsSipApplicationSession
         }
         
 		SipListeners listeners = sipContext.getListeners();
-		List<SipApplicationSessionAttributeListener> listenersList = listeners.getSipApplicationSessionAttributeListeners();
-		if(listenersList.size() > 0) {		
+		ListenerDispatchTable<SipApplicationSessionAttributeListener> listenerTable = listeners.getSipApplicationSessionAttributeListenerTable();
+		if(!listenerTable.isEmpty()) {		
 			if(event == null) {
 				event = new SipApplicationSessionBindingEvent(this, name);
 			}
-			for (SipApplicationSessionAttributeListener listener : listenersList) {
-				if(logger.isDebugEnabled()) {
-					logger.debug("notifying SipApplicationSessionAttributeListener " + listener.getClass().getCanonicalName() + " of attribute removed on key "+ key);
-				}
-				try {
-					listener.attributeRemoved(event);
-				} catch (Throwable t) {
-					logger.error("SipApplicationSessionAttributeListener threw exception", t);
-				}
-			}
+			SessionAttributeListenerNotifier.notifySipApplicationSessionAttributeListeners(listeners, listenerTable, event, AttributeEventType.REMOVED);
 		}
 
 	}
@@ -899,34 +1001,13 @@ public class SipApplicationSessionImpl implements MobicentsSipApplicationSession
         }
 
 		SipListeners listeners = sipContext.getListeners();
-		List<SipApplicationSessionAttributeListener> listenersList = listeners.getSipApplicationSessionAttributeListeners();
-		if(listenersList.size() > 0) {
+		ListenerDispatchTable<SipApplicationSessionAttributeListener> listenerTable = listeners.getSipApplicationSessionAttributeListenerTable();
+		if(!listenerTable.isEmpty()) {
 			if(event == null) {
 				event = new SipApplicationSessionBindingEvent(this, key);
 			}
-			if (previousValue == null) {				
-				for (SipApplicationSessionAttributeListener listener : listenersList) {
-					if(logger.isDebugEnabled()) {
-						logger.debug("notifying SipApplicationSessionAttributeListener " + listener.getClass().getCanonicalName() + " of attribute added on key "+ key);
-					}
-					try {
-						listener.attributeAdded(event);
-					} catch (Throwable t) {
-						logger.error("SipApplicationSessionAttributeListener threw exception", t);
-					}
-				}
-			} else {				
-				for (SipApplicationSessionAttributeListener listener : listenersList) {
-					if(logger.isDebugEnabled()) {
-						logger.debug("notifying SipApplicationSessionAttributeListener " + listener.getClass().getCanonicalName() + " of attribute replaced on key "+ key);
-					}
-					try {
-						listener.attributeReplaced(event);
-					} catch (Throwable t) {
-						logger.error("SipApplicationSessionAttributeListener threw exception", t);
-					}
-				}
-			}	
+			SessionAttributeListenerNotifier.notifySipApplicationSessionAttributeListeners(listeners, listenerTable, event,
+					previousValue == null ? AttributeEventType.ADDED : AttributeEventType.REPLACED);
 		}
 	}
 	
@@ -1086,6 +1167,62 @@ public class SipApplicationSessionImpl implements MobicentsSipApplicationSession
 	    }
     }
 
+    /**
+     * Passivate the attributes of this idle application session and of its sip sessions to the store of its context,
+     * the activation listeners are notified and the attributes are read back on their next access
+     * @param store the store to write the attributes to
+     * @return the number of sessions whose attributes have been passivated
+     */
+    public int passivateAttributes(SessionAttributeStore store) {
+    	int passivatedSessions = 0;
+    	final Iterator<MobicentsSipSession> sipSessionsIterator = sipSessionsIterator(true);
+    	while (sipSessionsIterator.hasNext()) {
+    		final MobicentsSipSession sipSession = sipSessionsIterator.next();
+    		if(sipSession instanceof SipSessionImpl && ((SipSessionImpl) sipSession).passivateAttributes(store)) {
+    			passivatedSessions++;
+    		}
+    	}
+    	final Map<String, Object> attributeMap = sipApplicationSessionAttributeMap;
+    	if(!(attributeMap instanceof DeltaTrackingAttributeMap) || ((DeltaTrackingAttributeMap) attributeMap).isPassivated() 
+    			|| attributeMap.isEmpty()) {
+    		return passivatedSessions;
+    	}
+    	passivate();
+    	if(((DeltaTrackingAttributeMap) attributeMap).passivate(store, new Runnable() {
+    		public void run() {
+    			activate();
+    		}
+    	})) {
+    		return passivatedSessions + 1;
+    	}
+    	// the listeners told about the passivation are told it didn't happen
+    	activate();
+    	return passivatedSessions;
+    }
+
+    public boolean isAttributesPassivated() {
+    	final Map<String, Object> attributeMap = sipApplicationSessionAttributeMap;
+    	return attributeMap instanceof DeltaTrackingAttributeMap && ((DeltaTrackingAttributeMap) attributeMap).isPassivated();
+    }
+
+    /**
+     * Read the attributes back now if they are passivated, its sip sessions are activated separately
+     * 
+     * @return false if the passivated attributes couldn't be read back
+     */
+    public boolean activateAttributes() {
+    	final Map<String, Object> attributeMap = sipApplicationSessionAttributeMap;
+    	if(attributeMap instanceof DeltaTrackingAttributeMap) {
+    		try {
+    			((DeltaTrackingAttributeMap) attributeMap).activate();
+    		} catch (IllegalStateException e) {
+    			logger.error("Couldn't read back the passivated attributes of the sip application session " + key, e);
+    			return false;
+    		}
+    	}
+    	return true;
+    }
+
 	public boolean getInvalidateWhenReady() {
 		if(!isValid()) {
 			throw new IllegalStateException("SipApplicationSession already invalidated !");
@@ -1144,7 +1281,9 @@ public class SipApplicationSessionImpl implements MobicentsSipApplicationSession
 			if(logger.isDebugEnabled()) {
 				logger.debug("underlying sip sessions " + getSipSessions(true).size());
 			}
-			for(MobicentsSipSession sipSession : getSipSessions(true)) {
+			Iterator<MobicentsSipSession> sipSessionsIterator = sipSessionsIterator(true);
+			while (sipSessionsIterator.hasNext()) {
+				MobicentsSipSession sipSession = sipSessionsIterator.next();
 				if(logger.isDebugEnabled()) {
 					logger.debug("Is Sip Session Key " + sipSession.getKey() + " ready to be invalidated, "
 							+ "isvalidInternal " + sipSession.isValidInternal() + 
@@ -1199,7 +1338,9 @@ public class SipApplicationSessionImpl implements MobicentsSipApplicationSession
 		// and if the invalidateWhenReady flag is true
 		if(isValidInternal() && readyToInvalidate && invalidateWhenReady) {						
 			boolean allSipSessionsInvalidated = true;
-			for(MobicentsSipSession sipSession : getSipSessions(true)) {
+			Iterator<MobicentsSipSession> sipSessionsIterator = sipSessionsIterator(true);
+			while (sipSessionsIterator.hasNext()) {
+				MobicentsSipSession sipSession = sipSessionsIterator.next();
 				if(sipSession.isValidInternal()) {
 					allSipSessionsInvalidated = false;
 					break;
@@ -1267,6 +1408,14 @@ public class SipApplicationSessionImpl implements MobicentsSipApplicationSession
 	public Semaphore getSemaphore() {
 		return semaphore;
 	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.session.MobicentsSipApplicationSession#getSerialExecutor()
+	 */
+	public Executor getSerialExecutor() {
+		return serialExecutor;
+	}
 	
 	@SuppressWarnings(value="unchecked")
 	public MobicentsSipApplicationSession getFacade() {		
@@ -1353,7 +1502,11 @@ public class SipApplicationSessionImpl implements MobicentsSipApplicationSession
 	 */
 	public void scheduleAsynchronousWork(
 			SipApplicationSessionAsynchronousWork work) {
-		sipContext.getSipApplicationDispatcher().getAsynchronousExecutor().execute(new SipApplicationSessionAsyncTask(key, work, (SipFactoryImpl)sipContext.getSipApplicationDispatcher().getSipFactory()));
+		Executor executor = serialExecutor;
+		if(executor == null) {
+			executor = sipContext.getSipApplicationDispatcher().getAsynchronousExecutor();
+		}
+		executor.execute(new SipApplicationSessionAsyncTask(key, work, (SipFactoryImpl)sipContext.getSipApplicationDispatcher().getSipFactory()));
 	}	
 	
 	public void acquire() {
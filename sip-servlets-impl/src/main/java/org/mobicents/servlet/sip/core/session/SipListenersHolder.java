@@ -22,11 +22,17 @@
 
 package org.mobicents.servlet.sip.core.session;
 
+import java.lang.reflect.Array;
 import java.util.ArrayList;
 import java.util.EventListener;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.servlet.ServletContextListener;
 import javax.servlet.ServletException;
@@ -45,6 +51,8 @@ import javax.servlet.sip.TimerListener;
 import org.apache.log4j.Logger;
 import org.mobicents.javax.servlet.ContainerListener;
 import org.mobicents.javax.servlet.sip.ProxyBranchListener;
+import org.mobicents.servlet.sip.annotation.NonCriticalListener;
+import org.mobicents.servlet.sip.core.ListenerDispatchTable;
 import org.mobicents.servlet.sip.core.MobicentsSipServlet;
 import org.mobicents.servlet.sip.core.SipContext;
 import org.mobicents.servlet.sip.core.SipListeners;
@@ -53,6 +61,8 @@ import org.mobicents.servlet.sip.listener.SipConnectorListener;
 
 public abstract class SipListenersHolder implements SipListeners {
 	private static final Logger logger = Logger.getLogger(SipListenersHolder.class);
+	// maximum number of non critical notifications delivered in a row before giving the executor thread back
+	private static final int ASYNCHRONOUS_BATCH_SIZE = 256;
 	
 	private List<SipApplicationSessionAttributeListener> sipApplicationSessionAttributeListeners;
 	private List<SipApplicationSessionBindingListener> sipApplicationSessionBindingListeners;
@@ -73,6 +83,19 @@ public abstract class SipListenersHolder implements SipListeners {
 	private ContainerListener containerListener;
 	//the sip context the holder is attached to
 	protected SipContext sipContext;	
+	// dispatch tables of the session events, rebuilt when a listener is added so that they are ready once the context is deployed
+	private volatile ListenerDispatchTable<SipApplicationSessionAttributeListener> sipApplicationSessionAttributeListenerTable;
+	private volatile ListenerDispatchTable<SipApplicationSessionListener> sipApplicationSessionListenerTable;
+	private volatile ListenerDispatchTable<SipSessionAttributeListener> sipSessionAttributeListenerTable;
+	private volatile ListenerDispatchTable<SipSessionListener> sipSessionListenerTable;
+	// notifications of the non critical listeners waiting to be delivered
+	private final Queue<Runnable> asynchronousNotifications = new ConcurrentLinkedQueue<Runnable>();
+	private final AtomicBoolean asynchronousNotificationsScheduled = new AtomicBoolean();
+	private final Runnable asynchronousNotificationsTask = new Runnable() {
+		public void run() {
+			deliverAsynchronousNotifications();
+		}
+	};
 
 	/**
 	 * Default Constructor
@@ -93,6 +116,7 @@ public abstract class SipListenersHolder implements SipListeners {
 		this.sipConnectorListeners = new ArrayList<SipConnectorListener>();
 		this.proxyBranchListeners = new ArrayList<ProxyBranchListener>();
 		listenerServlets = new HashMap<EventListener, MobicentsSipServlet>();
+		buildDispatchTables();
 	}
 	
 	/**
@@ -219,6 +243,7 @@ public abstract class SipListenersHolder implements SipListeners {
 	// this.sipApplicationSessionAttributeListeners.clear();
 	public void addListener(SipApplicationSessionAttributeListener listener) {
 		this.sipApplicationSessionAttributeListeners.add(listener);
+		this.sipApplicationSessionAttributeListenerTable = buildDispatchTable(SipApplicationSessionAttributeListener.class, sipApplicationSessionAttributeListeners);
 	}
 
 	// this.sipApplicationSessionBindingListeners.clear();
@@ -233,6 +258,7 @@ public abstract class SipListenersHolder implements SipListeners {
 	// this.sipApplicationSessionListeners.clear();
 	public void addListener(SipApplicationSessionListener listener) {
 		this.sipApplicationSessionListeners.add(listener);
+		this.sipApplicationSessionListenerTable = buildDispatchTable(SipApplicationSessionListener.class, sipApplicationSessionListeners);
 	}
 
 	// this.sipSessionActivationListeners.clear();
@@ -243,6 +269,7 @@ public abstract class SipListenersHolder implements SipListeners {
 	// this.sipSessionAttributeListeners.clear();
 	public void addListener(SipSessionAttributeListener listener) {
 		this.sipSessionAttributeListeners.add(listener);
+		this.sipSessionAttributeListenerTable = buildDispatchTable(SipSessionAttributeListener.class, sipSessionAttributeListeners);
 	}
 
 	// this.sipSessionBindingListeners.clear();
@@ -253,6 +280,7 @@ public abstract class SipListenersHolder implements SipListeners {
 	// this.sipSessionListeners.clear();
 	public void addListener(SipSessionListener listener) {
 		this.sipSessionListeners.add(listener);
+		this.sipSessionListenerTable = buildDispatchTable(SipSessionListener.class, sipSessionListeners);
 	}
 
 	// this.sipSessionListeners.clear();
@@ -343,6 +371,100 @@ public abstract class SipListenersHolder implements SipListeners {
 		return timerListener;
 	}
 
+	public ListenerDispatchTable<SipApplicationSessionAttributeListener> getSipApplicationSessionAttributeListenerTable() {
+		return sipApplicationSessionAttributeListenerTable;
+	}
+
+	public ListenerDispatchTable<SipApplicationSessionListener> getSipApplicationSessionListenerTable() {
+		return sipApplicationSessionListenerTable;
+	}
+
+	public ListenerDispatchTable<SipSessionAttributeListener> getSipSessionAttributeListenerTable() {
+		return sipSessionAttributeListenerTable;
+	}
+
+	public ListenerDispatchTable<SipSessionListener> getSipSessionListenerTable() {
+		return sipSessionListenerTable;
+	}
+
+	private void buildDispatchTables() {
+		this.sipApplicationSessionAttributeListenerTable = buildDispatchTable(SipApplicationSessionAttributeListener.class, sipApplicationSessionAttributeListeners);
+		this.sipApplicationSessionListenerTable = buildDispatchTable(SipApplicationSessionListener.class, sipApplicationSessionListeners);
+		this.sipSessionAttributeListenerTable = buildDispatchTable(SipSessionAttributeListener.class, sipSessionAttributeListeners);
+		this.sipSessionListenerTable = buildDispatchTable(SipSessionListener.class, sipSessionListeners);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T extends EventListener> ListenerDispatchTable<T> buildDispatchTable(Class<T> listenerType, List<T> listeners) {
+		List<T> synchronousListeners = new ArrayList<T>(listeners.size());
+		List<T> asynchronousListeners = new ArrayList<T>();
+		for (T listener : listeners) {
+			if(listener.getClass().isAnnotationPresent(NonCriticalListener.class)) {
+				asynchronousListeners.add(listener);
+			} else {
+				synchronousListeners.add(listener);
+			}
+		}
+		return new ListenerDispatchTable<T>(
+				synchronousListeners.toArray((T[]) Array.newInstance(listenerType, synchronousListeners.size())),
+				asynchronousListeners.toArray((T[]) Array.newInstance(listenerType, asynchronousListeners.size())));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.SipListeners#dispatchAsynchronously(java.lang.Runnable)
+	 */
+	public void dispatchAsynchronously(Runnable notification) {
+		asynchronousNotifications.offer(notification);
+		scheduleAsynchronousNotifications();
+	}
+
+	private void scheduleAsynchronousNotifications() {
+		// a single task delivers the notifications of the context at a time, the ones queued while it runs join its batch
+		if(!asynchronousNotificationsScheduled.compareAndSet(false, true)) {
+			return;
+		}
+		Executor executor = null;
+		if(sipContext.getSipApplicationDispatcher() != null) {
+			executor = sipContext.getSipApplicationDispatcher().getAsynchronousExecutor();
+		}
+		if(executor != null) {
+			try {
+				executor.execute(asynchronousNotificationsTask);
+				return;
+			} catch (RejectedExecutionException e) {
+				if(logger.isDebugEnabled()) {
+					logger.debug("Couldn't schedule the non critical listeners notifications of context " + sipContext.getApplicationName() + ", delivering them now", e);
+				}
+			}
+		}
+		// the server is stopping, the notifications are delivered on the calling thread rather than lost
+		asynchronousNotificationsTask.run();
+	}
+
+	private void deliverAsynchronousNotifications() {
+		ClassLoader oldClassLoader = java.lang.Thread.currentThread().getContextClassLoader();
+		sipContext.enterSipContext();
+		try {
+			Runnable notification = null;
+			int delivered = 0;
+			while (delivered < ASYNCHRONOUS_BATCH_SIZE && (notification = asynchronousNotifications.poll()) != null) {
+				try {
+					notification.run();
+				} catch (Throwable t) {
+					logger.error("Non critical listener threw exception", t);
+				}
+				delivered++;
+			}
+		} finally {
+			sipContext.exitSipContext(oldClassLoader);
+			asynchronousNotificationsScheduled.set(false);
+		}
+		if(!asynchronousNotifications.isEmpty()) {
+			scheduleAsynchronousNotifications();
+		}
+	}
+
 	public void deallocateServletsActingAsListeners () {
 		//need to deallocate listeners that are servlets...
 		for(SipApplicationSessionAttributeListener sipApplicationSessionAttributeListener : sipApplicationSessionAttributeListeners) {
@@ -409,6 +531,7 @@ public abstract class SipListenersHolder implements SipListeners {
 		this.listenerServlets.clear();
 		this.timerListener = null;
 		this.containerListener = null;
+		buildDispatchTables();
 	}
 
 	/**
@@ -22,10 +22,16 @@
 
 package org.mobicents.servlet.sip.core.session;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 import javax.servlet.ServletException;
@@ -47,6 +53,9 @@ import org.mobicents.servlet.sip.message.SipFactoryImpl;
 public abstract class SipManagerDelegate {
 
 	private static final Logger logger = Logger.getLogger(SipManagerDelegate.class);
+	// bounds of the interval between two checks for the sessions to passivate, in milliseconds
+	private static final long PASSIVATION_MIN_CHECK_INTERVAL = 1000;
+	private static final long PASSIVATION_DEFAULT_CHECK_INTERVAL = 60000;
 	
 	protected ConcurrentHashMap<SipApplicationSessionKey, MobicentsSipApplicationSession> sipApplicationSessions = 
 		new ConcurrentHashMap<SipApplicationSessionKey, MobicentsSipApplicationSession>();
@@ -132,6 +141,26 @@ public abstract class SipManagerDelegate {
     private int lastUpdatedSsCreationCounter = 0;
     private long lastSipSessionUpdatedTime = 0;
     private double lastAverageSsCreationPerSecond = 0.0;
+
+    /**
+     * Time in seconds after which the attributes of an idle sip application session and of its sip sessions
+     * are passivated to the local disk, or -1 to never passivate the idle sessions.
+     */
+    private volatile int passivationIdleTime = -1;
+
+    /**
+     * Maximum number of sip application sessions whose attributes stay on the heap, the least recently accessed
+     * ones being passivated beyond it, or -1 for no limit.
+     */
+    private volatile int maxResidentSipApplicationSessions = -1;
+
+    /**
+     * Directory the passivated attributes are stored in, a temporary directory if not set.
+     */
+    private volatile String passivationDirectory;
+
+    private volatile SessionAttributeStore sessionAttributeStore;
+    private ScheduledFuture<?> passivationFuture;
 	/**
 	 * @return the SipFactoryImpl
 	 */
@@ -252,6 +281,9 @@ public abstract class SipManagerDelegate {
                 
             }
         }
+		if(sessionAttributeStore == null && isPassivationEnabled()) {
+			startPassivation();
+		}
 				
 		return sipApplicationSessionImpl;
 	}
@@ -315,6 +347,11 @@ public abstract class SipManagerDelegate {
 			}
 			// put succeeded, use new value
             sipSessionImpl = newSipSessionImpl;
+		} else {
+			// another thread created the session first, the application session may have indexed the discarded one
+			// as the session adds itself to it on creation so make it index the one retained
+			sipApplicationSessionImpl.discardSipSession(newSipSessionImpl);
+			sipApplicationSessionImpl.addSipSession(sipSessionImpl);
 		}
 		return sipSessionImpl;
 	}
@@ -489,6 +526,9 @@ public abstract class SipManagerDelegate {
 	 * Remove the sip sessions and sip application sessions 
 	 */
 	public void removeAllSessions() {		
+		// the sessions may still be referenced by dialogs or timers once removed,
+		// so their passivated attributes are read back before the store is closed
+		stopPassivation();
 		List<SipSessionKey> sipSessionsToRemove = new ArrayList<SipSessionKey>(); 
 		for (SipSessionKey sipSessionKey : sipSessions.keySet()) {
 			sipSessionsToRemove.add(sipSessionKey);
@@ -504,6 +544,162 @@ public abstract class SipManagerDelegate {
 			removeSipApplicationSession(sipApplicationSessionKey);
 		}				
 	}
+
+	private boolean isPassivationEnabled() {
+		return passivationIdleTime > 0 || maxResidentSipApplicationSessions > 0;
+	}
+
+	/**
+	 * Create the store of the passivated attributes and schedule the passivation of the idle sessions,
+	 * once the first sip application session has been created so that the context is started
+	 */
+	protected synchronized void startPassivation() {
+		if(sessionAttributeStore != null || container == null || container.getSipApplicationDispatcher() == null) {
+			return;
+		}
+		final ScheduledExecutorService scheduledExecutor = container.getSipApplicationDispatcher().getAsynchronousScheduledExecutor();
+		if(scheduledExecutor == null) {
+			return;
+		}
+		File directory = null;
+		if(passivationDirectory != null) {
+			directory = new File(passivationDirectory, container.getApplicationName());
+		} else {
+			directory = new File(System.getProperty("java.io.tmpdir"), "sip-sessions-" + container.getApplicationName() + "-" + System.identityHashCode(this));
+		}
+		final SessionAttributeStore store = new SessionAttributeStore(directory, container.getSipContextClassLoader());
+		// the segments of a previous run of the server which didn't stop cleanly
+		store.deleteStaleSegments();
+		// checked twice per idle time, so that the sessions don't stay on the heap much longer than it
+		long checkInterval = PASSIVATION_DEFAULT_CHECK_INTERVAL;
+		if(passivationIdleTime > 0) {
+			checkInterval = Math.max(PASSIVATION_MIN_CHECK_INTERVAL, Math.min(PASSIVATION_DEFAULT_CHECK_INTERVAL, passivationIdleTime * 1000L / 2));
+		}
+		try {
+			passivationFuture = scheduledExecutor.scheduleWithFixedDelay(new Runnable() {
+				public void run() {
+					try {
+						passivateIdleSessions();
+					} catch (Throwable t) {
+						logger.error("Couldn't passivate the idle sessions of " + container.getApplicationName(), t);
+					}
+				}
+			}, checkInterval, checkInterval, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			logger.warn("Couldn't schedule the passivation of the idle sessions of " + container.getApplicationName(), e);
+			return;
+		}
+		sessionAttributeStore = store;
+		if(logger.isInfoEnabled()) {
+			logger.info("Passivating the idle sessions of " + container.getApplicationName() + " to " + directory + 
+					", passivationIdleTime=" + passivationIdleTime + "s, maxResidentSipApplicationSessions=" + maxResidentSipApplicationSessions);
+		}
+	}
+
+	protected synchronized void stopPassivation() {
+		if(passivationFuture != null) {
+			passivationFuture.cancel(false);
+			passivationFuture = null;
+		}
+		if(sessionAttributeStore != null) {
+			activatePassivatedSessions();
+			sessionAttributeStore.close();
+			sessionAttributeStore = null;
+		}
+	}
+
+	/**
+	 * Read back the passivated attributes of all the sessions, those which still can't be read are lost
+	 * once the store is closed and their sessions fail on the next access to their attributes
+	 */
+	private void activatePassivatedSessions() {
+		int failedActivations = 0;
+		final ClassLoader oldClassLoader = java.lang.Thread.currentThread().getContextClassLoader();
+		container.enterSipContext();
+		try {
+			for (MobicentsSipApplicationSession sipApplicationSession : sipApplicationSessions.values()) {
+				if(sipApplicationSession instanceof SipApplicationSessionImpl && !((SipApplicationSessionImpl) sipApplicationSession).activateAttributes()) {
+					failedActivations++;
+				}
+			}
+			for (MobicentsSipSession sipSession : sipSessions.values()) {
+				if(sipSession instanceof SipSessionImpl && !((SipSessionImpl) sipSession).activateAttributes()) {
+					failedActivations++;
+				}
+			}
+		} finally {
+			container.exitSipContext(oldClassLoader);
+		}
+		if(failedActivations > 0) {
+			logger.error("The passivated attributes of " + failedActivations + " sessions of " + container.getApplicationName() + 
+					" couldn't be read back before closing the session attribute store " + sessionAttributeStore);
+		}
+	}
+
+	/**
+	 * Passivate the attributes of the sip application sessions idle for more than the passivation idle time,
+	 * then of the least recently accessed ones until at most maxResidentSipApplicationSessions remain on the heap.
+	 * The attributes are read back transparently on their next access.
+	 */
+	public void passivateIdleSessions() {
+		final SessionAttributeStore store = sessionAttributeStore;
+		if(store == null) {
+			return;
+		}
+		final long now = System.currentTimeMillis();
+		final long idleTime = passivationIdleTime * 1000L;
+		final int maxResident = maxResidentSipApplicationSessions;
+		final List<ResidentSipApplicationSession> residentSipApplicationSessions = new ArrayList<ResidentSipApplicationSession>();
+		int passivatedSessions = 0;
+		// the activation listeners are notified under the classloader of the application
+		final ClassLoader oldClassLoader = java.lang.Thread.currentThread().getContextClassLoader();
+		container.enterSipContext();
+		try {
+			for (MobicentsSipApplicationSession sipApplicationSession : sipApplicationSessions.values()) {
+				if(!(sipApplicationSession instanceof SipApplicationSessionImpl) || !sipApplicationSession.isValidInternal()) {
+					continue;
+				}
+				final SipApplicationSessionImpl sipApplicationSessionImpl = (SipApplicationSessionImpl) sipApplicationSession;
+				final long lastAccessedTime = sipApplicationSessionImpl.getLastAccessedTime();
+				if(idleTime > 0 && now - lastAccessedTime > idleTime) {
+					passivatedSessions += sipApplicationSessionImpl.passivateAttributes(store);
+				} else if(maxResident > 0 && !sipApplicationSessionImpl.isAttributesPassivated()) {
+					residentSipApplicationSessions.add(new ResidentSipApplicationSession(sipApplicationSessionImpl, lastAccessedTime));
+				}
+			}
+			if(maxResident > 0 && residentSipApplicationSessions.size() > maxResident) {
+				Collections.sort(residentSipApplicationSessions, new Comparator<ResidentSipApplicationSession>() {
+					public int compare(ResidentSipApplicationSession session1, ResidentSipApplicationSession session2) {
+						return session1.lastAccessedTime < session2.lastAccessedTime ? -1 : (session1.lastAccessedTime > session2.lastAccessedTime ? 1 : 0);
+					}
+				});
+				final int excess = residentSipApplicationSessions.size() - maxResident;
+				for (int i = 0; i < excess; i++) {
+					passivatedSessions += residentSipApplicationSessions.get(i).sipApplicationSession.passivateAttributes(store);
+				}
+			}
+		} finally {
+			container.exitSipContext(oldClassLoader);
+		}
+		if(logger.isDebugEnabled()) {
+			logger.debug("passivated the attributes of " + passivatedSessions + " sessions of " + container.getApplicationName() + 
+					", session attribute store " + store);
+		}
+	}
+
+	/**
+	 * a sip application session with its last accessed time at the time it was checked, so that the order stays
+	 * consistent while the sessions are sorted even if they are accessed in the meantime
+	 */
+	private static final class ResidentSipApplicationSession {
+		final SipApplicationSessionImpl sipApplicationSession;
+		final long lastAccessedTime;
+
+		ResidentSipApplicationSession(SipApplicationSessionImpl sipApplicationSession, long lastAccessedTime) {
+			this.sipApplicationSession = sipApplicationSession;
+			this.lastAccessedTime = lastAccessedTime;
+		}
+	}
 	
 	protected abstract MobicentsSipSession getNewMobicentsSipSession(SipSessionKey key, SipFactoryImpl sipFactoryImpl, MobicentsSipApplicationSession mobicentsSipApplicationSession);
 	
@@ -750,6 +946,58 @@ public abstract class SipManagerDelegate {
 		return lastAverageSsCreationPerSecond;
 	}
 
+	/**
+	 * @return the time in seconds after which the attributes of an idle session are passivated, or -1 if they are never passivated
+	 */
+	public int getPassivationIdleTime() {
+		return passivationIdleTime;
+	}
+
+	/**
+	 * @param passivationIdleTime the time in seconds after which the attributes of an idle session are passivated to the local disk,
+	 * or -1 to never passivate them
+	 */
+	public void setPassivationIdleTime(int passivationIdleTime) {
+		this.passivationIdleTime = passivationIdleTime;
+	}
+
+	/**
+	 * @return the maximum number of sip application sessions whose attributes stay on the heap, or -1 for no limit
+	 */
+	public int getMaxResidentSipApplicationSessions() {
+		return maxResidentSipApplicationSessions;
+	}
+
+	/**
+	 * @param maxResidentSipApplicationSessions the maximum number of sip application sessions whose attributes stay on the heap,
+	 * the least recently accessed ones being passivated beyond it, or -1 for no limit
+	 */
+	public void setMaxResidentSipApplicationSessions(int maxResidentSipApplicationSessions) {
+		this.maxResidentSipApplicationSessions = maxResidentSipApplicationSessions;
+	}
+
+	/**
+	 * @return the directory the passivated attributes are stored in, null for a temporary directory
+	 */
+	public String getPassivationDirectory() {
+		return passivationDirectory;
+	}
+
+	/**
+	 * @param passivationDirectory the directory the passivated attributes are stored in, in a subdirectory named after the application
+	 */
+	public void setPassivationDirectory(String passivationDirectory) {
+		this.passivationDirectory = passivationDirectory;
+	}
+
+	/**
+	 * @return the number of sip sessions and sip application sessions whose attributes are currently passivated
+	 */
+	public int getPassivatedSessions() {
+		final SessionAttributeStore store = sessionAttributeStore;
+		return store == null ? 0 : store.getRecords();
+	}
+
 	public void updateStats() {
 		if(logger.isTraceEnabled()) {
 			logger.trace("updating sip manager " + container.getApplicationName() + " statistics");
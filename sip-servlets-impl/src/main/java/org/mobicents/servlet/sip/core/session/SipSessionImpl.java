@@ -42,7 +42,9 @@ import java.util.Map.Entry;
 import java.util.Set;
 import java.util.Vector;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -101,6 +103,7 @@ import org.mobicents.servlet.sip.core.MobicentsSipServlet;
 import org.mobicents.servlet.sip.core.RoutingState;
 import org.mobicents.servlet.sip.core.SipApplicationDispatcher;
 import org.mobicents.servlet.sip.core.SipContext;
+import org.mobicents.servlet.sip.core.ListenerDispatchTable;
 import org.mobicents.servlet.sip.core.SipListeners;
 import org.mobicents.servlet.sip.core.SipManager;
 import org.mobicents.servlet.sip.core.SipNetworkInterfaceManager;
@@ -115,6 +118,7 @@ import org.mobicents.servlet.sip.core.security.SipPrincipal;
 import org.mobicents.servlet.sip.message.B2buaHelperImpl;
 import org.mobicents.servlet.sip.message.MobicentsSipSessionFacade;
 import org.mobicents.servlet.sip.message.SipFactoryImpl;
+import org.mobicents.servlet.sip.core.session.SessionAttributeListenerNotifier.AttributeEventType;
 import org.mobicents.servlet.sip.message.SipServletMessageImpl;
 import org.mobicents.servlet.sip.message.SipServletRequestImpl;
 import org.mobicents.servlet.sip.message.SipServletResponseImpl;
@@ -275,6 +279,8 @@ public class SipSessionImpl implements MobicentsSipSession {
 	protected transient boolean copyRecordRouteHeadersOnSubsequentResponses = false;
 	
 	protected transient Semaphore semaphore;
+	// queue serializing the tasks of this session in SipSessionSerial concurrency control mode
+	protected transient SessionSerialExecutor serialExecutor;
 	
 	protected transient MobicentsSipSessionFacade facade = null;
 	
@@ -315,44 +321,73 @@ public class SipSessionImpl implements MobicentsSipSession {
 		if(mobicentsSipApplicationSession.getSipContext() != null && ConcurrencyControlMode.SipSession.equals(mobicentsSipApplicationSession.getSipContext().getConcurrencyControlMode())) {
 			semaphore = new Semaphore(1);		
 		}		
+		if(mobicentsSipApplicationSession.getSipContext() != null && ConcurrencyControlMode.SipSessionSerial.equals(mobicentsSipApplicationSession.getSipContext().getConcurrencyControlMode())) {
+			serialExecutor = new SessionSerialExecutor(sipFactoryImpl.getSipApplicationDispatcher().getAsynchronousExecutor());
+		}
 	}
 	/**
 	 * Notifies the listeners that a lifecycle event occured on that sip session 
 	 * @param sipSessionEventType the type of event that happened
 	 */
-	public void notifySipSessionListeners(SipSessionEventType sipSessionEventType) {
+	public void notifySipSessionListeners(final SipSessionEventType sipSessionEventType) {
 		MobicentsSipApplicationSession sipApplicationSession = getSipApplicationSession();
 		if(sipApplicationSession != null) {
 			SipContext sipContext = sipApplicationSession.getSipContext(); 							
-			List<SipSessionListener> sipSessionListeners = 
-				sipContext.getListeners().getSipSessionListeners();		
-			if(sipSessionListeners.size() > 0) {
-				if(logger.isDebugEnabled()) {
-					logger.debug("notifying sip session listeners of context " + sipContext.getApplicationName() + " of following event " +
-							sipSessionEventType);
-				}
+			SipListeners sipListeners = sipContext.getListeners();
+			ListenerDispatchTable<SipSessionListener> sipSessionListenerTable = sipListeners.getSipSessionListenerTable();
+			// no classloader switch nor event when no listener is interested
+			if(sipSessionListenerTable.isEmpty()) {
+				return;
+			}
+			if(logger.isDebugEnabled()) {
+				logger.debug("notifying sip session listeners of context " + sipContext.getApplicationName() + " of following event " +
+						sipSessionEventType);
+			}
+			final SipSessionEvent sipSessionEvent = new SipSessionEvent(this.getFacade());
+			final SipSessionListener[] synchronousListeners = sipSessionListenerTable.getSynchronousListeners();
+			if(synchronousListeners.length > 0) {
 				ClassLoader oldClassLoader = java.lang.Thread.currentThread().getContextClassLoader();
 				sipContext.enterSipContext();	
-				SipSessionEvent sipSessionEvent = new SipSessionEvent(this.getFacade());
-				for (SipSessionListener sipSessionListener : sipSessionListeners) {
-					try {
-						if(logger.isDebugEnabled()) {
-							logger.debug("notifying sip session listener " + sipSessionListener.getClass().getName() + " of context " + 
-									key.getApplicationName() + " of following event " + sipSessionEventType);
-						}
-						if(SipSessionEventType.CREATION.equals(sipSessionEventType)) {
-							sipSessionListener.sessionCreated(sipSessionEvent);
-						} else if (SipSessionEventType.DELETION.equals(sipSessionEventType)) {
-							sipSessionListener.sessionDestroyed(sipSessionEvent);
-						} else if (SipSessionEventType.READYTOINVALIDATE.equals(sipSessionEventType)) {
-							sipSessionListener.sessionReadyToInvalidate(sipSessionEvent);
-						}
-					} catch (Throwable t) {
-						logger.error("SipSessionListener threw exception", t);
+				try {
+					for (SipSessionListener sipSessionListener : synchronousListeners) {
+						notifySipSessionListener(sipSessionListener, sipSessionEvent, sipSessionEventType);
 					}
+				} finally {
+					sipContext.exitSipContext(oldClassLoader);
 				}
-				sipContext.exitSipContext(oldClassLoader);
-			}		
+			}
+			final SipSessionListener[] asynchronousListeners = sipSessionListenerTable.getAsynchronousListeners();
+			if(asynchronousListeners.length > 0) {
+				sipListeners.dispatchAsynchronously(new Runnable() {
+					public void run() {
+						for (SipSessionListener sipSessionListener : asynchronousListeners) {
+							notifySipSessionListener(sipSessionListener, sipSessionEvent, sipSessionEventType);
+						}
+					}
+				});
+			}
+		}
+	}
+
+	private void notifySipSessionListener(SipSessionListener sipSessionListener, SipSessionEvent sipSessionEvent, SipSessionEventType sipSessionEventType) {
+		try {
+			if(logger.isDebugEnabled()) {
+				logger.debug("notifying sip session listener " + sipSessionListener.getClass().getName() + " of context " + 
+						key.getApplicationName() + " of following event " + sipSessionEventType);
+			}
+			switch (sipSessionEventType) {
+			case CREATION:
+				sipSessionListener.sessionCreated(sipSessionEvent);
+				break;
+			case DELETION:
+				sipSessionListener.sessionDestroyed(sipSessionEvent);
+				break;
+			case READYTOINVALIDATE:
+				sipSessionListener.sessionReadyToInvalidate(sipSessionEvent);
+				break;
+			}
+		} catch (Throwable t) {
+			logger.error("SipSessionListener threw exception", t);
 		}
 	}
 
@@ -424,7 +459,7 @@ public class SipSessionImpl implements MobicentsSipSession {
 							userName = ((javax.sip.address.SipURI)uri).getUser();
 						}
 						if(sipFactory.isUseLoadBalancer()) {
-							SipLoadBalancer loadBalancerToUse = sipFactory.getLoadBalancerToUse();
+							SipLoadBalancer loadBalancerToUse = sipFactory.selectLoadBalancer();
 							javax.sip.address.SipURI sipURI = SipFactoryImpl.addressFactory.createSipURI(userName, loadBalancerToUse.getAddress().getHostAddress());
 							sipURI.setHost(loadBalancerToUse.getAddress().getHostAddress());
 							sipURI.setPort(loadBalancerToUse.getSipPort());
@@ -457,7 +492,7 @@ public class SipSessionImpl implements MobicentsSipSession {
 				
 				// cater to http://code.google.com/p/sipservlets/issues/detail?id=31 to be able to set the rport in applications
 				final SipApplicationDispatcher sipApplicationDispatcher = sipFactory.getSipApplicationDispatcher();
-				final String branch = JainSipUtils.createBranch(getSipApplicationSession().getKey().getId(),  sipApplicationDispatcher.getHashFromApplicationName(getKey().getApplicationName()));
+				final String branch = JainSipUtils.createBranch(getSipApplicationSession().getKey().getId(),  sipApplicationDispatcher.getHashFromApplicationName(getKey().getApplicationName()), sipApplicationDispatcher.getIdGenerator());
 				ViaHeader viaHeader = JainSipUtils.createViaHeader(
 	    				sipFactory.getSipNetworkInterfaceManager(), methodRequest, branch, outboundInterface);
 				methodRequest.addHeader(viaHeader);
@@ -522,7 +557,7 @@ public class SipSessionImpl implements MobicentsSipSession {
 					final SipProvider sipProvider = sipNetworkInterfaceManager.findMatchingListeningPoint(
 							JainSipUtils.findTransport(request), false).getSipProvider();
 					final SipApplicationDispatcher sipApplicationDispatcher = sipFactory.getSipApplicationDispatcher();				
-					final String branch = JainSipUtils.createBranch(getSipApplicationSession().getKey().getId(),  sipApplicationDispatcher.getHashFromApplicationName(getKey().getApplicationName()));
+					final String branch = JainSipUtils.createBranch(getSipApplicationSession().getKey().getId(),  sipApplicationDispatcher.getHashFromApplicationName(getKey().getApplicationName()), sipApplicationDispatcher.getIdGenerator());
 										
 					ViaHeader viaHeader = JainSipUtils.createViaHeader(
 		    				sipNetworkInterfaceManager, request, branch, outboundInterface);
@@ -697,7 +732,7 @@ public class SipSessionImpl implements MobicentsSipSession {
 	// Does it need to be synchronized?
 	protected Map<String, Object> getAttributeMap() {
 		if(this.sipSessionAttributeMap == null) {
-			this.sipSessionAttributeMap = new ConcurrentHashMap<String, Object>();
+			this.sipSessionAttributeMap = new DeltaTrackingAttributeMap();
 		}
 		return this.sipSessionAttributeMap;
 	}
@@ -710,7 +745,12 @@ public class SipSessionImpl implements MobicentsSipSession {
 		if(!isValid()) {
 			throw new IllegalStateException("SipApplicationSession already invalidated !");
 		}
-		return getAttributeMap().get(name);
+		final Map<String, Object> attributeMap = getAttributeMap();
+		if(attributeMap instanceof DeltaTrackingAttributeMap) {
+			// the application may modify the value in place
+			return ((DeltaTrackingAttributeMap) attributeMap).getAttribute(name);
+		}
+		return attributeMap.get(name);
 	}
 
 	/*
@@ -1203,21 +1243,12 @@ public class SipSessionImpl implements MobicentsSipSession {
 		
 		// Notifying Listeners of attribute removal	
 		SipListeners sipListenersHolder = this.getSipApplicationSession().getSipContext().getListeners();		
-		List<SipSessionAttributeListener> listenersList = sipListenersHolder.getSipSessionAttributeListeners();
-		if(listenersList.size() > 0) {
+		ListenerDispatchTable<SipSessionAttributeListener> listenerTable = sipListenersHolder.getSipSessionAttributeListenerTable();
+		if(!listenerTable.isEmpty()) {
 			if(event == null) {
 				event = new SipSessionBindingEvent(this, name);
 			}
-			for (SipSessionAttributeListener listener : listenersList) {
-				if(logger.isDebugEnabled()) {
-					logger.debug("notifying SipSessionAttributeListener " + listener.getClass().getCanonicalName() + " of attribute removed on key "+ key);
-				}
-				try{
-					listener.attributeRemoved(event);
-				} catch (Throwable t) {
-					logger.error("SipSessionAttributeListener threw exception", t);
-				}
-			}
+			SessionAttributeListenerNotifier.notifySipSessionAttributeListeners(sipListenersHolder, listenerTable, event, AttributeEventType.REMOVED);
 		}
 	}
 
@@ -1267,35 +1298,13 @@ public class SipSessionImpl implements MobicentsSipSession {
 		
 		// Notifying Listeners of attribute addition or modification		
 		SipListeners sipListenersHolder = this.getSipApplicationSession().getSipContext().getListeners();
-		List<SipSessionAttributeListener> listenersList = sipListenersHolder.getSipSessionAttributeListeners();
-		if(listenersList.size() > 0) {
+		ListenerDispatchTable<SipSessionAttributeListener> listenerTable = sipListenersHolder.getSipSessionAttributeListenerTable();
+		if(!listenerTable.isEmpty()) {
 			if(event == null) {
 				event = new SipSessionBindingEvent(this, key);	
 			}
-			if (previousValue == null) {
-				// This is initial, we need to send value bound event
-				for (SipSessionAttributeListener listener : listenersList) {
-					if(logger.isDebugEnabled()) {
-						logger.debug("notifying SipSessionAttributeListener " + listener.getClass().getCanonicalName() + " of attribute added on key "+ key);
-					}
-					try {
-						listener.attributeAdded(event);
-					} catch (Throwable t) {
-						logger.error("SipSessionAttributeListener threw exception", t);
-					}
-				}
-			} else {
-				for (SipSessionAttributeListener listener : listenersList) {
-					if(logger.isDebugEnabled()) {
-						logger.debug("notifying SipSessionAttributeListener " + listener.getClass().getCanonicalName() + " of attribute replaced on key "+ key);
-					}
-					try {
-						listener.attributeReplaced(event);
-					} catch (Throwable t) {
-						logger.error("SipSessionAttributeListener threw exception", t);
-					}
-				}
-			}		
+			SessionAttributeListenerNotifier.notifySipSessionAttributeListeners(sipListenersHolder, listenerTable, event,
+					previousValue == null ? AttributeEventType.ADDED : AttributeEventType.REPLACED);
 		}
 	}
 
@@ -1901,6 +1910,54 @@ public class SipSessionImpl implements MobicentsSipSession {
 			}
 	    }
     }
+
+    /**
+     * Passivate the attributes of this idle session to the store of its context, the activation listeners
+     * are notified and the attributes are read back on their next access
+     * @param store the store to write the attributes to
+     * @return true if the attributes have been passivated
+     */
+    public boolean passivateAttributes(SessionAttributeStore store) {
+    	final Map<String, Object> attributeMap = sipSessionAttributeMap;
+    	if(!(attributeMap instanceof DeltaTrackingAttributeMap) || ((DeltaTrackingAttributeMap) attributeMap).isPassivated() 
+    			|| attributeMap.isEmpty()) {
+    		return false;
+    	}
+    	passivate();
+    	if(((DeltaTrackingAttributeMap) attributeMap).passivate(store, new Runnable() {
+    		public void run() {
+    			activate();
+    		}
+    	})) {
+    		return true;
+    	}
+    	// the listeners told about the passivation are told it didn't happen
+    	activate();
+    	return false;
+    }
+
+    public boolean isAttributesPassivated() {
+    	final Map<String, Object> attributeMap = sipSessionAttributeMap;
+    	return attributeMap instanceof DeltaTrackingAttributeMap && ((DeltaTrackingAttributeMap) attributeMap).isPassivated();
+    }
+
+    /**
+     * Read the attributes back now if they are passivated
+     * 
+     * @return false if the passivated attributes couldn't be read back
+     */
+    public boolean activateAttributes() {
+    	final Map<String, Object> attributeMap = sipSessionAttributeMap;
+    	if(attributeMap instanceof DeltaTrackingAttributeMap) {
+    		try {
+    			((DeltaTrackingAttributeMap) attributeMap).activate();
+    		} catch (IllegalStateException e) {
+    			logger.error("Couldn't read back the passivated attributes of the sip session " + key, e);
+    			return false;
+    		}
+    	}
+    	return true;
+    }
     
 	public SipPrincipal getUserPrincipal() {
 		return userPrincipal;
@@ -2095,7 +2152,23 @@ public class SipSessionImpl implements MobicentsSipSession {
 	 */
 	public void setSipSessionAttributeMap(
 			Map<String, Object> sipSessionAttributeMap) {
-		this.sipSessionAttributeMap = sipSessionAttributeMap;
+		// the map is shared with the session it comes from, so it is wrapped in place rather than copied
+		if(sipSessionAttributeMap instanceof ConcurrentMap && !(sipSessionAttributeMap instanceof DeltaTrackingAttributeMap)) {
+			this.sipSessionAttributeMap = DeltaTrackingAttributeMap.wrap((ConcurrentMap<String, Object>) sipSessionAttributeMap);
+		} else {
+			this.sipSessionAttributeMap = sipSessionAttributeMap;
+		}
+	}
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.session.MobicentsSipSession#collectAttributesDelta()
+	 */
+	public AttributesDelta collectAttributesDelta() {
+		final Map<String, Object> attributeMap = getAttributeMap();
+		if(attributeMap instanceof DeltaTrackingAttributeMap) {
+			return ((DeltaTrackingAttributeMap) attributeMap).collectDelta();
+		}
+		return null;
 	}
 	/*
 	 * (non-Javadoc)
@@ -2197,6 +2270,14 @@ public class SipSessionImpl implements MobicentsSipSession {
 	public Semaphore getSemaphore() {
 		return semaphore;
 	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.session.MobicentsSipSession#getSerialExecutor()
+	 */
+	public Executor getSerialExecutor() {
+		return serialExecutor;
+	}
 	
 	public MobicentsSipSessionFacade getFacade() {		
 		MobicentsSipApplicationSession sipApplicationSession = getSipApplicationSession();			
@@ -2387,7 +2468,17 @@ public class SipSessionImpl implements MobicentsSipSession {
 	 * @see org.mobicents.javax.servlet.sip.SipSessionExt#scheduleAsynchronousWork(org.mobicents.javax.servlet.sip.SipSessionAsynchronousWork)
 	 */
 	public void scheduleAsynchronousWork(SipSessionAsynchronousWork work) {
-		sipFactory.getSipApplicationDispatcher().getAsynchronousExecutor().execute(new SipSessionAsyncTask(key, work, sipFactory));
+		Executor executor = serialExecutor;
+		if(executor == null) {
+			MobicentsSipApplicationSession sipApplicationSession = getSipApplicationSession();
+			if(sipApplicationSession != null) {
+				executor = sipApplicationSession.getSerialExecutor();
+			}
+		}
+		if(executor == null) {
+			executor = sipFactory.getSipApplicationDispatcher().getAsynchronousExecutor();
+		}
+		executor.execute(new SipSessionAsyncTask(key, work, sipFactory));
 	}
 	public int getRequestsPending() {
 		return requestsPending;
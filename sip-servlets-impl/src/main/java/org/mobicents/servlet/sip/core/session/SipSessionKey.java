@@ -22,6 +22,8 @@
 
 package org.mobicents.servlet.sip.core.session;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 
 /**
@@ -34,6 +36,10 @@ import java.io.Serializable;
  * It is to be noted that the To Header parameter Tag will not be used in SipSessionKey comparison (equals() and hashcode() methods).<br/>
  * It will only be used to check if a new derived sip session needs to be created.
  * </p>
+ * <p>
+ * A key is created for every subsequent request and response received, to look up its sip session, so the hash code
+ * is only computed once and the string form, which is also the sip session id, is only built the first time it is needed.
+ * </p>
  * 
  * @author <A HREF="mailto:jean.deruelle@gmail.com">Jean Deruelle</A>
  *
@@ -47,7 +53,11 @@ public final class SipSessionKey implements MobicentsSipSessionKey, Serializable
 	// Issue 790 : 1 SipSession should not be used in 2 different app session (http://code.google.com/p/mobicents/issues/detail?id=790)
 	// so we add the app session id in the key as well
 	private final String applicationSessionId;
+	// built lazily from the fields, kept in the serialized form so that the session id doesn't change
 	private String toString;
+	// the to tag part of the string form, it is only updated when the string form is recomputed
+	private String toStringToTag;
+	private transient int hashCode;
 	/**
 	 * @param fromAddress
 	 * @param fromTag
@@ -64,8 +74,7 @@ public final class SipSessionKey implements MobicentsSipSessionKey, Serializable
 		this.callId = callId;
 		this.applicationName = applicationName;
 		this.applicationSessionId = applicationSessionId;
-		
-		computeToString();		
+		this.toStringToTag = toTag;
 	}
 	/**
 	 * @return the fromTag
@@ -102,14 +111,19 @@ public final class SipSessionKey implements MobicentsSipSessionKey, Serializable
 	 */
 	@Override
 	public int hashCode() {
-		final int prime = 31;
-		int result = 1;
-		result = prime * result
-				+ ((applicationName == null) ? 0 : applicationName.hashCode());
-		result = prime * result
-				+ ((applicationSessionId == null) ? 0 : applicationSessionId.hashCode());
-		result = prime * result + ((callId == null) ? 0 : callId.hashCode());
-		result = prime * result + ((fromTag == null) ? 0 : fromTag.hashCode());
+		int result = hashCode;
+		if(result == 0) {
+			// the fields taking part in the hash code are final, no need to synchronize
+			final int prime = 31;
+			result = 1;
+			result = prime * result
+					+ ((applicationName == null) ? 0 : applicationName.hashCode());
+			result = prime * result
+					+ ((applicationSessionId == null) ? 0 : applicationSessionId.hashCode());
+			result = prime * result + ((callId == null) ? 0 : callId.hashCode());
+			result = prime * result + ((fromTag == null) ? 0 : fromTag.hashCode());
+			hashCode = result;
+		}
 		return result;
 	}
 	/* (non-Javadoc)
@@ -124,6 +138,8 @@ public final class SipSessionKey implements MobicentsSipSessionKey, Serializable
 		if (getClass() != obj.getClass())
 			return false;
 		final SipSessionKey other = (SipSessionKey) obj;
+		if (hashCode() != other.hashCode())
+			return false;
 		if (applicationName == null) {
 			if (other.applicationName != null)
 				return false;
@@ -149,7 +165,18 @@ public final class SipSessionKey implements MobicentsSipSessionKey, Serializable
 	
 	@Override
 	public String toString() {
-		return toString;
+		String result = toString;
+		if(result == null) {
+			final String toTag = toStringToTag;
+			if(toTag != null) {
+				// Issue 2365 : to tag needed for getApplicationSession().getSipSession(<sessionId>) to return forked session and not the parent one
+				result = "(" + fromTag + SessionManagerUtil.SESSION_KEY_SEPARATOR + toTag + SessionManagerUtil.SESSION_KEY_SEPARATOR + callId + SessionManagerUtil.SESSION_KEY_SEPARATOR + applicationSessionId +SessionManagerUtil.SESSION_KEY_SEPARATOR + applicationName + ")";
+			} else {
+				result = "(" + fromTag + SessionManagerUtil.SESSION_KEY_SEPARATOR + callId + SessionManagerUtil.SESSION_KEY_SEPARATOR + applicationSessionId +SessionManagerUtil.SESSION_KEY_SEPARATOR + applicationName + ")";
+			}
+			toString = result;
+		}
+		return result;
 	}
 	/**
 	 * Sets the to tag on the key when we receive a response.
@@ -174,16 +201,24 @@ public final class SipSessionKey implements MobicentsSipSessionKey, Serializable
 	public void setToString(String toString) {
 		this.toString = toString;
 	}
+
 	/**
-	 * @return the toString
+	 * @return the to tag the string form of the key is built with, null if it doesn't include any
+	 */
+	String getToStringToTag() {
+		return toStringToTag;
+	}
+	/**
+	 * Make the string form reflect the current to tag, it will be rebuilt the next time it is needed
 	 */
 	public void computeToString() {
-		if(toTag != null) {
-			// Issue 2365 : to tag needed for getApplicationSession().getSipSession(<sessionId>) to return forked session and not the parent one
-			toString = "(" + fromTag + SessionManagerUtil.SESSION_KEY_SEPARATOR + toTag + SessionManagerUtil.SESSION_KEY_SEPARATOR + callId + SessionManagerUtil.SESSION_KEY_SEPARATOR + applicationSessionId +SessionManagerUtil.SESSION_KEY_SEPARATOR + applicationName + ")";
-		} else {
-			toString = "(" + fromTag + SessionManagerUtil.SESSION_KEY_SEPARATOR + callId + SessionManagerUtil.SESSION_KEY_SEPARATOR + applicationSessionId +SessionManagerUtil.SESSION_KEY_SEPARATOR + applicationName + ")";
-		}
+		toStringToTag = toTag;
+		toString = null;
 	}	
 	
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		// the string form is the sip session id, make sure it is serialized
+		toString();
+		out.defaultWriteObject();
+	}
 }
@@ -21,7 +21,6 @@
  */
 package org.mobicents.servlet.sip.core.timers;
 
-import java.lang.reflect.Field;
 import java.util.TimerTask;
 import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ScheduledFuture;
@@ -30,6 +29,7 @@ import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.log4j.Logger;
+import org.mobicents.servlet.sip.proxy.ProxyBranchTimerTask;
 import org.mobicents.servlet.sip.startup.StaticServiceHolder;
 import org.mobicents.servlet.sip.utils.NamingThreadFactory;
 
@@ -42,18 +42,24 @@ public class DefaultProxyTimerService extends ScheduledThreadPoolExecutor implem
     private static final Logger logger = Logger.getLogger(DefaultProxyTimerService.class
             .getName());
 
-    // Counts the number of cancelled tasks
+    /**
+     * Counts the number of cancelled tasks
+     * @deprecated not updated anymore, the cancelled tasks are removed from the queue on cancel
+     */
+    @Deprecated
     protected static volatile int numCancelled = 0;
 
     public static final int SCHEDULER_THREAD_POOL_DEFAULT_SIZE = 4;
 
     public DefaultProxyTimerService(String applicationName) {
         super(SCHEDULER_THREAD_POOL_DEFAULT_SIZE, new NamingThreadFactory(applicationName + "_sip_default_proxy_timer_service"));
+        setRemoveOnCancelPolicy(true);
         schedulePurgeTaskIfNeeded();
     }
 
     public DefaultProxyTimerService(int corePoolSize) {
         super(corePoolSize);
+        setRemoveOnCancelPolicy(true);
         schedulePurgeTaskIfNeeded();
     }
 
@@ -64,6 +70,7 @@ public class DefaultProxyTimerService extends ScheduledThreadPoolExecutor implem
     public DefaultProxyTimerService(int corePoolSize,
             ThreadFactory threadFactory) {
         super(corePoolSize, threadFactory);
+        setRemoveOnCancelPolicy(true);
         schedulePurgeTaskIfNeeded();
     }
 
@@ -74,6 +81,7 @@ public class DefaultProxyTimerService extends ScheduledThreadPoolExecutor implem
     public DefaultProxyTimerService(int corePoolSize,
             RejectedExecutionHandler handler) {
         super(corePoolSize, handler);
+        setRemoveOnCancelPolicy(true);
         schedulePurgeTaskIfNeeded();
     }
 
@@ -85,6 +93,7 @@ public class DefaultProxyTimerService extends ScheduledThreadPoolExecutor implem
     public DefaultProxyTimerService(int corePoolSize,
             ThreadFactory threadFactory, RejectedExecutionHandler handler) {
         super(corePoolSize, threadFactory, handler);
+        setRemoveOnCancelPolicy(true);
         schedulePurgeTaskIfNeeded();
     }
 
@@ -116,62 +125,23 @@ public class DefaultProxyTimerService extends ScheduledThreadPoolExecutor implem
      */
     public void cancel(TimerTask task) {
         //CANCEL needs to remove the shceduled timer see http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=6602600
-        //to improve perf
-
+        //the remove on cancel policy takes care of it, directly from the future kept by the task
         ScheduledFuture<?> future = null;
-        Object[] array = super.getQueue().toArray();
-        for(int i = 0; i<array.length; i++) {
-            if(array[i] instanceof ScheduledFuture<?>){
-                future = (ScheduledFuture<?>)array[i];
-                try {
-
-                    Field callableField = future.getClass().getDeclaredField("callable");
-                    callableField.setAccessible(true);
-                    Object callable = callableField.get(future);
-                    callableField.setAccessible(false);
-
-                    if(callable!=null){
-                        Field taskField = callable.getClass().getDeclaredField("task");
-                        taskField.setAccessible(true);
-                        TimerTask scheduledTask = null;
-                        if(taskField.get(callable) instanceof TimerTask){
-                             scheduledTask = (TimerTask) taskField.get(callable);
-                        }
-                        taskField.setAccessible(false);
-
-                        if(scheduledTask!=null && scheduledTask.equals(task)){
-                            break;
-                        }
-                    }
-                } catch (Exception e) {
-                    logger.warn("Couldn't clean the timer from the JVM GC ", e);
-                }
-            }
+        if(task instanceof ProxyBranchTimerTask) {
+            future = ((ProxyBranchTimerTask) task).getScheduledFuture();
         }
-
         if(future != null) {
-            boolean removed = super.remove((Runnable) future);
-            if(logger.isDebugEnabled()) {
-                logger.debug("expiration timer on sip proxy task" + task + " removed : " + removed);
-            }
-            boolean cancelled = future.cancel(true);
+            // the task won't be invoked anymore, don't interrupt it if it is currently running
+            boolean cancelled = future.cancel(false);
             if(logger.isDebugEnabled()) {
                 logger.debug("expiration timer on sip proxy task" + task + " Cancelled : " + cancelled);
             }
-
-            future = null;
-            // Purge is expensive when called frequently, only call it every now and then.
-            // We do not sync the numCancelled variable. We dont care about correctness of
-            // the number, and we will still call purge rought once on every 25 cancels.
-            numCancelled++;
-            if(numCancelled % 100 == 0) {
-                super.purge();
-            }
         } else {
             if(logger.isDebugEnabled()) {
                 logger.debug("expiration timer future is null, thus cannot be Cancelled");
             }
         }
+        task.cancel();
     }
 
     /* (non-Javadoc)
@@ -185,7 +155,10 @@ public class DefaultProxyTimerService extends ScheduledThreadPoolExecutor implem
      * @see org.mobicents.servlet.sip.core.timers.ProxyTimerService#schedule(org.mobicents.servlet.sip.proxy.ProxyBranchTimerTask, long)
      */
     public void schedule(TimerTask task, long delay) {
-        super.schedule(task, delay, TimeUnit.MILLISECONDS);
+        ScheduledFuture<?> future = super.schedule(task, delay, TimeUnit.MILLISECONDS);
+        if(task instanceof ProxyBranchTimerTask) {
+            ((ProxyBranchTimerTask) task).setScheduledFuture(future);
+        }
     }
 
     /* (non-Javadoc)
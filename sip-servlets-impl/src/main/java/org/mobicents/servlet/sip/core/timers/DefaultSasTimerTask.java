@@ -19,6 +19,7 @@
 
 package org.mobicents.servlet.sip.core.timers;
 
+import java.util.concurrent.Executor;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
@@ -66,7 +67,17 @@ public class DefaultSasTimerTask implements SipApplicationSessionTimerTask {
 				sipApplicationSession.setExpirationTimerTask(expirationTimerTask);					
 				sipContext.getSipApplicationSessionTimerService().schedule(expirationTimerTask, sleep, TimeUnit.MILLISECONDS);
 			} else {
-				tryToExpire();
+				final Executor serialExecutor = sipApplicationSession.getSerialExecutor();
+				if(serialExecutor != null) {
+					// SipApplicationSessionSerial concurrency control mode, the session expires from its own queue
+					serialExecutor.execute(new Runnable() {
+						public void run() {
+							tryToExpire();
+						}
+					});
+				} else {
+					tryToExpire();
+				}
 			}
 		} catch (Throwable t) {
 			logger.error("Timer problem", t);
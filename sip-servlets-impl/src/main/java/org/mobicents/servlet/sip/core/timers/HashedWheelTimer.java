@@ -0,0 +1,660 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2015, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.servlet.sip.core.timers;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+import org.mobicents.servlet.sip.utils.NamingThreadFactory;
+
+/**
+ * Hashed timing wheel shared by all the applications deployed in the container to run their servlet timers,
+ * sip application session expiration timers and proxy timers.
+ *
+ * Scheduling or cancelling a timer only enqueues it, a single tick thread moves the new timers to their bucket
+ * and unlinks the cancelled ones from it, both in constant time, there is no heap to maintain and no purge needed.
+ * Expired timers are handed over to a fixed size pool of worker threads so that the number of threads doesn't
+ * depend on the number of applications deployed.
+ *
+ * Timers fire at the first tick following their deadline, the precision is thus the tick duration.
+ *
+ * Each application gets its own {@link TimerGroup} so that its pending timers can be dropped when it is undeployed
+ * without stopping the wheel.
+ */
+public class HashedWheelTimer extends AbstractExecutorService implements ScheduledExecutorService {
+	private static final Logger logger = Logger.getLogger(HashedWheelTimer.class);
+
+	public static final long DEFAULT_TICK_DURATION = 10;
+	public static final int DEFAULT_TICKS_PER_WHEEL = 1024;
+	public static final int DEFAULT_WORKER_THREADS = Math.max(4, Runtime.getRuntime().availableProcessors());
+	// bounds the time spent by the tick thread moving new timers to the wheel so that it doesn't miss ticks
+	private static final int MAX_TRANSFERS_PER_TICK = 100000;
+
+	private static final int STATE_INIT = 0;
+	private static final int STATE_STARTED = 1;
+	private static final int STATE_SHUTDOWN = 2;
+
+	private final long tickDuration;
+	private final Bucket[] wheel;
+	private final int mask;
+	private final Queue<WheelTimeout<?>> pendingTimeouts = new ConcurrentLinkedQueue<WheelTimeout<?>>();
+	private final Queue<WheelTimeout<?>> cancelledTimeouts = new ConcurrentLinkedQueue<WheelTimeout<?>>();
+	private final Queue<TimerGroup> cancelledGroups = new ConcurrentLinkedQueue<TimerGroup>();
+	private final AtomicInteger state = new AtomicInteger(STATE_INIT);
+	private final AtomicInteger pendingTimeoutsCount = new AtomicInteger();
+	private final ThreadPoolExecutor workerExecutor;
+	private final Thread tickThread;
+	private final CountDownLatch startTimeInitialized = new CountDownLatch(1);
+	private volatile long startTime;
+	// only accessed by the tick thread
+	private long tick;
+
+	public HashedWheelTimer(String name) {
+		this(name, DEFAULT_TICK_DURATION, TimeUnit.MILLISECONDS, DEFAULT_TICKS_PER_WHEEL, DEFAULT_WORKER_THREADS);
+	}
+
+	/**
+	 * @param name the base name of the threads
+	 * @param tickDuration the duration of a tick, that is the precision of the timers
+	 * @param unit the unit of the tick duration
+	 * @param ticksPerWheel the number of buckets of the wheel, rounded up to a power of two
+	 * @param workerThreads the number of threads running the expired timers
+	 */
+	public HashedWheelTimer(String name, long tickDuration, TimeUnit unit, int ticksPerWheel, int workerThreads) {
+		if(tickDuration <= 0) {
+			throw new IllegalArgumentException("tickDuration must be greater than 0 : " + tickDuration);
+		}
+		if(ticksPerWheel <= 0 || ticksPerWheel > (1 << 30)) {
+			throw new IllegalArgumentException("ticksPerWheel must be between 1 and 2^30 : " + ticksPerWheel);
+		}
+		if(workerThreads <= 0) {
+			throw new IllegalArgumentException("workerThreads must be greater than 0 : " + workerThreads);
+		}
+		this.tickDuration = unit.toNanos(tickDuration);
+		int wheelSize = 1;
+		while (wheelSize < ticksPerWheel) {
+			wheelSize <<= 1;
+		}
+		wheel = new Bucket[wheelSize];
+		for (int i = 0; i < wheelSize; i++) {
+			wheel[i] = new Bucket();
+		}
+		mask = wheelSize - 1;
+		workerExecutor = new ThreadPoolExecutor(workerThreads, workerThreads, 0L, TimeUnit.MILLISECONDS,
+				new LinkedBlockingQueue<Runnable>(), new NamingThreadFactory(name + "_worker"));
+		tickThread = Executors.defaultThreadFactory().newThread(new Runnable() {
+			public void run() {
+				runTicks();
+			}
+		});
+		tickThread.setName("pool-" + name + "-tick-thread");
+	}
+
+	/**
+	 * Start the tick thread, this is done automatically when the first timer is scheduled.
+	 */
+	public void start() {
+		if(state.compareAndSet(STATE_INIT, STATE_STARTED)) {
+			startTime = System.nanoTime();
+			startTimeInitialized.countDown();
+			workerExecutor.prestartAllCoreThreads();
+			tickThread.start();
+			if(logger.isInfoEnabled()) {
+				logger.info("Started timer wheel " + this);
+			}
+		} else if(state.get() == STATE_SHUTDOWN) {
+			throw new RejectedExecutionException("the timer wheel has been stopped");
+		} else {
+			// another thread is starting the wheel, the deadlines are relative to its start time
+			boolean interrupted = false;
+			while (startTimeInitialized.getCount() > 0) {
+				try {
+					startTimeInitialized.await();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if(interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * @return a new group of timers, for the application of the given name
+	 */
+	public TimerGroup newTimerGroup(String name) {
+		return new TimerGroup(name);
+	}
+
+	/**
+	 * @return the number of timers scheduled and neither expired nor cancelled yet
+	 */
+	public int getPendingTimeouts() {
+		return pendingTimeoutsCount.get();
+	}
+
+	private <V> ScheduledFuture<V> schedule(WheelTimeout<V> timeout, long delay, TimeUnit unit) {
+		if(state.get() != STATE_STARTED || startTimeInitialized.getCount() > 0) {
+			start();
+		}
+		timeout.deadline = System.nanoTime() + unit.toNanos(Math.max(0, delay)) - startTime;
+		pendingTimeoutsCount.incrementAndGet();
+		pendingTimeouts.add(timeout);
+		return timeout;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.concurrent.ScheduledExecutorService#schedule(java.lang.Runnable, long, java.util.concurrent.TimeUnit)
+	 */
+	public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+		return schedule(command, delay, unit, null);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.concurrent.ScheduledExecutorService#schedule(java.util.concurrent.Callable, long, java.util.concurrent.TimeUnit)
+	 */
+	public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+		if(callable == null || unit == null) {
+			throw new NullPointerException();
+		}
+		return schedule(new WheelTimeout<V>(callable, null), delay, unit);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.concurrent.ScheduledExecutorService#scheduleAtFixedRate(java.lang.Runnable, long, long, java.util.concurrent.TimeUnit)
+	 */
+	public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+		return scheduleAtFixedRate(command, initialDelay, period, unit, null);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.concurrent.ScheduledExecutorService#scheduleWithFixedDelay(java.lang.Runnable, long, long, java.util.concurrent.TimeUnit)
+	 */
+	public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+		return scheduleWithFixedDelay(command, initialDelay, delay, unit, null);
+	}
+
+	private ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit, TimerGroup group) {
+		if(command == null || unit == null) {
+			throw new NullPointerException();
+		}
+		return schedule(new WheelTimeout<Object>(command, 0, group), delay, unit);
+	}
+
+	private ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit, TimerGroup group) {
+		if(command == null || unit == null) {
+			throw new NullPointerException();
+		}
+		if(period <= 0) {
+			throw new IllegalArgumentException("period must be greater than 0 : " + period);
+		}
+		return schedule(new WheelTimeout<Object>(command, unit.toNanos(period), group), initialDelay, unit);
+	}
+
+	private ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit, TimerGroup group) {
+		if(command == null || unit == null) {
+			throw new NullPointerException();
+		}
+		if(delay <= 0) {
+			throw new IllegalArgumentException("delay must be greater than 0 : " + delay);
+		}
+		return schedule(new WheelTimeout<Object>(command, -unit.toNanos(delay), group), initialDelay, unit);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.concurrent.Executor#execute(java.lang.Runnable)
+	 */
+	public void execute(Runnable command) {
+		schedule(command, 0, TimeUnit.NANOSECONDS);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.concurrent.ExecutorService#shutdown()
+	 */
+	public void shutdown() {
+		shutdownNow();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.concurrent.ExecutorService#shutdownNow()
+	 */
+	public List<Runnable> shutdownNow() {
+		if(state.getAndSet(STATE_SHUTDOWN) == STATE_STARTED) {
+			tickThread.interrupt();
+			if(logger.isInfoEnabled()) {
+				logger.info("Stopped timer wheel " + this);
+			}
+		}
+		return workerExecutor.shutdownNow();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.concurrent.ExecutorService#isShutdown()
+	 */
+	public boolean isShutdown() {
+		return state.get() == STATE_SHUTDOWN;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.concurrent.ExecutorService#isTerminated()
+	 */
+	public boolean isTerminated() {
+		return isShutdown() && !tickThread.isAlive() && workerExecutor.isTerminated();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.concurrent.ExecutorService#awaitTermination(long, java.util.concurrent.TimeUnit)
+	 */
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		final long deadline = System.nanoTime() + unit.toNanos(timeout);
+		if(tickThread.isAlive()) {
+			TimeUnit.NANOSECONDS.timedJoin(tickThread, Math.max(1, deadline - System.nanoTime()));
+		}
+		return workerExecutor.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)
+				&& !tickThread.isAlive();
+	}
+
+	private void runTicks() {
+		while (state.get() == STATE_STARTED) {
+			final long currentTime = waitForNextTick();
+			if(currentTime < 0) {
+				break;
+			}
+			try {
+				processCancelledGroups();
+				processCancelledTimeouts();
+				transferTimeoutsToBuckets();
+				wheel[(int) (tick & mask)].expireTimeouts(currentTime);
+			} catch (Throwable t) {
+				logger.error("Unexpected exception while processing the timer wheel tick " + tick, t);
+			}
+			tick++;
+		}
+		// drop everything still scheduled, nothing will run it anymore
+		for (Bucket bucket : wheel) {
+			bucket.clear();
+		}
+		pendingTimeouts.clear();
+		cancelledTimeouts.clear();
+		pendingTimeoutsCount.set(0);
+	}
+
+	/**
+	 * @return the time elapsed since the start, or -1 if the wheel has been stopped while waiting
+	 */
+	private long waitForNextTick() {
+		final long deadline = tickDuration * (tick + 1);
+		while (true) {
+			final long currentTime = System.nanoTime() - startTime;
+			final long sleepTimeMs = (deadline - currentTime + 999999) / 1000000;
+			if(sleepTimeMs <= 0) {
+				return currentTime;
+			}
+			try {
+				Thread.sleep(sleepTimeMs);
+			} catch (InterruptedException e) {
+				if(state.get() != STATE_STARTED) {
+					return -1;
+				}
+			}
+		}
+	}
+
+	private void transferTimeoutsToBuckets() {
+		for (int i = 0; i < MAX_TRANSFERS_PER_TICK; i++) {
+			final WheelTimeout<?> timeout = pendingTimeouts.poll();
+			if(timeout == null) {
+				return;
+			}
+			if(timeout.isCancelled()) {
+				pendingTimeoutsCount.decrementAndGet();
+				continue;
+			}
+			final long calculatedTick = timeout.deadline / tickDuration;
+			timeout.remainingRounds = (calculatedTick - tick) / wheel.length;
+			// timers already late go into the current bucket to be run right away
+			final long targetTick = Math.max(calculatedTick, tick);
+			wheel[(int) (targetTick & mask)].add(timeout);
+		}
+	}
+
+	private void processCancelledTimeouts() {
+		WheelTimeout<?> timeout;
+		while ((timeout = cancelledTimeouts.poll()) != null) {
+			// timers no longer in a bucket have already been removed or are being run
+			if(timeout.bucket != null) {
+				timeout.bucket.remove(timeout);
+				pendingTimeoutsCount.decrementAndGet();
+			}
+		}
+	}
+
+	private void processCancelledGroups() {
+		TimerGroup group;
+		while ((group = cancelledGroups.poll()) != null) {
+			int cancelled = 0;
+			for (Bucket bucket : wheel) {
+				cancelled += bucket.cancel(group);
+			}
+			for (WheelTimeout<?> timeout : pendingTimeouts) {
+				if(timeout.group == group && timeout.cancel(false)) {
+					cancelled++;
+				}
+			}
+			if(logger.isDebugEnabled()) {
+				logger.debug("cancelled " + cancelled + " pending timers of timer group " + group);
+			}
+		}
+	}
+
+	private void expire(WheelTimeout<?> timeout) {
+		try {
+			workerExecutor.execute(timeout);
+		} catch (RejectedExecutionException e) {
+			if(logger.isDebugEnabled()) {
+				logger.debug("timer " + timeout + " expired while the timer wheel is stopping, it won't run");
+			}
+			pendingTimeoutsCount.decrementAndGet();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "HashedWheelTimer[" + tickThread.getName() + ", ticks=" + wheel.length + ", tickDuration="
+				+ TimeUnit.NANOSECONDS.toMillis(tickDuration) + "ms, workerThreads=" + workerExecutor.getCorePoolSize()
+				+ ", pendingTimeouts=" + getPendingTimeouts() + "]";
+	}
+
+	/**
+	 * Doubly linked list of the timers of one slot of the wheel, only accessed by the tick thread
+	 */
+	private final class Bucket {
+		private WheelTimeout<?> head;
+		private WheelTimeout<?> tail;
+
+		void add(WheelTimeout<?> timeout) {
+			timeout.bucket = this;
+			if(head == null) {
+				head = tail = timeout;
+			} else {
+				tail.next = timeout;
+				timeout.prev = tail;
+				tail = timeout;
+			}
+		}
+
+		WheelTimeout<?> remove(WheelTimeout<?> timeout) {
+			final WheelTimeout<?> next = timeout.next;
+			if(timeout.prev != null) {
+				timeout.prev.next = next;
+			}
+			if(timeout.next != null) {
+				timeout.next.prev = timeout.prev;
+			}
+			if(timeout == head) {
+				if(timeout == tail) {
+					head = tail = null;
+				} else {
+					head = next;
+				}
+			} else if(timeout == tail) {
+				tail = timeout.prev;
+			}
+			timeout.prev = null;
+			timeout.next = null;
+			timeout.bucket = null;
+			return next;
+		}
+
+		void expireTimeouts(long currentTime) {
+			WheelTimeout<?> timeout = head;
+			while (timeout != null) {
+				if(timeout.isCancelled()) {
+					timeout = remove(timeout);
+					pendingTimeoutsCount.decrementAndGet();
+				} else if(timeout.remainingRounds <= 0) {
+					final WheelTimeout<?> next = remove(timeout);
+					expire(timeout);
+					timeout = next;
+				} else {
+					timeout.remainingRounds--;
+					timeout = timeout.next;
+				}
+			}
+		}
+
+		int cancel(TimerGroup group) {
+			int cancelled = 0;
+			WheelTimeout<?> timeout = head;
+			while (timeout != null) {
+				if(timeout.group == group) {
+					timeout.cancel(false);
+					timeout = remove(timeout);
+					pendingTimeoutsCount.decrementAndGet();
+					cancelled++;
+				} else {
+					timeout = timeout.next;
+				}
+			}
+			return cancelled;
+		}
+
+		void clear() {
+			WheelTimeout<?> timeout = head;
+			while (timeout != null) {
+				final WheelTimeout<?> next = timeout.next;
+				timeout.cancel(false);
+				timeout.prev = null;
+				timeout.next = null;
+				timeout.bucket = null;
+				timeout = next;
+			}
+			head = tail = null;
+		}
+	}
+
+	/**
+	 * A timer of the wheel, the future of the task returned to the caller
+	 */
+	private final class WheelTimeout<V> extends FutureTask<V> implements ScheduledFuture<V> {
+		// 0 for one shot timers, positive for fixed rate and negative for fixed delay periodic timers
+		private final long period;
+		private final TimerGroup group;
+		// in nanoseconds since the start of the wheel
+		private volatile long deadline;
+		// the fields below are only accessed by the tick thread
+		private long remainingRounds;
+		private Bucket bucket;
+		private WheelTimeout<?> next;
+		private WheelTimeout<?> prev;
+
+		WheelTimeout(Runnable runnable, long period, TimerGroup group) {
+			super(runnable, null);
+			this.period = period;
+			this.group = group;
+		}
+
+		WheelTimeout(Callable<V> callable, TimerGroup group) {
+			super(callable);
+			this.period = 0;
+			this.group = group;
+		}
+
+		public long getDelay(TimeUnit unit) {
+			return unit.convert(deadline - (System.nanoTime() - startTime), TimeUnit.NANOSECONDS);
+		}
+
+		public int compareTo(Delayed other) {
+			if(other == this) {
+				return 0;
+			}
+			final long diff = getDelay(TimeUnit.NANOSECONDS) - other.getDelay(TimeUnit.NANOSECONDS);
+			return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+		}
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			final boolean cancelled = super.cancel(mayInterruptIfRunning);
+			if(cancelled && state.get() == STATE_STARTED) {
+				// unlinked from its bucket by the tick thread, there is no need to wait for the deadline
+				cancelledTimeouts.add(this);
+			}
+			return cancelled;
+		}
+
+		@Override
+		public void run() {
+			if(period == 0) {
+				pendingTimeoutsCount.decrementAndGet();
+				super.run();
+			} else if(runAndReset()) {
+				if(period > 0) {
+					deadline += period;
+				} else {
+					deadline = System.nanoTime() - startTime - period;
+				}
+				if(group != null && group.isShutdown()) {
+					// its application is stopping, the periodic timer would run forever otherwise
+					cancel(false);
+					pendingTimeoutsCount.decrementAndGet();
+				} else if(state.get() == STATE_STARTED) {
+					pendingTimeouts.add(this);
+				}
+			} else {
+				pendingTimeoutsCount.decrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * The timers of one application, cancelling the group cancels all of its pending timers but doesn't
+	 * stop the wheel which is shared with the other applications.
+	 */
+	public final class TimerGroup extends AbstractExecutorService implements ScheduledExecutorService {
+		private final String name;
+		private volatile boolean shutdown;
+
+		private TimerGroup(String name) {
+			this.name = name;
+		}
+
+		private void checkNotShutdown() {
+			if(shutdown) {
+				throw new RejectedExecutionException("timer group " + name + " has been stopped");
+			}
+		}
+
+		public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+			checkNotShutdown();
+			return HashedWheelTimer.this.schedule(command, delay, unit, this);
+		}
+
+		public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+			checkNotShutdown();
+			if(callable == null || unit == null) {
+				throw new NullPointerException();
+			}
+			return HashedWheelTimer.this.schedule(new WheelTimeout<V>(callable, this), delay, unit);
+		}
+
+		public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+			checkNotShutdown();
+			return HashedWheelTimer.this.scheduleAtFixedRate(command, initialDelay, period, unit, this);
+		}
+
+		public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+			checkNotShutdown();
+			return HashedWheelTimer.this.scheduleWithFixedDelay(command, initialDelay, delay, unit, this);
+		}
+
+		public void execute(Runnable command) {
+			schedule(command, 0, TimeUnit.NANOSECONDS);
+		}
+
+		/**
+		 * Stop accepting new timers, the pending ones will still run but the periodic ones are not rescheduled anymore
+		 */
+		public void shutdown() {
+			shutdown = true;
+		}
+
+		/**
+		 * Stop accepting new timers and cancel the pending ones
+		 */
+		public List<Runnable> shutdownNow() {
+			if(!shutdown) {
+				shutdown = true;
+				cancelledGroups.add(this);
+			}
+			return Collections.emptyList();
+		}
+
+		public boolean isShutdown() {
+			return shutdown;
+		}
+
+		public boolean isTerminated() {
+			return shutdown;
+		}
+
+		public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+			return shutdown;
+		}
+
+		/**
+		 * @return the wheel running the timers of this group
+		 */
+		public HashedWheelTimer getTimer() {
+			return HashedWheelTimer.this;
+		}
+
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+}
@@ -21,6 +21,7 @@ package org.mobicents.servlet.sip.core.timers;
 
 import java.io.Serializable;
 import java.util.UUID;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ScheduledFuture;
 
 import javax.servlet.sip.TimerListener;
@@ -282,6 +283,20 @@ public class ServletTimerImpl implements MobicentsServletTimer, Runnable {
 	public void run() {
 
 		final MobicentsSipApplicationSession sipApplicationSession = getApplicationSession();
+		final Executor serialExecutor = sipApplicationSession.getSerialExecutor();
+		if(serialExecutor != null) {
+			// SipApplicationSessionSerial concurrency control mode, the timer fires from the application session queue
+			serialExecutor.execute(new Runnable() {
+				public void run() {
+					fire(sipApplicationSession);
+				}
+			});
+		} else {
+			fire(sipApplicationSession);
+		}
+	}
+
+	private void fire(MobicentsSipApplicationSession sipApplicationSession) {
 		SipContext sipContext = sipApplicationSession.getSipContext();
 		
 		if(logger.isDebugEnabled()) {
@@ -23,6 +23,7 @@
 package org.mobicents.servlet.sip.core.timers;
 
 import java.util.TimerTask;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.log4j.Logger;
@@ -67,7 +68,17 @@ public class StandardSasTimerTask extends TimerTask implements SipApplicationSes
 				sipApplicationSession.setExpirationTimerTask(expirationTimerTask);					
 				sipContext.getSipApplicationSessionTimerService().schedule(expirationTimerTask, sleep, TimeUnit.MILLISECONDS);
 			} else {
-				tryToExpire();
+				final Executor serialExecutor = sipApplicationSession.getSerialExecutor();
+				if(serialExecutor != null) {
+					// SipApplicationSessionSerial concurrency control mode, the session expires from its own queue
+					serialExecutor.execute(new Runnable() {
+						public void run() {
+							tryToExpire();
+						}
+					});
+				} else {
+					tryToExpire();
+				}
 			}
 		} catch (Throwable t) {
 			logger.error("Timer problem", t);
@@ -17,6 +17,7 @@
 package org.mobicents.servlet.sip.core.timers;
 
 import java.io.Serializable;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -38,10 +39,20 @@ public class TimerServiceImpl implements SipServletTimerService {
 	
 	public static final int SCHEDULER_THREAD_POOL_DEFAULT_SIZE = 4;
 	
-	private transient ScheduledThreadPoolExecutor scheduledExecutor;
+	private transient ScheduledExecutorService scheduledExecutor;
+	
+	/**
+	 * Servlet timers run by the given executor, typically the group of the application on the timer wheel
+	 * shared by the container, stopping the timer service only stops the executor
+	 * @param scheduledExecutor the executor to schedule the servlet timers on
+	 */
+	public TimerServiceImpl(ScheduledExecutorService scheduledExecutor) {
+		this.scheduledExecutor = scheduledExecutor;
+	}
 	
 	public TimerServiceImpl(SipService sipService, String applicationName) {		
-		scheduledExecutor = new ScheduledThreadPoolExecutor(SCHEDULER_THREAD_POOL_DEFAULT_SIZE,new NamingThreadFactory(applicationName + "_sip_default_sas_timer_service"));
+		final ScheduledThreadPoolExecutor scheduledExecutor = new ScheduledThreadPoolExecutor(SCHEDULER_THREAD_POOL_DEFAULT_SIZE,new NamingThreadFactory(applicationName + "_sip_default_sas_timer_service"));
+		this.scheduledExecutor = scheduledExecutor;
 		int purgePeriod = sipService.getCanceledTimerTasksPurgePeriod();
 		if(purgePeriod > 0) {
 			Runnable r = new Runnable() {			
@@ -196,7 +207,9 @@ public class TimerServiceImpl implements SipServletTimerService {
 	}
 
 	public void start() {
-		scheduledExecutor.prestartAllCoreThreads();		
+		if(scheduledExecutor instanceof ScheduledThreadPoolExecutor) {
+			((ScheduledThreadPoolExecutor)scheduledExecutor).prestartAllCoreThreads();
+		}
 	}
 
 	public boolean isStarted() {		
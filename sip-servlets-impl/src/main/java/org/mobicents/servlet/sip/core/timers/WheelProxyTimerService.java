@@ -0,0 +1,89 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2015, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.servlet.sip.core.timers;
+
+import java.util.TimerTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+import org.mobicents.servlet.sip.proxy.ProxyBranchTimerTask;
+
+/**
+ * Proxy branch timers of an application, run by the timer wheel shared by the container.
+ *
+ * Used when the proxyTimerServiceImplementationType attribute of the Service is set to Wheel.
+ */
+public class WheelProxyTimerService implements ProxyTimerService {
+
+	private static final Logger logger = Logger.getLogger(WheelProxyTimerService.class);
+
+	// the group of timers of the application on the timer wheel, see SipApplicationDispatcher#createTimerGroup
+	private final ScheduledExecutorService timerGroup;
+
+	public WheelProxyTimerService(ScheduledExecutorService timerGroup) {
+		this.timerGroup = timerGroup;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.timers.ProxyTimerService#schedule(java.util.TimerTask, long)
+	 */
+	public void schedule(TimerTask task, long delay) {
+		if(task instanceof ProxyBranchTimerTask) {
+			((ProxyBranchTimerTask) task).setScheduledFuture(timerGroup.schedule(task, delay, TimeUnit.MILLISECONDS));
+		} else {
+			logger.warn("only proxy branch timer tasks can be cancelled, scheduling " + task + " anyway");
+			timerGroup.schedule(task, delay, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.timers.ProxyTimerService#cancel(java.util.TimerTask)
+	 */
+	public void cancel(TimerTask task) {
+		// cancels the future kept by the task as well
+		boolean cancelled = task.cancel();
+		if(logger.isDebugEnabled()) {
+			logger.debug("expiration timer on sip proxy task" + task + " Cancelled : " + cancelled);
+		}
+	}
+
+	public void start() {
+		if(logger.isInfoEnabled()) {
+			logger.info("Started timer service "+ this);
+		}
+	}
+
+	public void stop() {
+		timerGroup.shutdownNow();
+		if(logger.isInfoEnabled()) {
+			logger.info("Stopped timer service "+ this);
+		}
+	}
+
+	public boolean isStarted() {
+		return !timerGroup.isShutdown();
+	}
+
+	@Override
+	public String toString() {
+		return "WheelProxyTimerService[" + timerGroup + "]";
+	}
+}
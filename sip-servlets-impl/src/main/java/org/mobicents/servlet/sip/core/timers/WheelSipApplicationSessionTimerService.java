@@ -0,0 +1,105 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2015, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.servlet.sip.core.timers;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+import org.mobicents.servlet.sip.core.session.MobicentsSipApplicationSession;
+
+/**
+ * Sip application session expiration timers of an application, run by the timer wheel shared by the container.
+ *
+ * Used when the sasTimerServiceImplementationType attribute of the Service is set to Wheel.
+ */
+public class WheelSipApplicationSessionTimerService implements SipApplicationSessionTimerService {
+
+	private static final Logger logger = Logger.getLogger(WheelSipApplicationSessionTimerService.class);
+
+	// the group of timers of the application on the timer wheel, see SipApplicationDispatcher#createTimerGroup
+	private final ScheduledExecutorService timerGroup;
+
+	public WheelSipApplicationSessionTimerService(ScheduledExecutorService timerGroup) {
+		this.timerGroup = timerGroup;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.timers.SipApplicationSessionTimerService#createSipApplicationSessionTimerTask(org.mobicents.servlet.sip.core.session.MobicentsSipApplicationSession)
+	 */
+	public SipApplicationSessionTimerTask createSipApplicationSessionTimerTask(MobicentsSipApplicationSession sipApplicationSession) {
+		return new DefaultSasTimerTask(sipApplicationSession);
+	}
+
+	/* (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.timers.SipApplicationSessionTimerService#schedule(org.mobicents.servlet.sip.core.timers.SipApplicationSessionTimerTask, long, java.util.concurrent.TimeUnit)
+	 */
+	@SuppressWarnings("unchecked")
+	public SipApplicationSessionTimerTask schedule(SipApplicationSessionTimerTask expirationTimerTask, long delay, TimeUnit unit) {
+		if(logger.isDebugEnabled()) {
+			logger.debug("Scheduling sip application session "+ expirationTimerTask.getSipApplicationSession().getKey() +" to expire in " + (delay / (double) 1000 / (double) 60) + " minutes");
+		}
+		((DefaultSasTimerTask)expirationTimerTask).setScheduledFuture((ScheduledFuture<MobicentsSipApplicationSession>)timerGroup.schedule(expirationTimerTask, delay, unit));
+		return expirationTimerTask;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.mobicents.servlet.sip.core.timers.SipApplicationSessionTimerService#cancel(org.mobicents.servlet.sip.core.timers.SipApplicationSessionTimerTask)
+	 */
+	public boolean cancel(SipApplicationSessionTimerTask expirationTimerTask) {
+		final ScheduledFuture<MobicentsSipApplicationSession> future = ((DefaultSasTimerTask)expirationTimerTask).getScheduledFuture();
+		if(future != null) {
+			// constant time, the timer is unlinked from the wheel at the next tick
+			boolean cancelled = future.cancel(false);
+			if(logger.isDebugEnabled()) {
+				logger.debug("expiration timer on sip application session " + expirationTimerTask.getSipApplicationSession().getKey() + " Cancelled : " + cancelled);
+			}
+			return cancelled;
+		} else {
+			if(logger.isDebugEnabled()) {
+				logger.debug("expiration timer future is null, thus cannot be Cancelled");
+			}
+			return false;
+		}
+	}
+
+	public void start() {
+		if(logger.isInfoEnabled()) {
+			logger.info("Started timer service "+ this);
+		}
+	}
+
+	public void stop() {
+		timerGroup.shutdownNow();
+		if(logger.isInfoEnabled()) {
+			logger.info("Stopped timer service "+ this);
+		}
+	}
+
+	public boolean isStarted() {
+		return !timerGroup.isShutdown();
+	}
+
+	@Override
+	public String toString() {
+		return "WheelSipApplicationSessionTimerService[" + timerGroup + "]";
+	}
+}
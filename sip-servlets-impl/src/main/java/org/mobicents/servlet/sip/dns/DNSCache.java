@@ -0,0 +1,276 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2015, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.servlet.sip.dns;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.sip.address.Hop;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Cache of the hops resolved by the DNSServerLocator, so that sending a request to a name resolved recently
+ * doesn't do the NAPTR, SRV and A/AAAA lookups again.
+ *
+ * Concurrent lookups of the same name are coalesced into a single one, the other callers waiting for its result.
+ * An entry used during the last part of its time to live is looked up again in the background, so that
+ * the names in use are refreshed before they expire and the senders don't wait for the DNS.
+ * The cache is bounded, the least recently used entries are evicted first when it is full.
+ */
+public class DNSCache {
+	private static final Logger logger = Logger.getLogger(DNSCache.class);
+	// an entry is refreshed when used after this fraction of its time to live
+	private static final double REFRESH_THRESHOLD = 0.75;
+	// the failed lookups are not retried before this delay, shorter than the time to live of the entries found
+	private static final long NEGATIVE_TTL_MILLIS = 5000;
+	// fraction of the maximum size the cache is brought back to when full
+	private static final double EVICTION_RATIO = 0.9;
+
+	/**
+	 * A lookup of the hops for a name, run on a miss and again to refresh the entry
+	 */
+	public interface Lookup {
+		Queue<Hop> lookup();
+	}
+
+	private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+	private final ConcurrentMap<String, FutureTask<Entry>> pendingLookups = new ConcurrentHashMap<String, FutureTask<Entry>>();
+	private final Lock evictionLock = new ReentrantLock();
+	private final int maxSize;
+	private final long ttlNanos;
+	private final Executor refreshExecutor;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong refreshes = new AtomicLong();
+
+	/**
+	 * @param maxSize the maximum number of names cached
+	 * @param ttl the time to live of the entries in milliseconds
+	 * @param refreshExecutor the executor the entries in use are refreshed on, null to refresh them only once expired
+	 */
+	public DNSCache(int maxSize, long ttl, Executor refreshExecutor) {
+		this.maxSize = maxSize;
+		this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttl);
+		this.refreshExecutor = refreshExecutor;
+	}
+
+	/**
+	 * @param key the name looked up, including everything the result depends on
+	 * @param lookup the lookup to run if the name is not cached or expired
+	 * @return a copy of the hops cached for the name, the caller is free to modify it
+	 */
+	public Queue<Hop> getHops(String key, Lookup lookup) {
+		final long now = System.nanoTime();
+		Entry entry = entries.get(key);
+		if(entry != null && now - entry.expirationTime < 0) {
+			hits.incrementAndGet();
+			entry.lastAccessTime = now;
+			if(now - entry.refreshTime >= 0) {
+				refresh(entry);
+			}
+			return new LinkedList<Hop>(entry.hops);
+		}
+		misses.incrementAndGet();
+		entry = lookup(key, lookup);
+		return new LinkedList<Hop>(entry.hops);
+	}
+
+	private Entry lookup(final String key, final Lookup lookup) {
+		final FutureTask<Entry> lookupTask = new FutureTask<Entry>(new Callable<Entry>() {
+			public Entry call() throws Exception {
+				final Entry entry = newEntry(key, lookup);
+				entries.put(key, entry);
+				return entry;
+			}
+		});
+		FutureTask<Entry> pendingLookup = pendingLookups.putIfAbsent(key, lookupTask);
+		if(pendingLookup == null) {
+			pendingLookup = lookupTask;
+			try {
+				lookupTask.run();
+			} finally {
+				pendingLookups.remove(key, lookupTask);
+			}
+			if(entries.size() > maxSize) {
+				evict();
+			}
+		} else if(logger.isDebugEnabled()) {
+			logger.debug("Waiting for the pending lookup of " + key);
+		}
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					return pendingLookup.get();
+				} catch (InterruptedException e) {
+					// the lookup is bounded by the DNS timeout, keep waiting and restore the interrupt status afterwards
+					interrupted = true;
+				}
+			}
+		} catch (ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if(cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if(cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IllegalStateException("Couldn't look up " + key, cause);
+		} finally {
+			if(interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private void refresh(final Entry entry) {
+		if(refreshExecutor == null || !entry.refreshing.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			refreshExecutor.execute(new Runnable() {
+				public void run() {
+					try {
+						final Entry refreshedEntry = newEntry(entry.key, entry.lookup);
+						// a failed refresh leaves the current hops in use until they expire,
+						// the entry may also have been evicted in the meantime, in which case it is not brought back
+						if(!refreshedEntry.hops.isEmpty() && entries.replace(entry.key, entry, refreshedEntry)) {
+							refreshes.incrementAndGet();
+						}
+					} catch (RuntimeException e) {
+						logger.warn("Couldn't refresh the DNS cache entry of " + entry.key + ", it will expire", e);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			entry.refreshing.set(false);
+			if(logger.isDebugEnabled()) {
+				logger.debug("Couldn't schedule the refresh of the DNS cache entry of " + entry.key, e);
+			}
+		}
+	}
+
+	private Entry newEntry(String key, Lookup lookup) {
+		final Queue<Hop> hops = lookup.lookup();
+		final long now = System.nanoTime();
+		if(hops == null || hops.isEmpty()) {
+			final long negativeTtlNanos = Math.min(ttlNanos, TimeUnit.MILLISECONDS.toNanos(NEGATIVE_TTL_MILLIS));
+			// the failed lookups are never refreshed in the background
+			return new Entry(key, lookup, Collections.<Hop>emptyList(), now, now + negativeTtlNanos, now + negativeTtlNanos);
+		}
+		return new Entry(key, lookup, new ArrayList<Hop>(hops), now, now + ttlNanos, now + (long) (ttlNanos * REFRESH_THRESHOLD));
+	}
+
+	/**
+	 * Remove the expired entries, then the least recently used ones until the cache is back under its maximum size
+	 */
+	private void evict() {
+		// a single thread evicts at a time, the others don't need to wait for it
+		if(!evictionLock.tryLock()) {
+			return;
+		}
+		try {
+			final long now = System.nanoTime();
+			final List<Entry> liveEntries = new ArrayList<Entry>(entries.size());
+			for (Entry entry : entries.values()) {
+				if(now - entry.expirationTime >= 0) {
+					entries.remove(entry.key, entry);
+				} else {
+					liveEntries.add(entry);
+				}
+			}
+			final int targetSize = (int) (maxSize * EVICTION_RATIO);
+			if(liveEntries.size() > targetSize) {
+				Collections.sort(liveEntries, new Comparator<Entry>() {
+					public int compare(Entry entry1, Entry entry2) {
+						final long difference = entry1.lastAccessTime - entry2.lastAccessTime;
+						return difference < 0 ? -1 : (difference > 0 ? 1 : 0);
+					}
+				});
+				for (int i = 0; i < liveEntries.size() - targetSize; i++) {
+					entries.remove(liveEntries.get(i).key, liveEntries.get(i));
+				}
+			}
+			if(logger.isDebugEnabled()) {
+				logger.debug("DNS cache evicted down to " + entries.size() + " entries");
+			}
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	public void clear() {
+		entries.clear();
+	}
+
+	public int getSize() {
+		return entries.size();
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	@Override
+	public String toString() {
+		return "size=" + entries.size() + ", maxSize=" + maxSize + ", ttl=" + TimeUnit.NANOSECONDS.toMillis(ttlNanos)
+				+ "ms, hits=" + hits.get() + ", misses=" + misses.get() + ", refreshes=" + refreshes.get();
+	}
+
+	private static final class Entry {
+		final String key;
+		final Lookup lookup;
+		final List<Hop> hops;
+		final long expirationTime;
+		final long refreshTime;
+		final AtomicBoolean refreshing = new AtomicBoolean();
+		volatile long lastAccessTime;
+
+		Entry(String key, Lookup lookup, List<Hop> hops, long creationTime, long expirationTime, long refreshTime) {
+			this.key = key;
+			this.lookup = lookup;
+			this.hops = hops;
+			this.lastAccessTime = creationTime;
+			this.expirationTime = expirationTime;
+			this.refreshTime = refreshTime;
+		}
+	}
+}
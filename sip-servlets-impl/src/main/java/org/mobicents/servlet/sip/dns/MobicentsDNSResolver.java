@@ -43,11 +43,64 @@ import org.mobicents.servlet.sip.address.URIImpl;
 public class MobicentsDNSResolver implements DNSResolver {
 
 	private DNSServerLocator dnsServerLocator;
+	// null if the lookups are not cached
+	private volatile DNSCache dnsCache;
 
 	public MobicentsDNSResolver(DNSServerLocator dnsServerLocator) {
 		this.dnsServerLocator = dnsServerLocator;
 	}
 	
+	/**
+	 * Locate the hops to send a request to as per RFC 3263, from the cache if one is set
+	 * 
+	 * @param uri the uri to resolve, it is not kept so the caller can modify it afterwards
+	 * @return the hops to send the request to, the caller is free to modify the queue
+	 */
+	public Queue<Hop> locateHops(javax.sip.address.URI uri) {
+		final DNSCache cache = dnsCache;
+		if(cache == null) {
+			return dnsServerLocator.locateHops(uri);
+		}
+		// the lookup runs again later to refresh the entry, it works on its own copy of the uri
+		final javax.sip.address.URI uriToResolve = (javax.sip.address.URI) uri.clone();
+		return cache.getHops(getCacheKey(uriToResolve), new DNSCache.Lookup() {
+			public Queue<Hop> lookup() {
+				return dnsServerLocator.locateHops(uriToResolve);
+			}
+		});
+	}
+	
+	/*
+	 * Only the parts of the uri the locator uses to find the hops, so that the requests sent to different users 
+	 * of the same domain share the same entry
+	 */
+	private static String getCacheKey(javax.sip.address.URI uri) {
+		if(!uri.isSipURI()) {
+			return uri.toString();
+		}
+		final javax.sip.address.SipURI sipURI = (javax.sip.address.SipURI) uri;
+		final String host = sipURI.getMAddrParam() != null ? sipURI.getMAddrParam() : sipURI.getHost();
+		final StringBuilder key = new StringBuilder(64);
+		key.append(sipURI.isSecure() ? "sips:" : "sip:");
+		key.append(host.toLowerCase());
+		key.append(':').append(sipURI.getPort());
+		if(sipURI.getTransportParam() != null) {
+			key.append(";transport=").append(sipURI.getTransportParam().toLowerCase());
+		}
+		return key.toString();
+	}
+	
+	/**
+	 * @param dnsCache the cache of the lookups, null to not cache them
+	 */
+	public void setDNSCache(DNSCache dnsCache) {
+		this.dnsCache = dnsCache;
+	}
+	
+	public DNSCache getDNSCache() {
+		return dnsCache;
+	}
+	
 	/* (non-Javadoc)
 	 * @see org.mobicents.javax.servlet.sip.dns.DNSResolver#getSipURI(javax.servlet.sip.URI)
 	 */
@@ -68,9 +121,19 @@ public class MobicentsDNSResolver implements DNSResolver {
 	}
 
 	@Override
-	public Set<String> resolveHost(String host) {
+	public Set<String> resolveHost(final String host) {
 		Set<String> ipAddresses = new CopyOnWriteArraySet<String>();
-		Queue<Hop> hops = dnsServerLocator.resolveHostByAandAAAALookup(host, -1, null);
+		Queue<Hop> hops = null;
+		final DNSCache cache = dnsCache;
+		if(cache == null) {
+			hops = dnsServerLocator.resolveHostByAandAAAALookup(host, -1, null);
+		} else {
+			hops = cache.getHops("host:" + host.toLowerCase(), new DNSCache.Lookup() {
+				public Queue<Hop> lookup() {
+					return dnsServerLocator.resolveHostByAandAAAALookup(host, -1, null);
+				}
+			});
+		}
 		if(hops != null) {
 			for (Hop hop : hops) {
 				ipAddresses.add(hop.getHost());
@@ -24,7 +24,6 @@ package org.mobicents.servlet.sip.message;
 
 import gov.nist.javax.sip.header.HeaderExt;
 import gov.nist.javax.sip.header.ims.PathHeader;
-import gov.nist.javax.sip.message.MessageExt;
 
 import java.io.Serializable;
 import java.text.ParseException;
@@ -119,6 +118,18 @@ public class B2buaHelperImpl implements MobicentsB2BUAHelper, Serializable {
 		CONTACT_FORBIDDEN_PARAMETER.add("lr");
 	}
 	
+	// headers of the original request not copied to the request of the new leg since the container creates its own, 
+	// the Contact header is only copied for REGISTER requests
+	private static final Set<String> NEW_LEG_EXCLUDED_HEADERS = new HashSet<String>();
+	private static final Set<String> NEW_LEG_EXCLUDED_HEADERS_WITH_CONTACT = new HashSet<String>();
+	static {
+		NEW_LEG_EXCLUDED_HEADERS.add(ViaHeader.NAME.toLowerCase());
+		NEW_LEG_EXCLUDED_HEADERS.add(RecordRouteHeader.NAME.toLowerCase());
+		NEW_LEG_EXCLUDED_HEADERS.add(CallIdHeader.NAME.toLowerCase());
+		NEW_LEG_EXCLUDED_HEADERS_WITH_CONTACT.addAll(NEW_LEG_EXCLUDED_HEADERS);
+		NEW_LEG_EXCLUDED_HEADERS_WITH_CONTACT.add(ContactHeader.NAME.toLowerCase());
+	}
+	
 	//Map to handle linked sessions
 	private Map<MobicentsSipSessionKey, MobicentsSipSessionKey> sessionMap = null;	
 	//Map to handle linked derived sessions
@@ -157,21 +168,12 @@ public class B2buaHelperImpl implements MobicentsB2BUAHelper, Serializable {
 		
 		try {
 			final SipServletRequestImpl origRequestImpl = (SipServletRequestImpl) origRequest;
-			Request newRequest = (Request) origRequestImpl.message.clone();
-			((MessageExt)newRequest).setApplicationData(null);
-			//content should be copied too, so commented out
-//		 	newRequest.removeContent();				
-			//removing the via header from original request
-			newRequest.removeHeader(ViaHeader.NAME);	
-					
-			// Remove the route header ( will point to us ).
-			// commented as per issue 649
-//			newRequest.removeHeader(RouteHeader.NAME);
-//			String tag = Integer.toString((int) (Math.random()*1000));
-//			((FromHeader) newRequest.getHeader(FromHeader.NAME)).setParameter("tag", tag);
-			
-			// Remove the record route headers. This is a new call leg.
-			newRequest.removeHeader(RecordRouteHeader.NAME);			
+			// The via, record route (this is a new call leg) and call id headers are not copied from the original request
+			// and neither is the contact for non-REGISTER requests, the container creates them.
+			// The content and the headers not modified in place are shared with the original request instead of being cloned.
+			// The route header is copied as per issue 649
+			Request newRequest = JainSipUtils.createRequestFromTemplate((Request) origRequestImpl.message, 
+					Request.REGISTER.equalsIgnoreCase(origRequest.getMethod()) ? NEW_LEG_EXCLUDED_HEADERS : NEW_LEG_EXCLUDED_HEADERS_WITH_CONTACT);
 	
 			// Issue 1490 : http://code.google.com/p/mobicents/issues/detail?id=1490 
 			// B2buaHelper.createRequest does not decrement Max-forwards
@@ -211,7 +213,7 @@ public class B2buaHelperImpl implements MobicentsB2BUAHelper, Serializable {
 			
 			// cater to http://code.google.com/p/sipservlets/issues/detail?id=31 to be able to set the rport in applications
 			final SipApplicationDispatcher sipApplicationDispatcher = sipFactoryImpl.getSipApplicationDispatcher();
-			final String branch = JainSipUtils.createBranch(appSession.getKey().getId(),  sipApplicationDispatcher.getHashFromApplicationName(appSession.getKey().getApplicationName()));
+			final String branch = JainSipUtils.createBranch(appSession.getKey().getId(),  sipApplicationDispatcher.getHashFromApplicationName(appSession.getKey().getApplicationName()), sipApplicationDispatcher.getIdGenerator());
 			ViaHeader viaHeader = JainSipUtils.createViaHeader(
     				sipFactoryImpl.getSipNetworkInterfaceManager(), newRequest, branch, session.getOutboundInterface());
 			newRequest.addHeader(viaHeader);
@@ -257,7 +259,7 @@ public class B2buaHelperImpl implements MobicentsB2BUAHelper, Serializable {
 				// if a sip load balancer is present in front of the server, the contact header is the one from the sip lb
 				// so that the subsequent requests can be failed over
 				if(sipFactoryImpl.isUseLoadBalancer()) {
-					final SipLoadBalancer loadBalancerToUse = sipFactoryImpl.getLoadBalancerToUse();
+					final SipLoadBalancer loadBalancerToUse = sipFactoryImpl.selectLoadBalancer();
 					javax.sip.address.SipURI sipURI = sipFactoryImpl.getAddressFactory().createSipURI(fromName, loadBalancerToUse.getAddress().getHostAddress());
 					sipURI.setHost(loadBalancerToUse.getAddress().getHostAddress());
 					sipURI.setPort(loadBalancerToUse.getSipPort());			
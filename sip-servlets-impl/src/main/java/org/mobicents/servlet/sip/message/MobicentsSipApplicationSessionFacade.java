@@ -30,6 +30,7 @@ import java.text.ParseException;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.Set;
+import java.util.concurrent.Executor;
 
 import javax.servlet.http.HttpSession;
 import javax.servlet.sip.ServletTimer;
@@ -40,6 +41,8 @@ import org.apache.log4j.Logger;
 import org.mobicents.javax.servlet.sip.SipApplicationSessionAsynchronousWork;
 import org.mobicents.servlet.sip.core.SipContext;
 import org.mobicents.servlet.sip.core.SipManager;
+import org.mobicents.servlet.sip.core.session.AttributesDelta;
+import org.mobicents.servlet.sip.core.session.ExternalizationUtil;
 import org.mobicents.servlet.sip.core.session.MobicentsSipApplicationSession;
 import org.mobicents.servlet.sip.core.session.MobicentsSipApplicationSessionKey;
 import org.mobicents.servlet.sip.core.session.MobicentsSipSession;
@@ -94,6 +97,10 @@ public class MobicentsSipApplicationSessionFacade implements
 		return this.sipApplicationSession.addSipSession(mobicentsSipSession);
 	}
 
+	public boolean discardSipSession(MobicentsSipSession mobicentsSipSession) {
+		return this.sipApplicationSession.discardSipSession(mobicentsSipSession);
+	}
+
 	public HttpSession findHttpSession(String id) {
 		return this.sipApplicationSession.findHttpSession(id);
 	}
@@ -251,11 +258,15 @@ public class MobicentsSipApplicationSessionFacade implements
 			ClassNotFoundException {
 		String sipApplicationSessionId = arg0.readUTF();
 		SipApplicationSessionKey key = null;
-		try {
-			key = SessionManagerUtil.parseSipApplicationSessionKey(sipApplicationSessionId);
-		} catch (ParseException e) {
-			logger.error("Couldn't parse the following sip application session key " + sipApplicationSessionId, e);
-			throw new IllegalArgumentException("Couldn't parse the following sip application session key " + sipApplicationSessionId, e);
+		if(ExternalizationUtil.readFormatVersion(sipApplicationSessionId, arg0) != ExternalizationUtil.LEGACY_FORMAT_VERSION) {
+			key = ExternalizationUtil.readSipApplicationSessionKey(arg0);
+		} else {
+			try {
+				key = SessionManagerUtil.parseSipApplicationSessionKey(sipApplicationSessionId);
+			} catch (ParseException e) {
+				logger.error("Couldn't parse the following sip application session key " + sipApplicationSessionId, e);
+				throw new IllegalArgumentException("Couldn't parse the following sip application session key " + sipApplicationSessionId, e);
+			}
 		}
 		SipContext sipContext = StaticServiceHolder.sipStandardService
 				.getSipApplicationDispatcher().findSipApplication(key.getApplicationName());
@@ -265,7 +276,12 @@ public class MobicentsSipApplicationSessionFacade implements
 	}
 
 	public void writeExternal(ObjectOutput arg0) throws IOException {
-		arg0.writeUTF(sipApplicationSession.getId());
+		if(ExternalizationUtil.isLegacyFormatWritten()) {
+			arg0.writeUTF(sipApplicationSession.getId());
+			return;
+		}
+		ExternalizationUtil.writeFormatVersion(arg0);
+		ExternalizationUtil.writeSipApplicationSessionKey(arg0, sipApplicationSession.getKey());
 	}
 
 	public String getJvmRoute() {
@@ -326,6 +342,10 @@ public class MobicentsSipApplicationSessionFacade implements
 		return sipApplicationSession.getSipApplicationSessionTimeout();
 	}
 
+	public AttributesDelta collectAttributesDelta() {
+		return sipApplicationSession.collectAttributesDelta();
+	}
+
 	public void invalidate(boolean bypassCheck) {
 		sipApplicationSession.invalidate(true);
 	}
@@ -337,6 +357,10 @@ public class MobicentsSipApplicationSessionFacade implements
 	public void release() {
 		sipApplicationSession.release();
 	}
+
+	public Executor getSerialExecutor() {
+		return sipApplicationSession.getSerialExecutor();
+	}
 	
 	public boolean isOrphan() {
 		return sipApplicationSession.isOrphan();
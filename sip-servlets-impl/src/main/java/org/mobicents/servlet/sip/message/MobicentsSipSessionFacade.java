@@ -30,6 +30,7 @@ import java.util.Enumeration;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
 
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
@@ -54,6 +55,7 @@ import org.mobicents.servlet.sip.core.message.MobicentsSipServletResponse;
 import org.mobicents.servlet.sip.core.proxy.MobicentsProxy;
 import org.mobicents.servlet.sip.core.security.MobicentsSipSessionSecurity;
 import org.mobicents.servlet.sip.core.security.SipPrincipal;
+import org.mobicents.servlet.sip.core.session.AttributesDelta;
 import org.mobicents.servlet.sip.core.session.MobicentsSipApplicationSession;
 import org.mobicents.servlet.sip.core.session.MobicentsSipApplicationSessionKey;
 import org.mobicents.servlet.sip.core.session.MobicentsSipSession;
@@ -377,6 +379,10 @@ public class MobicentsSipSessionFacade implements MobicentsSipSession, Serializa
 		getSipSession().setSipSessionAttributeMap(sipSessionAttributeMap);
 	}
 
+	public AttributesDelta collectAttributesDelta() {
+		return getSipSession().collectAttributesDelta();
+	}
+
 	public void setSipSubscriberURI(String subscriberURI) {
 		getSipSession().setSipSubscriberURI(subscriberURI);
 	}
@@ -521,6 +527,10 @@ public class MobicentsSipSessionFacade implements MobicentsSipSession, Serializa
 	public void release() {
 		sipSession.release();
 	}
+
+	public Executor getSerialExecutor() {
+		return sipSession.getSerialExecutor();
+	}
 	
 	public void setFlow(final javax.sip.address.SipURI flow) {
 		this.sipSession.setFlow(flow);
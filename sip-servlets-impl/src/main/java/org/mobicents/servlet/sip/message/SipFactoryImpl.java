@@ -85,6 +85,7 @@ import org.mobicents.servlet.sip.core.SipApplicationDispatcher;
 import org.mobicents.servlet.sip.core.SipContext;
 import org.mobicents.servlet.sip.core.SipNetworkInterfaceManager;
 import org.mobicents.servlet.sip.core.dispatchers.MessageDispatcher;
+import org.mobicents.servlet.sip.core.loadbalancer.LoadBalancerSelector;
 import org.mobicents.servlet.sip.core.message.OutboundProxy;
 import org.mobicents.servlet.sip.core.session.MobicentsSipApplicationSession;
 import org.mobicents.servlet.sip.core.session.MobicentsSipApplicationSessionKey;
@@ -110,6 +111,7 @@ public class SipFactoryImpl implements MobicentsSipFactory,  Externalizable {
 	private boolean useLoadBalancer = false;
 	private boolean routeOrphanRequests = false;
 	private SipLoadBalancer loadBalancerToUse = null;
+	private final LoadBalancerSelector loadBalancerSelector = new LoadBalancerSelector();
 	
 	private static boolean initialized;
 	public static AddressFactory addressFactory;
@@ -157,6 +159,13 @@ public class SipFactoryImpl implements MobicentsSipFactory,  Externalizable {
 		FORBIDDEN_PARAMS.add(TRANSPORT_PARAM);
 		FORBIDDEN_PARAMS.add(LR_PARAM);
 	}	
+	
+	// headers of the original request not copied to a request created from it, the container creates its own
+	private static final Set<String> NEW_REQUEST_EXCLUDED_HEADERS = new HashSet<String>();
+	static {
+		NEW_REQUEST_EXCLUDED_HEADERS.add(ViaHeader.NAME.toLowerCase());
+		NEW_REQUEST_EXCLUDED_HEADERS.add(RecordRouteHeader.NAME.toLowerCase());
+	}
 
 	private transient SipApplicationDispatcher sipApplicationDispatcher = null;
 	
@@ -371,14 +380,13 @@ public class SipFactoryImpl implements MobicentsSipFactory,  Externalizable {
 			throw new IllegalStateException("original request's app session does not exists");
 		}			
 		final MobicentsSipSession originalSession = origRequestImpl.getSipSession();
-		final Request newRequest = (Request) origRequestImpl.message.clone();
-		((MessageExt)newRequest).setApplicationData(null);
-		//removing the via header from original request
-		newRequest.removeHeader(ViaHeader.NAME);	
+		// the via and record route headers (this is a new call leg) are not copied from the original request,
+		// its content and the headers not modified in place are shared instead of being cloned
+		final Request newRequest = JainSipUtils.createRequestFromTemplate((Request) origRequestImpl.message, NEW_REQUEST_EXCLUDED_HEADERS);
 		
 		// cater to http://code.google.com/p/sipservlets/issues/detail?id=31 to be able to set the rport in applications
 		final SipApplicationDispatcher sipApplicationDispatcher = getSipApplicationDispatcher();
-		final String branch = JainSipUtils.createBranch(originalAppSession.getKey().getId(),  sipApplicationDispatcher.getHashFromApplicationName(originalAppSession.getKey().getApplicationName()));
+		final String branch = JainSipUtils.createBranch(originalAppSession.getKey().getId(),  sipApplicationDispatcher.getHashFromApplicationName(originalAppSession.getKey().getApplicationName()), sipApplicationDispatcher.getIdGenerator());
 		ViaHeader viaHeader = JainSipUtils.createViaHeader(
 				getSipNetworkInterfaceManager(), newRequest, branch, null);
 		newRequest.addHeader(viaHeader);
@@ -394,9 +402,6 @@ public class SipFactoryImpl implements MobicentsSipFactory,  Externalizable {
 		// commented as per issue 649
 //		newRequest.removeHeader(RouteHeader.NAME);
 		
-		// Remove the record route headers. This is a new call leg.
-		newRequest.removeHeader(RecordRouteHeader.NAME);
-		
 		//For non-REGISTER requests, the Contact header field is not copied 
 		//but is populated by the container as usual
 		if(!Request.REGISTER.equalsIgnoreCase(newRequest.getMethod())) {
@@ -420,9 +425,10 @@ public class SipFactoryImpl implements MobicentsSipFactory,  Externalizable {
 						// so that the subsequent requests can be failed over
 						if(fromName != null) {
 							if(useLoadBalancer) {
-								javax.sip.address.SipURI sipURI = addressFactory.createSipURI(fromName, loadBalancerToUse.getAddress().getHostAddress());
-								sipURI.setHost(loadBalancerToUse.getAddress().getHostAddress());
-								sipURI.setPort(loadBalancerToUse.getSipPort());
+								final SipLoadBalancer loadBalancer = selectLoadBalancer();
+								javax.sip.address.SipURI sipURI = addressFactory.createSipURI(fromName, loadBalancer.getAddress().getHostAddress());
+								sipURI.setHost(loadBalancer.getAddress().getHostAddress());
+								sipURI.setPort(loadBalancer.getSipPort());
 								sipURI.setTransportParam(JainSipUtils.findTransport(newRequest));
 								javax.sip.address.Address contactAddress = addressFactory.createAddress(sipURI);
 								if(displayName != null && displayName.length() > 0) {
@@ -713,9 +719,10 @@ public class SipFactoryImpl implements MobicentsSipFactory,  Externalizable {
 				// if a sip load balancer is present in front of the server, the contact header is the one from the sip lb
 				// so that the subsequent requests can be failed over
 				if(useLoadBalancer) {
-					javax.sip.address.SipURI sipURI = SipFactoryImpl.addressFactory.createSipURI(fromName, loadBalancerToUse.getAddress().getHostAddress());
-					sipURI.setHost(loadBalancerToUse.getAddress().getHostAddress());
-					sipURI.setPort(loadBalancerToUse.getSipPort());			
+					final SipLoadBalancer loadBalancer = selectLoadBalancer();
+					javax.sip.address.SipURI sipURI = SipFactoryImpl.addressFactory.createSipURI(fromName, loadBalancer.getAddress().getHostAddress());
+					sipURI.setHost(loadBalancer.getAddress().getHostAddress());
+					sipURI.setPort(loadBalancer.getSipPort());			
 					sipURI.setTransportParam(transport);
 					javax.sip.address.Address contactAddress = SipFactoryImpl.addressFactory.createAddress(sipURI);
 					if(displayName != null && displayName.length() > 0) {
@@ -747,7 +754,7 @@ public class SipFactoryImpl implements MobicentsSipFactory,  Externalizable {
 			
 			// cater to http://code.google.com/p/sipservlets/issues/detail?id=31 to be able to set the rport in applications
 			final SipApplicationDispatcher sipApplicationDispatcher = getSipApplicationDispatcher();
-			final String branch = JainSipUtils.createBranch(sipApplicationSessionKey.getId(),  sipApplicationDispatcher.getHashFromApplicationName(sipApplicationSessionKey.getApplicationName()));
+			final String branch = JainSipUtils.createBranch(sipApplicationSessionKey.getId(),  sipApplicationDispatcher.getHashFromApplicationName(sipApplicationSessionKey.getApplicationName()), sipApplicationDispatcher.getIdGenerator());
 			ViaHeader viaHeader = JainSipUtils.createViaHeader(
     				getSipNetworkInterfaceManager(), requestToWrap, branch, session.getOutboundInterface());
 			requestToWrap.addHeader(viaHeader);
@@ -887,24 +894,63 @@ public class SipFactoryImpl implements MobicentsSipFactory,  Externalizable {
 		return useLoadBalancer;
 	}
 
+	/**
+	 * @return the load balancers the requests sent by the container are spread over
+	 */
+	public LoadBalancerSelector getLoadBalancerSelector() {
+		return loadBalancerSelector;
+	}
+
+	/**
+	 * @return the load balancer to send a new request through, picked by the load balancer selection strategy
+	 * amongst the ones available, or the loadBalancerToUse if none has been added to the selector
+	 */
+	public SipLoadBalancer selectLoadBalancer() {
+		final SipLoadBalancer selected = loadBalancerSelector.select();
+		if(selected != null) {
+			return selected;
+		}
+		return loadBalancerToUse;
+	}
+
+	/**
+	 * @param request the request to check
+	 * @return the load balancer the contact of the request points to, so that the request is sent through the same
+	 * load balancer the subsequent requests will come back from, or a newly selected one
+	 */
+	private SipLoadBalancer selectLoadBalancer(Request request) {
+		final ContactHeader contactHeader = (ContactHeader) request.getHeader(ContactHeader.NAME);
+		if(contactHeader != null && contactHeader.getAddress().getURI().isSipURI()) {
+			final javax.sip.address.SipURI contactURI = (javax.sip.address.SipURI) contactHeader.getAddress().getURI();
+			final SipLoadBalancer contactLoadBalancer = loadBalancerSelector.find(contactURI.getHost(), contactURI.getPort());
+			if(contactLoadBalancer != null) {
+				return contactLoadBalancer;
+			}
+		}
+		return selectLoadBalancer();
+	}
+
 	/**
 	 * 
 	 * @param request
+	 * @return the load balancer the request is routed to or null if it is routed to the outbound proxy or not routed
 	 * @throws ParseException
 	 */
-	public void addLoadBalancerRouteHeader(Request request) {
+	public SipLoadBalancer addLoadBalancerRouteHeader(Request request) {
 		try {
 			String transport = JainSipUtils.findTransport(request);
 			String host = null;
 			int port = -1; 
+			SipLoadBalancer loadBalancer = null;
 			OutboundProxy proxy = StaticServiceHolder.sipStandardService.getOutboundProxy();
 			if(proxy == null) {
 				if(transport.equalsIgnoreCase("ws")){
 					//This is a WebSocket request through LB, no need to add Route header.
-					return;
+					return null;
 				} else {
-					host = loadBalancerToUse.getAddress().getHostAddress();
-					port = loadBalancerToUse.getSipPort();
+					loadBalancer = selectLoadBalancer(request);
+					host = loadBalancer.getAddress().getHostAddress();
+					port = loadBalancer.getSipPort();
 				}
 			} else {				
 				host = proxy.getHost();
@@ -930,6 +976,7 @@ public class SipFactoryImpl implements MobicentsSipFactory,  Externalizable {
 						((HeaderFactoryExt)SipFactoryImpl.headerFactory).createPathHeader(routeAddress);
 				request.addFirst(pathHeader);
 			}
+			return loadBalancer;
 		} catch (ParseException e) {
 			//this should never happen
 			throw new IllegalArgumentException("Impossible to set the Load Balancer Route Header !", e);
@@ -21,6 +21,7 @@ package org.mobicents.servlet.sip.message;
 
 import gov.nist.javax.sip.header.HeaderExt;
 import gov.nist.javax.sip.header.SIPHeader;
+import gov.nist.javax.sip.message.SIPMessage;
 import gov.nist.javax.sip.stack.SIPTransaction;
 
 import java.io.ByteArrayOutputStream;
@@ -32,15 +33,16 @@ import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Locale;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.StringTokenizer;
 import java.util.Vector;
 import java.util.concurrent.ConcurrentHashMap;
@@ -84,6 +86,7 @@ import javax.sip.message.Request;
 import org.apache.log4j.Logger;
 import org.mobicents.ha.javax.sip.ClusteredSipStack;
 import org.mobicents.ha.javax.sip.ReplicationStrategy;
+import org.mobicents.javax.servlet.sip.SipServletMessageExt;
 import org.mobicents.servlet.sip.JainSipUtils;
 import org.mobicents.servlet.sip.address.AddressImpl;
 import org.mobicents.servlet.sip.address.AddressImpl.ModifiableRule;
@@ -92,6 +95,7 @@ import org.mobicents.servlet.sip.core.MobicentsExtendedListeningPoint;
 import org.mobicents.servlet.sip.core.SipContext;
 import org.mobicents.servlet.sip.core.message.MobicentsSipServletMessage;
 import org.mobicents.servlet.sip.core.security.SipPrincipal;
+import org.mobicents.servlet.sip.core.session.ExternalizationUtil;
 import org.mobicents.servlet.sip.core.session.MobicentsSipApplicationSession;
 import org.mobicents.servlet.sip.core.session.MobicentsSipSession;
 import org.mobicents.servlet.sip.core.session.MobicentsSipSessionKey;
@@ -106,7 +110,7 @@ import org.mobicents.servlet.sip.startup.StaticServiceHolder;
  * @author jean.deruelle@telestax.com
  * 
  */
-public abstract class SipServletMessageImpl implements MobicentsSipServletMessage, Externalizable {
+public abstract class SipServletMessageImpl implements MobicentsSipServletMessage, SipServletMessageExt, Externalizable {
 
 	
 	private static final long serialVersionUID = 1L;
@@ -122,6 +126,18 @@ public abstract class SipServletMessageImpl implements MobicentsSipServletMessag
 	public static final String REL100_OPTION_TAG = "100rel";
 //	private static final String HCOLON = " : ";
 	
+	// full and compact forms of the header names having a compact form, keyed by both forms,
+	// so that resolving the form of a header name takes a single lookup
+	private static final Map<String, HeaderNames> HEADER_NAMES = new HashMap<String, HeaderNames>();
+	static {
+		for (Map.Entry<String, String> fullToCompact : JainSipUtils.HEADER_FULL_TO_COMPACT_NAMES_MAPPINGS.entrySet()) {
+			HEADER_NAMES.put(fullToCompact.getKey(), new HeaderNames(fullToCompact.getKey(), fullToCompact.getValue()));
+		}
+		for (Map.Entry<String, String> compactToFull : JainSipUtils.HEADER_COMPACT_2_FULL_NAMES_MAPPINGS.entrySet()) {
+			HEADER_NAMES.put(compactToFull.getKey(), new HeaderNames(compactToFull.getValue(), compactToFull.getKey()));
+		}
+	}
+	
 	protected Message message;
 	protected SipFactoryImpl sipFactoryImpl;
 	protected MobicentsSipSessionKey sessionKey;
@@ -142,6 +158,8 @@ public abstract class SipServletMessageImpl implements MobicentsSipServletMessag
 	protected TransactionApplicationData transactionApplicationData;		
 
 	protected HeaderForm headerForm = HeaderForm.DEFAULT;
+	// version of the externalization format this message has been read with
+	private transient int externalizationFormatVersion = ExternalizationUtil.FORMAT_VERSION;
 	
 	// IP address of the next upstream/downstream hop from which this message
 	// was received. Applications can determine the actual IP address of the UA
@@ -165,6 +183,11 @@ public abstract class SipServletMessageImpl implements MobicentsSipServletMessag
 	
 	protected transient String method;
 	
+	// read only parameterables and addresses handed out by the SipServletMessageExt accessors, parsed once per header instance
+	// and dropped as soon as the headers may be modified, through the message or a modifiable parameterable or address
+	private transient volatile Map<Header, Parameterable> readOnlyParameterables;
+	private transient volatile Map<Header, Address> readOnlyAddresses;
+	
 	// needed for orphan routing
 	boolean orphan;
 	private String appSessionId;
@@ -227,6 +250,17 @@ public abstract class SipServletMessageImpl implements MobicentsSipServletMessag
 		if(this.isCommitted()) {
 			throw new IllegalStateException("This message is in committed state. You can not modify it");
 		}
+		// every modification of the message goes through this check
+		discardReadOnlyHeaders();
+	}
+	
+	/**
+	 * Drop the read only parameterables and addresses parsed from the headers, to be called
+	 * before the headers are modified or a modifiable view of them is handed out
+	 */
+	protected void discardReadOnlyHeaders() {
+		readOnlyParameterables = null;
+		readOnlyAddresses = null;
 	}
 	/*
 	 * (non-Javadoc)
@@ -446,6 +480,7 @@ public abstract class SipServletMessageImpl implements MobicentsSipServletMessag
 	public Address getAddressHeader(String name) throws ServletParseException {
 		if (name == null)
 			throw new NullPointerException();
+		discardReadOnlyHeaders();
 
 		String hName = getFullHeaderName(name);
 
@@ -500,6 +535,7 @@ public abstract class SipServletMessageImpl implements MobicentsSipServletMessag
 	@SuppressWarnings("unchecked")
 	public ListIterator<Address> getAddressHeaders(String name)
 			throws ServletParseException {
+		discardReadOnlyHeaders();
 
 		String hName = getFullHeaderName(name);
 
@@ -820,6 +856,7 @@ public abstract class SipServletMessageImpl implements MobicentsSipServletMessag
 	 * @see javax.servlet.sip.SipServletMessage#getFrom()
 	 */
 	public Address getFrom() {
+		discardReadOnlyHeaders();
 		FromHeader from = (FromHeader) this.message
 				.getHeader(getCorrectHeaderName(FromHeader.NAME));
 //		AddressImpl address = new AddressImpl(from.getAddress(), AddressImpl.getParameters((Parameters)from), ModifiableRule.From);
@@ -887,6 +924,119 @@ public abstract class SipServletMessageImpl implements MobicentsSipServletMessag
 		return result.listIterator();
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.javax.servlet.sip.SipServletMessageExt#getHeaderValues(java.lang.String)
+	 */
+	public Iterator<String> getHeaderValues(String name) {
+		ListIterator<Header> headers = this.message.getHeaders(getCorrectHeaderName(name));
+		if(headers == null) {
+			return Collections.<String>emptyList().iterator();
+		}
+		return new HeaderIterator<String>(headers) {
+			@Override
+			protected String convert(Header header) {
+				return ((SIPHeader) header).getHeaderValue();
+			}
+		};
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.javax.servlet.sip.SipServletMessageExt#getReadOnlyParameterableHeaders(java.lang.String)
+	 */
+	public Iterator<Parameterable> getReadOnlyParameterableHeaders(String name) throws ServletParseException {
+		if(!isParameterable(name)) {
+			throw new ServletParseException(name + " header is not parameterable !");
+		}
+		final String hName = getFullHeaderName(name);
+		final String nameToSearch = getCorrectHeaderName(name);
+		Map<Header, Parameterable> parameterables = readOnlyParameterables;
+		if(parameterables == null) {
+			parameterables = Collections.synchronizedMap(new IdentityHashMap<Header, Parameterable>());
+			readOnlyParameterables = parameterables;
+		}
+		// the headers not parsed yet are parsed upfront so that the parsing errors are reported here and not by the iterator
+		ListIterator<Header> headers = this.message.getHeaders(nameToSearch);
+		if(headers == null) {
+			return Collections.<Parameterable>emptyList().iterator();
+		}
+		while (headers.hasNext()) {
+			getReadOnlyParameterable(parameterables, headers.next(), hName);
+		}
+		final Map<Header, Parameterable> headerParameterables = parameterables;
+		return new HeaderIterator<Parameterable>(this.message.getHeaders(nameToSearch)) {
+			@Override
+			protected Parameterable convert(Header header) {
+				try {
+					return getReadOnlyParameterable(headerParameterables, header, hName);
+				} catch (ServletParseException e) {
+					throw new IllegalStateException("The headers have been modified while being iterated over", e);
+				}
+			}
+		};
+	}
+
+	private Parameterable getReadOnlyParameterable(Map<Header, Parameterable> parameterables, Header header, String hName) throws ServletParseException {
+		Parameterable parameterable = parameterables.get(header);
+		if(parameterable == null) {
+			ParameterableHeaderImpl parsed = (ParameterableHeaderImpl) createParameterable(header, hName, message instanceof Request);
+			parameterable = new ParameterableHeaderImpl(header, parsed.getValue(), parsed.getInternalParameters(), ModifiableRule.NotModifiable);
+			parameterables.put(header, parameterable);
+		}
+		return parameterable;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.mobicents.javax.servlet.sip.SipServletMessageExt#getReadOnlyAddressHeaders(java.lang.String)
+	 */
+	public Iterator<Address> getReadOnlyAddressHeaders(final String name) throws ServletParseException {
+		final String nameToSearch = getCorrectHeaderName(getFullHeaderName(name));
+		Map<Header, Address> addresses = readOnlyAddresses;
+		if(addresses == null) {
+			addresses = Collections.synchronizedMap(new IdentityHashMap<Header, Address>());
+			readOnlyAddresses = addresses;
+		}
+		// the headers not parsed yet are parsed upfront so that the parsing errors are reported here and not by the iterator
+		ListIterator<Header> headers = this.message.getHeaders(nameToSearch);
+		if(headers == null) {
+			return Collections.<Address>emptyList().iterator();
+		}
+		while (headers.hasNext()) {
+			getReadOnlyAddress(addresses, headers.next(), name);
+		}
+		final Map<Header, Address> headerAddresses = addresses;
+		return new HeaderIterator<Address>(this.message.getHeaders(nameToSearch)) {
+			@Override
+			protected Address convert(Header header) {
+				try {
+					return getReadOnlyAddress(headerAddresses, header, name);
+				} catch (ServletParseException e) {
+					throw new IllegalStateException("The headers have been modified while being iterated over", e);
+				}
+			}
+		};
+	}
+
+	private Address getReadOnlyAddress(Map<Header, Address> addresses, Header header, String name) throws ServletParseException {
+		Address address = addresses.get(header);
+		if(address == null) {
+			try {
+				if (header instanceof HeaderAddress) {
+					address = new AddressImpl((HeaderAddress) header, ModifiableRule.NotModifiable);
+				} else {
+					Parameterable parametrable = createParameterable(header, header.getName(), message instanceof Request);
+					address = new AddressImpl(SipFactoryImpl.addressFactory.createAddress(parametrable.getValue()), ((ParameterableHeaderImpl)parametrable).getInternalParameters(), ModifiableRule.NotModifiable);
+				}
+			} catch (ParseException e) {
+				throw new ServletParseException("Impossible to parse the following header " + name + " as an address.", e);
+			}
+			addresses.put(header, address);
+		}
+		return address;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -910,6 +1060,7 @@ public abstract class SipServletMessageImpl implements MobicentsSipServletMessag
 		if (name == null)
 			throw new NullPointerException(
 					"Parametrable header name cant be null!!!");
+		discardReadOnlyHeaders();
 
 		String nameToSearch = getCorrectHeaderName(name);
 
@@ -932,6 +1083,7 @@ public abstract class SipServletMessageImpl implements MobicentsSipServletMessag
 	 */
 	public ListIterator<Parameterable> getParameterableHeaders(String name)
 			throws ServletParseException {
+		discardReadOnlyHeaders();
 
 		ListIterator<Header> headers = this.message
 				.getHeaders(getCorrectHeaderName(name));
@@ -1153,6 +1305,7 @@ public abstract class SipServletMessageImpl implements MobicentsSipServletMessag
 	 * @see javax.servlet.sip.SipServletMessage#getTo()
 	 */
 	public Address getTo() {
+		discardReadOnlyHeaders();
 		ToHeader to = (ToHeader) this.message
 			.getHeader(getCorrectHeaderName(ToHeader.NAME));
 		// return new AddressImpl(to.getAddress(), AddressImpl.getParameters((Parameters)to), ModifiableRule.To);
@@ -1653,12 +1806,8 @@ public abstract class SipServletMessageImpl implements MobicentsSipServletMessag
 	 */
 	protected static String getFullHeaderName(String headerName) {
 
-		String fullName = null;
-		if (JainSipUtils.HEADER_COMPACT_2_FULL_NAMES_MAPPINGS.containsKey(headerName)) {
-			fullName = JainSipUtils.HEADER_COMPACT_2_FULL_NAMES_MAPPINGS.get(headerName);
-		} else {
-			fullName = headerName;
-		}
+		final HeaderNames headerNames = HEADER_NAMES.get(headerName);
+		final String fullName = headerNames != null ? headerNames.fullName : headerName;
 		if (logger.isDebugEnabled())
 			logger.debug("Fetching full header name for [" + headerName
 					+ "] returning [" + fullName + "]");
@@ -1677,13 +1826,9 @@ public abstract class SipServletMessageImpl implements MobicentsSipServletMessag
 	 */
 	public static String getCompactName(String headerName) {
 
-		String compactName = null;
-		if (JainSipUtils.HEADER_COMPACT_2_FULL_NAMES_MAPPINGS.containsKey(headerName)) {
-			compactName = JainSipUtils.HEADER_COMPACT_2_FULL_NAMES_MAPPINGS.get(headerName);
-		} else {
-			// This can be null if there is no mapping!!!
-			compactName = JainSipUtils.HEADER_FULL_TO_COMPACT_NAMES_MAPPINGS.get(headerName);
-		}
+		final HeaderNames headerNames = HEADER_NAMES.get(headerName);
+		// This can be null if there is no mapping!!!
+		final String compactName = headerNames != null ? headerNames.compactName : null;
 		if (logger.isDebugEnabled())
 			logger.debug("Fetching compact header name for [" + headerName
 					+ "] returning [" + compactName + "]");
@@ -2025,6 +2170,47 @@ public abstract class SipServletMessageImpl implements MobicentsSipServletMessag
 			return listeningPoint.getPort();
 		}
 	}
+	/**
+	 * Update the traffic statistics of the connector this message has just been sent through
+	 * @param extendedListeningPoint the connector used to send the message
+	 */
+	protected void updateConnectorStatistics(MobicentsExtendedListeningPoint extendedListeningPoint) {
+		updateConnectorStatistics(sipFactoryImpl, extendedListeningPoint, message);
+	}
+
+	/**
+	 * Update the traffic statistics of the connector a message has just been sent through, for the messages
+	 * sent directly through the stack such as the ones proxied statelessly
+	 * @param sipFactoryImpl the sip factory of the container
+	 * @param extendedListeningPoint the connector used to send the message
+	 * @param message the message sent
+	 */
+	public static void updateConnectorStatistics(SipFactoryImpl sipFactoryImpl, MobicentsExtendedListeningPoint extendedListeningPoint, Message message) {
+		if(extendedListeningPoint != null && sipFactoryImpl.getSipApplicationDispatcher().isGatherStatistics()) {
+			extendedListeningPoint.getStatistics().messageSent(estimateEncodedSize(message));
+		}
+	}
+
+	/**
+	 * The stack doesn't keep the size of the messages it sends, it is estimated from the first line, the headers and
+	 * the Content-Length so that neither the body is copied nor the whole message converted to bytes again
+	 * @return the estimated size in bytes of the message once encoded
+	 */
+	private static int estimateEncodedSize(Message message) {
+		if(!(message instanceof SIPMessage)) {
+			return 0;
+		}
+		final SIPMessage sipMessage = (SIPMessage) message;
+		final StringBuilder encodedHeaders = new StringBuilder(1024);
+		encodedHeaders.append(sipMessage.getFirstLine());
+		final Iterator<SIPHeader> headers = sipMessage.getHeaders();
+		while (headers.hasNext()) {
+			headers.next().encode(encodedHeaders);
+		}
+		final ContentLengthHeader contentLengthHeader = sipMessage.getContentLength();
+		// the headers are separated from the body by an empty line
+		return encodedHeaders.length() + 2 + (contentLengthHeader == null ? 0 : contentLengthHeader.getContentLength());
+	}
 	// Fix for Issue 1552 http://code.google.com/p/mobicents/issues/detail?id=1552
 	// Container does not recognise 100rel if there are other extensions on the Require or Supported line
 	// we check all the values of Require and Supported headers to make sure the 100rel is present	
@@ -2070,21 +2256,31 @@ public abstract class SipServletMessageImpl implements MobicentsSipServletMessag
 			ClassNotFoundException {		
 		sipFactoryImpl = (SipFactoryImpl) in.readObject();
 		String sessionKeyString = in.readUTF();
-		if (sessionKeyString.length() > 0) {
-			try {
-				sessionKey = SessionManagerUtil.parseSipSessionKey(sessionKeyString);
-			} catch (ParseException e) {
-				throw new IllegalArgumentException("SIP Sesion Key " + sessionKeyString + " previously serialized could not be reparsed", e);
+		externalizationFormatVersion = ExternalizationUtil.readFormatVersion(sessionKeyString, in);
+		if(externalizationFormatVersion != ExternalizationUtil.LEGACY_FORMAT_VERSION) {
+			sessionKey = ExternalizationUtil.readSipSessionKey(in);
+			Map<String, Object> attributesRead = ExternalizationUtil.readAttributes(in);
+			if(attributesRead != null) {
+				attributes = attributesRead;
 			}
-		}
-		int attributesSize = in.readInt();
-		if(attributesSize > 0) {
-			Object[][] attributesArray = (Object[][] )in.readObject();
-			attributes = new ConcurrentHashMap<String, Object>();
-			for (int i = 0; i < attributesSize; i++) {
-				String key = (String) attributesArray[0][i];
-				Object value = attributesArray[1][i];
-				attributes.put(key, value);
+		} else {
+			// message written by a node running a previous version
+			if (sessionKeyString.length() > 0) {
+				try {
+					sessionKey = SessionManagerUtil.parseSipSessionKey(sessionKeyString);
+				} catch (ParseException e) {
+					throw new IllegalArgumentException("SIP Sesion Key " + sessionKeyString + " previously serialized could not be reparsed", e);
+				}
+			}
+			int attributesSize = in.readInt();
+			if(attributesSize > 0) {
+				Object[][] attributesArray = (Object[][] )in.readObject();
+				attributes = new ConcurrentHashMap<String, Object>();
+				for (int i = 0; i < attributesSize; i++) {
+					String key = (String) attributesArray[0][i];
+					Object value = attributesArray[1][i];
+					attributes.put(key, value);
+				}
 			}
 		}
 		if(in.readBoolean()) {
@@ -2120,27 +2316,26 @@ public abstract class SipServletMessageImpl implements MobicentsSipServletMessag
 	 */
 	public void writeExternal(ObjectOutput out) throws IOException {
 		out.writeObject(sipFactoryImpl);
-		if(sessionKey != null) {
-			out.writeUTF(sessionKey.toString());
-		} else {
-			if (null == sipSession) {
+		// read once, the whole message has to be written in the same format
+		final boolean legacyFormat = ExternalizationUtil.isLegacyFormatWritten();
+		if(legacyFormat) {
+			// readable by the nodes running a previous version
+			if(sessionKey != null) {
+				out.writeUTF(sessionKey.toString());
+			} else if(sipSession == null) {
 				out.writeUTF("");
 			} else {
 				out.writeUTF(sipSession.getId());
 			}
-		}
-		if(attributes != null && attributes.size() > 0) {
-			out.writeInt(attributes.size());
-			Object[][] attributesArray = new Object[2][attributes.size()];
-			int i = 0;
-			for (Entry<String, Object> entry : attributes.entrySet()) {
-				attributesArray [0][i] = entry.getKey(); 
-				attributesArray [1][i] = entry.getValue();
-				i++;
-			}		
-			out.writeObject(attributesArray);
+			ExternalizationUtil.writeLegacyAttributes(out, attributes);
 		} else {
-			out.writeInt(0);
+			ExternalizationUtil.writeFormatVersion(out);
+			if(sessionKey != null) {
+				ExternalizationUtil.writeSipSessionKey(out, sessionKey);
+			} else {
+				ExternalizationUtil.writeSipSessionKey(out, sipSession == null ? null : sipSession.getKey());
+			}
+			ExternalizationUtil.writeAttributes(out, attributes);
 		}
 		if(transactionApplicationData != null) {
 			out.writeBoolean(true);
@@ -2169,7 +2364,23 @@ public abstract class SipServletMessageImpl implements MobicentsSipServletMessag
 				out.writeBoolean(transaction instanceof ServerTransaction);
 			}
 		}
-		out.writeUTF(message.toString());
+		if(legacyFormat) {
+			ExternalizationUtil.writeLegacyMessage(out, message);
+		} else {
+			ExternalizationUtil.writeMessage(out, message);
+		}
+	}
+	
+	/**
+	 * Read the SIP message written at the end of {@link #writeExternal(ObjectOutput)}, to be called by the subclasses
+	 * once {@link #readExternal(ObjectInput)} returned
+	 * @return the SIP message in its string form
+	 */
+	protected String readExternalMessage(ObjectInput in) throws IOException {
+		if(externalizationFormatVersion == ExternalizationUtil.LEGACY_FORMAT_VERSION) {
+			return in.readUTF();
+		}
+		return ExternalizationUtil.readMessage(in);
 	}
 
 	/* (non-Javadoc)
@@ -2251,4 +2462,39 @@ public abstract class SipServletMessageImpl implements MobicentsSipServletMessag
 	public boolean isMessageSent() {
         return isMessageSent;
     }
+
+	private static final class HeaderNames {
+		final String fullName;
+		final String compactName;
+
+		HeaderNames(String fullName, String compactName) {
+			this.fullName = fullName;
+			this.compactName = compactName;
+		}
+	}
+
+	/**
+	 * Read only view of the headers of the message, converting each header only when it is reached
+	 */
+	private abstract static class HeaderIterator<T> implements Iterator<T> {
+		private final Iterator<Header> headers;
+
+		HeaderIterator(Iterator<Header> headers) {
+			this.headers = headers;
+		}
+
+		public boolean hasNext() {
+			return headers.hasNext();
+		}
+
+		public T next() {
+			return convert(headers.next());
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException("The headers can't be removed through this iterator");
+		}
+
+		protected abstract T convert(Header header);
+	}
 }
@@ -43,7 +43,6 @@ import java.util.List;
 import java.util.ListIterator;
 import java.util.Locale;
 import java.util.Queue;
-import java.util.Random;
 import java.util.Set;
 import java.util.Vector;
 
@@ -96,6 +95,8 @@ import javax.sip.message.Response;
 import org.apache.log4j.Logger;
 import org.mobicents.ext.javax.sip.dns.DNSAwareRouter;
 import org.mobicents.ext.javax.sip.dns.DNSServerLocator;
+import org.mobicents.ha.javax.sip.SipLoadBalancer;
+import org.mobicents.javax.servlet.sip.dns.DNSResolver;
 import org.mobicents.servlet.sip.JainSipUtils;
 import org.mobicents.servlet.sip.SipConnector;
 import org.mobicents.servlet.sip.address.AddressImpl;
@@ -120,6 +121,7 @@ import org.mobicents.servlet.sip.core.session.MobicentsSipApplicationSessionKey;
 import org.mobicents.servlet.sip.core.session.MobicentsSipSession;
 import org.mobicents.servlet.sip.core.session.MobicentsSipSessionKey;
 import org.mobicents.servlet.sip.core.session.SipRequestDispatcher;
+import org.mobicents.servlet.sip.dns.MobicentsDNSResolver;
 import org.mobicents.servlet.sip.proxy.ProxyImpl;
 import org.mobicents.servlet.sip.security.AuthInfoEntry;
 import org.mobicents.servlet.sip.security.AuthInfoImpl;
@@ -185,6 +187,9 @@ public abstract class SipServletRequestImpl extends SipServletMessageImpl implem
 	// This field is only used in CANCEL requests where we need the INVITe transaction
 	private transient Transaction inviteTransactionToCancel;
 	
+	// System.nanoTime() at which the request has been received from the network, 0 for requests created by applications
+	private transient long receivedTime;
+	
 	// needed for externalizable
 	public SipServletRequestImpl () {}
 	
@@ -367,7 +372,8 @@ public abstract class SipServletRequestImpl extends SipServletMessageImpl implem
 						}						
 					} else {							
 						//if the sessions are null, it means it is a cancel response
-						toHeader.setTag(Integer.toString(new Random().nextInt(10000000)));
+						final SipApplicationDispatcher sipApplicationDispatcher = sipFactoryImpl.getSipApplicationDispatcher();
+						toHeader.setTag(sipApplicationDispatcher.getIdGenerator().generateTag(sipApplicationDispatcher.getTagHashMaxLength()));
 					}
 				}
 				// Following restrictions in JSR 289 Section 4.1.3 Contact Header Field
@@ -985,7 +991,15 @@ public abstract class SipServletRequestImpl extends SipServletMessageImpl implem
 						// nothing to do here, will never happen
 					}
 				}
-				Queue<Hop> hops = dnsServerLocator.locateHops(uriToResolve);
+				// the default resolver caches the lookups and keeps the hops of the domains in use up to date 
+				// in the background, so that sending a request doesn't wait for the DNS
+				final DNSResolver dnsResolver = sipApplicationDispatcher.getDNSResolver();
+				Queue<Hop> hops = null;
+				if(dnsResolver instanceof MobicentsDNSResolver) {
+					hops = ((MobicentsDNSResolver) dnsResolver).locateHops(uriToResolve);
+				} else {
+					hops = dnsServerLocator.locateHops(uriToResolve);
+				}
 				if(transportParamModified) {
 					// Issue http://code.google.com/p/sipservlets/issues/detail?id=186
 					// Resetting the transport to what is was before the modification to avoid modifying the route set
@@ -1170,7 +1184,11 @@ public abstract class SipServletRequestImpl extends SipServletMessageImpl implem
 				if(isInitial() || dialog == null) {		
 				    //Issue: https://code.google.com/p/sipservlets/issues/detail?id=284
 					if(!session.getBypassLoadBalancer() && sipFactoryImpl.isUseLoadBalancer()) {
-						sipFactoryImpl.addLoadBalancerRouteHeader(request);
+						final SipLoadBalancer loadBalancer = sipFactoryImpl.addLoadBalancerRouteHeader(request);
+						if(loadBalancer != null) {
+							transactionApplicationData.setLoadBalancer(loadBalancer, System.nanoTime());
+							sipFactoryImpl.getLoadBalancerSelector().requestSent(loadBalancer);
+						}
 						addDNSRoute = false;
 						if(logger.isDebugEnabled()) {
 							logger.debug("adding route to Load Balancer since we are in a HA configuration " +
@@ -1344,6 +1362,7 @@ public abstract class SipServletRequestImpl extends SipServletMessageImpl implem
 					dialog.sendRequest((ClientTransaction) getTransaction());
 				}	
 				sipFactoryImpl.getSipApplicationDispatcher().updateRequestsStatistics(request, false);
+				updateConnectorStatistics(matchingListeningPoint);
 				isMessageSent = true;
 				
 				if(method.equals(Request.INVITE)) {
@@ -1361,6 +1380,10 @@ public abstract class SipServletRequestImpl extends SipServletMessageImpl implem
 				skipTxTermination = true;
 			}
 			if(!skipTxTermination) {
+				final SipLoadBalancer loadBalancer = transactionApplicationData.removeLoadBalancer();
+				if(loadBalancer != null) {
+					sipFactoryImpl.getLoadBalancerSelector().requestCompleted(loadBalancer);
+				}
 				JainSipUtils.terminateTransaction(tx);
 				// cleaning up the request to make sure it can be resent with some modifications in case of exception
 				if(transactionApplicationData.getHops() != null && transactionApplicationData.getHops().size() > 0) {
@@ -1445,7 +1468,7 @@ public abstract class SipServletRequestImpl extends SipServletMessageImpl implem
 		    }
 		}
 		if(viaHeader.getBranch() == null) {
-			final String branch = JainSipUtils.createBranch(sipApplicationSession.getKey().getId(),  sipFactoryImpl.getSipApplicationDispatcher().getHashFromApplicationName(session.getKey().getApplicationName()));			
+			final String branch = JainSipUtils.createBranch(sipApplicationSession.getKey().getId(),  sipFactoryImpl.getSipApplicationDispatcher().getHashFromApplicationName(session.getKey().getApplicationName()), sipFactoryImpl.getSipApplicationDispatcher().getIdGenerator());			
 			viaHeader.setBranch(branch);
 		}
 		// https://github.com/Mobicents/sip-servlets/issues/62 modify the Via transport to match either the hop, the route or the request URI transport
@@ -1777,6 +1800,7 @@ public abstract class SipServletRequestImpl extends SipServletMessageImpl implem
 			session.getSessionCreatingDialog().sendAck(request);
 			session.setRequestsPending(session.getRequestsPending()-1);
 			sipFactoryImpl.getSipApplicationDispatcher().updateRequestsStatistics(request, false);
+			updateConnectorStatistics(matchingListeningPoint);
 			final Transaction transaction = getTransaction();
 			// transaction can be null in case of forking
 			if(transaction != null) {
@@ -1853,6 +1877,20 @@ public abstract class SipServletRequestImpl extends SipServletMessageImpl implem
 		return this.linkedRequest;
 	}	
 
+	/**
+	 * @return the System.nanoTime() at which the request has been received, 0 if it has been created locally
+	 */
+	public long getReceivedTime() {
+		return receivedTime;
+	}
+
+	/**
+	 * @param receivedTime the System.nanoTime() at which the request has been received
+	 */
+	public void setReceivedTime(long receivedTime) {
+		this.receivedTime = receivedTime;
+	}
+
 	/**
 	 * @return the routingState
 	 */
@@ -2234,6 +2272,7 @@ public abstract class SipServletRequestImpl extends SipServletMessageImpl implem
 		if(isReadOnly) {
 			throw new IllegalStateException(EXCEPTION_MESSAGE);
 		}
+		discardReadOnlyHeaders();
 	}
 	
 	@Override
@@ -2478,7 +2517,7 @@ public abstract class SipServletRequestImpl extends SipServletMessageImpl implem
 	public void readExternal(ObjectInput in) throws IOException,
 			ClassNotFoundException {
 		super.readExternal(in);
-		String messageString = in.readUTF();
+		String messageString = readExternalMessage(in);
 		try {
 			message = SipFactoryImpl.messageFactory.createRequest(messageString);
 		} catch (ParseException e) {
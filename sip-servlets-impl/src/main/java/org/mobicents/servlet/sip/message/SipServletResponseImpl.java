@@ -66,6 +66,7 @@ import javax.sip.message.Response;
 import org.apache.log4j.Logger;
 import org.mobicents.servlet.sip.JainSipUtils;
 import org.mobicents.servlet.sip.address.AddressImpl.ModifiableRule;
+import org.mobicents.servlet.sip.core.LatencyStatistics;
 import org.mobicents.servlet.sip.core.RoutingState;
 import org.mobicents.servlet.sip.core.SipApplicationDispatcher;
 import org.mobicents.servlet.sip.core.dispatchers.MessageDispatcher;
@@ -273,7 +274,7 @@ public abstract class SipServletResponseImpl extends SipServletMessageImpl imple
 			prackRequest.removeHeader(ViaHeader.NAME);
 			// cater to http://code.google.com/p/sipservlets/issues/detail?id=31 to be able to set the rport in applications
 			final SipApplicationDispatcher sipApplicationDispatcher = sipFactoryImpl.getSipApplicationDispatcher();
-			final String branch = JainSipUtils.createBranch(session.getSipApplicationSession().getKey().getId(),  sipApplicationDispatcher.getHashFromApplicationName(session.getSipApplicationSession().getKey().getApplicationName()));
+			final String branch = JainSipUtils.createBranch(session.getSipApplicationSession().getKey().getId(),  sipApplicationDispatcher.getHashFromApplicationName(session.getSipApplicationSession().getKey().getApplicationName()), sipApplicationDispatcher.getIdGenerator());
 			ViaHeader viaHeader = JainSipUtils.createViaHeader(
     				sipFactoryImpl.getSipNetworkInterfaceManager(), prackRequest, branch, session.getOutboundInterface());
 			prackRequest.addHeader(viaHeader);
@@ -629,6 +630,7 @@ public abstract class SipServletResponseImpl extends SipServletMessageImpl imple
 					final SipProvider sipProvider = sipFactoryImpl.getSipNetworkInterfaceManager().findMatchingListeningPoint(
 							transport, false).getSipProvider();
 					sipProvider.sendResponse((Response)this.message);
+					updateConnectorStatistics(sipFactoryImpl.getSipNetworkInterfaceManager().findMatchingListeningPoint(sipProvider, transport));
 				} else if(sendReliably) {
 					if(logger.isDebugEnabled()) {
 						logger.debug("Sending response reliably " + message);
@@ -647,6 +649,9 @@ public abstract class SipServletResponseImpl extends SipServletMessageImpl imple
 					}
 					transaction.sendResponse( (Response)this.message );
 					sipFactoryImpl.getSipApplicationDispatcher().updateResponseStatistics((Response)this.message, false);
+					final String transport = ((SIPTransaction) transaction).getTransport();
+					updateConnectorStatistics(sipFactoryImpl.getSipNetworkInterfaceManager().findMatchingListeningPoint(
+							((SIPTransaction) transaction).getSipProvider(), transport));
 					if(dialog != null) {
 						// we need to set the dialog again because it's possible that when the dialog
 						// was created it was in null state thus no dialog id so we need to reset it to trigger
@@ -658,6 +663,16 @@ public abstract class SipServletResponseImpl extends SipServletMessageImpl imple
 				if(isProxiedResponse) {
 					isResponseForwardedUpstream = true;
 				}		
+				if(statusCode >= Response.OK && originalRequest != null && originalRequest.getReceivedTime() > 0) {
+					final SipApplicationDispatcher sipApplicationDispatcher = sipFactoryImpl.getSipApplicationDispatcher();
+					if(sipApplicationDispatcher.isGatherStatistics()) {
+						final long requestToFinalResponse = System.nanoTime() - originalRequest.getReceivedTime();
+						sipApplicationDispatcher.updateLatencyStatistics(LatencyStatistics.REQUEST_TO_FINAL_RESPONSE, originalRequest.getMethod(), 
+								session.getKey().getApplicationName(), requestToFinalResponse);
+						sipApplicationDispatcher.updateLatencyStatistics(LatencyStatistics.REQUEST_TO_FINAL_RESPONSE, LatencyStatistics.getResponseClass(statusCode), 
+								null, requestToFinalResponse);
+					}
+				}
 			} finally {
 				Thread.currentThread().setContextClassLoader(oldClassLoader);
 			}
@@ -822,7 +837,7 @@ public abstract class SipServletResponseImpl extends SipServletMessageImpl imple
 	public void readExternal(ObjectInput in) throws IOException,
 			ClassNotFoundException {
 		super.readExternal(in);
-		String messageString = in.readUTF();
+		String messageString = readExternalMessage(in);
 		try {
 			message = SipFactoryImpl.messageFactory.createResponse(messageString);
 		} catch (ParseException e) {
@@ -30,6 +30,7 @@ import javax.sip.Transaction;
 import javax.sip.address.Hop;
 
 import org.apache.log4j.Logger;
+import org.mobicents.ha.javax.sip.SipLoadBalancer;
 import org.mobicents.servlet.sip.core.message.MobicentsTransactionApplicationData;
 import org.mobicents.servlet.sip.core.session.MobicentsSipSessionKey;
 import org.mobicents.servlet.sip.proxy.ProxyBranchImpl;
@@ -62,6 +63,9 @@ public class TransactionApplicationData implements Serializable, MobicentsTransa
 	private transient boolean canceled = false;
 	// Used for RFC 3263
 	private transient Queue<Hop> hops = null;
+	// load balancer the request has been sent through and when, to feed the load balancer statistics
+	private transient SipLoadBalancer loadBalancer = null;
+	private transient long loadBalancerSendTime;
 	
 	public TransactionApplicationData(SipServletMessageImpl sipServletMessage ) {		
 		this.sipServletMessage = sipServletMessage;
@@ -286,6 +290,32 @@ public class TransactionApplicationData implements Serializable, MobicentsTransa
 		return hops;
 	}
 
+	/**
+	 * @param loadBalancer the load balancer the request has been sent through
+	 * @param sendTime the time it has been sent at, from System.nanoTime()
+	 */
+	public synchronized void setLoadBalancer(SipLoadBalancer loadBalancer, long sendTime) {
+		this.loadBalancer = loadBalancer;
+		this.loadBalancerSendTime = sendTime;
+	}
+
+	/**
+	 * @return the load balancer the request has been sent through, only once so that
+	 * a request is accounted for a single time in the load balancer statistics
+	 */
+	public synchronized SipLoadBalancer removeLoadBalancer() {
+		final SipLoadBalancer removed = loadBalancer;
+		loadBalancer = null;
+		return removed;
+	}
+
+	/**
+	 * @return the time the request has been sent through the load balancer at, from System.nanoTime()
+	 */
+	public synchronized long getLoadBalancerSendTime() {
+		return loadBalancerSendTime;
+	}
+
 //	public void readExternal(ObjectInput in) throws IOException,
 //			ClassNotFoundException {
 //		sipServletMessage = (SipServletMessageImpl) in.readObject();
@@ -86,6 +86,8 @@ import org.mobicents.servlet.sip.startup.StaticServiceHolder;
 public class ProxyBranchImpl implements MobicentsProxyBranch, Externalizable {
 
 	private static final String DEFAULT_RECORD_ROUTE_URI = "sip:proxy@localhost";
+	// DEFAULT_RECORD_ROUTE_URI parsed once, cloned for each branch
+	private static volatile javax.sip.address.SipURI defaultRecordRouteURITemplate;
 	private static final long serialVersionUID = 1L;
 	private static final Logger logger = Logger.getLogger(ProxyBranchImpl.class);
 	private transient ProxyImpl proxy;
@@ -294,6 +296,22 @@ public class ProxyBranchImpl implements MobicentsProxyBranch, Externalizable {
 		return proxyBranchTimeout;
 	}
 
+	/**
+	 * Create the record route uri of this branch, cloning the default one or the one of the proxy
+	 * instead of parsing the string again when possible
+	 */
+	private SipURI createRecordRouteURI(String recordRouteURIString) throws ServletParseException {
+		if(DEFAULT_RECORD_ROUTE_URI.equals(recordRouteURIString)) {
+			javax.sip.address.SipURI template = defaultRecordRouteURITemplate;
+			if(template == null) {
+				template = ((SipURIImpl)proxy.getSipFactoryImpl().createURI(DEFAULT_RECORD_ROUTE_URI)).getSipURI();
+				defaultRecordRouteURITemplate = template;
+			}
+			return new SipURIImpl((javax.sip.address.SipURI) template.clone(), ModifiableRule.Modifiable);
+		}
+		return proxy.createRecordRouteURI(recordRouteURIString);
+	}
+
 	/* (non-Javadoc)
 	 * @see javax.servlet.sip.ProxyBranch#getRecordRouteURI()
 	 */
@@ -304,7 +322,7 @@ public class ProxyBranchImpl implements MobicentsProxyBranch, Externalizable {
 			
 			if(recordRouteURIString != null) {
 				try {
-					recordRouteURI = ((SipURI)proxy.getSipFactoryImpl().createURI(recordRouteURIString));
+					recordRouteURI = createRecordRouteURI(recordRouteURIString);
 					recordRouteURIString = null;
 				} catch (ServletParseException e) {
 					logger.error("A problem occured while setting the target URI while proxying a request " + recordRouteURI, e);
@@ -438,7 +456,7 @@ public class ProxyBranchImpl implements MobicentsProxyBranch, Externalizable {
 			}
 			if(recordRouteURIString != null) {
 				try {
-					recordRouteURI = ((SipURI)proxy.getSipFactoryImpl().createURI(recordRouteURIString));
+					recordRouteURI = createRecordRouteURI(recordRouteURIString);
 				} catch (ServletParseException e) {
 					logger.error("A problem occured while setting the target URI while proxying a request " + recordRouteURIString, e);
 				}
@@ -822,6 +840,8 @@ public class ProxyBranchImpl implements MobicentsProxyBranch, Externalizable {
 				}
 				sipProvider.sendRequest(clonedRequest);
 				sipFactoryImpl.getSipApplicationDispatcher().updateRequestsStatistics(clonedRequest, false);
+				SipServletMessageImpl.updateConnectorStatistics(sipFactoryImpl,
+						sipNetworkInterfaceManager.findMatchingListeningPoint(sipProvider, transport), clonedRequest);
 			}
 			else {				
 				forwardRequest(clonedRequest, true);
@@ -879,7 +899,7 @@ public class ProxyBranchImpl implements MobicentsProxyBranch, Externalizable {
 			recordRoute = recordRouteURI;
 		} else if (recordRouteURIString != null){
 			try {
-				recordRoute = ((SipURI)proxy.getSipFactoryImpl().createURI(recordRouteURIString));
+				recordRoute = createRecordRouteURI(recordRouteURIString);
 			} catch (ServletParseException e) {
 				logger.error("A problem occured while setting the target URI while proxying a request " + recordRouteURI, e);
 			}
@@ -894,7 +914,8 @@ public class ProxyBranchImpl implements MobicentsProxyBranch, Externalizable {
 		try {
 			final String branch = JainSipUtils.createBranch(
 					sipSession.getKey().getApplicationSessionId(),  
-					sipApplicationDispatcher.getHashFromApplicationName(sipSession.getKey().getApplicationName()));			
+					sipApplicationDispatcher.getHashFromApplicationName(sipSession.getKey().getApplicationName()),
+					sipApplicationDispatcher.getIdGenerator());			
 			viaHeader.setBranch(branch);
 		} catch (ParseException pe) {
 			logger.error("A problem occured while setting the via branch while proxying a request", pe);
@@ -968,6 +989,8 @@ public class ProxyBranchImpl implements MobicentsProxyBranch, Externalizable {
 			
 			ctx.sendRequest();
 			sipFactoryImpl.getSipApplicationDispatcher().updateRequestsStatistics(clonedRequest, false);
+			SipServletMessageImpl.updateConnectorStatistics(sipFactoryImpl,
+					sipFactoryImpl.getSipNetworkInterfaceManager().findMatchingListeningPoint(sipProvider, transport), clonedRequest);
 		} catch (Exception e) {
 			logger.error("A problem occured while proxying a request " + request + " in a dialog-stateless transaction", e);
 			JainSipUtils.terminateTransaction(ctx);
@@ -20,6 +20,7 @@
 package org.mobicents.servlet.sip.proxy;
 
 import java.util.TimerTask;
+import java.util.concurrent.ScheduledFuture;
 
 import org.apache.log4j.Logger;
 import org.mobicents.javax.servlet.sip.ResponseType;
@@ -32,6 +33,9 @@ public class ProxyBranchTimerTask extends TimerTask{
 	private ProxyBranchImpl proxyBranch;
 	private ResponseType responseType;
 	private MobicentsSipApplicationSession sipApplicationSession;
+	// handle on the scheduled execution, set by the timer services based on a ScheduledExecutorService
+	// so that the task can be cancelled without having to look it up in the timer queue
+	private volatile ScheduledFuture<?> scheduledFuture;
 	
 	public ProxyBranchTimerTask(ProxyBranchImpl proxyBranch, ResponseType responseType, MobicentsSipApplicationSession sipApplicationSession)
 	{
@@ -43,6 +47,10 @@ public class ProxyBranchTimerTask extends TimerTask{
 	@Override
 	public void run()
 	{
+		if(proxyBranch == null) {
+			// the task has been cancelled after it was picked up by the timer thread
+			return;
+		}
 		try {
 				final SipContext sipContext = sipApplicationSession.getSipContext();
 				// https://github.com/Mobicents/sip-servlets/issues/70 This timer task needs to be executed 
@@ -61,6 +69,7 @@ public class ProxyBranchTimerTask extends TimerTask{
 			logger.error("Problem in timeout task", e);
 		} finally {
 			this.proxyBranch = null;
+			this.scheduledFuture = null;
 		}
 	}
 	
@@ -68,7 +77,20 @@ public class ProxyBranchTimerTask extends TimerTask{
 	public boolean cancel() {
 		proxyBranch = null;
 		responseType = null;
+		final ScheduledFuture<?> future = scheduledFuture;
+		if(future != null) {
+			scheduledFuture = null;
+			future.cancel(false);
+		}
 		return super.cancel();
 	}
 
+	public void setScheduledFuture(ScheduledFuture<?> scheduledFuture) {
+		this.scheduledFuture = scheduledFuture;
+	}
+
+	public ScheduledFuture<?> getScheduledFuture() {
+		return scheduledFuture;
+	}
+
 }
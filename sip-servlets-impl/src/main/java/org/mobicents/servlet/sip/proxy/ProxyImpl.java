@@ -76,6 +76,7 @@ import org.mobicents.servlet.sip.core.session.MobicentsSipApplicationSession;
 import org.mobicents.servlet.sip.core.session.MobicentsSipSession;
 import org.mobicents.servlet.sip.core.timers.ProxyTimerService;
 import org.mobicents.servlet.sip.message.SipFactoryImpl;
+import org.mobicents.servlet.sip.message.SipServletMessageImpl;
 import org.mobicents.servlet.sip.message.SipServletRequestImpl;
 import org.mobicents.servlet.sip.message.SipServletResponseImpl;
 import org.mobicents.servlet.sip.message.TransactionApplicationData;
@@ -111,6 +112,8 @@ public class ProxyImpl implements MobicentsProxy, Externalizable {
 	protected transient SipURIImpl pathURI;
 	// https://telestax.atlassian.net/browse/MSS-153 moving to String to optimize memory usage
 	protected transient String recordRouteURIString;
+	// the record route uri recordRouteURIString was built from, cloned by the branches instead of parsing the string again
+	protected transient javax.sip.address.SipURI recordRouteURITemplate;
 	// https://telestax.atlassian.net/browse/MSS-153 need to keep it as URI for the time of the transaction as
 	// com.bea.sipservlet.tck.agents.spec.ProxyBranchTest.testAddNoSysHeader adds parameters to it that need to be passed on the outgoing invite
 	protected transient SipURI recordRouteURI;
@@ -196,6 +199,7 @@ public class ProxyImpl implements MobicentsProxy, Externalizable {
         	originalRequest = null;
         	if(recordRouteURI != null) {
         		recordRouteURIString = recordRouteURI.toString();
+        		recordRouteURITemplate = null;
         		recordRouteURI = null;
         	}
         	if(finalBranchForSubsequentRequests != null) {
@@ -402,8 +406,9 @@ public class ProxyImpl implements MobicentsProxy, Externalizable {
 		if(!this.recordRoutingEnabled) throw new IllegalStateException("You must setRecordRoute(true) before getting URI");
 		if(recordRouteURI == null && recordRouteURIString != null) {
 			try {
-				recordRouteURI = new SipURIImpl(((SipURIImpl)sipFactoryImpl.createURI(recordRouteURIString)).getSipURI(), ModifiableRule.ProxyRecordRouteNotModifiable);
+				recordRouteURI = new SipURIImpl(((SipURIImpl)createRecordRouteURI(recordRouteURIString)).getSipURI(), ModifiableRule.ProxyRecordRouteNotModifiable);
 				recordRouteURIString = null;
+				recordRouteURITemplate = null;
 			} catch (ServletParseException e) {
 				logger.error("A problem occured while setting the target URI while proxying a request " + recordRouteURIString, e);
 				return null;
@@ -412,6 +417,21 @@ public class ProxyImpl implements MobicentsProxy, Externalizable {
 		return this.recordRouteURI;
 	}
 
+	/**
+	 * Create a record route uri from its string form, cloning the one this proxy built on setRecordRoute
+	 * if it is the same rather than parsing the string again
+	 * @param recordRouteURIString the record route uri string of this proxy or of one of its branches
+	 * @return a new modifiable record route uri
+	 * @throws ServletParseException if the string is not a valid uri
+	 */
+	SipURI createRecordRouteURI(String recordRouteURIString) throws ServletParseException {
+		final javax.sip.address.SipURI template = recordRouteURITemplate;
+		if(template != null && recordRouteURIString.equals(this.recordRouteURIString)) {
+			return new SipURIImpl((javax.sip.address.SipURI) template.clone(), ModifiableRule.Modifiable);
+		}
+		return (SipURI) sipFactoryImpl.createURI(recordRouteURIString);
+	}
+
 	/* (non-Javadoc)
 	 * @see javax.servlet.sip.Proxy#getRecurse()
 	 */
@@ -538,11 +558,13 @@ public class ProxyImpl implements MobicentsProxy, Externalizable {
 			// record route should be based on the original received message
 			javax.sip.address.SipURI flowUri= originalRequest.getSipSession().getFlow();
 			if(flowUri != null) {				
+				this.recordRouteURITemplate = (javax.sip.address.SipURI) flowUri.clone();
 				this.recordRouteURIString = flowUri.toString();
 				if(logger.isDebugEnabled())
 					logger.debug("Using Session Flow URI as record route URI " + recordRouteURIString);
 			} else {
-				this.recordRouteURIString = JainSipUtils.createRecordRouteURI( sipFactoryImpl.getSipNetworkInterfaceManager(), message).toString();
+				this.recordRouteURITemplate = JainSipUtils.createRecordRouteURI( sipFactoryImpl.getSipNetworkInterfaceManager(), message);
+				this.recordRouteURIString = recordRouteURITemplate.toString();
 			}
 			if(logger.isDebugEnabled()) {
 				logger.debug("Record routing enabled for proxy, Record Route used will be : " + recordRouteURIString);
@@ -933,6 +955,8 @@ public class ProxyImpl implements MobicentsProxy, Externalizable {
 					if(logger.isDebugEnabled())
 						logger.debug("Sending out proxied final response retransmission " + proxiedResponse);
 					sipProvider.sendResponse((Response)message);
+					SipServletMessageImpl.updateConnectorStatistics(getSipFactoryImpl(),
+							getSipFactoryImpl().getSipNetworkInterfaceManager().findMatchingListeningPoint(sipProvider, transport), message);
 				} catch (SipException e) {
 					logger.error("A problem occured while proxying the final response retransmission", e);
 				}
@@ -1243,6 +1267,7 @@ public class ProxyImpl implements MobicentsProxy, Externalizable {
 	public void setRecordRouteURI(SipURI uri) {
 		recordRouteURI = uri;
 		recordRouteURIString = null;
+		recordRouteURITemplate = null;
 		appSpecifiedRecordRoutingEnabled = true;
 	}
 
@@ -256,7 +256,7 @@ public class ProxyUtils {
 						logger.debug("reusing original branch id " + branchId);
 					}
 				} else {
-					branchId = JainSipUtils.createBranch(sipAppKey.getId(),  appName);
+					branchId = JainSipUtils.createBranch(sipAppKey.getId(),  appName, sipFactoryImpl.getSipApplicationDispatcher().getIdGenerator());
 				}
 				viaHeader = JainSipUtils.createViaHeader(
 						sipFactoryImpl.getSipNetworkInterfaceManager(), clonedRequest, branchId, null);
@@ -278,7 +278,7 @@ public class ProxyUtils {
 						logger.debug("reusing original branch id " + branchId);
 					}
 				} else {
-					branchId = JainSipUtils.createBranch(sipAppKey.getId(),  appName);
+					branchId = JainSipUtils.createBranch(sipAppKey.getId(),  appName, sipFactoryImpl.getSipApplicationDispatcher().getIdGenerator());
 				}
 
 				viaHeader = SipFactoryImpl.headerFactory.createViaHeader(
@@ -25,11 +25,13 @@ package org.mobicents.servlet.sip.rfc5626;
 import gov.nist.javax.sip.header.ims.PathHeader;
 
 import java.security.InvalidKeyException;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.text.ParseException;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.ListIterator;
-import java.util.StringTokenizer;
+import java.util.Map;
 
 import javax.crypto.KeyGenerator;
 import javax.crypto.Mac;
@@ -62,8 +64,32 @@ public class RFC5626Helper {
 	private static final Logger logger = Logger.getLogger(ProxyBranchImpl.class);
 	
 	private static final String ALGORITHM = "HmacSHA1";
-	private static Mac mac = null;
+	// RFC 5626 Section 5.2 uses HMAC-SHA1-80, the HMAC truncated to its first 80 bits
+	private static final int HMAC_LENGTH = 10;
+	private static final int FLOW_TOKEN_CACHE_SIZE = 100000;
+	private static final int FLOW_TOKEN_CACHE_STRIPES = 16;
+	// enumeration of the protocols in the flow token, any other transport is written in full
+	private static final String[] TRANSPORTS = {"UDP", "TCP", "TLS", "SCTP", "WS", "WSS"};
+	private static final int OTHER_TRANSPORT = 0xFF;
+	private static final int NO_TRANSPORT = 0xFE;
 	private static SecretKey secretKey = null; 
+	// Mac instances are not thread safe, each thread gets its own, initialized with the key generated at boot
+	private static final ThreadLocal<Mac> macs = new ThreadLocal<Mac>() {
+		@Override
+		protected Mac initialValue() {
+			try {
+				Mac mac = Mac.getInstance(ALGORITHM);
+				mac.init(secretKey);
+				return mac;
+			} catch (NoSuchAlgorithmException e) {
+				throw new IllegalStateException("Couldn't find algorithm " + ALGORITHM, e);
+			} catch (InvalidKeyException e) {
+				throw new IllegalStateException("Invalid Key " + secretKey, e);
+			}
+		}
+	};
+	// flow tokens already verified, so that the subsequent requests on a flow don't recompute the HMAC
+	private static final FlowTokenCache flowTokenCache = new FlowTokenCache(FLOW_TOKEN_CACHE_SIZE, FLOW_TOKEN_CACHE_STRIPES);
     	
 	static{
 		try {
@@ -71,12 +97,8 @@ public class RFC5626Helper {
 			// 20 octet key * 8 bits	
 			keyGenerator.init(20 * 8);
 	        secretKey = keyGenerator.generateKey();
-			mac = Mac.getInstance(ALGORITHM);
-			mac.init(secretKey);
 		} catch (NoSuchAlgorithmException e) {
 			logger.error("Couldn't find algorithm " + ALGORITHM, e);
-		} catch (InvalidKeyException e) {
-			logger.error("Invalid Key " + secretKey, e);
 		}
 	}
 	
@@ -216,35 +238,53 @@ public class RFC5626Helper {
 	   If the HMAC is not correct, the request has been tampered with.
 	 */
 	private static HopImpl decodeFlowToken(String user) throws IncorrectFlowIdentifierException {
+		HopImpl hop = flowTokenCache.get(user);
+		if(hop != null) {
+			if(logger.isDebugEnabled()) {
+				logger.debug("RFC 5626 Flow token " + user + " already decoded to " + hop);
+			}
+			return hop;
+		}
 		if(logger.isDebugEnabled()) {
 			logger.debug("Decoding RFC 5626 Flow token " + user);
 		}		
-		byte[] byteConcat = Base64.decodeBase64(user.getBytes());
-		if(logger.isDebugEnabled()) {
-			logger.debug("Decoding RFC 5626 Flow token byteContact after base64 decoding is " + new String(byteConcat).trim());
+		byte[] byteConcat = Base64.decodeBase64(user);
+		if(byteConcat.length <= HMAC_LENGTH) {
+			throw new IncorrectFlowIdentifierException("flow token " + user + " is too short");
 		}
-		String concatenation = new String(byteConcat);
-		int indexOfSlash = concatenation.indexOf("/");
-		String hmac = concatenation.substring(0, indexOfSlash);
-		String arrayS = concatenation.substring(indexOfSlash + 1, concatenation.length());
-		if(logger.isDebugEnabled()) {
-			logger.debug("Decoding RFC 5626 Flow token recomputing hmac of array S " + arrayS);
+		Mac mac = macs.get();
+		mac.update(byteConcat, HMAC_LENGTH, byteConcat.length - HMAC_LENGTH);
+		byte[] recomputedHmac = Arrays.copyOf(mac.doFinal(), HMAC_LENGTH);
+		if(!MessageDigest.isEqual(Arrays.copyOf(byteConcat, HMAC_LENGTH), recomputedHmac)) {
+			throw new IncorrectFlowIdentifierException("hmac of flow token " + user + " is different from the recomputed hmac");
 		}
-		byte[] recomputedHmac = mac.doFinal(arrayS.trim().getBytes());
-		if(logger.isDebugEnabled()) {
-			logger.debug("Decoding RFC 5626 Flow token recomputed Hmac" + recomputedHmac);
+		// array S : protocol, local address and port, remote address and port
+		try {
+			int offset = HMAC_LENGTH;
+			String transport;
+			int transportCode = byteConcat[offset++] & 0xFF;
+			if(transportCode == OTHER_TRANSPORT) {
+				transport = readAscii(byteConcat, offset);
+				offset += 1 + transport.length();
+			} else if(transportCode == NO_TRANSPORT) {
+				transport = null;
+			} else {
+				transport = TRANSPORTS[transportCode];
+			}
+			// local address and port, not needed to route back to the flow
+			offset += 1 + (byteConcat[offset] & 0xFF) + 2;
+			String initialRemoteAddress = readAscii(byteConcat, offset);
+			offset += 1 + initialRemoteAddress.length();
+			int initialRemotePort = ((byteConcat[offset] & 0xFF) << 8) | (byteConcat[offset + 1] & 0xFF);
+			hop = new HopImpl(initialRemoteAddress, initialRemotePort, transport);
+		} catch (ArrayIndexOutOfBoundsException e) {
+			throw new IncorrectFlowIdentifierException("flow token " + user + " is malformed");
 		}
-		recomputedHmac = new String(recomputedHmac).trim().getBytes();
-		if(!Arrays.equals(hmac.trim().getBytes(),recomputedHmac)) {
-			throw new IncorrectFlowIdentifierException("hmac " + hmac + " is different from the recomputed hmac " + new String(recomputedHmac).trim());
+		if(logger.isDebugEnabled()) {
+			logger.debug("Decoded RFC 5626 Flow token " + user + " to " + hop);
 		}
-		StringTokenizer stringTokenizer = new StringTokenizer(arrayS, "_");
-		String transport = stringTokenizer.nextToken();
-		stringTokenizer.nextToken();
-		stringTokenizer.nextToken();
-		String initialRemoteAddress = stringTokenizer.nextToken();
-		int initialRemotePort = Integer.parseInt(stringTokenizer.nextToken());
-		return new HopImpl(initialRemoteAddress, initialRemotePort, transport);
+		flowTokenCache.put(user, hop);
+		return hop;
 	}
 
 	/* 
@@ -260,38 +300,112 @@ public class RFC5626Helper {
       [RFC4648], and used as the flow identifier.  When using IPv4
       addresses, this will result in a 32-octet identifier.*/
 	private static String generateFlowToken(SipServletRequestImpl request) {
-		StringBuffer arrayS = new StringBuffer();
-		arrayS.append(request.getTransport());
-		arrayS.append("_");
-		arrayS.append(request.getLocalAddr());
-		arrayS.append("_");
-		arrayS.append(request.getLocalPort());
-		arrayS.append("_");
-		arrayS.append(request.getInitialRemoteAddr());
-		arrayS.append("_");
-		arrayS.append(request.getInitialRemotePort());
-		if(logger.isDebugEnabled()) {
-			logger.debug("Generating RFC 5626 Flow token from " + arrayS);
+		final String transport = request.getTransport();
+		final String localAddress = request.getLocalAddr();
+		final String initialRemoteAddress = request.getInitialRemoteAddr();
+		final int initialRemotePort = request.getInitialRemotePort();
+		int transportCode = transport == null ? NO_TRANSPORT : OTHER_TRANSPORT;
+		for (int i = 0; i < TRANSPORTS.length; i++) {
+			if(TRANSPORTS[i].equals(transport)) {
+				transportCode = i;
+				break;
+			}
 		}
-		byte[] byteArrayS = arrayS.toString().trim().getBytes();
-		byte[] hmac = mac.doFinal(byteArrayS);
-		if(logger.isDebugEnabled()) {
-			logger.debug("Generating RFC 5626 Flow token hmac is " + new String(hmac).trim());
+		int length = HMAC_LENGTH + 1 + 1 + localAddress.length() + 2 + 1 + initialRemoteAddress.length() + 2;
+		if(transportCode == OTHER_TRANSPORT) {
+			length += 1 + transport.length();
 		}
-		hmac = new String(hmac).trim().getBytes();
-		byte[] concatDelimiter = "/".getBytes();
-		byte[] byteConcat = new byte[hmac.length + concatDelimiter.length + byteArrayS.length];
-		System.arraycopy(hmac, 0, byteConcat, 0, hmac.length);		
-		System.arraycopy(concatDelimiter, 0, byteConcat, hmac.length, concatDelimiter.length);
-		System.arraycopy(byteArrayS, 0, byteConcat, hmac.length + concatDelimiter.length, byteArrayS.length);
-		if(logger.isDebugEnabled()) {
-			logger.debug("Generating RFC 5626 Flow token byteContact before base64 encoding is " + new String(byteConcat).trim());
+		byte[] byteConcat = new byte[length];
+		int offset = HMAC_LENGTH;
+		byteConcat[offset++] = (byte) transportCode;
+		if(transportCode == OTHER_TRANSPORT) {
+			offset = writeAscii(byteConcat, offset, transport);
 		}
-		// does not result in a 32 octet id though...
-		byte[] base64Encoded = Base64.encodeBase64(byteConcat);
+		offset = writeAscii(byteConcat, offset, localAddress);
+		offset = writePort(byteConcat, offset, request.getLocalPort());
+		offset = writeAscii(byteConcat, offset, initialRemoteAddress);
+		writePort(byteConcat, offset, initialRemotePort);
+		Mac mac = macs.get();
+		mac.update(byteConcat, HMAC_LENGTH, byteConcat.length - HMAC_LENGTH);
+		System.arraycopy(mac.doFinal(), 0, byteConcat, 0, HMAC_LENGTH);
+		// URL safe alphabet without padding as the flow token goes in the user part of a SIP URI
+		String flowToken = Base64.encodeBase64URLSafeString(byteConcat);
 		if(logger.isDebugEnabled()) {
-			logger.debug("Generating RFC 5626 Flow token byteContact after base64 encoding is " + new String(base64Encoded).trim());
+			logger.debug("Generated RFC 5626 Flow token " + flowToken + " for " + transport + "_" + localAddress + "_" + request.getLocalPort() 
+					+ "_" + initialRemoteAddress + "_" + initialRemotePort);
+		}
+		flowTokenCache.put(flowToken, new HopImpl(initialRemoteAddress, initialRemotePort, transport));
+		return flowToken;
+	}
+
+	private static int writeAscii(byte[] bytes, int offset, String value) {
+		final int length = value.length();
+		if(length > 0xFF) {
+			throw new IllegalArgumentException("value too long for a flow token " + value);
+		}
+		bytes[offset++] = (byte) length;
+		for (int i = 0; i < length; i++) {
+			bytes[offset++] = (byte) value.charAt(i);
+		}
+		return offset;
+	}
+
+	private static String readAscii(byte[] bytes, int offset) {
+		final int length = bytes[offset] & 0xFF;
+		final char[] chars = new char[length];
+		for (int i = 0; i < length; i++) {
+			chars[i] = (char) (bytes[offset + 1 + i] & 0xFF);
+		}
+		return new String(chars);
+	}
+
+	private static int writePort(byte[] bytes, int offset, int port) {
+		bytes[offset++] = (byte) (port >>> 8);
+		bytes[offset++] = (byte) port;
+		return offset;
+	}
+
+	/**
+	 * Bounded LRU cache of the decoded flow tokens, split in stripes
+	 * so that the dispatcher threads don't all contend on the same lock
+	 */
+	private static final class FlowTokenCache {
+		private final Map<String, HopImpl>[] stripes;
+
+		@SuppressWarnings("unchecked")
+		FlowTokenCache(int maxSize, int nbStripes) {
+			stripes = new Map[nbStripes];
+			final int maxStripeSize = Math.max(1, maxSize / nbStripes);
+			for (int i = 0; i < nbStripes; i++) {
+				stripes[i] = new LinkedHashMap<String, HopImpl>(16, 0.75f, true) {
+					private static final long serialVersionUID = 1L;
+
+					@Override
+					protected boolean removeEldestEntry(Map.Entry<String, HopImpl> eldest) {
+						return size() > maxStripeSize;
+					}
+				};
+			}
+		}
+
+		private Map<String, HopImpl> stripe(String flowToken) {
+			int hash = flowToken.hashCode();
+			hash ^= (hash >>> 16);
+			return stripes[(hash & 0x7FFFFFFF) % stripes.length];
+		}
+
+		HopImpl get(String flowToken) {
+			final Map<String, HopImpl> stripe = stripe(flowToken);
+			synchronized (stripe) {
+				return stripe.get(flowToken);
+			}
+		}
+
+		void put(String flowToken, HopImpl hop) {
+			final Map<String, HopImpl> stripe = stripe(flowToken);
+			synchronized (stripe) {
+				stripe.put(flowToken, hop);
+			}
 		}
-		return new String(base64Encoded).trim();
 	}
 }
@@ -109,6 +109,15 @@ public class B2BUASipServlet extends SipServlet {
 		if (logger.isDebugEnabled()) {
 			logger.debug("forkedRequest = " + forkedRequest);
 		}
+		// the headers of the new leg must not be shared with the original request
+		if(((SipURI)request.getFrom().getURI()).getUser().contains("headerParameters")) {
+			forkedRequest.getParameterableHeader("Accept").setParameter("level", "2");
+			String originalLevel = request.getParameterableHeader("Accept").getParameter("level");
+			if(!"1".equals(originalLevel)) {
+				request.createResponse(500, "Accept level of the original request modified to " + originalLevel).send();
+				return;
+			}
+		}
 		// Issue 1151 : making sure the contact is present in the B2BUAHelper newly created request
 		if(forkedRequest.getParameterableHeaders("Contact").hasNext()) {
 			forkedRequest.getSession().setAttribute("originalRequest", request);
@@ -103,7 +103,9 @@ public class ListenersSipServlet
 	private static final String SIP_SESSION_ATTRIBUTE_REMOVED = "sipSessionAttributeRemoved";
 	private static final String SIP_SESSION_ATTRIBUTE_ADDED = "sipSessionAttributeAdded";
 	private static final String SIP_SESSION_PASSIVATED = "sipSessionPassivated";
-	private static final String SIP_SESSION_ACTIVATED = "sipSessionActivated";	
+	private static final String SIP_SESSION_ACTIVATED = "sipSessionActivated";
+	private static final String NON_CRITICAL_SIP_SESSION_ATTRIBUTE_LISTENER = "nonCriticalSipSessionAttributeListener";
+	private static final String NON_CRITICAL_SIP_APP_SESSION_ATTRIBUTE_LISTENER = "nonCriticalSipAppSessionAttributeListener";	
 
 	@Resource
 	private SipFactory sipFactory;	
@@ -270,6 +272,18 @@ public class ListenersSipServlet
 			} else {
 				return false;
 			}			
+		} else if (NON_CRITICAL_SIP_SESSION_ATTRIBUTE_LISTENER.equals(message)) {
+			SipSession sipSession = request.getSession();
+			sipSession.setAttribute(NonCriticalAttributeListener.ATTRIBUTE, VALUE);
+			sipSession.setAttribute(NonCriticalAttributeListener.ATTRIBUTE, NEW_VALUE);
+			sipSession.removeAttribute(NonCriticalAttributeListener.ATTRIBUTE);
+			return NonCriticalAttributeListener.hasBeenNotifiedInOrder(sipSession.getId());
+		} else if (NON_CRITICAL_SIP_APP_SESSION_ATTRIBUTE_LISTENER.equals(message)) {
+			SipApplicationSession sipApplicationSession = request.getApplicationSession();
+			sipApplicationSession.setAttribute(NonCriticalAttributeListener.ATTRIBUTE, VALUE);
+			sipApplicationSession.setAttribute(NonCriticalAttributeListener.ATTRIBUTE, NEW_VALUE);
+			sipApplicationSession.removeAttribute(NonCriticalAttributeListener.ATTRIBUTE);
+			return NonCriticalAttributeListener.hasBeenNotifiedInOrder(sipApplicationSession.getId());
 		} else if (SIP_SERVLET_INITIALIZED.equals(message)
 				&& getServletContext().getAttribute(message) != null) {
 			return true;
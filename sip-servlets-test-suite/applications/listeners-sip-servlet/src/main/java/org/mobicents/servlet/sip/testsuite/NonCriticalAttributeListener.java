@@ -0,0 +1,127 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2015, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.servlet.sip.testsuite;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.sip.SipApplicationSessionAttributeListener;
+import javax.servlet.sip.SipApplicationSessionBindingEvent;
+import javax.servlet.sip.SipSessionAttributeListener;
+import javax.servlet.sip.SipSessionBindingEvent;
+
+import org.apache.log4j.Logger;
+import org.mobicents.servlet.sip.annotation.NonCriticalListener;
+
+/**
+ * Non critical attribute listener recording, per session, the changes made to the {@link #ATTRIBUTE} attribute
+ * so that the servlet can check they are delivered in order and under the application classloader.
+ */
+@NonCriticalListener
+public class NonCriticalAttributeListener implements SipSessionAttributeListener, SipApplicationSessionAttributeListener {
+	private static transient Logger logger = Logger.getLogger(NonCriticalAttributeListener.class);
+
+	public static final String ATTRIBUTE = "nonCriticalAttribute";
+
+	private static final String ADDED = "added";
+	private static final String REPLACED = "replaced";
+	private static final String REMOVED = "removed";
+	private static final String BAD_CLASSLOADER = "badClassLoader";
+	private static final String[] EXPECTED_EVENTS = new String[] {ADDED, REPLACED, REMOVED};
+	private static final long TIMEOUT = 1000;
+
+	private static final ConcurrentMap<String, BlockingQueue<String>> events = new ConcurrentHashMap<String, BlockingQueue<String>>();
+
+	public void attributeAdded(SipSessionBindingEvent ev) {
+		record(ev.getSession().getId(), ev.getName(), ADDED);
+	}
+
+	public void attributeReplaced(SipSessionBindingEvent ev) {
+		record(ev.getSession().getId(), ev.getName(), REPLACED);
+	}
+
+	public void attributeRemoved(SipSessionBindingEvent ev) {
+		record(ev.getSession().getId(), ev.getName(), REMOVED);
+	}
+
+	public void attributeAdded(SipApplicationSessionBindingEvent ev) {
+		record(ev.getApplicationSession().getId(), ev.getName(), ADDED);
+	}
+
+	public void attributeReplaced(SipApplicationSessionBindingEvent ev) {
+		record(ev.getApplicationSession().getId(), ev.getName(), REPLACED);
+	}
+
+	public void attributeRemoved(SipApplicationSessionBindingEvent ev) {
+		record(ev.getApplicationSession().getId(), ev.getName(), REMOVED);
+	}
+
+	/**
+	 * Waits for the addition, replacement and removal of the {@link #ATTRIBUTE} attribute of a session to be notified
+	 * @param sessionId the id of the sip session or sip application session the attribute has been changed on
+	 * @return true if the three notifications have been received in order under the application classloader, false otherwise
+	 */
+	public static boolean hasBeenNotifiedInOrder(String sessionId) {
+		BlockingQueue<String> sessionEvents = getEvents(sessionId);
+		try {
+			for (String expectedEvent : EXPECTED_EVENTS) {
+				String event = sessionEvents.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+				if(!expectedEvent.equals(event)) {
+					logger.error("expected the attribute to be " + expectedEvent + " but got " + event + " on " + sessionId);
+					return false;
+				}
+			}
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		} finally {
+			events.remove(sessionId);
+		}
+	}
+
+	private static void record(String sessionId, String attributeName, String event) {
+		if(!ATTRIBUTE.equals(attributeName)) {
+			return;
+		}
+		logger.info("non critical attribute " + event + " on " + sessionId);
+		ClassLoader cl = Thread.currentThread().getContextClassLoader();
+		if(cl != NonCriticalAttributeListener.class.getClassLoader()) {
+			logger.error("ClassLoader " + cl);
+			event = BAD_CLASSLOADER;
+		}
+		getEvents(sessionId).offer(event);
+	}
+
+	private static BlockingQueue<String> getEvents(String sessionId) {
+		BlockingQueue<String> sessionEvents = events.get(sessionId);
+		if(sessionEvents == null) {
+			BlockingQueue<String> newSessionEvents = new LinkedBlockingQueue<String>();
+			sessionEvents = events.putIfAbsent(sessionId, newSessionEvents);
+			if(sessionEvents == null) {
+				sessionEvents = newSessionEvents;
+			}
+		}
+		return sessionEvents;
+	}
+}
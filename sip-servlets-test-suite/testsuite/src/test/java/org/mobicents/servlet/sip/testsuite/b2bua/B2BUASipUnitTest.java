@@ -26,6 +26,7 @@ import java.util.Properties;
 
 import javax.sip.SipProvider;
 import javax.sip.address.SipURI;
+import javax.sip.header.AcceptHeader;
 import javax.sip.message.Response;
 
 import org.apache.log4j.Logger;
@@ -205,4 +206,52 @@ public class B2BUASipUnitTest extends SipServletTestCase {
 		receiverProtocolObjects.destroy();			
 		logger.info("Test completed");
 	}
+	
+	/*
+	 * The servlet modifies a parameter of a header of the new leg and checks that the original request still has 
+	 * its own value, it answers with a 500 otherwise
+	 */
+	public void testB2BUAHeaderParametersNotShared() throws Exception {
+		senderProtocolObjects = new ProtocolObjects("headerParameters",
+				"gov.nist", TRANSPORT, AUTODIALOG, null, null, null);
+		receiverProtocolObjects = new ProtocolObjects("aa",
+				"gov.nist", TRANSPORT, AUTODIALOG, null, null, null);								
+		
+		String fromName = "headerParameters";
+		String fromSipAddress = "nist.gov";
+		SipURI fromAddress = senderProtocolObjects.addressFactory.createSipURI(
+				fromName, fromSipAddress);
+		
+		String toSipAddress = "nist.gov";
+		String toUser = "receiver";
+		SipURI toAddress = senderProtocolObjects.addressFactory.createSipURI(
+				toUser, toSipAddress);
+		
+		sender = new TestSipListener(5080, 5070, senderProtocolObjects, true);
+		sender.setTimeToWaitBeforeBye(TIMEOUT);
+		SipProvider senderProvider = sender.createProvider();
+
+		receiver = new TestSipListener(5059, 5070, receiverProtocolObjects, false);
+		SipProvider receiverProvider = receiver.createProvider();
+
+		receiverProvider.addSipListener(receiver);
+		senderProvider.addSipListener(sender);
+
+		senderProtocolObjects.start();
+		receiverProtocolObjects.start();
+		
+		sender.sendSipRequest("INVITE", fromAddress, toAddress, null, null, false, new String[] {AcceptHeader.NAME}, new String[] {"application/sdp;level=1"}, true);		
+		Thread.sleep(TIMEOUT);
+		assertNotNull(receiver.getInviteRequest());
+		AcceptHeader acceptHeader = (AcceptHeader) receiver.getInviteRequest().getHeader(AcceptHeader.NAME);
+		assertEquals("2", acceptHeader.getParameter("level"));
+		assertEquals(1,receiver.ackCount);
+		Thread.sleep(TIMEOUT);
+		assertTrue(sender.getOkToByeReceived());
+		assertTrue(receiver.getByeReceived());
+		
+		senderProtocolObjects.destroy();
+		receiverProtocolObjects.destroy();			
+		logger.info("Test completed");
+	}
 }
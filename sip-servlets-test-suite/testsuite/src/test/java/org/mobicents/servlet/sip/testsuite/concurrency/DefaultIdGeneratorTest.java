@@ -0,0 +1,131 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2015, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.servlet.sip.testsuite.concurrency;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import junit.framework.TestCase;
+
+import org.mobicents.servlet.sip.core.DefaultIdGenerator;
+
+public class DefaultIdGeneratorTest extends TestCase {
+
+	private static final String SERVER_ID_HASH = "a1b2c3";
+	private static final int THREADS = 200;
+	private static final int IDS_PER_THREAD = 500;
+	// the server id hash followed by the counter
+	private static final int PREFIX_LENGTH = SERVER_ID_HASH.length() + 12;
+
+	private DefaultIdGenerator idGenerator;
+
+	/**
+	 * @param name
+	 */
+	public DefaultIdGeneratorTest(String name) {
+		super(name);
+	}
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#setUp()
+	 */
+	protected void setUp() throws Exception {
+		super.setUp();
+		idGenerator = new DefaultIdGenerator();
+		idGenerator.init(SERVER_ID_HASH);
+	}
+
+	public void testFixedWidthWithoutUnderscore() {
+		final int branchLength = idGenerator.generateBranchId().length();
+		final int callIdLength = idGenerator.generateCallId().length();
+		for (int i = 0; i < 10000; i++) {
+			checkId(idGenerator.generateBranchId(), branchLength);
+			checkId(idGenerator.generateCallId(), callIdLength);
+			checkId(idGenerator.generateTag(8), 8);
+			checkId(idGenerator.generateTag(13), 13);
+		}
+	}
+
+	public void testServerIdHashPrefix() {
+		assertTrue(idGenerator.generateBranchId().startsWith(SERVER_ID_HASH));
+		assertTrue(idGenerator.generateCallId().startsWith(SERVER_ID_HASH));
+	}
+
+	public void testInvalidTagLength() {
+		try {
+			idGenerator.generateTag(0);
+			fail("a tag can't be empty");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Short lived threads, one after the other, must not get the same identifiers, even without their random part
+	 */
+	public void testUniqueAcrossThreadChurn() throws Exception {
+		final Set<String> prefixes = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+		for (int i = 0; i < THREADS; i++) {
+			final Thread thread = new Thread(new Runnable() {
+				public void run() {
+					for (int j = 0; j < IDS_PER_THREAD; j++) {
+						prefixes.add(idGenerator.generateCallId().substring(0, PREFIX_LENGTH));
+						prefixes.add(idGenerator.generateBranchId().substring(0, PREFIX_LENGTH));
+					}
+				}
+			});
+			thread.start();
+			thread.join();
+		}
+		assertEquals(2 * THREADS * IDS_PER_THREAD, prefixes.size());
+	}
+
+	/**
+	 * Without the random part, the identifiers generated by threads running concurrently must still be distinct
+	 */
+	public void testUniquePrefixesAcrossConcurrentThreads() throws Exception {
+		final Set<String> prefixes = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+		final Thread[] threads = new Thread[THREADS];
+		for (int i = 0; i < THREADS; i++) {
+			threads[i] = new Thread(new Runnable() {
+				public void run() {
+					final Set<String> threadPrefixes = new HashSet<String>();
+					for (int j = 0; j < IDS_PER_THREAD; j++) {
+						final String branch = idGenerator.generateBranchId();
+						threadPrefixes.add(branch.substring(0, PREFIX_LENGTH));
+					}
+					prefixes.addAll(threadPrefixes);
+				}
+			});
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(THREADS * IDS_PER_THREAD, prefixes.size());
+	}
+
+	private static void checkId(String id, int expectedLength) {
+		assertEquals(id, expectedLength, id.length());
+		assertEquals(id, -1, id.indexOf('_'));
+	}
+}
@@ -56,7 +56,9 @@ public class ListenersSipServletTest extends SipServletTestCase {
 		"sipSessionCreated",
 		//Tested by the tCK
 //		"sipSessionValueBound", "sipSessionValueUnbound",  
-		"sipSessionAttributeReplaced", "sipSessionAttributeRemoved", "sipSessionAttributeAdded"
+		"sipSessionAttributeReplaced", "sipSessionAttributeRemoved", "sipSessionAttributeAdded",
+		// notified asynchronously, checked for their order and context classloader
+		"nonCriticalSipAppSessionAttributeListener", "nonCriticalSipSessionAttributeListener"
 		};		
 		
 	private static final String[] LISTENERS_TO_TEST_AFTER = new String[]{
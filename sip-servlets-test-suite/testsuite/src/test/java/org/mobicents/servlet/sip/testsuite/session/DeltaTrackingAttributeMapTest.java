@@ -0,0 +1,241 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2015, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.servlet.sip.testsuite.session;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.mobicents.servlet.sip.annotation.ImmutableAttribute;
+import org.mobicents.servlet.sip.core.session.AttributesDelta;
+import org.mobicents.servlet.sip.core.session.DeltaTrackingAttributeMap;
+import org.mobicents.servlet.sip.core.session.SessionAttributeStore;
+
+public class DeltaTrackingAttributeMapTest extends TestCase {
+
+	private DeltaTrackingAttributeMap attributes;
+
+	/**
+	 * @param name
+	 */
+	public DeltaTrackingAttributeMapTest(String name) {
+		super(name);
+	}
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#setUp()
+	 */
+	protected void setUp() throws Exception {
+		super.setUp();
+		attributes = new DeltaTrackingAttributeMap();
+	}
+
+	public void testInitialAttributesNotChanged() {
+		final Map<String, Object> initialAttributes = new HashMap<String, Object>();
+		initialAttributes.put("first", "value");
+		assertTrue(new DeltaTrackingAttributeMap(initialAttributes).collectDelta().isEmpty());
+	}
+
+	public void testAddedReplacedRemoved() {
+		attributes.put("added", "value");
+		attributes.put("replaced", "value");
+		attributes.put("removed", "value");
+		AttributesDelta delta = attributes.collectDelta();
+		assertEquals(3, delta.getModifiedAttributes().size());
+		assertEquals("value", delta.getModifiedAttributes().get("added"));
+		assertTrue(delta.getRemovedAttributes().isEmpty());
+
+		attributes.put("replaced", "new value");
+		attributes.remove("removed");
+		delta = attributes.collectDelta();
+		assertEquals(Collections.singletonMap("replaced", "new value"), delta.getModifiedAttributes());
+		assertEquals(Collections.singleton("removed"), delta.getRemovedAttributes());
+
+		assertTrue(attributes.collectDelta().isEmpty());
+	}
+
+	public void testRemovedThenAdded() {
+		attributes.put("attribute", "value");
+		attributes.collectDelta();
+		attributes.remove("attribute");
+		attributes.put("attribute", "new value");
+		final AttributesDelta delta = attributes.collectDelta();
+		assertEquals(Collections.singletonMap("attribute", "new value"), delta.getModifiedAttributes());
+		assertTrue(delta.getRemovedAttributes().isEmpty());
+	}
+
+	public void testAddedThenRemoved() {
+		attributes.put("attribute", "value");
+		attributes.remove("attribute");
+		final AttributesDelta delta = attributes.collectDelta();
+		assertTrue(delta.getModifiedAttributes().isEmpty());
+		assertEquals(Collections.singleton("attribute"), delta.getRemovedAttributes());
+	}
+
+	public void testUnchangedModificationsNotRecorded() {
+		attributes.put("attribute", "value");
+		attributes.collectDelta();
+		assertEquals("value", attributes.putIfAbsent("attribute", "other value"));
+		assertNull(attributes.replace("missing", "value"));
+		assertFalse(attributes.replace("attribute", "other value", "new value"));
+		assertFalse(attributes.remove("attribute", "other value"));
+		assertNull(attributes.remove("missing"));
+		assertTrue(attributes.collectDelta().isEmpty());
+	}
+
+	public void testMutableValueRead() {
+		attributes.put("list", new ArrayList<String>());
+		attributes.collectDelta();
+		// the map reads of the container are not considered as modifications
+		attributes.get("list");
+		assertTrue(attributes.collectDelta().isEmpty());
+		// the application may modify the value it read
+		attributes.getAttribute("list");
+		assertEquals(Collections.singleton("list"), attributes.collectDelta().getModifiedAttributes().keySet());
+	}
+
+	public void testImmutableValueRead() {
+		attributes.put("string", "value");
+		attributes.put("integer", Integer.valueOf(1));
+		attributes.put("enum", State.ACTIVE);
+		attributes.put("annotated", new AnnotatedValue("value"));
+		attributes.collectDelta();
+		for (String name : attributes.keySet()) {
+			assertNotNull(attributes.getAttribute(name));
+		}
+		assertTrue(attributes.collectDelta().isEmpty());
+	}
+
+	public void testMutableValuesNotTracked() {
+		attributes.setMutableValuesTracked(false);
+		attributes.put("list", new ArrayList<String>());
+		attributes.collectDelta();
+		attributes.getAttribute("list");
+		assertTrue(attributes.collectDelta().isEmpty());
+	}
+
+	public void testViewsReadOnly() {
+		attributes.put("attribute", "value");
+		try {
+			attributes.keySet().remove("attribute");
+			fail("the views of the attributes are read only");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+		assertEquals("value", attributes.get("attribute"));
+	}
+
+	public void testWrap() {
+		final ConcurrentMap<String, Object> shared = new ConcurrentHashMap<String, Object>();
+		shared.put("initial", "value");
+		final DeltaTrackingAttributeMap wrapped = DeltaTrackingAttributeMap.wrap(shared);
+		wrapped.put("added", "value");
+		assertEquals("value", shared.get("added"));
+		final AttributesDelta delta = wrapped.collectDelta();
+		assertEquals(Collections.singleton("added"), delta.getModifiedAttributes().keySet());
+	}
+
+	public void testPassivation() throws Exception {
+		final File directory = File.createTempFile("delta-tracking-attribute-map", "");
+		assertTrue(directory.delete());
+		final SessionAttributeStore store = new SessionAttributeStore(directory, getClass().getClassLoader());
+		try {
+			final AtomicInteger activations = new AtomicInteger();
+			attributes.put("attribute", "value");
+			assertTrue(attributes.passivate(store, new Runnable() {
+				public void run() {
+					activations.incrementAndGet();
+				}
+			}));
+			assertTrue(attributes.isPassivated());
+			assertFalse(attributes.passivate(store, null));
+			assertEquals(1, store.getRecords());
+			// the changes recorded before the passivation are kept
+			assertEquals(Collections.singletonMap("attribute", "value"), attributes.collectDelta().getModifiedAttributes());
+			assertFalse(attributes.isPassivated());
+			assertEquals(1, activations.get());
+			assertEquals(0, store.getRecords());
+			assertEquals("value", attributes.get("attribute"));
+			// attributes which can't be serialized stay on the heap
+			attributes.put("object", new Object());
+			assertFalse(attributes.passivate(store, null));
+			assertFalse(attributes.isPassivated());
+		} finally {
+			store.close();
+			directory.delete();
+		}
+	}
+
+	public void testConcurrentChangesNotLost() throws Exception {
+		final int threads = 4;
+		final int attributesPerThread = 20000;
+		final Thread[] writers = new Thread[threads];
+		for (int i = 0; i < threads; i++) {
+			final String prefix = "attribute" + i + "_";
+			writers[i] = new Thread(new Runnable() {
+				public void run() {
+					for (int j = 0; j < attributesPerThread; j++) {
+						attributes.put(prefix + j, "value");
+					}
+				}
+			});
+			writers[i].start();
+		}
+		final Set<String> collected = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+		boolean running = true;
+		while (running) {
+			running = false;
+			for (Thread writer : writers) {
+				running |= writer.isAlive();
+			}
+			collected.addAll(attributes.collectDelta().getModifiedAttributes().keySet());
+		}
+		collected.addAll(attributes.collectDelta().getModifiedAttributes().keySet());
+		assertEquals(threads * attributesPerThread, collected.size());
+	}
+
+	private enum State {
+		ACTIVE
+	}
+
+	@ImmutableAttribute
+	private static final class AnnotatedValue implements Serializable {
+		private static final long serialVersionUID = 1L;
+		private final String value;
+
+		AnnotatedValue(String value) {
+			this.value = value;
+		}
+
+		@Override
+		public String toString() {
+			return value;
+		}
+	}
+}
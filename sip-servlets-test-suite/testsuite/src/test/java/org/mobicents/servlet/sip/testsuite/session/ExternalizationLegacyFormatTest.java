@@ -0,0 +1,116 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2015, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.servlet.sip.testsuite.session;
+
+import gov.nist.javax.sip.message.MessageFactoryImpl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.sip.message.Request;
+
+import junit.framework.TestCase;
+
+import org.mobicents.servlet.sip.core.session.ExternalizationUtil;
+import org.mobicents.servlet.sip.core.session.SessionManagerUtil;
+import org.mobicents.servlet.sip.core.session.SipSessionKey;
+
+/**
+ * Checks that what is written in the legacy externalization format can be read back
+ * the way the nodes running a previous version read it
+ */
+public class ExternalizationLegacyFormatTest extends TestCase {
+
+	private static final String REQUEST =
+		"INVITE sip:receiver@127.0.0.1:5080 SIP/2.0\r\n" +
+		"Call-ID: 7a3ab5a3cf7dbb3f4ab4b36f1ff21f4c@127.0.0.1\r\n" +
+		"CSeq: 1 INVITE\r\n" +
+		"From: <sip:sender@127.0.0.1:5070>;tag=12345\r\n" +
+		"To: <sip:receiver@127.0.0.1:5080>\r\n" +
+		"Via: SIP/2.0/UDP 127.0.0.1:5070;branch=z9hG4bK-3132-1\r\n" +
+		"Max-Forwards: 70\r\n" +
+		"Content-Type: text/plain\r\n" +
+		"Content-Length: 11\r\n" +
+		"\r\n" +
+		"hello world";
+
+	/**
+	 * @param name
+	 */
+	public ExternalizationLegacyFormatTest(String name) {
+		super(name);
+	}
+
+	public void testLegacyFormatReadByPreviousVersion() throws Exception {
+		final SipSessionKey sessionKey = new SipSessionKey("12345", "67890", "7a3ab5a3cf7dbb3f4ab4b36f1ff21f4c@127.0.0.1", "app-session-id", "ApplicationNameTest");
+		final Map<String, Object> attributes = new HashMap<String, Object>();
+		attributes.put("first", "value");
+		attributes.put("second", Integer.valueOf(2));
+		final Request request = new MessageFactoryImpl().createRequest(REQUEST);
+
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeUTF(sessionKey.toString());
+		ExternalizationUtil.writeLegacyAttributes(out, attributes);
+		ExternalizationUtil.writeLegacyMessage(out, request);
+		out.close();
+
+		// same sequence of reads as SipServletMessageImpl.readExternal of the previous versions
+		final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		final String sessionKeyString = in.readUTF();
+		assertEquals(ExternalizationUtil.LEGACY_FORMAT_VERSION, ExternalizationUtil.readFormatVersion(sessionKeyString, in));
+		assertEquals(sessionKey, SessionManagerUtil.parseSipSessionKey(sessionKeyString));
+		final int attributesSize = in.readInt();
+		assertEquals(attributes.size(), attributesSize);
+		final Object[][] attributesArray = (Object[][]) in.readObject();
+		final Map<String, Object> readAttributes = new HashMap<String, Object>();
+		for (int i = 0; i < attributesSize; i++) {
+			readAttributes.put((String) attributesArray[0][i], attributesArray[1][i]);
+		}
+		assertEquals(attributes, readAttributes);
+		final String message = in.readUTF();
+		assertEquals(request.toString(), message);
+		assertEquals(-1, in.read());
+		in.close();
+	}
+
+	public void testLegacyFormatWithoutAttributes() throws Exception {
+		final Request request = new MessageFactoryImpl().createRequest(REQUEST);
+
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeUTF("");
+		ExternalizationUtil.writeLegacyAttributes(out, null);
+		ExternalizationUtil.writeLegacyMessage(out, request);
+		out.close();
+
+		final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		assertEquals("", in.readUTF());
+		// the previous versions only read the attributes array when the size is positive
+		assertEquals(0, in.readInt());
+		assertEquals(request.toString(), in.readUTF());
+		assertEquals(-1, in.read());
+		in.close();
+	}
+}
@@ -0,0 +1,157 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2015, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.servlet.sip.testsuite.session;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.mobicents.servlet.sip.core.session.SessionAttributeStore;
+import org.mobicents.servlet.sip.core.session.SessionAttributeStore.Record;
+
+public class SessionAttributeStoreTest extends TestCase {
+
+	private File directory;
+	private SessionAttributeStore store;
+
+	/**
+	 * @param name
+	 */
+	public SessionAttributeStoreTest(String name) {
+		super(name);
+	}
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#setUp()
+	 */
+	protected void setUp() throws Exception {
+		super.setUp();
+		directory = File.createTempFile("session-attribute-store", "");
+		assertTrue(directory.delete());
+		store = new SessionAttributeStore(directory, getClass().getClassLoader());
+	}
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#tearDown()
+	 */
+	protected void tearDown() throws Exception {
+		store.close();
+		final File[] files = directory.listFiles();
+		if(files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		directory.delete();
+		super.tearDown();
+	}
+
+	public void testWriteRead() throws Exception {
+		final Map<String, Object> attributes = new HashMap<String, Object>();
+		attributes.put("first", "value");
+		attributes.put("second", new ArrayList<Integer>(Arrays.asList(1, 2, 3)));
+		final Record record = store.write(attributes);
+		assertTrue(record.getLength() > 0);
+		assertEquals(1, store.getRecords());
+		assertEquals(attributes, store.read(record));
+		assertEquals(0, store.getRecords());
+	}
+
+	public void testManyRecords() throws Exception {
+		final List<Record> records = new ArrayList<Record>();
+		for (int i = 0; i < 1000; i++) {
+			records.add(store.write("value" + i));
+		}
+		assertEquals(1000, store.getRecords());
+		// read back in a different order than written
+		for (int i = records.size() - 1; i >= 0; i--) {
+			assertEquals("value" + i, store.read(records.get(i)));
+		}
+		assertEquals(0, store.getRecords());
+	}
+
+	public void testReleaseOnlyOnce() throws Exception {
+		final Record record = store.write("value");
+		store.write("other value");
+		store.release(record);
+		store.release(record);
+		assertEquals(1, store.getRecords());
+	}
+
+	public void testNotSerializable() throws Exception {
+		try {
+			store.write(new Object());
+			fail("an object which isn't serializable can't be stored");
+		} catch (NotSerializableException e) {
+			// expected
+		}
+		assertEquals(0, store.getRecords());
+	}
+
+	public void testClose() throws Exception {
+		store.write("value");
+		assertEquals(1, segments().length);
+		store.close();
+		assertEquals(0, store.getRecords());
+		assertEquals(0, segments().length);
+		try {
+			store.write("value");
+			fail("a closed store can't be written to");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	public void testDeleteStaleSegments() throws Exception {
+		assertTrue(directory.mkdirs());
+		final File staleSegment = new File(directory, "sessions-0.dat");
+		final FileOutputStream out = new FileOutputStream(staleSegment);
+		out.write(new byte[4096]);
+		out.close();
+		final File otherFile = new File(directory, "other.dat");
+		assertTrue(otherFile.createNewFile());
+
+		store.deleteStaleSegments();
+		assertFalse(staleSegment.exists());
+		assertTrue(otherFile.exists());
+
+		final Record record = store.write("value");
+		assertEquals(record.getLength(), staleSegment.length());
+		assertEquals("value", store.read(record));
+	}
+
+	public void testDeleteStaleSegmentsWithoutDirectory() throws Exception {
+		store.deleteStaleSegments();
+		assertFalse(directory.exists());
+	}
+
+	private File[] segments() {
+		final File[] files = directory.listFiles();
+		return files == null ? new File[0] : files;
+	}
+}
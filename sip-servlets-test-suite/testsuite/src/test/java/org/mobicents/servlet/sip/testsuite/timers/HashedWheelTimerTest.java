@@ -0,0 +1,205 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2015, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package org.mobicents.servlet.sip.testsuite.timers;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.mobicents.servlet.sip.core.timers.HashedWheelTimer;
+import org.mobicents.servlet.sip.core.timers.HashedWheelTimer.TimerGroup;
+
+public class HashedWheelTimerTest extends TestCase {
+
+	private static final long TICK_DURATION = 5;
+
+	private HashedWheelTimer timer;
+
+	/**
+	 * @param name
+	 */
+	public HashedWheelTimerTest(String name) {
+		super(name);
+	}
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#setUp()
+	 */
+	protected void setUp() throws Exception {
+		super.setUp();
+		// a small wheel so that the timers go around it several times
+		timer = new HashedWheelTimer("HashedWheelTimerTest", TICK_DURATION, TimeUnit.MILLISECONDS, 8, 2);
+	}
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#tearDown()
+	 */
+	protected void tearDown() throws Exception {
+		timer.shutdownNow();
+		assertTrue(timer.awaitTermination(5, TimeUnit.SECONDS));
+		super.tearDown();
+	}
+
+	public void testOneShotTimer() throws Exception {
+		final long start = System.nanoTime();
+		final ScheduledFuture<String> future = timer.schedule(new Callable<String>() {
+			public String call() {
+				return "expired";
+			}
+		}, 100, TimeUnit.MILLISECONDS);
+		assertEquals("expired", future.get(5, TimeUnit.SECONDS));
+		assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 100);
+		assertTrue(future.isDone());
+		waitForNoPendingTimeouts();
+	}
+
+	public void testCancelledTimerDoesNotRun() throws Exception {
+		final AtomicInteger runs = new AtomicInteger();
+		final ScheduledFuture<?> future = timer.schedule(new CountingTask(runs, null), 100, TimeUnit.MILLISECONDS);
+		assertEquals(1, timer.getPendingTimeouts());
+		assertTrue(future.cancel(false));
+		Thread.sleep(200);
+		assertEquals(0, runs.get());
+		assertEquals(0, timer.getPendingTimeouts());
+	}
+
+	public void testFixedRateTimer() throws Exception {
+		final CountDownLatch latch = new CountDownLatch(5);
+		final ScheduledFuture<?> future = timer.scheduleAtFixedRate(new CountingTask(new AtomicInteger(), latch),
+				0, 20, TimeUnit.MILLISECONDS);
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		assertEquals(1, timer.getPendingTimeouts());
+		assertTrue(future.cancel(false));
+		waitForNoPendingTimeouts();
+	}
+
+	public void testFixedDelayTimer() throws Exception {
+		final CountDownLatch latch = new CountDownLatch(5);
+		final ScheduledFuture<?> future = timer.scheduleWithFixedDelay(new CountingTask(new AtomicInteger(), latch),
+				0, 20, TimeUnit.MILLISECONDS);
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		assertTrue(future.cancel(false));
+		waitForNoPendingTimeouts();
+	}
+
+	public void testTimerGroupShutdownNowCancelsPendingTimers() throws Exception {
+		final TimerGroup group = timer.newTimerGroup("group");
+		final TimerGroup otherGroup = timer.newTimerGroup("otherGroup");
+		final AtomicInteger runs = new AtomicInteger();
+		final CountDownLatch otherLatch = new CountDownLatch(1);
+		final ScheduledFuture<?> future = group.schedule(new CountingTask(runs, null), 200, TimeUnit.MILLISECONDS);
+		final ScheduledFuture<?> periodicFuture = group.scheduleAtFixedRate(new CountingTask(runs, null), 200, 20, TimeUnit.MILLISECONDS);
+		otherGroup.schedule(new CountingTask(new AtomicInteger(), otherLatch), 200, TimeUnit.MILLISECONDS);
+		group.shutdownNow();
+		assertTrue(otherLatch.await(5, TimeUnit.SECONDS));
+		assertEquals(0, runs.get());
+		assertTrue(future.isCancelled());
+		assertTrue(periodicFuture.isCancelled());
+		waitForNoPendingTimeouts();
+		try {
+			group.schedule(new CountingTask(runs, null), 0, TimeUnit.MILLISECONDS);
+			fail("a stopped timer group must not accept new timers");
+		} catch (RejectedExecutionException e) {
+			// expected
+		}
+	}
+
+	public void testTimerGroupShutdownStopsPeriodicTimers() throws Exception {
+		final TimerGroup group = timer.newTimerGroup("group");
+		final AtomicInteger runs = new AtomicInteger();
+		final CountDownLatch latch = new CountDownLatch(3);
+		final ScheduledFuture<?> future = group.scheduleAtFixedRate(new CountingTask(runs, latch), 0, 20, TimeUnit.MILLISECONDS);
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		group.shutdown();
+		// the period running when the group is stopped may still complete
+		Thread.sleep(100);
+		final int runsAfterShutdown = runs.get();
+		Thread.sleep(200);
+		assertEquals(runsAfterShutdown, runs.get());
+		assertTrue(future.isCancelled());
+		waitForNoPendingTimeouts();
+	}
+
+	public void testTimerGroupShutdownLetsPendingTimersRun() throws Exception {
+		final TimerGroup group = timer.newTimerGroup("group");
+		final CountDownLatch latch = new CountDownLatch(1);
+		group.schedule(new CountingTask(new AtomicInteger(), latch), 50, TimeUnit.MILLISECONDS);
+		group.shutdown();
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+	}
+
+	public void testTimersBeyondOneWheelRound() throws Exception {
+		// the wheel covers 8 ticks, these timers have to wait for several rounds
+		final CountDownLatch latch = new CountDownLatch(20);
+		final long start = System.nanoTime();
+		for (int i = 0; i < 20; i++) {
+			timer.schedule(new CountingTask(new AtomicInteger(), latch), 10 * i, TimeUnit.MILLISECONDS);
+		}
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 190);
+		waitForNoPendingTimeouts();
+	}
+
+	public void testShutdownRejectsNewTimers() throws Exception {
+		final ScheduledFuture<?> future = timer.schedule(new CountingTask(new AtomicInteger(), null), 1, TimeUnit.HOURS);
+		// let the tick thread move it to its bucket
+		Thread.sleep(50);
+		timer.shutdownNow();
+		assertTrue(timer.awaitTermination(5, TimeUnit.SECONDS));
+		assertTrue(timer.isTerminated());
+		assertTrue(future.isCancelled());
+		try {
+			timer.schedule(new CountingTask(new AtomicInteger(), null), 0, TimeUnit.MILLISECONDS);
+			fail("a stopped timer wheel must not accept new timers");
+		} catch (RejectedExecutionException e) {
+			// expected
+		}
+	}
+
+	private void waitForNoPendingTimeouts() throws InterruptedException {
+		final long deadline = System.currentTimeMillis() + 5000;
+		while (timer.getPendingTimeouts() > 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(TICK_DURATION);
+		}
+		assertEquals(0, timer.getPendingTimeouts());
+	}
+
+	private static final class CountingTask implements Runnable {
+		private final AtomicInteger runs;
+		private final CountDownLatch latch;
+
+		CountingTask(AtomicInteger runs, CountDownLatch latch) {
+			this.runs = runs;
+			this.latch = latch;
+		}
+
+		public void run() {
+			runs.incrementAndGet();
+			if(latch != null) {
+				latch.countDown();
+			}
+		}
+	}
+}